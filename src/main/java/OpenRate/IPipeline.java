@@ -122,6 +122,12 @@ public interface IPipeline
    */
   public void setSchedulerHigh();
 
+  /**
+   * Used for processing schedule management - wake the pipe from its idle
+   * sleep because there is new work to do, and set the fast schedule
+   */
+  public void wakeUp();
+
   /**
    * Used for processing schedule management - see if the pipe is in the fast
    * schedule
@@ -186,6 +186,11 @@ public class Pipeline
   // long enough to roll from one file to the next at high speed.
   private long schedulerHighSpeed = 0;
 
+  // Used to wake the pipeline from its idle sleep as soon as there is work to
+  // do, instead of waiting for the sleep to run out
+  private final Object wakeLock = new Object();
+  private boolean wakeRequested = false;
+
   // Used to map the buffers in order that we can interrogate them
   ArrayList<IBuffer> bufferList = new ArrayList<>();
 
@@ -883,7 +888,7 @@ public class Pipeline
             OpenRate.getOpenRateFrameworkLog().debug(
                     "Pipeline <" + symbolicName + "> will sleep for "
                     + tmpSleepTime + " ms.");
-            Thread.sleep(tmpSleepTime);
+            sleepUntilWoken(tmpSleepTime);
           } catch (InterruptedException e) {
             // ignore the exception
           }
@@ -1318,6 +1323,43 @@ public class Pipeline
     schedulerHighSpeed = ConversionUtils.getConversionUtilsObject().getCurrentUTCms() + 10000;
   }
 
+  /**
+   * Wake the pipeline from its idle sleep, and put the scheduler into the high
+   * speed schedule. Called by modules which have been told that there is new
+   * work to do, so that the work is picked up straight away.
+   */
+  @Override
+  public void wakeUp() {
+    setSchedulerHigh();
+
+    synchronized (wakeLock) {
+      wakeRequested = true;
+      wakeLock.notifyAll();
+    }
+  }
+
+  /**
+   * Sleep for the given time, or until wakeUp() is called.
+   *
+   * @param sleepTime The maximum time to sleep in ms
+   * @throws InterruptedException
+   */
+  private void sleepUntilWoken(long sleepTime) throws InterruptedException {
+    long wakeTime = System.currentTimeMillis() + sleepTime;
+
+    synchronized (wakeLock) {
+      while (!wakeRequested) {
+        long remaining = wakeTime - System.currentTimeMillis();
+        if (remaining <= 0) {
+          break;
+        }
+        wakeLock.wait(remaining);
+      }
+
+      wakeRequested = false;
+    }
+  }
+
   /**
    * Tell us if the scheduler is still in the high speed period.
    *
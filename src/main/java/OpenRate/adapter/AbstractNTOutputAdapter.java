@@ -68,7 +68,9 @@ import OpenRate.exception.ProcessingException;
 import OpenRate.logging.ILogger;
 import OpenRate.logging.LogUtil;
 import OpenRate.record.HeaderRecord;
+import OpenRate.record.IPoolable;
 import OpenRate.record.IRecord;
+import OpenRate.record.ObjectPool;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.IOException;
@@ -97,6 +99,10 @@ public abstract class AbstractNTOutputAdapter
   // Whether we are to shut down or not
   private volatile boolean shutdownFlag = false;
 
+  // Set when the supplier notifies us while we are busy, so that the
+  // notification is not lost before we wait. Guarded by "this".
+  private boolean wakeupPending = false;
+
   // Used to store the name of this output, for deciding if records should be
   // written to this output or not
   private String outputName;
@@ -188,7 +194,7 @@ public abstract class AbstractNTOutputAdapter
       startTime = System.currentTimeMillis();
 
       do {
-        Thread.sleep(this.sleepTime);
+        waitForRecords();
         localDone = this.shutdownFlag;
         write();
       } while ((!localDone) && (getExceptionHandler().hasError() == false));
@@ -276,6 +282,9 @@ public abstract class AbstractNTOutputAdapter
                   // pass the record into the output stream
                   out.add(r);
                   OutBatchHasValidRecords = true;
+                } else {
+                  // the record is finished with
+                  releaseRecord(r);
                 }
               }
             } else {
@@ -290,6 +299,9 @@ public abstract class AbstractNTOutputAdapter
                     // drop the record
                     out.add(r);
                     OutBatchHasValidRecords = true;
+                  } else {
+                    // the record is finished with
+                    releaseRecord(r);
                   }
                 }
               } else {
@@ -315,6 +327,12 @@ public abstract class AbstractNTOutputAdapter
             if (TerminatingAdaptor) {
               getPipeLog().error("Output adapter <" + getSymbolicName() + "> discarded <"
                       + out.size() + "> records at the end of the output adapter chain.");
+
+              // the discarded records are finished with
+              Iterator<IRecord> releaseIter = out.iterator();
+              while (releaseIter.hasNext()) {
+                releaseRecord(releaseIter.next());
+              }
             } else {
               // push the remaining records to the next adapter
               getBatchOutboundValidBuffer().push(out);
@@ -347,6 +365,22 @@ public abstract class AbstractNTOutputAdapter
     }
   }
 
+  /**
+   * Release a record that has left the output adapter chain to the pool it was
+   * acquired from, so that the input adapter can re-use it. Records that were
+   * not acquired from a pool are left to the garbage collector as usual.
+   * Adapters that hold on to records after prepValidRecord or prepErrorRecord
+   * has returned must override this so that the records are not recycled
+   * while they are still in use.
+   *
+   * @param r The record to release
+   */
+  protected void releaseRecord(IRecord r) {
+    if (r instanceof IPoolable) {
+      ObjectPool.releaseToOwner((IPoolable) r);
+    }
+  }
+
   /**
    * Do any non-record level processing required to finish this batch cycle.
    */
@@ -384,6 +418,23 @@ public abstract class AbstractNTOutputAdapter
     // no op
   }
 
+  /**
+   * Wait until the supplier notifies us that new records are available, or
+   * until the sleep time has passed. If we were notified while we were busy
+   * writing, we return straight away.
+   *
+   * @throws InterruptedException
+   */
+  private void waitForRecords() throws InterruptedException {
+    synchronized (this) {
+      if (wakeupPending == false) {
+        wait(sleepTime);
+      }
+
+      wakeupPending = false;
+    }
+  }
+
   /**
    * MarkForClosedown tells the adapter thread to close at the first chance,
    * usually as soon as an idle cycle is detected
@@ -394,6 +445,7 @@ public abstract class AbstractNTOutputAdapter
 
     // notify any listeners that are waiting that we are flushing
     synchronized (this) {
+      wakeupPending = true;
       notifyAll();
     }
   }
@@ -543,6 +595,7 @@ public abstract class AbstractNTOutputAdapter
   @Override
   public void notify(IEvent e) {
     synchronized (this) {
+      wakeupPending = true;
       notifyAll();
     }
   }
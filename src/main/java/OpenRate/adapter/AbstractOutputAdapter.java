@@ -69,7 +69,9 @@ import OpenRate.exception.ProcessingException;
 import OpenRate.logging.ILogger;
 import OpenRate.logging.LogUtil;
 import OpenRate.record.HeaderRecord;
+import OpenRate.record.IPoolable;
 import OpenRate.record.IRecord;
+import OpenRate.record.ObjectPool;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.util.ArrayList;
@@ -99,6 +101,10 @@ public abstract class AbstractOutputAdapter
   // Whether we are to shut down or not
   private volatile boolean shutdownFlag = false;
 
+  // Set when the supplier notifies us while we are busy, so that the
+  // notification is not lost before we wait. Guarded by "this".
+  private boolean wakeupPending = false;
+
   // Used to store the name of this output, for deciding if records should be
   // written to this output or not
   private String outputName;
@@ -246,6 +252,7 @@ public abstract class AbstractOutputAdapter
             } else {
               // zap the record
               SkipIter.remove();
+              releaseRecord(r);
               SkipCount++;
             }
           }
@@ -274,6 +281,9 @@ public abstract class AbstractOutputAdapter
                 // pass the record into the output stream
                 out.add(r);
                 OutBatchHasValidRecords = true;
+              } else {
+                // the record is finished with
+                releaseRecord(r);
               }
             } else {
               // pass the record into the output stream
@@ -298,6 +308,9 @@ public abstract class AbstractOutputAdapter
                   // drop the record
                   out.add(r);
                   OutBatchHasValidRecords = true;
+                } else {
+                  // the record is finished with
+                  releaseRecord(r);
                 }
               } else {
                 // pass the record into the output stream
@@ -368,6 +381,9 @@ public abstract class AbstractOutputAdapter
                 }
               }
             }
+
+            // the discarded records are finished with
+            releaseRecords(out);
           } else {
             // push the remaining records to the next adapter
             getBatchOutboundValidBuffer().push(out);
@@ -390,6 +406,8 @@ public abstract class AbstractOutputAdapter
           // to allow the transactions to be managed
           if (!terminatingAdaptor) {
             getBatchOutboundValidBuffer().push(out);
+          } else {
+            releaseRecords(out);
           }
         }
 
@@ -417,17 +435,61 @@ public abstract class AbstractOutputAdapter
 
         // If not marked for shutdown, wait for notification from the
         // supplier that new records are available for processing.
-        try {
-          synchronized (this) {
-            wait();
-          }
-        } catch (InterruptedException e) {
-          // ignore
-        }
+        waitForRecords();
       }
     } // while loop
   }
 
+  /**
+   * Wait until the supplier notifies us that new records are available, or
+   * until the sleep time has passed. If we were notified while we were busy,
+   * we return straight away. The time limit is only a safety net, we do not
+   * depend on it to find new records.
+   */
+  private void waitForRecords() {
+    synchronized (this) {
+      try {
+        if (wakeupPending == false) {
+          wait(sleepTime);
+        }
+      } catch (InterruptedException e) {
+        // ignore
+      }
+
+      wakeupPending = false;
+    }
+  }
+
+  /**
+   * Release a record that has left the output adapter chain to the pool it was
+   * acquired from, so that the input adapter can re-use it. Records that were
+   * not acquired from a pool are left to the garbage collector as usual.
+   * Adapters that hold on to records after prepValidRecord or prepErrorRecord
+   * has returned must override this so that the records are not recycled
+   * while they are still in use.
+   *
+   * @param r The record to release
+   */
+  protected void releaseRecord(IRecord r) {
+    if (r instanceof IPoolable) {
+      ObjectPool.releaseToOwner((IPoolable) r);
+    }
+  }
+
+  /**
+   * Release all of the records in a collection that has left the output
+   * adapter chain.
+   *
+   * @param records The records to release
+   */
+  private void releaseRecords(Collection<IRecord> records) {
+    Iterator<IRecord> releaseIter = records.iterator();
+
+    while (releaseIter.hasNext()) {
+      releaseRecord(releaseIter.next());
+    }
+  }
+
   /**
    * This is used in the case that we want to skip to the end of the stream
    * discarding records as we go. This is primarily used in the abort
@@ -499,6 +561,7 @@ public abstract class AbstractOutputAdapter
 
     // notify any listeners that are waiting that we are flushing
     synchronized (this) {
+      wakeupPending = true;
       notifyAll();
     }
   }
@@ -604,6 +667,7 @@ public abstract class AbstractOutputAdapter
   @Override
   public void notify(IEvent e) {
     synchronized (this) {
+      wakeupPending = true;
       notifyAll();
     }
   }
@@ -344,38 +344,15 @@ public abstract class ASN1FileInputAdapter
     } else if ((inLength & LEN_MASK) != inLength) {
       // This is a multibyte length.  Find the actual length
       int numLengthBytes = (inLength & LEN_MASK);
-      inLength = 0x00000000;
-      byte[] buffer = new byte[numLengthBytes];
-      try {
-        if (reader.read(buffer) == -1) {
-          throw new EOFException("At end of file");
-        }
-      } catch (IOException e) {
-        throw e;
+      if (numLengthBytes > 4) {
+        throw new ASN1Exception("Length cannot be represented as "
+                + "a Java int");
       }
 
-      switch (numLengthBytes) {
-        case 1:
-          inLength |= (0x000000FF & buffer[0]);
-          break;
-        case 2:
-          inLength |= ((0x000000FF & buffer[0]) << 8)
-                  | (0x000000FF & buffer[1]);
-          break;
-        case 3:
-          inLength |= ((0x000000FF & buffer[0]) << 16)
-                  | ((0x000000FF & buffer[1]) << 8)
-                  | (0x000000FF & buffer[2]);
-          break;
-        case 4:
-          inLength |= ((0x000000FF & buffer[0]) << 24)
-                  | ((0x000000FF & buffer[1]) << 16)
-                  | ((0x000000FF & buffer[2]) << 8)
-                  | (0x000000FF & buffer[3]);
-          break;
-        default:
-          throw new ASN1Exception("Length cannot be represented as "
-                  + "a Java int");
+      // read the length bytes straight, without a buffer for them
+      inLength = 0x00000000;
+      for (int i = 0; i < numLengthBytes; i++) {
+        inLength = (inLength << 8) | (reader.readByte() & 0xFF);
       }
     }
     state = inState.length;
@@ -433,6 +410,63 @@ public abstract class ASN1FileInputAdapter
     return null;
   }
 
+  /**
+   * Read the value of a definite length tag into a buffer owned by the caller,
+   * so that a buffer can be re-used for all the values instead of allocating
+   * a new array for each one. If the value is longer than the buffer, the rest
+   * of the value is skipped.
+   *
+   * @param buffer The buffer to read into
+   * @return The number of bytes read into the buffer, -1 for constructed tags
+   * @throws IOException
+   * @throws ASN1Exception
+   */
+  public int readValue(byte[] buffer) throws IOException, ASN1Exception {
+    if (state != inState.length) {
+      throw new ASN1Exception("In wrong state");
+    }
+
+    state = inState.value;
+    this.value = null;
+
+    if (constructed) {
+      return -1;
+    }
+
+    int tmpRead = Math.min(length, buffer.length);
+    try {
+      reader.readFully(buffer, 0, tmpRead);
+      if (length > tmpRead) {
+        reader.seek(reader.getFilePointer() + (length - tmpRead));
+      }
+    } catch (EOFException e) {
+      atEOF = true;
+      throw new IOException(e.getMessage());
+    }
+
+    return tmpRead;
+  }
+
+  /**
+   * Skip the value of a tag without reading it. Constructed tags are not
+   * skipped, so that their contents are read next.
+   *
+   * @throws IOException
+   * @throws ASN1Exception
+   */
+  public void skipValue() throws IOException, ASN1Exception {
+    if (state != inState.length) {
+      throw new ASN1Exception("In wrong state");
+    }
+
+    state = inState.value;
+    this.value = null;
+
+    if (!constructed) {
+      reader.seek(reader.getFilePointer() + length);
+    }
+  }
+
   /**
    * Get the end of the tag
    *
@@ -0,0 +1,381 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes to a file channel in the background. The data written is collected
+ * into byte buffers in the writing thread, and each full buffer is handed to
+ * the executor, which writes it to the channel. The executor should have a
+ * single thread, so that the buffers are written in order. It can be shared
+ * between streams.
+ *
+ * Only a few buffers are queued at any time. When the queue is full, the
+ * writing thread waits for the oldest buffer to be written. The written buffers
+ * are used again, so no buffers are allocated once the queue has filled. If no
+ * executor is passed, the buffers are written in the writing thread.
+ *
+ * flush() waits until everything written so far is in the channel, and
+ * force() also syncs the channel to the disk.
+ *
+ * @author ian
+ */
+public class AsyncFileChannelOutputStream extends OutputStream
+{
+  // The default size of the buffers
+  public static final int DEFAULT_BUFFER_SIZE = 1048576;
+
+  // The channel we write to
+  private final FileChannel channel;
+
+  // The executor writing the buffers, may be null
+  private final ExecutorService executor;
+
+  // The number of buffers which can be queued
+  private final int maxPending;
+
+  // The buffers queued, in the order they are to be written
+  private final ArrayDeque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+
+  // The buffers which have been written, ready to be used again
+  private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+
+  // The buffer we are filling
+  private final int bufferSize;
+  private ByteBuffer buffer;
+
+  // The number of buffers queued and not yet written
+  private final AtomicInteger queueDepth = new AtomicInteger();
+
+  // Statistics
+  private int maxQueueDepth = 0;
+  private long queueWaits = 0;
+  private long bytesQueued = 0;
+
+  private boolean closed = false;
+
+ /**
+  * Create an asynchronous channel stream with the default buffer size.
+  *
+  * @param channel The channel to write to
+  * @param executor The executor to write in, null to write in the writing
+  * thread
+  * @param maxPending The number of buffers which can be queued at once
+  */
+  public AsyncFileChannelOutputStream(FileChannel channel, ExecutorService executor, int maxPending)
+  {
+    this(channel, executor, maxPending, DEFAULT_BUFFER_SIZE);
+  }
+
+ /**
+  * Create an asynchronous channel stream.
+  *
+  * @param channel The channel to write to
+  * @param executor The executor to write in, null to write in the writing
+  * thread
+  * @param maxPending The number of buffers which can be queued at once
+  * @param bufferSize The size of the buffers
+  */
+  public AsyncFileChannelOutputStream(FileChannel channel, ExecutorService executor, int maxPending, int bufferSize)
+  {
+    this.channel = channel;
+    this.executor = executor;
+    this.maxPending = Math.max(1, maxPending);
+    this.bufferSize = bufferSize;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    buffer.put((byte) b);
+    if (!buffer.hasRemaining())
+    {
+      submitBuffer();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    while (len > 0)
+    {
+      int tmpLength = Math.min(len, buffer.remaining());
+      buffer.put(b, off, tmpLength);
+      off += tmpLength;
+      len -= tmpLength;
+
+      if (!buffer.hasRemaining())
+      {
+        submitBuffer();
+      }
+    }
+  }
+
+ /**
+  * Queue the data written so far and wait until it is all in the channel.
+  *
+  * @throws IOException
+  */
+  @Override
+  public void flush() throws IOException
+  {
+    if (buffer.position() > 0)
+    {
+      submitBuffer();
+    }
+
+    while (!pending.isEmpty())
+    {
+      completeBuffer();
+    }
+  }
+
+ /**
+  * Write out the data written so far and sync the channel to the disk.
+  *
+  * @param metaData true to sync the file meta data as well as the content
+  * @throws IOException
+  */
+  public void force(boolean metaData) throws IOException
+  {
+    flush();
+    channel.force(metaData);
+  }
+
+ /**
+  * Write out the rest of the data and close the channel.
+  *
+  * @throws IOException
+  */
+  @Override
+  public void close() throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+
+    try
+    {
+      flush();
+    }
+    finally
+    {
+      // the queued writes use the channel, so let them finish first
+      while (!pending.isEmpty())
+      {
+        try
+        {
+          completeBuffer();
+        }
+        catch (IOException ex)
+        {
+          // we are already reporting an exception
+        }
+      }
+
+      channel.close();
+    }
+  }
+
+ /**
+  * Hand the current buffer over to be written, waiting for the oldest buffer
+  * to be written if too many are queued.
+  *
+  * @throws IOException
+  */
+  private void submitBuffer() throws IOException
+  {
+    final ByteBuffer tmpBuffer = buffer;
+    tmpBuffer.flip();
+    bytesQueued += tmpBuffer.remaining();
+
+    Callable<ByteBuffer> tmpTask = new Callable<ByteBuffer>()
+    {
+      @Override
+      public ByteBuffer call() throws IOException
+      {
+        try
+        {
+          while (tmpBuffer.hasRemaining())
+          {
+            channel.write(tmpBuffer);
+          }
+        }
+        finally
+        {
+          queueDepth.decrementAndGet();
+        }
+
+        return tmpBuffer;
+      }
+    };
+
+    maxQueueDepth = Math.max(maxQueueDepth, queueDepth.incrementAndGet());
+
+    if (executor == null)
+    {
+      FutureTask<ByteBuffer> tmpFuture = new FutureTask<>(tmpTask);
+      tmpFuture.run();
+      pending.add(tmpFuture);
+    }
+    else
+    {
+      pending.add(executor.submit(tmpTask));
+    }
+
+    // pick up the buffers which have been written in the meantime
+    while (!pending.isEmpty() && pending.peek().isDone())
+    {
+      completeBuffer();
+    }
+
+    if (pending.size() > maxPending)
+    {
+      queueWaits++;
+      while (pending.size() > maxPending)
+      {
+        completeBuffer();
+      }
+    }
+
+    buffer = freeBuffers.isEmpty() ? ByteBuffer.allocate(bufferSize) : freeBuffers.poll();
+  }
+
+ /**
+  * Wait for the oldest buffer to be written, and keep it for use again.
+  *
+  * @throws IOException
+  */
+  private void completeBuffer() throws IOException
+  {
+    Future<ByteBuffer> tmpWrite = pending.poll();
+
+    try
+    {
+      ByteBuffer tmpBuffer = tmpWrite.get();
+      tmpBuffer.clear();
+      freeBuffers.add(tmpBuffer);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing");
+    }
+    catch (ExecutionException ex)
+    {
+      if (ex.getCause() instanceof IOException)
+      {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException("Error writing buffer", ex.getCause());
+    }
+  }
+
+ /**
+  * Get the number of buffers queued and not yet written.
+  *
+  * @return The current queue depth
+  */
+  public int getQueueDepth()
+  {
+    return queueDepth.get();
+  }
+
+ /**
+  * Get the largest number of buffers which have been queued at once.
+  *
+  * @return The maximum queue depth
+  */
+  public int getMaxQueueDepth()
+  {
+    return maxQueueDepth;
+  }
+
+ /**
+  * Get the number of times the writing thread had to wait because the queue
+  * was full.
+  *
+  * @return The number of waits
+  */
+  public long getQueueWaits()
+  {
+    return queueWaits;
+  }
+
+ /**
+  * Get the number of bytes handed over to be written.
+  *
+  * @return The number of bytes
+  */
+  public long getBytesQueued()
+  {
+    return bytesQueued;
+  }
+}
@@ -66,6 +66,8 @@ import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -240,6 +242,20 @@ public abstract class BinaryFileInputAdapter
   // Used to iterate through the results of the parse in batches of BatchSize
   private Iterator<IRecord> recordListIterator = null;
 
+  // The size of the buffer we read into when streaming
+  private static final int READ_BUF_SIZE = 1048576;
+
+  // The framer which splits the file into records, null if we read the whole
+  // file and parse it in one go
+  private BinaryRecordFramer recordFramer = null;
+
+  // The state of the file we are streaming: the channel, the data read but
+  // not yet framed, the next record framed, and whether we have read it all
+  private FileChannel channel;
+  private ByteBuffer readBuffer;
+  private ByteBuffer currentFrame;
+  private boolean endOfFile;
+
   // List of Services that this Client supports
   private static final String SERVICE_I_PATH = "InputFilePath";
   private static final String SERVICE_D_PATH = "DoneFilePath";
@@ -262,6 +278,36 @@ public abstract class BinaryFileInputAdapter
    */
   public abstract ArrayList<IRecord> parseBinaryFileContents(byte[] fileContents);
 
+  /**
+   * Get the framer which splits the file into records. If this returns a
+   * framer, the file is streamed: it is read a piece at a time, each record is
+   * parsed with parseBinaryRecord() as soon as it has been read, and
+   * parseBinaryFileContents() is not used. This keeps the memory used flat and
+   * gets the first records into the pipeline straight away, however big the
+   * file is.
+   *
+   * The default returns null, which reads the whole file and parses it with
+   * parseBinaryFileContents().
+   *
+   * @return The framer, or null to read whole files
+   */
+  public BinaryRecordFramer getRecordFramer() {
+    return null;
+  }
+
+  /**
+   * Parse a single record cut out of the file by the record framer. Only
+   * called if getRecordFramer() returns a framer, in which case it must be
+   * overridden. The buffer shares the read buffer of the adapter, so the data
+   * must be copied out of it if it is kept.
+   *
+   * @param record The content of the record
+   * @return The record parsed, or null to skip it
+   */
+  public IRecord parseBinaryRecord(ByteBuffer record) {
+    return null;
+  }
+
   // This is used to hold the calculated file names
   private class TransControlStructure {
 
@@ -331,6 +377,9 @@ public abstract class BinaryFileInputAdapter
 
     // create the structure for storing filenames
     CurrentFileNames = new HashMap<>(10);
+
+    // see if we stream the files
+    recordFramer = getRecordFramer();
   }
 
   /**
@@ -347,6 +396,9 @@ public abstract class BinaryFileInputAdapter
    * then pumps the records into the pipeline. Thus, a single call to load batch
    * will load the whole file.
    *
+   * If the implementation class provides a record framer, the file is instead
+   * streamed, and each call reads only as much of the file as the batch needs.
+   *
    * @return
    * @throws OpenRate.exception.ProcessingException
    */
@@ -408,18 +460,28 @@ public abstract class BinaryFileInputAdapter
           tmpHeader = (HeaderRecord) procHeader((IRecord) tmpHeader);
           Outbatch.add(tmpHeader);
 
-          // now load the file into a memory buffer - it's difficult to know
-          // where to split up binary files, so we don't attempt to, and let the
-          // parser work this out
-          int fileLength = (int) reader.length();
-          bytes = new byte[fileLength];
-          reader.readFully(bytes);
-
-          // call the parser to process the binary contents
-          Collection<IRecord> recordList = parseBinaryFileContents(bytes);
-
-          // Prepare the iterator for loading the records
-          recordListIterator = recordList.iterator();
+          if (recordFramer != null) {
+            // we read the file a piece at a time as we frame the records
+            channel = reader.getChannel();
+            readBuffer = ByteBuffer.allocate(READ_BUF_SIZE);
+            readBuffer.flip();
+            recordFramer.reset();
+            currentFrame = null;
+            endOfFile = false;
+          } else {
+            // now load the file into a memory buffer - it's difficult to know
+            // where to split up binary files, so we don't attempt to, and let the
+            // parser work this out
+            int fileLength = (int) reader.length();
+            bytes = new byte[fileLength];
+            reader.readFully(bytes);
+
+            // call the parser to process the binary contents
+            Collection<IRecord> recordList = parseBinaryFileContents(bytes);
+
+            // Prepare the iterator for loading the records
+            recordListIterator = recordList.iterator();
+          }
         } catch (FileNotFoundException exFileNotFound) {
           getPipeLog().error(
                   "Application is not able to read file <" + getProcName(transactionNumber) + ">");
@@ -439,8 +501,8 @@ public abstract class BinaryFileInputAdapter
       }
 
       // read from the file and prepare the batch
-      while ((recordListIterator.hasNext()) & (ThisBatchCounter < batchSize)) {
-        tmpDataRecord = recordListIterator.next();
+      while ((ThisBatchCounter < batchSize) && hasMoreRecords()) {
+        tmpDataRecord = nextRecord();
 
         // skip blank records
         if (tmpDataRecord == null) {
@@ -483,7 +545,7 @@ public abstract class BinaryFileInputAdapter
       updateRecordCount(transactionNumber, InputRecordNumber);
 
       // see the reason that we closed
-      if (recordListIterator.hasNext() == false) {
+      if (hasMoreRecords() == false) {
         // we have finished
         InputStreamOpen = false;
 
@@ -535,12 +597,114 @@ public abstract class BinaryFileInputAdapter
 
         // Clean up the iterator and the byte array
         recordListIterator = null;
+        readBuffer = null;
+        channel = null;
       }
     }
 
     return Outbatch;
   }
 
+  /**
+   * Tells us if there are more records to read from the current file.
+   *
+   * @return true if there are more records
+   * @throws ProcessingException
+   */
+  private boolean hasMoreRecords() throws ProcessingException {
+    if (recordFramer == null) {
+      return recordListIterator.hasNext();
+    }
+
+    if (currentFrame == null) {
+      try {
+        currentFrame = nextFrame();
+      } catch (IOException ioex) {
+        getPipeLog().error("Application is not able to read file <" + getProcName(transactionNumber) + ">");
+        throw new ProcessingException("Application is not able to read file <"
+                + getProcName(transactionNumber) + ">",
+                ioex,
+                getSymbolicName());
+      } catch (IllegalStateException isex) {
+        // the framing is corrupt, so we cannot find the next record. Give up
+        // on the rest of the file, so that the stream is closed, and abort the
+        // transaction
+        getPipeLog().error("Corrupt record framing in file <" + getProcName(transactionNumber) + ">. message = <" + isex.getMessage() + ">");
+        setTransactionAbort(transactionNumber);
+        endOfFile = true;
+        readBuffer.position(readBuffer.limit());
+
+        throw new ProcessingException("Corrupt record framing in file <"
+                + getProcName(transactionNumber) + ">",
+                isex,
+                getSymbolicName());
+      }
+    }
+
+    return (currentFrame != null);
+  }
+
+  /**
+   * Gets the next record from the current file. hasMoreRecords() must have
+   * been called first.
+   *
+   * @return The next record, may be null if the parser skipped it
+   */
+  private IRecord nextRecord() {
+    if (recordFramer == null) {
+      return recordListIterator.next();
+    }
+
+    ByteBuffer tmpFrame = currentFrame;
+    currentFrame = null;
+
+    return parseBinaryRecord(tmpFrame);
+  }
+
+  /**
+   * Frames the next record out of the file, reading more of the file when the
+   * data we have does not hold a complete record. The read buffer grows if a
+   * record is bigger than it.
+   *
+   * @return The content of the next record, or null at the end of the file
+   * @throws IOException
+   */
+  private ByteBuffer nextFrame() throws IOException {
+    while (true) {
+      if (readBuffer.hasRemaining()) {
+        int tmpStart = readBuffer.position();
+        ByteBuffer tmpFrame = recordFramer.frame(readBuffer);
+        if (tmpFrame != null) {
+          return tmpFrame;
+        }
+        readBuffer.position(tmpStart);
+      }
+
+      if (endOfFile) {
+        if (readBuffer.hasRemaining()) {
+          getPipeLog().error("Discarded incomplete record of <" + readBuffer.remaining() + "> bytes at the end of file <" + getProcName(transactionNumber) + ">");
+          readBuffer.position(readBuffer.limit());
+        }
+
+        return null;
+      }
+
+      // keep what we have not framed yet, and read some more
+      readBuffer.compact();
+      if (readBuffer.hasRemaining() == false) {
+        ByteBuffer tmpBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        readBuffer.flip();
+        tmpBuffer.put(readBuffer);
+        readBuffer = tmpBuffer;
+      }
+
+      if (channel.read(readBuffer) < 0) {
+        endOfFile = true;
+      }
+      readBuffer.flip();
+    }
+  }
+
   /**
    * Closes down the input stream after all the input has been collected
    *
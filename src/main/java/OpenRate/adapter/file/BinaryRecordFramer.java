@@ -0,0 +1,273 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Splits a stream of binary data into records, so that binary files can be
+ * read a piece at a time instead of as a whole. The framer is given the data
+ * read so far, and cuts the next record out of it if the record is complete.
+ *
+ * Framers for the usual framings are provided: fixed length records, records
+ * with a length prefix, and records ended by a delimiter. Other framings can
+ * be made by extending this class.
+ *
+ * @author ian
+ */
+public abstract class BinaryRecordFramer
+{
+ /**
+  * Cut the next record out of the data. The buffer position is at the start of
+  * the next record. If the record is complete, the position is moved past the
+  * record (including any framing bytes) and the content of the record is
+  * returned as a slice of the buffer. If the record is not complete, null is
+  * returned, and more data will be read before trying again. The buffer
+  * position does not need to be restored in this case. The next call is then
+  * given the same record again, with more data after it, so a framer may
+  * remember how far it has already looked.
+  *
+  * The slice shares the data of the buffer, so it is only valid until the
+  * next call to the framer.
+  *
+  * @param buffer The data read so far
+  * @return The content of the record, or null if the record is not complete
+  * @throws IllegalStateException if the framing of the data is corrupt
+  */
+  public abstract ByteBuffer frame(ByteBuffer buffer);
+
+ /**
+  * Forget anything remembered about the record being framed, because the
+  * next data comes from a new file.
+  */
+  public void reset()
+  {
+    // nothing remembered by default
+  }
+
+ /**
+  * Get a framer for records of a fixed length.
+  *
+  * @param recordLength The length of the records
+  * @return The framer
+  */
+  public static BinaryRecordFramer fixedLength(final int recordLength)
+  {
+    if (recordLength < 1)
+    {
+      throw new IllegalArgumentException("Record length must be positive, got <" + recordLength + ">");
+    }
+
+    return new BinaryRecordFramer()
+    {
+      @Override
+      public ByteBuffer frame(ByteBuffer buffer)
+      {
+        if (buffer.remaining() < recordLength)
+        {
+          return null;
+        }
+
+        return cut(buffer, buffer.position(), recordLength, recordLength);
+      }
+    };
+  }
+
+ /**
+  * Get a framer for records which start with their length. The content of the
+  * record returned does not include the length prefix.
+  *
+  * @param prefixLength The number of bytes of the length, 1, 2 or 4
+  * @param order The byte order of the length
+  * @param lengthIncludesPrefix True if the length counts the prefix bytes too
+  * @return The framer
+  */
+  public static BinaryRecordFramer lengthPrefixed(final int prefixLength, final ByteOrder order, final boolean lengthIncludesPrefix)
+  {
+    if (prefixLength != 1 && prefixLength != 2 && prefixLength != 4)
+    {
+      throw new IllegalArgumentException("Length prefix must be 1, 2 or 4 bytes, got <" + prefixLength + ">");
+    }
+
+    return new BinaryRecordFramer()
+    {
+      @Override
+      public ByteBuffer frame(ByteBuffer buffer)
+      {
+        if (buffer.remaining() < prefixLength)
+        {
+          return null;
+        }
+
+        // read the length without touching the byte order of the buffer
+        int tmpStart = buffer.position();
+        long tmpLength = 0;
+        for (int i = 0 ; i < prefixLength ; i++)
+        {
+          int tmpByte = buffer.get(tmpStart + (order == ByteOrder.BIG_ENDIAN ? i : prefixLength - 1 - i)) & 0xff;
+          tmpLength = (tmpLength << 8) | tmpByte;
+        }
+
+        if (lengthIncludesPrefix)
+        {
+          tmpLength -= prefixLength;
+        }
+
+        if (tmpLength < 0 || tmpLength > Integer.MAX_VALUE - prefixLength)
+        {
+          throw new IllegalStateException("Invalid record length <" + tmpLength + "> at position <" + tmpStart + ">");
+        }
+
+        if (buffer.remaining() < prefixLength + tmpLength)
+        {
+          return null;
+        }
+
+        return cut(buffer, tmpStart + prefixLength, (int) tmpLength, prefixLength + (int) tmpLength);
+      }
+    };
+  }
+
+ /**
+  * Get a framer for records which are ended by a delimiter. The content of the
+  * record returned does not include the delimiter. The last record of the file
+  * must be ended by the delimiter too.
+  *
+  * @param delimiter The bytes of the delimiter
+  * @return The framer
+  */
+  public static BinaryRecordFramer delimited(byte[] delimiter)
+  {
+    if (delimiter == null || delimiter.length == 0)
+    {
+      throw new IllegalArgumentException("Delimiter must not be empty");
+    }
+
+    final byte[] tmpDelimiter = delimiter.clone();
+
+    return new BinaryRecordFramer()
+    {
+      // The number of bytes of the current record which have already been
+      // searched for the delimiter, so that we do not search them again when
+      // more data has been read
+      private int searchedLength = 0;
+
+      @Override
+      public ByteBuffer frame(ByteBuffer buffer)
+      {
+        int tmpStart = buffer.position();
+        int tmpLast = buffer.limit() - tmpDelimiter.length;
+
+        for (int pos = tmpStart + searchedLength ; pos <= tmpLast ; pos++)
+        {
+          if (buffer.get(pos) == tmpDelimiter[0] && matches(buffer, pos))
+          {
+            searchedLength = 0;
+            return cut(buffer, tmpStart, pos - tmpStart, pos - tmpStart + tmpDelimiter.length);
+          }
+        }
+
+        // carry on from here when more data has been read
+        searchedLength = Math.max(searchedLength, tmpLast + 1 - tmpStart);
+
+        return null;
+      }
+
+      @Override
+      public void reset()
+      {
+        searchedLength = 0;
+      }
+
+      // see if the whole delimiter is at the position
+      private boolean matches(ByteBuffer buffer, int pos)
+      {
+        for (int i = 1 ; i < tmpDelimiter.length ; i++)
+        {
+          if (buffer.get(pos + i) != tmpDelimiter[i])
+          {
+            return false;
+          }
+        }
+
+        return true;
+      }
+    };
+  }
+
+ /**
+  * Cut a record out of the buffer, and move the buffer past it.
+  *
+  * @param buffer The buffer
+  * @param contentStart The position of the content of the record
+  * @param contentLength The length of the content
+  * @param recordLength The length of the record including the framing
+  * @return The content of the record
+  */
+  protected static ByteBuffer cut(ByteBuffer buffer, int contentStart, int contentLength, int recordLength)
+  {
+    int tmpStart = buffer.position();
+
+    ByteBuffer tmpContent = buffer.duplicate();
+    tmpContent.limit(contentStart + contentLength);
+    tmpContent.position(contentStart);
+
+    buffer.position(tmpStart + recordLength);
+
+    return tmpContent.slice();
+  }
+}
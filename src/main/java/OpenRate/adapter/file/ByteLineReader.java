@@ -0,0 +1,411 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a file at the byte level. The file is read through its
+ * channel in large chunks, the lines are split on the raw bytes and a line is
+ * only decoded into a String when it is asked for. Lines of 7 bit ASCII (and
+ * all lines in ISO-8859-1 files) are decoded with the trivial byte to char
+ * mapping, so the common case of ASCII CDR files does not go through the
+ * charset decoder at all.
+ *
+ * Line endings are the same as for BufferedReader.readLine(): "\n", "\r" or
+ * "\r\n", and the line ending is not part of the line. The ready() and
+ * readLine() methods behave like their BufferedReader counterparts, so the
+ * reader can be used in the same read loop.
+ *
+ * The reader can be limited to a range of bytes of the file. The range must
+ * start at the beginning of a line.
+ *
+ * Because the lines are split on the bytes of '\n' and '\r', the character set
+ * must encode the ASCII characters as single bytes of the same value, as
+ * UTF-8 and the ISO-8859 sets do. Character sets such as UTF-16 are rejected,
+ * see isAsciiCompatible().
+ *
+ * @author ian
+ */
+public class ByteLineReader implements Closeable
+{
+  // The minimum chunk size
+  private static final int MIN_BUF_SIZE = 1024;
+
+  // the file we are reading
+  private final FileInputStream inputStream;
+  private final FileChannel channel;
+
+  // the decoding
+  private final Charset charset;
+  private final boolean latin1;
+
+  // the chunk buffer, bytes[pos..limit) is still to be read
+  private byte[] bytes;
+  private int pos = 0;
+  private int limit = 0;
+
+  // the file position of bytes[0], and the end of the range to read
+  private long bufferPosition;
+  private final long endPosition;
+
+  // true when the range has been completely read into the buffer
+  private boolean eof = false;
+
+  // the current line
+  private int lineStart = 0;
+  private int lineLength = 0;
+
+ /**
+  * Open a reader on the whole of a file.
+  *
+  * @param fileName The name of the file to read
+  * @param bufferSize The size of the chunks to read
+  * @param charset The character set of the file
+  * @throws IOException
+  */
+  public ByteLineReader(String fileName, int bufferSize, Charset charset) throws IOException
+  {
+    this(fileName, bufferSize, charset, 0, Long.MAX_VALUE);
+  }
+
+ /**
+  * Open a reader on a range of a file.
+  *
+  * @param fileName The name of the file to read
+  * @param bufferSize The size of the chunks to read
+  * @param charset The character set of the file
+  * @param startPosition The first byte to read, which must start a line
+  * @param endPosition The byte after the last byte to read
+  * @throws IOException
+  * @throws IllegalArgumentException if the character set is not ASCII compatible
+  */
+  public ByteLineReader(String fileName, int bufferSize, Charset charset, long startPosition, long endPosition) throws IOException
+  {
+    if (!isAsciiCompatible(charset))
+    {
+      throw new IllegalArgumentException("Character set <" + charset.name() + "> cannot be read at the byte level, because it is not ASCII compatible");
+    }
+
+    this.inputStream = new FileInputStream(fileName);
+    this.channel = inputStream.getChannel();
+    this.charset = charset;
+    this.latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+    this.bytes = new byte[Math.max(bufferSize, MIN_BUF_SIZE)];
+    this.bufferPosition = startPosition;
+    this.endPosition = endPosition;
+
+    channel.position(startPosition);
+  }
+
+ /**
+  * Tells whether there are more lines to read.
+  *
+  * @return true if readLine() will return a line
+  * @throws IOException
+  */
+  public boolean ready() throws IOException
+  {
+    if (pos < limit)
+    {
+      return true;
+    }
+
+    if (eof)
+    {
+      return false;
+    }
+
+    fill();
+
+    return pos < limit;
+  }
+
+ /**
+  * Read the next line.
+  *
+  * @return The line, or null if there are no more lines
+  * @throws IOException
+  */
+  public String readLine() throws IOException
+  {
+    if (nextLine())
+    {
+      return decodeLine();
+    }
+    else
+    {
+      return null;
+    }
+  }
+
+ /**
+  * Move to the next line without decoding it. The bytes of the line can be
+  * accessed with getLineBuffer(), getLineStart() and getLineLength() until
+  * the next call.
+  *
+  * @return true if there was a line, false at the end of the file
+  * @throws IOException
+  */
+  public boolean nextLine() throws IOException
+  {
+    int scan = pos;
+
+    while (true)
+    {
+      // look for the end of the line in what we have
+      while (scan < limit)
+      {
+        byte tmpByte = bytes[scan];
+        if (tmpByte == '\n' || tmpByte == '\r')
+        {
+          break;
+        }
+        scan++;
+      }
+
+      if (scan < limit)
+      {
+        // we need the byte after a '\r' to know if it is "\r\n"
+        if (bytes[scan] == '\r' && scan + 1 == limit && !eof)
+        {
+          scan = scan - pos;
+          fill();
+          scan = scan + pos;
+          continue;
+        }
+
+        lineStart = pos;
+        lineLength = scan - pos;
+
+        if (bytes[scan] == '\r' && scan + 1 < limit && bytes[scan + 1] == '\n')
+        {
+          pos = scan + 2;
+        }
+        else
+        {
+          pos = scan + 1;
+        }
+
+        return true;
+      }
+
+      if (eof)
+      {
+        // last line without a line ending
+        if (pos < limit)
+        {
+          lineStart = pos;
+          lineLength = limit - pos;
+          pos = limit;
+          return true;
+        }
+
+        return false;
+      }
+
+      // get more, keeping what we have already scanned
+      scan = scan - pos;
+      fill();
+      scan = scan + pos;
+    }
+  }
+
+ /**
+  * Decode the current line.
+  *
+  * @return The line as a string
+  */
+  public String decodeLine()
+  {
+    if (latin1)
+    {
+      return new String(bytes, lineStart, lineLength, StandardCharsets.ISO_8859_1);
+    }
+
+    int end = lineStart + lineLength;
+    int i = lineStart;
+
+    while (i < end && bytes[i] >= 0)
+    {
+      i++;
+    }
+
+    if (i == end)
+    {
+      // pure ASCII
+      return new String(bytes, lineStart, lineLength, StandardCharsets.ISO_8859_1);
+    }
+
+    return new String(bytes, lineStart, lineLength, charset);
+  }
+
+ /**
+  * @return The buffer holding the bytes of the current line
+  */
+  public byte[] getLineBuffer()
+  {
+    return bytes;
+  }
+
+ /**
+  * @return The offset of the current line in the line buffer
+  */
+  public int getLineStart()
+  {
+    return lineStart;
+  }
+
+ /**
+  * @return The number of bytes in the current line, without the line ending
+  */
+  public int getLineLength()
+  {
+    return lineLength;
+  }
+
+ /**
+  * Get the file position of the next line to be read. A reader opened at this
+  * position continues with that line.
+  *
+  * @return The file position
+  */
+  public long getPosition()
+  {
+    return bufferPosition + pos;
+  }
+
+ /**
+  * Close the file.
+  *
+  * @throws IOException
+  */
+  @Override
+  public void close() throws IOException
+  {
+    inputStream.close();
+  }
+
+  // Move the unread bytes to the start of the buffer and read the next chunk
+  // after them, growing the buffer if a single line fills it.
+  private void fill() throws IOException
+  {
+    ByteBuffer tmpBuffer;
+    int        tmpRead;
+    long       tmpRemaining;
+
+    if (pos > 0)
+    {
+      System.arraycopy(bytes, pos, bytes, 0, limit - pos);
+      bufferPosition += pos;
+      limit -= pos;
+      pos = 0;
+    }
+
+    if (limit == bytes.length)
+    {
+      bytes = Arrays.copyOf(bytes, bytes.length * 2);
+    }
+
+    tmpRemaining = endPosition - (bufferPosition + limit);
+    tmpBuffer = ByteBuffer.wrap(bytes, limit, (int) Math.min(bytes.length - limit, tmpRemaining));
+    tmpRead = channel.read(tmpBuffer);
+
+    if (tmpRead < 0 || tmpRemaining - Math.max(tmpRead, 0) <= 0)
+    {
+      eof = true;
+    }
+
+    if (tmpRead > 0)
+    {
+      limit += tmpRead;
+    }
+  }
+
+ /**
+  * See if the ASCII characters all encode to themselves in a character set,
+  * so that files in it can be read at the byte level.
+  *
+  * @param charset The character set
+  * @return true if the character set is ASCII compatible
+  */
+  public static boolean isAsciiCompatible(Charset charset)
+  {
+    byte[] ascii = new byte[128];
+
+    for (int i = 0 ; i < ascii.length ; i++)
+    {
+      ascii[i] = (byte) i;
+    }
+
+    try
+    {
+      return Arrays.equals(ascii, new String(ascii, StandardCharsets.ISO_8859_1).getBytes(charset));
+    }
+    catch (UnsupportedOperationException uoe)
+    {
+      // decode only charset
+      return false;
+    }
+  }
+}
@@ -0,0 +1,341 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Reads one large file as a number of byte ranges (chunks) in parallel. The
+ * file is split at line boundaries into chunks of about the same size, and
+ * each chunk is read and decoded by its own FilePrefetcher, always with a
+ * ByteLineReader (the NIO reader type). The lines are handed out in file
+ * order: all of the first chunk, then all of the second and so on, so the
+ * consumer sees exactly the same lines as when it reads the file from start
+ * to end.
+ *
+ * The progress of each chunk is tracked as the number of lines that have been
+ * handed out. If the reading of a chunk fails, the chunk is restarted and the
+ * lines that were already handed out are skipped, so a read error only costs
+ * the re-reading of the one chunk.
+ *
+ * @author ian
+ */
+public class ChunkedFileReader implements Closeable
+{
+  // The number of times that a chunk is restarted before we give up
+  private static final int MAX_CHUNK_RESTARTS = 2;
+
+  // The file and how to read it
+  private final String fileName;
+  private final Charset charset;
+  private final int bufferSize;
+  private final ExecutorService executor;
+
+  // The chunk boundaries: chunk i is [chunkStart[i], chunkStart[i + 1])
+  private final long[] chunkStart;
+
+  // The prefetcher of each chunk
+  private final FilePrefetcher[] chunkReaders;
+
+  // The lines handed out from each chunk, and the restarts of each chunk
+  private final long[] chunkLines;
+  private final int[] chunkRestarts;
+
+  // The chunk we are handing out
+  private int currentChunk = 0;
+
+ /**
+  * Split a file into chunks and start reading all of them.
+  *
+  * @param fileName The name of the file to read
+  * @param charset The character set of the file
+  * @param chunks The number of chunks to split the file into
+  * @param bufferSize The buffer size of the chunk readers
+  * @param executor The executor to read the chunks in
+  * @throws IOException
+  */
+  public ChunkedFileReader(String fileName, Charset charset, int chunks, int bufferSize, ExecutorService executor) throws IOException
+  {
+    this.fileName = fileName;
+    this.charset = charset;
+    this.bufferSize = bufferSize;
+    this.executor = executor;
+
+    chunkStart = findChunkBoundaries(fileName, chunks);
+    chunkReaders = new FilePrefetcher[chunks];
+    chunkLines = new long[chunks];
+    chunkRestarts = new int[chunks];
+
+    for (int i = 0 ; i < chunks ; i++)
+    {
+      startChunk(i);
+    }
+  }
+
+ /**
+  * Tells whether there are more lines to read, waiting for the chunk readers
+  * if necessary.
+  *
+  * @return true if readLine() will return a line
+  * @throws IOException
+  */
+  public boolean ready() throws IOException
+  {
+    while (currentChunk < chunkReaders.length)
+    {
+      try
+      {
+        if (chunkReaders[currentChunk].ready())
+        {
+          return true;
+        }
+      }
+      catch (IOException ex)
+      {
+        restartChunk(currentChunk, ex);
+        continue;
+      }
+
+      // this chunk is done, move on
+      chunkReaders[currentChunk].close();
+      currentChunk++;
+    }
+
+    return false;
+  }
+
+ /**
+  * Read the next line.
+  *
+  * @return The line, or null if there are no more lines
+  * @throws IOException
+  */
+  public String readLine() throws IOException
+  {
+    if (ready())
+    {
+      chunkLines[currentChunk]++;
+      return chunkReaders[currentChunk].readLine();
+    }
+    else
+    {
+      return null;
+    }
+  }
+
+ /**
+  * @return The number of chunks
+  */
+  public int getChunkCount()
+  {
+    return chunkReaders.length;
+  }
+
+ /**
+  * @return The number of chunks which have been completely handed out
+  */
+  public int getChunksCompleted()
+  {
+    return currentChunk;
+  }
+
+ /**
+  * Get the progress of a chunk.
+  *
+  * @param chunk The chunk
+  * @return The number of lines handed out from the chunk
+  */
+  public long getChunkLines(int chunk)
+  {
+    return chunkLines[chunk];
+  }
+
+ /**
+  * Get the boundaries of a chunk.
+  *
+  * @param chunk The chunk
+  * @return The start and end byte positions of the chunk
+  */
+  public long[] getChunkRange(int chunk)
+  {
+    return new long[] {chunkStart[chunk], chunkStart[chunk + 1]};
+  }
+
+ /**
+  * Stop reading all of the chunks.
+  */
+  @Override
+  public void close()
+  {
+    for (FilePrefetcher tmpReader : chunkReaders)
+    {
+      if (tmpReader != null)
+      {
+        tmpReader.close();
+      }
+    }
+  }
+
+ /**
+  * Find the chunk boundaries. Each boundary is moved forward from the ideal
+  * split point to the start of the next line.
+  *
+  * @param fileName The file to split
+  * @param chunks The number of chunks
+  * @return The chunk start positions, with the file size as the last entry
+  * @throws IOException
+  */
+  static long[] findChunkBoundaries(String fileName, int chunks) throws IOException
+  {
+    long[] tmpStart = new long[chunks + 1];
+    byte[] tmpBuffer = new byte[8192];
+
+    try (RandomAccessFile tmpFile = new RandomAccessFile(fileName, "r"))
+    {
+      long fileSize = tmpFile.length();
+
+      tmpStart[0] = 0;
+      tmpStart[chunks] = fileSize;
+
+      for (int i = 1 ; i < chunks ; i++)
+      {
+        long tmpPos = Math.max(fileSize * i / chunks, tmpStart[i - 1]);
+        long tmpBoundary = fileSize;
+
+        // scan from the byte before the split point for the end of a line
+        if (tmpPos > 0)
+        {
+          tmpPos--;
+        }
+
+        scan:
+        while (tmpPos < fileSize)
+        {
+          tmpFile.seek(tmpPos);
+          int tmpRead = tmpFile.read(tmpBuffer);
+
+          for (int j = 0 ; j < tmpRead ; j++)
+          {
+            if (tmpBuffer[j] == '\n')
+            {
+              tmpBoundary = tmpPos + j + 1;
+              break scan;
+            }
+
+            if (tmpBuffer[j] == '\r')
+            {
+              // a "\r\n" ends after the '\n'
+              if (j + 1 < tmpRead)
+              {
+                tmpBoundary = tmpPos + j + ((tmpBuffer[j + 1] == '\n') ? 2 : 1);
+                break scan;
+              }
+
+              // the '\r' is the last byte read, look again from here
+              if (tmpPos + j + 1 >= fileSize)
+              {
+                tmpBoundary = fileSize;
+                break scan;
+              }
+
+              tmpPos = tmpPos + j;
+              continue scan;
+            }
+          }
+
+          tmpPos += tmpRead;
+        }
+
+        tmpStart[i] = Math.max(tmpBoundary, tmpStart[i - 1]);
+      }
+    }
+
+    return tmpStart;
+  }
+
+  // start reading a chunk
+  private void startChunk(int chunk)
+  {
+    chunkReaders[chunk] = new FilePrefetcher(fileName, charset, bufferSize, chunkStart[chunk], chunkStart[chunk + 1]);
+    executor.execute(chunkReaders[chunk]);
+  }
+
+  // restart a failed chunk, skipping the lines already handed out
+  private void restartChunk(int chunk, IOException cause) throws IOException
+  {
+    chunkReaders[chunk].close();
+
+    if (chunkRestarts[chunk] >= MAX_CHUNK_RESTARTS)
+    {
+      throw cause;
+    }
+
+    chunkRestarts[chunk]++;
+    startChunk(chunk);
+
+    for (long i = 0 ; i < chunkLines[chunk] ; i++)
+    {
+      if (chunkReaders[chunk].readLine() == null)
+      {
+        throw new IOException("Chunk <" + chunk + "> of <" + fileName + "> is shorter on restart", cause);
+      }
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import OpenRate.IPipeline;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Watches an input directory for new files, so that the input adapter does not
+ * have to list the whole directory on every pass of the pipeline. The names of
+ * the files created in (or moved into) the directory which match the filter
+ * are queued, and the pipeline is woken so that the files are picked up
+ * straight away instead of after the pipeline sleep.
+ *
+ * Watch services can lose events (for example if the event queue overflows,
+ * or on network file systems), so the watcher also asks for a full scan of the
+ * directory at a fixed interval, and after an overflow. The first call always
+ * asks for a full scan, to pick up the files which were there before the
+ * watcher was started.
+ *
+ * Names stay queued until the adapter removes them, so that files which could
+ * not be assigned because the transaction manager was full are offered again
+ * on the next pass. The adapter queues the names of a full scan which it could
+ * not assign in the same way.
+ *
+ * @author ian
+ */
+public class DirectoryWatcher implements Runnable, Closeable
+{
+  // The directory we are watching
+  private final File directory;
+
+  // The filter for the file names we are interested in
+  private final FilenameFilter filter;
+
+  // The interval between full scans in ms, 0 for no periodic full scans
+  private final long fullScanInterval;
+
+  // The pipeline to wake when new files arrive, may be null
+  private final IPipeline pipeline;
+
+  // The watch service of the directory
+  private final WatchService watchService;
+
+  // The names of the files which have arrived, in order of arrival
+  private final Set<String> pendingFiles = new LinkedHashSet<>();
+
+  // Set when the next pass has to do a full scan
+  private volatile boolean fullScanRequested = true;
+
+  // The time of the last full scan
+  private long lastFullScan = 0;
+
+  // The number of events we have received, for the statistics
+  private volatile long eventCount = 0;
+
+ /**
+  * Create a watcher for a directory. The watcher does not receive events until
+  * its thread has been started.
+  *
+  * @param directory The directory to watch
+  * @param filter The filter for the file names to queue
+  * @param fullScanInterval The interval between full scans in ms, 0 for none
+  * @param pipeline The pipeline to wake when files arrive, may be null
+  * @throws IOException If the directory cannot be watched
+  */
+  public DirectoryWatcher(String directory, FilenameFilter filter, long fullScanInterval, IPipeline pipeline)
+    throws IOException
+  {
+    this.directory = new File(directory);
+    this.filter = filter;
+    this.fullScanInterval = fullScanInterval;
+    this.pipeline = pipeline;
+
+    Path tmpPath = this.directory.toPath();
+    watchService = FileSystems.getDefault().newWatchService();
+    tmpPath.register(watchService,
+                     StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_MODIFY);
+  }
+
+ /**
+  * Start the thread which receives the events. The thread is a daemon thread,
+  * so that it does not hold up the shutdown of the framework.
+  *
+  * @param threadName The name of the thread
+  */
+  public void start(String threadName)
+  {
+    Thread tmpThread = new Thread(this, threadName);
+    tmpThread.setDaemon(true);
+    tmpThread.start();
+  }
+
+ /**
+  * Receive the events of the directory until the watcher is closed.
+  */
+  @Override
+  public void run()
+  {
+    try
+    {
+      while (true)
+      {
+        WatchKey tmpKey = watchService.take();
+        boolean newFiles = false;
+
+        for (WatchEvent<?> tmpEvent : tmpKey.pollEvents())
+        {
+          eventCount++;
+
+          if (tmpEvent.kind() == StandardWatchEventKinds.OVERFLOW)
+          {
+            // we have lost events, only a full scan will find everything
+            fullScanRequested = true;
+            newFiles = true;
+          }
+          else
+          {
+            String tmpFileName = ((Path) tmpEvent.context()).getFileName().toString();
+
+            if (filter.accept(directory, tmpFileName))
+            {
+              synchronized (pendingFiles)
+              {
+                newFiles |= pendingFiles.add(tmpFileName);
+              }
+            }
+          }
+        }
+
+        if (!tmpKey.reset())
+        {
+          // the directory has gone away, fall back to scanning
+          fullScanRequested = true;
+          wakePipeline();
+          break;
+        }
+
+        if (newFiles)
+        {
+          wakePipeline();
+        }
+      }
+    }
+    catch (InterruptedException | ClosedWatchServiceException ex)
+    {
+      // closed, we are done
+    }
+  }
+
+ /**
+  * Tell the pipeline that there is work to do.
+  */
+  private void wakePipeline()
+  {
+    if (pipeline != null)
+    {
+      pipeline.wakeUp();
+    }
+  }
+
+ /**
+  * See if the next pass has to do a full scan of the directory, because this
+  * is the first pass, the full scan interval has run out, or events have been
+  * lost.
+  *
+  * @return true if a full scan is needed
+  */
+  public boolean isFullScanDue()
+  {
+    if (fullScanRequested)
+    {
+      return true;
+    }
+
+    return (fullScanInterval > 0) && (System.currentTimeMillis() - lastFullScan >= fullScanInterval);
+  }
+
+ /**
+  * Record that a full scan is being done. The names queued until now are
+  * dropped, because the scan will find all of them. This has to be called
+  * before the directory is listed, so that the names of files arriving during
+  * the listing are kept.
+  */
+  public void fullScanDone()
+  {
+    fullScanRequested = false;
+    lastFullScan = System.currentTimeMillis();
+
+    synchronized (pendingFiles)
+    {
+      pendingFiles.clear();
+    }
+  }
+
+ /**
+  * Get the names of the files which have arrived and have not been removed
+  * yet, in sorted order. Names of files which no longer exist (for example
+  * because they were only being written when the event came in and then
+  * renamed) are dropped.
+  *
+  * @return The sorted file names
+  */
+  public String[] getPendingFiles()
+  {
+    String[] tmpFileNames;
+
+    synchronized (pendingFiles)
+    {
+      tmpFileNames = pendingFiles.toArray(new String[pendingFiles.size()]);
+    }
+
+    int tmpCount = 0;
+    for (String tmpFileName : tmpFileNames)
+    {
+      if (new File(directory, tmpFileName).isFile())
+      {
+        tmpFileNames[tmpCount++] = tmpFileName;
+      }
+      else
+      {
+        removeFile(tmpFileName);
+      }
+    }
+
+    tmpFileNames = Arrays.copyOf(tmpFileNames, tmpCount);
+    Arrays.sort(tmpFileNames);
+
+    return tmpFileNames;
+  }
+
+ /**
+  * Queue file names which the adapter has found but could not deal with yet,
+  * for example the rest of a full scan when the transaction manager was full.
+  *
+  * @param fileNames The file names
+  * @param fromIndex The index of the first name to queue
+  */
+  public void addFiles(String[] fileNames, int fromIndex)
+  {
+    synchronized (pendingFiles)
+    {
+      for (int i = fromIndex ; i < fileNames.length ; i++)
+      {
+        pendingFiles.add(fileNames[i]);
+      }
+    }
+  }
+
+ /**
+  * Remove a file name from the queue, once the adapter has dealt with it.
+  *
+  * @param fileName The name of the file
+  */
+  public void removeFile(String fileName)
+  {
+    synchronized (pendingFiles)
+    {
+      pendingFiles.remove(fileName);
+    }
+  }
+
+ /**
+  * Get the number of events received since the watcher was created.
+  *
+  * @return The number of events
+  */
+  public long getEventCount()
+  {
+    return eventCount;
+  }
+
+ /**
+  * Stop watching the directory. This also ends the watcher thread.
+  */
+  @Override
+  public void close()
+  {
+    try
+    {
+      watchService.close();
+    }
+    catch (IOException ex)
+    {
+      // nothing we can do, we are shutting down
+    }
+  }
+}
@@ -0,0 +1,353 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the lines of a file in a background thread, ahead of the thread that
+ * consumes them. The lines are handed over in blocks through a small bounded
+ * queue, so only a few blocks of a file are held in memory however big the
+ * file is.
+ *
+ * The prefetcher is a Runnable which is submitted to an executor. The consumer
+ * side has the same ready() and readLine() methods as BufferedReader, and
+ * ready() waits for the reading thread if the next block has not been read
+ * yet. Errors in the reading thread are thrown from ready() once the lines
+ * read before the error have been consumed.
+ *
+ * Gzip compressed files are decompressed in the reading thread, so the
+ * consumer never waits for the inflation.
+ *
+ * @author ian
+ */
+public class FilePrefetcher implements Runnable, Closeable
+{
+  // The number of lines in a block
+  private static final int BLOCK_SIZE = 1024;
+
+  // The number of blocks that can be waiting in the queue
+  private static final int QUEUE_BLOCKS = 8;
+
+  // The end of file marker
+  private static final String[] END = new String[0];
+
+  // The file to read
+  private final String fileName;
+  private final Charset charset;
+  private final boolean useNIOReader;
+  private final boolean compressed;
+  private final int bufferSize;
+
+  // The byte range to read, only used with the NIO reader
+  private final long startPosition;
+  private final long endPosition;
+
+  // The blocks read, waiting to be consumed
+  private final BlockingQueue<String[]> blocks = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+
+  // Set by the consumer to stop the reading
+  private volatile boolean cancelled = false;
+
+  // The error that stopped the reading
+  private volatile IOException readError = null;
+
+  // The consumer's current block
+  private String[] currentBlock = null;
+  private int currentPos = 0;
+  private boolean finished = false;
+
+ /**
+  * Create a prefetcher for a file.
+  *
+  * @param fileName The name of the file to read
+  * @param charset The character set of the file
+  * @param useNIOReader True to read with a ByteLineReader, else a BufferedReader
+  * @param bufferSize The buffer size of the reader
+  */
+  public FilePrefetcher(String fileName, Charset charset, boolean useNIOReader, int bufferSize)
+  {
+    this(fileName, charset, useNIOReader, false, bufferSize, 0, Long.MAX_VALUE);
+  }
+
+ /**
+  * Create a prefetcher for a file which may be gzip compressed. Compressed
+  * files are always read through a BufferedReader.
+  *
+  * @param fileName The name of the file to read
+  * @param charset The character set of the file
+  * @param useNIOReader True to read with a ByteLineReader, else a BufferedReader
+  * @param compressed True if the file is gzip compressed
+  * @param bufferSize The buffer size of the reader
+  */
+  public FilePrefetcher(String fileName, Charset charset, boolean useNIOReader, boolean compressed, int bufferSize)
+  {
+    this(fileName, charset, useNIOReader && !compressed, compressed, bufferSize, 0, Long.MAX_VALUE);
+  }
+
+ /**
+  * Create a prefetcher for a byte range of a file. Ranges can only be read
+  * with the NIO reader, and the range must start at the beginning of a line.
+  *
+  * @param fileName The name of the file to read
+  * @param charset The character set of the file
+  * @param bufferSize The buffer size of the reader
+  * @param startPosition The first byte to read
+  * @param endPosition The byte after the last byte to read
+  */
+  public FilePrefetcher(String fileName, Charset charset, int bufferSize, long startPosition, long endPosition)
+  {
+    this(fileName, charset, true, false, bufferSize, startPosition, endPosition);
+  }
+
+  // common constructor
+  private FilePrefetcher(String fileName, Charset charset, boolean useNIOReader, boolean compressed, int bufferSize, long startPosition, long endPosition)
+  {
+    this.fileName = fileName;
+    this.charset = charset;
+    this.useNIOReader = useNIOReader;
+    this.compressed = compressed;
+    this.bufferSize = bufferSize;
+    this.startPosition = startPosition;
+    this.endPosition = endPosition;
+  }
+
+ /**
+  * Read the file into blocks. Runs in the executor thread.
+  */
+  @Override
+  public void run()
+  {
+    String[] tmpBlock = new String[BLOCK_SIZE];
+    int      tmpCount = 0;
+
+    try
+    {
+      if (useNIOReader)
+      {
+        try (ByteLineReader lineReader = new ByteLineReader(fileName, bufferSize, charset, startPosition, endPosition))
+        {
+          while (lineReader.ready() && !cancelled)
+          {
+            tmpBlock[tmpCount++] = lineReader.readLine();
+            if (tmpCount == BLOCK_SIZE)
+            {
+              putBlock(tmpBlock);
+              tmpBlock = new String[BLOCK_SIZE];
+              tmpCount = 0;
+            }
+          }
+        }
+      }
+      else if (compressed)
+      {
+        // the ready() of a GZIPInputStream does not know about the end of the
+        // data, so read until we get no more lines
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(fileName), bufferSize), charset), bufferSize))
+        {
+          String tmpLine;
+          while (!cancelled && (tmpLine = reader.readLine()) != null)
+          {
+            tmpBlock[tmpCount++] = tmpLine;
+            if (tmpCount == BLOCK_SIZE)
+            {
+              putBlock(tmpBlock);
+              tmpBlock = new String[BLOCK_SIZE];
+              tmpCount = 0;
+            }
+          }
+        }
+      }
+      else
+      {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), charset), bufferSize))
+        {
+          while (reader.ready() && !cancelled)
+          {
+            tmpBlock[tmpCount++] = reader.readLine();
+            if (tmpCount == BLOCK_SIZE)
+            {
+              putBlock(tmpBlock);
+              tmpBlock = new String[BLOCK_SIZE];
+              tmpCount = 0;
+            }
+          }
+        }
+      }
+
+      if (tmpCount > 0)
+      {
+        putBlock(Arrays.copyOf(tmpBlock, tmpCount));
+      }
+    }
+    catch (IOException ex)
+    {
+      readError = ex;
+    }
+    catch (InterruptedException ex)
+    {
+      readError = new InterruptedIOException("Prefetch of <" + fileName + "> interrupted");
+    }
+    finally
+    {
+      try
+      {
+        putBlock(END);
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+ /**
+  * Tells whether there are more lines to read, waiting for the reading thread
+  * if necessary.
+  *
+  * @return true if readLine() will return a line
+  * @throws IOException
+  */
+  public boolean ready() throws IOException
+  {
+    while (currentBlock == null || currentPos == currentBlock.length)
+    {
+      if (finished)
+      {
+        return false;
+      }
+
+      try
+      {
+        currentBlock = blocks.take();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for <" + fileName + ">");
+      }
+
+      currentPos = 0;
+
+      if (currentBlock == END)
+      {
+        finished = true;
+
+        if (readError != null)
+        {
+          throw readError;
+        }
+
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+ /**
+  * Read the next line.
+  *
+  * @return The line, or null if there are no more lines
+  * @throws IOException
+  */
+  public String readLine() throws IOException
+  {
+    if (ready())
+    {
+      return currentBlock[currentPos++];
+    }
+    else
+    {
+      return null;
+    }
+  }
+
+ /**
+  * Stop the reading and drop the blocks that have not been consumed.
+  */
+  @Override
+  public void close()
+  {
+    cancelled = true;
+    finished = true;
+    currentBlock = null;
+    blocks.clear();
+  }
+
+  // Hand a block to the consumer, giving up if we are cancelled
+  private void putBlock(String[] tmpBlock) throws InterruptedException
+  {
+    while (!blocks.offer(tmpBlock, 100, TimeUnit.MILLISECONDS))
+    {
+      if (cancelled)
+      {
+        return;
+      }
+    }
+  }
+}
@@ -67,10 +67,13 @@ import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.apache.oro.io.GlobFilenameFilter;
 import org.apache.oro.text.GlobCompiler;
 
@@ -148,6 +151,39 @@ import org.apache.oro.text.GlobCompiler;
  * not arrive until a long time after the input adapter has finished processing
  * the input file. In this case, successive transactions can be opened before
  * the preceding transaction is closed.
+ *
+ * <p>
+ * Reading<br>
+ * -------
+ *
+ * <p>
+ * By default the files are read with a BufferedReader. Setting the property
+ * "ReaderType" to "NIO" reads the files in large chunks through their channel
+ * instead, splitting the lines at the byte level and decoding ASCII lines
+ * without the charset decoder (see ByteLineReader). This is much faster for
+ * large files. The property "InputCharset" sets the character set of the
+ * files for both reader types, and defaults to the platform character set.
+ * The NIO reader only takes character sets which are ASCII compatible, such as
+ * UTF-8 or ISO-8859-1, and not UTF-16.
+ *
+ * <p>
+ * Setting the property "ConcurrentFiles" to a number greater than 0 reads that
+ * many of the assigned files at the same time in background threads (see
+ * FilePrefetcher), while the adapter thread is still working on the earlier
+ * files. The files are still passed into the pipeline one after the other,
+ * each with its own transaction, header and trailer, so the downstream
+ * modules see exactly the same stream as without the read ahead. When the
+ * property "InputCompression" is not "None", compressed files are always
+ * decompressed in a background thread, even if "ConcurrentFiles" is 0, while
+ * files which are not compressed are then read by the adapter thread.
+ *
+ * <p>
+ * Setting the property "ParallelChunks" to a number greater than 1 splits
+ * large files (at least 16MB per chunk) at line boundaries into up to that
+ * many byte ranges, which are read and decoded in parallel (see
+ * ChunkedFileReader). The lines are still handed to the adapter in file order
+ * and the file is still a single transaction. The chunks are read with the
+ * NIO reader, so this needs "ReaderType" to be "NIO".
  */
 public abstract class FlatFileInputAdapter
         extends AbstractTransactionalInputAdapter
@@ -157,6 +193,12 @@ public abstract class FlatFileInputAdapter
 
   private static final int BUF_SIZE = 65536;
 
+  // The chunk size for the NIO reader
+  private static final int NIO_BUF_SIZE = 1048576;
+
+  // The smallest part of a file that is worth reading in a chunk of its own
+  private static final long MIN_CHUNK_SIZE = 16 * 1048576;
+
   /**
    * The path of the directory in which we are scanning for input files. This
    * can either be a relative or an absolute path.
@@ -242,6 +284,49 @@ public abstract class FlatFileInputAdapter
    */
   private BufferedReader reader;
 
+  // The byte level reader, used instead of the buffered reader when the
+  // reader type is "NIO"
+  private ByteLineReader lineReader;
+
+  // The reader type and the character set of the input files
+  private boolean useNIOReader = false;
+  private Charset inputCharset;
+
+  // The number of files read concurrently, 0 if the files are read in the
+  // adapter thread
+  private int concurrentFiles = 0;
+
+  // The threads reading the files ahead, and the prefetchers of the files
+  // which have been assigned but not yet opened, by transaction number
+  private ExecutorService prefetchExecutor;
+  private final HashMap<Integer, FilePrefetcher> prefetchers = new HashMap<>();
+
+  // The prefetcher of the file we are reading, null if we are reading the
+  // file directly
+  private FilePrefetcher prefetcher;
+
+  // The number of chunks to split large files into, 0 if large files are
+  // read in one piece
+  private int parallelChunks = 0;
+
+  // The threads reading the chunks, and the chunked reader of the file we are
+  // reading, null if we are not reading in chunks
+  private ExecutorService chunkExecutor;
+  private ChunkedFileReader chunkedReader;
+
+  // Whether new files are found by watching the input directory, and the
+  // interval between full scans of the directory when we are watching it
+  private boolean directoryWatch = false;
+  private long fullScanInterval = 60000;
+
+  // The compression of the input files: None, Gzip, or Auto to look at each
+  // file to see if it is compressed
+  private String inputCompression = COMPRESSION_NONE;
+
+  // The watcher of the input directory, null if we list the directory on
+  // every pass
+  private DirectoryWatcher directoryWatcher;
+
   // List of Services that this Client supports
   private static final String SERVICE_I_PATH = "InputFilePath";
   private static final String SERVICE_D_PATH = "DoneFilePath";
@@ -254,6 +339,18 @@ public abstract class FlatFileInputAdapter
   private static final String SERVICE_E_SUFFIX = "ErrFileSuffix";
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
   private static final String DEFAULT_PROCPREFIX = "tmp";
+  private static final String SERVICE_READER_TYPE = "ReaderType";
+  private static final String SERVICE_CHARSET = "InputCharset";
+  private static final String SERVICE_CONCURRENT_FILES = "ConcurrentFiles";
+  private static final String SERVICE_PARALLEL_CHUNKS = "ParallelChunks";
+  private static final String SERVICE_DIRECTORY_WATCH = "DirectoryWatch";
+  private static final String SERVICE_FULL_SCAN_INTERVAL = "FullScanInterval";
+  private static final String SERVICE_COMPRESSION = "InputCompression";
+
+  // The input compression values
+  private static final String COMPRESSION_NONE = "None";
+  private static final String COMPRESSION_GZIP = "Gzip";
+  private static final String COMPRESSION_AUTO = "Auto";
 
   // This is used to hold the calculated file names
   private class TransControlStructure {
@@ -317,6 +414,35 @@ public abstract class FlatFileInputAdapter
     processControlEvent(SERVICE_E_SUFFIX, true, ConfigHelper);
     ConfigHelper = initGetProcPrefix();
     processControlEvent(SERVICE_PROCPREFIX, true, ConfigHelper);
+    ConfigHelper = initGetReaderType();
+    processControlEvent(SERVICE_READER_TYPE, true, ConfigHelper);
+    ConfigHelper = initGetInputCharset();
+    processControlEvent(SERVICE_CHARSET, true, ConfigHelper);
+    ConfigHelper = initGetConcurrentFiles();
+    processControlEvent(SERVICE_CONCURRENT_FILES, true, ConfigHelper);
+    ConfigHelper = initGetParallelChunks();
+    processControlEvent(SERVICE_PARALLEL_CHUNKS, true, ConfigHelper);
+    ConfigHelper = initGetDirectoryWatch();
+    processControlEvent(SERVICE_DIRECTORY_WATCH, true, ConfigHelper);
+    ConfigHelper = initGetFullScanInterval();
+    processControlEvent(SERVICE_FULL_SCAN_INTERVAL, true, ConfigHelper);
+    ConfigHelper = initGetInputCompression();
+    processControlEvent(SERVICE_COMPRESSION, true, ConfigHelper);
+
+    // the chunks are split and decoded at the byte level, which only the NIO
+    // reader does
+    if (parallelChunks > 1 && !useNIOReader) {
+      message = SERVICE_PARALLEL_CHUNKS + " greater than 1 needs " + SERVICE_READER_TYPE + " <NIO> in module <" + getSymbolicName() + ">";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    // the NIO reader splits the lines on the bytes of the line endings
+    if (useNIOReader && !ByteLineReader.isAsciiCompatible(inputCharset)) {
+      message = SERVICE_CHARSET + " <" + inputCharset.name() + "> is not ASCII compatible, and cannot be used with " + SERVICE_READER_TYPE + " <NIO> in module <" + getSymbolicName() + ">";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
 
     // Check the file name scanning variables, throw initialisation exception
     // if something is wrong.
@@ -324,6 +450,60 @@ public abstract class FlatFileInputAdapter
 
     // create the structure for storing filenames
     currentFileNames = new HashMap<>(10);
+
+    // start the threads for reading files ahead. Compressed files are always
+    // read ahead, so that the decompression runs in a thread of its own
+    if (concurrentFiles > 0 || !inputCompression.equals(COMPRESSION_NONE)) {
+      prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, concurrentFiles), new FileThreadFactory(PipelineName + "-" + ModuleName + "-Prefetch"));
+    }
+
+    // start the threads for reading the chunks of large files
+    if (parallelChunks > 1) {
+      chunkExecutor = Executors.newFixedThreadPool(parallelChunks, new FileThreadFactory(PipelineName + "-" + ModuleName + "-Chunk"));
+    }
+  }
+
+  /**
+   * Start watching the input directory. This is done on the first pass rather
+   * than in init(), because the pipeline we wake is only known after init().
+   * If the directory cannot be watched, we fall back to listing it on every
+   * pass.
+   */
+  private void startDirectoryWatcher() {
+    try {
+      directoryWatcher = new DirectoryWatcher(inputFilePath, getInputFileFilter(), fullScanInterval, getPipeline());
+      directoryWatcher.start(getPipeName() + "-" + getSymbolicName() + "-Watch");
+    } catch (IOException ex) {
+      getPipeLog().warning("Could not watch input directory <" + inputFilePath + ">, scanning instead. Message = <" + ex.getMessage() + ">");
+      directoryWatch = false;
+    }
+  }
+
+  /**
+   * Stop the threads reading files ahead and watching the input directory.
+   */
+  @Override
+  public void cleanup() {
+    if (prefetchExecutor != null) {
+      for (FilePrefetcher tmpPrefetcher : prefetchers.values()) {
+        tmpPrefetcher.close();
+      }
+      prefetchers.clear();
+      prefetchExecutor.shutdownNow();
+    }
+
+    if (chunkExecutor != null) {
+      if (chunkedReader != null) {
+        chunkedReader.close();
+      }
+      chunkExecutor.shutdownNow();
+    }
+
+    if (directoryWatcher != null) {
+      directoryWatcher.close();
+    }
+
+    super.cleanup();
   }
 
   /**
@@ -361,6 +541,24 @@ public abstract class FlatFileInputAdapter
       // There is a file available, so open it and rename it to
       // show that we are doing something
       fileTransactionNumbers.addAll(fileNames);
+
+      // start reading the files ahead, in the order we will process them
+      if (prefetchExecutor != null) {
+        for (Integer tmpTransNumber : fileNames) {
+          // large files are read in chunks when they are opened instead
+          if (getChunkCount(tmpTransNumber) > 1) {
+            continue;
+          }
+
+          // without concurrent files, only the compressed files are read in a
+          // thread of their own
+          if (concurrentFiles == 0 && !isCompressed(tmpTransNumber)) {
+            continue;
+          }
+
+          startPrefetch(tmpTransNumber);
+        }
+      }
     }
 
     // Process records if we are not yet full, or we have files waiting
@@ -378,7 +576,7 @@ public abstract class FlatFileInputAdapter
         // Now that we have the file name, try to open it from
         // the renamed file provided by assignInput
         try {
-          reader = new BufferedReader(new FileReader(getProcName(transactionNumber)), BUF_SIZE);
+          openStream(transactionNumber);
           inputStreamOpen = true;
           inputRecordNumber = 0;
 
@@ -397,7 +595,7 @@ public abstract class FlatFileInputAdapter
           // needs to be done
           tmpHeader = (HeaderRecord) procHeader((IRecord) tmpHeader);
           Outbatch.add(tmpHeader);
-        } catch (FileNotFoundException exFileNotFound) {
+        } catch (IOException exFileNotFound) {
           getPipeLog().error(
                   "Application is not able to read file <" + getProcName(transactionNumber) + ">");
           throw new ProcessingException("Application is not able to read file <"
@@ -409,8 +607,8 @@ public abstract class FlatFileInputAdapter
         // Continue with the open file
         try {
           // read from the file and prepare the batch
-          while ((reader.ready()) & (ThisBatchCounter < batchSize)) {
-            tmpFileRecord = reader.readLine();
+          while ((inputReady()) & (ThisBatchCounter < batchSize)) {
+            tmpFileRecord = readInputLine();
 
             // skip blank records
             if (tmpFileRecord.length() == 0) {
@@ -459,7 +657,7 @@ public abstract class FlatFileInputAdapter
           getPipeline().setSchedulerHigh();
 
           // see the reason that we closed
-          if (reader.ready() == false) {
+          if (inputReady() == false) {
             // we have finished
             inputStreamOpen = false;
 
@@ -519,6 +717,137 @@ public abstract class FlatFileInputAdapter
     return Outbatch;
   }
 
+  /**
+   * Opens the input stream of a transaction, with the reader type that has
+   * been configured.
+   *
+   * @param TransactionNumber The transaction number of the transaction to open
+   * @throws IOException
+   */
+  private void openStream(int TransactionNumber) throws IOException {
+    // see if the file is already being read ahead
+    prefetcher = prefetchers.remove(TransactionNumber);
+    if (prefetcher != null) {
+      return;
+    }
+
+    // compressed files are always decompressed in a thread of their own
+    if (isCompressed(TransactionNumber)) {
+      startPrefetch(TransactionNumber);
+      prefetcher = prefetchers.remove(TransactionNumber);
+      return;
+    }
+
+    // see if the file is large enough to read in parallel chunks
+    int tmpChunks = getChunkCount(TransactionNumber);
+    if (tmpChunks > 1) {
+      getPipeLog().info("Reading file <" + getProcName(TransactionNumber) + "> in <" + tmpChunks + "> parallel chunks");
+      chunkedReader = new ChunkedFileReader(getProcName(TransactionNumber), inputCharset, tmpChunks, NIO_BUF_SIZE, chunkExecutor);
+      return;
+    }
+
+    if (useNIOReader) {
+      lineReader = new ByteLineReader(getProcName(TransactionNumber), NIO_BUF_SIZE, inputCharset);
+    } else {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(getProcName(TransactionNumber)), inputCharset), BUF_SIZE);
+    }
+  }
+
+  /**
+   * Starts reading a file ahead in the prefetch threads.
+   *
+   * @param TransactionNumber The transaction number of the file
+   */
+  private void startPrefetch(int TransactionNumber) {
+    boolean tmpCompressed = isCompressed(TransactionNumber);
+    FilePrefetcher tmpPrefetcher = new FilePrefetcher(getProcName(TransactionNumber), inputCharset, useNIOReader, tmpCompressed, (useNIOReader && !tmpCompressed) ? NIO_BUF_SIZE : BUF_SIZE);
+    prefetchers.put(TransactionNumber, tmpPrefetcher);
+    prefetchExecutor.execute(tmpPrefetcher);
+  }
+
+  /**
+   * Works out if the input file of a transaction is gzip compressed. Empty
+   * files are never taken as compressed, because there is nothing to read.
+   *
+   * @param TransactionNumber The transaction number of the file
+   * @return true if the file is to be decompressed
+   */
+  private boolean isCompressed(int TransactionNumber) {
+    if (inputCompression.equals(COMPRESSION_NONE)) {
+      return false;
+    }
+
+    String tmpFileName = getProcName(TransactionNumber);
+    if (new File(tmpFileName).length() == 0) {
+      return false;
+    }
+
+    if (inputCompression.equals(COMPRESSION_GZIP)) {
+      return true;
+    }
+
+    try {
+      return ParallelGzipOutputStream.isGzipFile(tmpFileName);
+    } catch (IOException ex) {
+      // let the open report the problem
+      return false;
+    }
+  }
+
+  /**
+   * Works out the number of chunks to read a file in. Files are only split if
+   * parallel chunks are configured, and then only into chunks of at least
+   * MIN_CHUNK_SIZE bytes.
+   *
+   * @param TransactionNumber The transaction number of the file
+   * @return The number of chunks, 1 if the file is to be read in one piece
+   */
+  private int getChunkCount(int TransactionNumber) {
+    if (parallelChunks < 2 || isCompressed(TransactionNumber)) {
+      return 1;
+    }
+
+    long tmpSize = new File(getProcName(TransactionNumber)).length();
+
+    return (int) Math.max(1, Math.min(parallelChunks, tmpSize / MIN_CHUNK_SIZE));
+  }
+
+  /**
+   * Tells us whether the input stream has more lines to read.
+   *
+   * @return true if there are more lines
+   * @throws IOException
+   */
+  private boolean inputReady() throws IOException {
+    if (prefetcher != null) {
+      return prefetcher.ready();
+    } else if (chunkedReader != null) {
+      return chunkedReader.ready();
+    } else if (useNIOReader) {
+      return lineReader.ready();
+    } else {
+      return reader.ready();
+    }
+  }
+
+  /**
+   * Reads the next line from the input stream.
+   *
+   * @return The line read
+   * @throws IOException
+   */
+  private String readInputLine() throws IOException {
+    if (prefetcher != null) {
+      return prefetcher.readLine();
+    } else if (chunkedReader != null) {
+      return chunkedReader.readLine();
+    } else if (useNIOReader) {
+      return lineReader.readLine();
+    } else {
+      return reader.readLine();
+    }
+  }
+
   /**
    * Closes down the input stream after all the input has been collected
    *
@@ -528,7 +857,17 @@ public abstract class FlatFileInputAdapter
   public void closeStream(int TransactionNumber)
           throws ProcessingException {
     try {
-      reader.close();
+      if (prefetcher != null) {
+        prefetcher.close();
+        prefetcher = null;
+      } else if (chunkedReader != null) {
+        chunkedReader.close();
+        chunkedReader = null;
+      } else if (useNIOReader) {
+        lineReader.close();
+      } else {
+        reader.close();
+      }
     } catch (IOException exFileNotFound) {
       getPipeLog().error("Application is not able to close file <" + getProcName(TransactionNumber) + ">");
       throw new ProcessingException("Application is not able to read file <"
@@ -539,7 +878,8 @@ public abstract class FlatFileInputAdapter
   }
 
   /**
-   * Provides reader created during init()
+   * Provides reader created during init(). This is null when the reader type is
+   * "NIO".
    *
    * @return The buffered Reader to use
    */
@@ -754,6 +1094,142 @@ public abstract class FlatFileInputAdapter
       }
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_COMPRESSION)) {
+      if (Init) {
+        if (Parameter.equalsIgnoreCase(COMPRESSION_GZIP)) {
+          inputCompression = COMPRESSION_GZIP;
+        } else if (Parameter.equalsIgnoreCase(COMPRESSION_AUTO)) {
+          inputCompression = COMPRESSION_AUTO;
+        } else if (Parameter.equalsIgnoreCase(COMPRESSION_NONE)) {
+          inputCompression = COMPRESSION_NONE;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_COMPRESSION + " <" + Parameter + ">. Using <" + COMPRESSION_NONE + ">.");
+          inputCompression = COMPRESSION_NONE;
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return inputCompression;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_READER_TYPE)) {
+      if (Init) {
+        if (Parameter.equalsIgnoreCase("NIO")) {
+          useNIOReader = true;
+          ResultCode = 0;
+        } else if (Parameter.equalsIgnoreCase("Buffered")) {
+          useNIOReader = false;
+          ResultCode = 0;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_READER_TYPE + " <" + Parameter + ">. Using <Buffered>.");
+          useNIOReader = false;
+          ResultCode = 0;
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return useNIOReader ? "NIO" : "Buffered";
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_CHARSET)) {
+      if (Init) {
+        try {
+          inputCharset = Charset.forName(Parameter);
+        } catch (IllegalArgumentException iae) {
+          getPipeLog().error("Unknown " + SERVICE_CHARSET + " <" + Parameter + ">. Using <" + Charset.defaultCharset().name() + ">.");
+          inputCharset = Charset.defaultCharset();
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return inputCharset.name();
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_CONCURRENT_FILES)) {
+      if (Init) {
+        try {
+          concurrentFiles = Integer.parseInt(Parameter);
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_CONCURRENT_FILES + ". Passed value = <" + Parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(concurrentFiles);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_PARALLEL_CHUNKS)) {
+      if (Init) {
+        try {
+          parallelChunks = Integer.parseInt(Parameter);
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_PARALLEL_CHUNKS + ". Passed value = <" + Parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          if (chunkedReader == null) {
+            return Integer.toString(parallelChunks);
+          } else {
+            // show the progress of the file we are reading
+            return Integer.toString(parallelChunks) + ":" + chunkedReader.getChunksCompleted() + "/" + chunkedReader.getChunkCount();
+          }
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_DIRECTORY_WATCH)) {
+      if (Init) {
+        directoryWatch = Boolean.parseBoolean(Parameter);
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          if (directoryWatcher == null) {
+            return Boolean.toString(directoryWatch);
+          } else {
+            // show the number of events we have seen
+            return Boolean.toString(directoryWatch) + ":" + directoryWatcher.getEventCount();
+          }
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_FULL_SCAN_INTERVAL)) {
+      if (Init) {
+        try {
+          fullScanInterval = Long.parseLong(Parameter);
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_FULL_SCAN_INTERVAL + ". Passed value = <" + Parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return Long.toString(fullScanInterval);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
     if (ResultCode == 0) {
       getPipeLog().debug(LogUtil.LogECIPipeCommand(getSymbolicName(), getPipeName(), Command, Parameter));
 
@@ -787,6 +1263,13 @@ public abstract class FlatFileInputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_D_SUFFIX, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_E_SUFFIX, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PROCPREFIX, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_READER_TYPE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_CHARSET, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_CONCURRENT_FILES, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PARALLEL_CHUNKS, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_DIRECTORY_WATCH, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_FULL_SCAN_INTERVAL, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMPRESSION, ClientManager.PARAM_NONE);
   }
 
   // -----------------------------------------------------------------------------
@@ -915,6 +1398,104 @@ public abstract class FlatFileInputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetReaderType()
+          throws InitializationException {
+    String tmpReaderType;
+    tmpReaderType = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_READER_TYPE,
+            "Buffered");
+
+    return tmpReaderType;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetInputCharset()
+          throws InitializationException {
+    String tmpCharset;
+    tmpCharset = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_CHARSET,
+            Charset.defaultCharset().name());
+
+    return tmpCharset;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetConcurrentFiles()
+          throws InitializationException {
+    String tmpConcurrentFiles;
+    tmpConcurrentFiles = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_CONCURRENT_FILES,
+            "0");
+
+    return tmpConcurrentFiles;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetParallelChunks()
+          throws InitializationException {
+    String tmpParallelChunks;
+    tmpParallelChunks = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_PARALLEL_CHUNKS,
+            "0");
+
+    return tmpParallelChunks;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file.
+   * Will be removed with the introduction of the new configuration model.
+   */
+  private String initGetDirectoryWatch()
+          throws InitializationException {
+    String tmpDirectoryWatch;
+    tmpDirectoryWatch = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_DIRECTORY_WATCH,
+            "false");
+
+    return tmpDirectoryWatch;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file.
+   * Will be removed with the introduction of the new configuration model.
+   */
+  private String initGetFullScanInterval()
+          throws InitializationException {
+    String tmpFullScanInterval;
+    tmpFullScanInterval = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_FULL_SCAN_INTERVAL,
+            "60000");
+
+    return tmpFullScanInterval;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file.
+   * Will be removed with the introduction of the new configuration model.
+   */
+  private String initGetInputCompression()
+          throws InitializationException {
+    String tmpInputCompression;
+    tmpInputCompression = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_COMPRESSION,
+            COMPRESSION_NONE);
+
+    return tmpInputCompression;
+  }
+
   /**
    * Checks the file name from the input parameters. Refactored from init() into
    * a method of its own so that derived classes can still reuse most of the
@@ -1046,14 +1627,28 @@ public abstract class FlatFileInputAdapter
     // This is the current filename we are working on
     String fileName;
 
+    // start watching before we scan, so that we do not miss anything
+    if (directoryWatch && directoryWatcher == null) {
+      startDirectoryWatcher();
+    }
+
     // get the first file name from the directory that matches the
     dir = new File(inputFilePath);
-    filter = new GlobFilenameFilter(inputFilePrefix + "*"
-            + inputFileSuffix,
-            GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK);
+    filter = getInputFileFilter();
+
+    // sort files - if we are watching the directory, we only need to look at
+    // the files which have arrived, unless it is time for a full scan
+    if (directoryWatcher == null || directoryWatcher.isFullScanDue()) {
+      // mark the scan as done before listing the directory, so that the names
+      // of files arriving during the listing stay queued
+      if (directoryWatcher != null) {
+        directoryWatcher.fullScanDone();
+      }
 
-    // sort files
-    fileNames = getOrderedFileListForProcessing(dir, filter);
+      fileNames = getOrderedFileListForProcessing(dir, filter);
+    } else {
+      fileNames = directoryWatcher.getPendingFiles();
+    }
 
     // if we have a file, add it to the list of transaction files
     if (fileNames.length > 0) {
@@ -1132,9 +1727,21 @@ public abstract class FlatFileInputAdapter
             }
           }
         } else {
-          // filled up the possibilities finish for the moment
+          // filled up the possibilities finish for the moment. Queue the files
+          // we could not take, so that the next pass offers them again without
+          // waiting for the next full scan
+          if (directoryWatcher != null) {
+            directoryWatcher.addFiles(fileNames, filesOpened);
+          }
+
           break;
         }
+
+        // we have dealt with this file, the watcher does not need to offer it
+        // again
+        if (directoryWatcher != null) {
+          directoryWatcher.removeFile(fileName);
+        }
       }
 
       // Log the number of files we effectively got
@@ -1372,6 +1979,18 @@ public abstract class FlatFileInputAdapter
     return (fileNameToFilter.startsWith(processingPrefix) == false);
   }
 
+  /**
+   * Get the filter for the names of the input files, made from the input file
+   * prefix and suffix.
+   *
+   * @return The filter
+   */
+  private FilenameFilter getInputFileFilter() {
+    return new GlobFilenameFilter(inputFilePrefix + "*"
+            + inputFileSuffix,
+            GlobCompiler.STAR_CANNOT_MATCH_NULL_MASK);
+  }
+
   /**
    * Order the list of files. This is can be overridden so that the sure may
    * define their own rules.
@@ -55,6 +55,7 @@
 package OpenRate.adapter.file;
 
 import OpenRate.CommonConfig;
+import OpenRate.OpenRate;
 import OpenRate.adapter.AbstractTransactionalOutputAdapter;
 import OpenRate.configurationmanager.ClientManager;
 import OpenRate.configurationmanager.IEventInterface;
@@ -67,11 +68,16 @@ import OpenRate.record.IRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Multi-stream Flat File Output Adapter. Writes to file streams output, using
@@ -79,7 +85,12 @@ import java.util.Iterator;
  * simultaneously, therefore good for splitting and routing functions.
  *
  * The number of parallel streams that this adapter can write is determined by
- * the implementation layer.
+ * the implementation layer. To keep the number of open files and the memory
+ * held in writer buffers bounded when there are many streams, "MaxOpenFiles"
+ * limits the number of stream files which are open at once. The least recently
+ * written file is closed to make room, and opened again in append mode if it is
+ * written to again. The default of 0 does not limit the open files. The bytes
+ * written to each stream file are logged when the files are closed.
  */
 public abstract class FlatFileMultiStreamOutputAdapter
         extends AbstractTransactionalOutputAdapter
@@ -118,6 +129,26 @@ public abstract class FlatFileMultiStreamOutputAdapter
   private final static String SERVICE_ERR_SUFFIX = "ErrFileSuffix";
   private final static String SERVICE_DEL_EMPTY_ERR_FILE = "DeleteEmptyErrorFile";
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
+  private static final String SERVICE_COMPRESSION = "OutputCompression";
+  private static final String SERVICE_COMPRESSION_THREADS = "CompressionThreads";
+  private static final String SERVICE_MAX_OPEN_FILES = "MaxOpenFiles";
+  private static final String SERVICE_WRITER_POOL_STATS = "WriterPoolStats";
+
+  // The output compression values
+  private static final String COMPRESSION_NONE = "None";
+  private static final String COMPRESSION_GZIP = "Gzip";
+
+  // Whether we write gzip compressed output, and the number of threads which
+  // compress it
+  private boolean compressOutput = false;
+  private int compressionThreads = Runtime.getRuntime().availableProcessors();
+  private ExecutorService compressionExecutor;
+
+  // The maximum number of stream files open at once, 0 for no limit
+  private int maxOpenFiles = 0;
+
+  // The writers of the stream files
+  private WriterPool validWriters;
 
   //final static String SERVICE_OUT_FILE_NAME = "OutputFileName";
   //final static String SERVICE_ERR_FILE_NAME = "ErrFileName";
@@ -127,7 +158,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
     HashMap<Integer, String> OutputFileName;
     String ErrorFileName;
     HashMap<Integer, String> ProcOutputFileName;
-    HashMap<Integer, BufferedWriter> ValidWriter;
+    HashMap<Integer, Long> StreamBytes;
     String ProcErrorFileName;
   }
 
@@ -186,12 +217,47 @@ public abstract class FlatFileMultiStreamOutputAdapter
     processControlEvent(SERVICE_DEL_EMPTY_ERR_FILE, true, ConfigHelper);
     ConfigHelper = initGetProcPrefix();
     processControlEvent(SERVICE_PROCPREFIX, true, ConfigHelper);
+    ConfigHelper = initGetOutputCompression();
+    processControlEvent(SERVICE_COMPRESSION, true, ConfigHelper);
+    ConfigHelper = initGetCompressionThreads();
+    processControlEvent(SERVICE_COMPRESSION_THREADS, true, ConfigHelper);
+    ConfigHelper = initGetMaxOpenFiles();
+    processControlEvent(SERVICE_MAX_OPEN_FILES, true, ConfigHelper);
 
     // Check the parameters we received
     initFileName();
 
     // create the structure for storing filenames
     currentFileNames = new HashMap<>(10);
+
+    // create the pool for the stream writers
+    validWriters = new WriterPool(maxOpenFiles, new WriterPool.WriterFactory() {
+      @Override
+      public BufferedWriter openWriter(String fileName, boolean append) throws IOException {
+        if (append) {
+          return new BufferedWriter(openFileWriter(new File(fileName), true), BUF_SIZE);
+        } else {
+          return openValidFile(fileName);
+        }
+      }
+    });
+
+    // start the threads compressing the output
+    if (compressOutput) {
+      compressionExecutor = Executors.newFixedThreadPool(Math.max(1, compressionThreads), new FileThreadFactory(PipelineName + "-" + ModuleName + "-Compress"));
+    }
+  }
+
+  /**
+   * Stop the threads compressing the output.
+   */
+  @Override
+  public void cleanup() {
+    if (compressionExecutor != null) {
+      compressionExecutor.shutdownNow();
+    }
+
+    super.cleanup();
   }
 
   /**
@@ -210,7 +276,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
     TransControlStructure tmpFileNames = new TransControlStructure();
     tmpFileNames.OutputFileName = new HashMap<>();
     tmpFileNames.ProcOutputFileName = new HashMap<>();
-    tmpFileNames.ValidWriter = new HashMap<>();
+    tmpFileNames.StreamBytes = new HashMap<>();
 
     // call the transactional layer
     tmpHeader = (HeaderRecord) r;
@@ -272,11 +338,10 @@ public abstract class FlatFileMultiStreamOutputAdapter
       while (outRecIter.hasNext()) {
         outRec = (FlatRecord) outRecIter.next();
 
-        // see if the stream writer exists
+        // see if the stream has been written in this transaction
         tcs = currentFileNames.get(getTransactionNumber());
-        if (tcs.OutputFileName.containsKey(stream)) {
-          tmpOutStream = tcs.ValidWriter.get(stream);
-        } else {
+        tmpProcOutputFileName = tcs.ProcOutputFileName.get(stream);
+        if (tmpProcOutputFileName == null) {
           // get the file name for the new stream
           tmpProcOutputFileName = filePath + System.getProperty("file.separator")
                   + ProcessingPrefix + filePrefix + fileBaseName
@@ -286,15 +351,11 @@ public abstract class FlatFileMultiStreamOutputAdapter
                   + String.valueOf(stream) + fileSuffix;
           tcs.ProcOutputFileName.put(stream, tmpProcOutputFileName);
           tcs.OutputFileName.put(stream, tmpOutputFileName);
-
-          //create the new out stream
-          tmpOutStream = openValidFile(tcs.OutputFileName.get(stream));
-
-          // save the stream for later
-          tcs.ValidWriter.put(stream, tmpOutStream);
         }
 
         try {
+          // get the writer from the pool, (re)opening the file if needed
+          tmpOutStream = validWriters.getWriter(tmpProcOutputFileName);
           tmpOutStream.write(outRec.getData());
           tmpOutStream.newLine();
         } catch (IOException ioe) {
@@ -365,7 +426,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
    * @return The buffered file writer for the valid file
    */
   public BufferedWriter openValidFile(String fileName) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(fileName);
 
@@ -374,7 +435,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
         getPipeLog().error("output file already exists = " + fileName);
       }
 
-      fwriter = new FileWriter(file);
+      fwriter = openFileWriter(file);
     } catch (IOException ex) {
       getPipeLog().error("Error opening valid stream output for file " + fileName);
     }
@@ -388,7 +449,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
    * @param filename The name of the file to open
    */
   public void openErrFile(String filename) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(filename);
 
@@ -397,7 +458,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
         getPipeLog().error("output file already exists = " + filename);
       }
 
-      fwriter = new FileWriter(file);
+      fwriter = openFileWriter(file);
     } catch (IOException ex) {
       getPipeLog().error("Error opening error stream output for file " + filename);
     }
@@ -405,6 +466,56 @@ public abstract class FlatFileMultiStreamOutputAdapter
     errorWriter = new BufferedWriter(fwriter);
   }
 
+  /**
+   * Open a writer on an output file, compressing the output if we have been
+   * configured to. The blocks of the file are compressed in parallel, and
+   * written as a multi-member gzip stream.
+   *
+   * @param file The file to open
+   * @return The writer
+   * @throws IOException
+   */
+  private Writer openFileWriter(File file) throws IOException {
+    return openFileWriter(file, false);
+  }
+
+  /**
+   * Open a writer on an output file, optionally appending to it. Appending to
+   * a compressed file adds more gzip members to it.
+   *
+   * @param file The file to open
+   * @param append true to append to the file
+   * @return The writer
+   * @throws IOException
+   */
+  private Writer openFileWriter(File file, boolean append) throws IOException {
+    if (compressOutput) {
+      return new OutputStreamWriter(new ParallelGzipOutputStream(new FileOutputStream(file, append), compressionExecutor, compressionThreads * 2));
+    } else {
+      return new FileWriter(file, append);
+    }
+  }
+
+  /**
+   * Checks if an output file has no data in it. A compressed file always has
+   * the gzip framing in it, so we have to look inside.
+   *
+   * @param file The file to check
+   * @return true if there is no data in the file
+   */
+  private boolean isFileEmpty(File file) {
+    if (compressOutput) {
+      try {
+        return ParallelGzipOutputStream.isEmpty(file);
+      } catch (IOException ex) {
+        getPipeLog().error("Error checking output file <" + file.getPath() + ">", ex);
+        return false;
+      }
+    } else {
+      return (file.length() == 0);
+    }
+  }
+
   @Override
   public void closeStream(int transactionNumber) {
     // Nothing for the moment
@@ -419,30 +530,32 @@ public abstract class FlatFileMultiStreamOutputAdapter
   public int closeFiles(int transactionNumber) {
     boolean ErrorFound = false;
     int ReturnCode = 0;
-    BufferedWriter tmpValidWriter;
     int StreamNumber;
+    String tmpProcOutputFileName;
+    long tmpBytes;
     TransControlStructure tcs;
 
     if (OutputStreamOpen) {
-      try {
-        // iterate over all valid writers and close them
-        tcs = currentFileNames.get(transactionNumber);
-        Iterator<Integer> tcsIter = tcs.ValidWriter.keySet().iterator();
-        while (tcsIter.hasNext()) {
-          // get the stream number to close
-          StreamNumber = tcsIter.next();
-
-          // get the corresponding writer object
-          tmpValidWriter = tcs.ValidWriter.get(StreamNumber);
-
-          // close it
-          if (tmpValidWriter != null) {
-            tmpValidWriter.close();
-          }
+      // iterate over all the streams of the transaction and close them, this
+      // includes those which have been closed to make room in the pool
+      tcs = currentFileNames.get(transactionNumber);
+      Iterator<Integer> tcsIter = tcs.ProcOutputFileName.keySet().iterator();
+      while (tcsIter.hasNext()) {
+        // get the stream number to close
+        StreamNumber = tcsIter.next();
+        tmpProcOutputFileName = tcs.ProcOutputFileName.get(StreamNumber);
+
+        try {
+          validWriters.release(tmpProcOutputFileName);
+        } catch (IOException ioe) {
+          getPipeLog().error("Error closing output file", ioe);
+          ErrorFound = true;
         }
-      } catch (IOException ioe) {
-        getPipeLog().error("Error closing output file", ioe);
-        ErrorFound = true;
+
+        // note how much we wrote to the stream
+        tmpBytes = new File(tmpProcOutputFileName).length();
+        tcs.StreamBytes.put(StreamNumber, tmpBytes);
+        OpenRate.getOpenRateStatsLog().debug("Output <" + getSymbolicName() + "> wrote <" + tmpBytes + "> bytes to stream <" + StreamNumber + "> of transaction <" + transactionNumber + ">");
       }
 
       try {
@@ -486,7 +599,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
       tmpStreamNumber = tcsIter.next();
 
       f = new File(getProcOutputName(transactionNumber, tmpStreamNumber));
-      if ((f.length() == 0) & (DelEmptyOutFile)) {
+      if ((DelEmptyOutFile) && isFileEmpty(f)) {
         // Delete the empty file
         f.delete();
       } else {
@@ -497,7 +610,7 @@ public abstract class FlatFileMultiStreamOutputAdapter
 
     // rename the error file
     f = new File(getProcErrorName(transactionNumber));
-    if ((f.length() == 0) & (DelEmptyErrFile)) {
+    if ((DelEmptyErrFile) && isFileEmpty(f)) {
       // Delete the empty file
       f.delete();
     } else {
@@ -513,13 +626,20 @@ public abstract class FlatFileMultiStreamOutputAdapter
    */
   public void closeTransactionErr(int transactionNumber) {
     File f;
-    int tmpStreamNumber;
+    String tmpProcOutputFileName;
 
-    // rename the file
-    while (currentFileNames.get(transactionNumber).ProcOutputFileName.keySet().iterator().hasNext()) {
-      tmpStreamNumber = currentFileNames.get(transactionNumber).ProcOutputFileName.keySet().iterator().next();
+    // delete the files of all the streams of the transaction
+    for (Integer tmpStreamNumber : currentFileNames.get(transactionNumber).ProcOutputFileName.keySet()) {
+      tmpProcOutputFileName = getProcOutputName(transactionNumber, tmpStreamNumber);
 
-      f = new File(getProcOutputName(transactionNumber, tmpStreamNumber));
+      // make sure the file is not still open
+      try {
+        validWriters.release(tmpProcOutputFileName);
+      } catch (IOException ioe) {
+        getPipeLog().error("Error closing output file", ioe);
+      }
+
+      f = new File(tmpProcOutputFileName);
       f.delete();
     }
 
@@ -733,6 +853,67 @@ public abstract class FlatFileMultiStreamOutputAdapter
       }
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_COMPRESSION)) {
+      if (Init) {
+        if (Parameter.equalsIgnoreCase(COMPRESSION_GZIP)) {
+          compressOutput = true;
+        } else if (Parameter.equalsIgnoreCase(COMPRESSION_NONE)) {
+          compressOutput = false;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_COMPRESSION + " <" + Parameter + ">. Using <" + COMPRESSION_NONE + ">.");
+          compressOutput = false;
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return compressOutput ? COMPRESSION_GZIP : COMPRESSION_NONE;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_COMPRESSION_THREADS)) {
+      if (Init) {
+        try {
+          compressionThreads = Integer.parseInt(Parameter);
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_COMPRESSION_THREADS + ". Passed value = <" + Parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(compressionThreads);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_MAX_OPEN_FILES)) {
+      if (Init) {
+        try {
+          maxOpenFiles = Math.max(0, Integer.parseInt(Parameter));
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_MAX_OPEN_FILES + ". Passed value = <" + Parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(maxOpenFiles);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    // Return the writer pool statistics: open files, evictions, reopens
+    if (Command.equalsIgnoreCase(SERVICE_WRITER_POOL_STATS)) {
+      return Integer.toString(validWriters.getOpenCount()) + ":"
+              + Long.toString(validWriters.getEvictions()) + ":"
+              + Long.toString(validWriters.getReopens());
+    }
+
     if (Command.equalsIgnoreCase(SERVICE_PROCPREFIX)) {
       if (Init) {
         ProcessingPrefix = Parameter;
@@ -778,6 +959,10 @@ public abstract class FlatFileMultiStreamOutputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_DEL_EMPTY_OUT_FILE, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_DEL_EMPTY_ERR_FILE, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PROCPREFIX, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMPRESSION, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMPRESSION_THREADS, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MAX_OPEN_FILES, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_WRITER_POOL_STATS, ClientManager.PARAM_DYNAMIC);
 
     //ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_OUT_FILE_NAME, false, false);
     //ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ERR_FILE_NAME, false, false);
@@ -905,6 +1090,48 @@ public abstract class FlatFileMultiStreamOutputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetOutputCompression()
+          throws InitializationException {
+    String tmpOutputCompression;
+    tmpOutputCompression = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_COMPRESSION,
+            COMPRESSION_NONE);
+
+    return tmpOutputCompression;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetCompressionThreads()
+          throws InitializationException {
+    String tmpCompressionThreads;
+    tmpCompressionThreads = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_COMPRESSION_THREADS,
+            Integer.toString(compressionThreads));
+
+    return tmpCompressionThreads;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetMaxOpenFiles()
+          throws InitializationException {
+    String tmpMaxOpenFiles;
+    tmpMaxOpenFiles = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_MAX_OPEN_FILES,
+            "0");
+
+    return tmpMaxOpenFiles;
+  }
+
   /**
    * Checks the file name from the input parameters.
    *
@@ -971,6 +1198,23 @@ public abstract class FlatFileMultiStreamOutputAdapter
     return tmpFileNames.ProcOutputFileName.get(stream);
   }
 
+  /**
+   * Get the number of bytes written to each stream of the given transaction.
+   * The counts are available once the files have been closed at the end of the
+   * transaction.
+   *
+   * @param TransactionNumber The number of the transaction to get the counts for
+   * @return The bytes written, by stream number
+   */
+  protected HashMap<Integer, Long> getStreamByteCounts(int TransactionNumber) {
+    TransControlStructure tmpFileNames;
+
+    // Get the counts to work on
+    tmpFileNames = currentFileNames.get(TransactionNumber);
+
+    return tmpFileNames.StreamBytes;
+  }
+
   /**
    * Get the final output file name for the valid record output file for the
    * given transaction
@@ -55,6 +55,7 @@
 package OpenRate.adapter.file;
 
 import OpenRate.CommonConfig;
+import OpenRate.OpenRate;
 import OpenRate.adapter.AbstractTransactionalOutputAdapter;
 import OpenRate.configurationmanager.ClientManager;
 import OpenRate.configurationmanager.IEventInterface;
@@ -67,11 +68,22 @@ import OpenRate.record.IRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Please <a target='new'
@@ -79,6 +91,13 @@ import java.util.Iterator;
  * here</a> to go to wiki page.
  * <br>Flat File Output Adapter. Writes to a file stream output, using
  * transaction aware handling.
+ *
+ * <p>With "WriterMode" set to "Async", the records are only encoded into byte
+ * buffers in the adapter thread. A background thread writes the full buffers
+ * ("WriterBufferSize" bytes) to the file channel, with up to "WriterQueueSize"
+ * buffers queued. The depth of the queue can be read with the
+ * "WriterQueueStats" command. "SyncOnCommit" ("None", "Data" or "All") syncs
+ * the files to the disk before they are renamed at commit.
  */
 public abstract class FlatFileOutputAdapter
         extends AbstractTransactionalOutputAdapter
@@ -125,6 +144,47 @@ public abstract class FlatFileOutputAdapter
   private final static String SERVICE_ERR_SUFFIX = "ErrFileSuffix";
   private final static String SERVICE_DEL_EMPTY_ERR_FILE = "DeleteEmptyErrorFile";
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
+  private static final String SERVICE_COMPRESSION = "OutputCompression";
+  private static final String SERVICE_COMPRESSION_THREADS = "CompressionThreads";
+  private static final String SERVICE_WRITER_MODE = "WriterMode";
+  private static final String SERVICE_WRITER_QUEUE_SIZE = "WriterQueueSize";
+  private static final String SERVICE_WRITER_BUFFER_SIZE = "WriterBufferSize";
+  private static final String SERVICE_WRITER_QUEUE_STATS = "WriterQueueStats";
+  private static final String SERVICE_SYNC_ON_COMMIT = "SyncOnCommit";
+
+  // The writer mode values
+  private static final String WRITER_MODE_BUFFERED = "Buffered";
+  private static final String WRITER_MODE_ASYNC = "Async";
+
+  // The sync on commit values
+  private static final String SYNC_NONE = "None";
+  private static final String SYNC_DATA = "Data";
+  private static final String SYNC_ALL = "All";
+
+  // The output compression values
+  private static final String COMPRESSION_NONE = "None";
+  private static final String COMPRESSION_GZIP = "Gzip";
+
+  // Whether we write gzip compressed output, and the number of threads which
+  // compress it
+  private boolean compressOutput = false;
+  private int compressionThreads = Runtime.getRuntime().availableProcessors();
+  private ExecutorService compressionExecutor;
+
+  // Whether we write the files in a background thread, and how
+  private boolean asyncWrite = false;
+  private int writerQueueSize = 4;
+  private int writerBufferSize = AsyncFileChannelOutputStream.DEFAULT_BUFFER_SIZE;
+  private ExecutorService writerExecutor;
+
+  // The background written streams which are open, and the statistics of the
+  // streams which have been closed
+  private final List<AsyncFileChannelOutputStream> asyncStreams = new CopyOnWriteArrayList<>();
+  private int writerQueueMaxDepth = 0;
+  private long writerQueueWaits = 0;
+
+  // How we sync the files to the disk at commit
+  private String syncOnCommit = SYNC_NONE;
   private static final String DEFAULT_PROCPREFIX = "tmp";
 
   //final static String SERVICE_OUT_FILE_NAME = "OutputFileName";
@@ -216,12 +276,50 @@ public abstract class FlatFileOutputAdapter
 
     configHelper = initGetProcPrefix();
     processControlEvent(SERVICE_PROCPREFIX, true, configHelper);
+    configHelper = initGetOutputCompression();
+    processControlEvent(SERVICE_COMPRESSION, true, configHelper);
+    configHelper = initGetCompressionThreads();
+    processControlEvent(SERVICE_COMPRESSION_THREADS, true, configHelper);
+    configHelper = initGetWriterMode();
+    processControlEvent(SERVICE_WRITER_MODE, true, configHelper);
+    configHelper = initGetWriterQueueSize();
+    processControlEvent(SERVICE_WRITER_QUEUE_SIZE, true, configHelper);
+    configHelper = initGetWriterBufferSize();
+    processControlEvent(SERVICE_WRITER_BUFFER_SIZE, true, configHelper);
+    configHelper = initGetSyncOnCommit();
+    processControlEvent(SERVICE_SYNC_ON_COMMIT, true, configHelper);
 
     // Check the parameters we received
     initFileName();
 
     // create the structure for storing filenames
     CurrentFileNames = new HashMap<>(10);
+
+    // start the threads compressing the output
+    if (compressOutput) {
+      compressionExecutor = Executors.newFixedThreadPool(Math.max(1, compressionThreads), new FileThreadFactory(PipelineName + "-" + ModuleName + "-Compress"));
+    }
+
+    // start the thread writing the output, one thread keeps the buffers in order
+    if (asyncWrite) {
+      writerExecutor = Executors.newSingleThreadExecutor(new FileThreadFactory(PipelineName + "-" + ModuleName + "-Writer"));
+    }
+  }
+
+  /**
+   * Stop the threads compressing and writing the output.
+   */
+  @Override
+  public void cleanup() {
+    if (compressionExecutor != null) {
+      compressionExecutor.shutdownNow();
+    }
+
+    if (writerExecutor != null) {
+      writerExecutor.shutdown();
+    }
+
+    super.cleanup();
   }
 
   /**
@@ -361,7 +459,7 @@ public abstract class FlatFileOutputAdapter
    * @param filename The name of the file to open
    */
   public void openValidFile(String filename) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(filename);
 
@@ -370,7 +468,7 @@ public abstract class FlatFileOutputAdapter
         getPipeLog().error("output file already exists = " + filename);
       }
 
-      fwriter = new FileWriter(file);
+      fwriter = openFileWriter(file);
     } catch (IOException ex) {
       getPipeLog().error("Error opening valid stream output for file " + filename);
     }
@@ -384,7 +482,7 @@ public abstract class FlatFileOutputAdapter
    * @param filename The name of the file to open
    */
   public void openErrFile(String filename) {
-    FileWriter fwriter = null;
+    Writer fwriter = null;
     File file;
     file = new File(filename);
 
@@ -396,7 +494,7 @@ public abstract class FlatFileOutputAdapter
           getPipeLog().error("output file already exists = " + filename);
         }
 
-        fwriter = new FileWriter(file);
+        fwriter = openFileWriter(file);
       } catch (IOException ex) {
         getPipeLog().error("Error opening error stream output for file " + filename);
       }
@@ -405,6 +503,90 @@ public abstract class FlatFileOutputAdapter
     }
   }
 
+  /**
+   * Open a writer on an output file, compressing the output if we have been
+   * configured to. The blocks of the file are compressed in parallel, and
+   * written as a multi-member gzip stream. In the async writer mode the file
+   * is written by the writer thread.
+   *
+   * @param file The file to open
+   * @return The writer
+   * @throws IOException
+   */
+  private Writer openFileWriter(File file) throws IOException {
+    OutputStream fileStream;
+
+    if (asyncWrite) {
+      AsyncFileChannelOutputStream tmpStream = new AsyncFileChannelOutputStream(new FileOutputStream(file).getChannel(), writerExecutor, writerQueueSize, writerBufferSize);
+      asyncStreams.add(tmpStream);
+      fileStream = tmpStream;
+    } else if (compressOutput) {
+      fileStream = new FileOutputStream(file);
+    } else {
+      return new FileWriter(file);
+    }
+
+    if (compressOutput) {
+      return new OutputStreamWriter(new ParallelGzipOutputStream(fileStream, compressionExecutor, compressionThreads * 2));
+    } else {
+      return new OutputStreamWriter(fileStream);
+    }
+  }
+
+  /**
+   * Collect the statistics of the background written streams, which have now
+   * been closed.
+   */
+  private void closeAsyncStreams() {
+    for (AsyncFileChannelOutputStream tmpStream : asyncStreams) {
+      writerQueueMaxDepth = Math.max(writerQueueMaxDepth, tmpStream.getMaxQueueDepth());
+      writerQueueWaits += tmpStream.getQueueWaits();
+
+      OpenRate.getOpenRateStatsLog().debug("Output <" + getSymbolicName() + "> wrote <" + tmpStream.getBytesQueued()
+              + "> bytes, max writer queue depth <" + tmpStream.getMaxQueueDepth()
+              + "> queue full waits <" + tmpStream.getQueueWaits() + ">");
+    }
+
+    asyncStreams.clear();
+  }
+
+  /**
+   * Sync a file to the disk, if we have been configured to sync on commit.
+   *
+   * @param fileName The name of the file to sync
+   */
+  private void syncFile(String fileName) {
+    if (syncOnCommit.equals(SYNC_NONE)) {
+      return;
+    }
+
+    try (FileChannel tmpChannel = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE)) {
+      tmpChannel.force(syncOnCommit.equals(SYNC_ALL));
+    } catch (IOException ex) {
+      getPipeLog().error("Error syncing output file <" + fileName + ">", ex);
+    }
+  }
+
+  /**
+   * Checks if an output file has no data in it. A compressed file always has
+   * the gzip framing in it, so we have to look inside.
+   *
+   * @param file The file to check
+   * @return true if there is no data in the file
+   */
+  private boolean isFileEmpty(File file) {
+    if (compressOutput) {
+      try {
+        return ParallelGzipOutputStream.isEmpty(file);
+      } catch (IOException ex) {
+        getPipeLog().error("Error checking output file <" + file.getPath() + ">", ex);
+        return false;
+      }
+    } else {
+      return (file.length() == 0);
+    }
+  }
+
   @Override
   public void closeStream(int transactionNumber) {
     // Nothing for the moment
@@ -444,6 +626,10 @@ public abstract class FlatFileOutputAdapter
 
       outputStreamOpen = false;
 
+      if (asyncWrite) {
+        closeAsyncStreams();
+      }
+
       if (ErrorFound) {
         ReturnCode = 1;
       } else {
@@ -469,7 +655,8 @@ public abstract class FlatFileOutputAdapter
       getPipeLog().debug("Deleted empty valid output file <" + getProcOutputName(transactionNumber) + ">");
       f.delete();
     } else {
-      // Rename the file
+      // Rename the file, once it is on the disk
+      syncFile(getProcOutputName(transactionNumber));
       f.renameTo(new File(getOutputName(transactionNumber)));
     }
 
@@ -482,7 +669,8 @@ public abstract class FlatFileOutputAdapter
         getPipeLog().debug("Deleted empty error output file <" + getProcErrorName(transactionNumber) + ">");
         f.delete();
       } else {
-        // Rename the file
+        // Rename the file, once it is on the disk
+        syncFile(getProcErrorName(transactionNumber));
         f.renameTo(new File(getErrorName(transactionNumber)));
       }
     }
@@ -525,11 +713,7 @@ public abstract class FlatFileOutputAdapter
    */
   public boolean getOutputFileEmpty(int transactionNumber) {
     File f = new File(getProcOutputName(transactionNumber));
-    if (f.length() == 0) {
-      return true;
-    } else {
-      return false;
-    }
+    return isFileEmpty(f);
   }
 
   /**
@@ -549,11 +733,7 @@ public abstract class FlatFileOutputAdapter
    */
   public boolean getErrorFileEmpty(int transactionNumber) {
     File f = new File(getProcErrorName(transactionNumber));
-    if (f.length() == 0) {
-      return true;
-    } else {
-      return false;
-    }
+    return isFileEmpty(f);
   }
 
   // -----------------------------------------------------------------------------
@@ -784,6 +964,136 @@ public abstract class FlatFileOutputAdapter
       }
     }
 
+    if (command.equalsIgnoreCase(SERVICE_COMPRESSION)) {
+      if (init) {
+        if (parameter.equalsIgnoreCase(COMPRESSION_GZIP)) {
+          compressOutput = true;
+        } else if (parameter.equalsIgnoreCase(COMPRESSION_NONE)) {
+          compressOutput = false;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_COMPRESSION + " <" + parameter + ">. Using <" + COMPRESSION_NONE + ">.");
+          compressOutput = false;
+        }
+        ResultCode = 0;
+      } else {
+        if (parameter.equals("")) {
+          return compressOutput ? COMPRESSION_GZIP : COMPRESSION_NONE;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (command.equalsIgnoreCase(SERVICE_COMPRESSION_THREADS)) {
+      if (init) {
+        try {
+          compressionThreads = Integer.parseInt(parameter);
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_COMPRESSION_THREADS + ". Passed value = <" + parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (parameter.equals("")) {
+          return Integer.toString(compressionThreads);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (command.equalsIgnoreCase(SERVICE_WRITER_MODE)) {
+      if (init) {
+        if (parameter.equalsIgnoreCase(WRITER_MODE_ASYNC)) {
+          asyncWrite = true;
+        } else if (parameter.equalsIgnoreCase(WRITER_MODE_BUFFERED)) {
+          asyncWrite = false;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_WRITER_MODE + " <" + parameter + ">. Using <" + WRITER_MODE_BUFFERED + ">.");
+          asyncWrite = false;
+        }
+        ResultCode = 0;
+      } else {
+        if (parameter.equals("")) {
+          return asyncWrite ? WRITER_MODE_ASYNC : WRITER_MODE_BUFFERED;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (command.equalsIgnoreCase(SERVICE_WRITER_QUEUE_SIZE)) {
+      if (init) {
+        try {
+          writerQueueSize = Math.max(1, Integer.parseInt(parameter));
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_WRITER_QUEUE_SIZE + ". Passed value = <" + parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (parameter.equals("")) {
+          return Integer.toString(writerQueueSize);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (command.equalsIgnoreCase(SERVICE_WRITER_BUFFER_SIZE)) {
+      if (init) {
+        try {
+          writerBufferSize = Math.max(1, Integer.parseInt(parameter));
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_WRITER_BUFFER_SIZE + ". Passed value = <" + parameter + ">");
+        }
+        ResultCode = 0;
+      } else {
+        if (parameter.equals("")) {
+          return Integer.toString(writerBufferSize);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (command.equalsIgnoreCase(SERVICE_SYNC_ON_COMMIT)) {
+      if (init) {
+        if (parameter.equalsIgnoreCase(SYNC_DATA)) {
+          syncOnCommit = SYNC_DATA;
+        } else if (parameter.equalsIgnoreCase(SYNC_ALL)) {
+          syncOnCommit = SYNC_ALL;
+        } else if (parameter.equalsIgnoreCase(SYNC_NONE)) {
+          syncOnCommit = SYNC_NONE;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_SYNC_ON_COMMIT + " <" + parameter + ">. Using <" + SYNC_NONE + ">.");
+          syncOnCommit = SYNC_NONE;
+        }
+        ResultCode = 0;
+      } else {
+        if (parameter.equals("")) {
+          return syncOnCommit;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    // Return the writer queue statistics: current depth, max depth, waits
+    if (command.equalsIgnoreCase(SERVICE_WRITER_QUEUE_STATS)) {
+      int tmpDepth = 0;
+      int tmpMaxDepth = writerQueueMaxDepth;
+      long tmpWaits = writerQueueWaits;
+
+      for (AsyncFileChannelOutputStream tmpStream : asyncStreams) {
+        tmpDepth += tmpStream.getQueueDepth();
+        tmpMaxDepth = Math.max(tmpMaxDepth, tmpStream.getMaxQueueDepth());
+        tmpWaits += tmpStream.getQueueWaits();
+      }
+
+      return Integer.toString(tmpDepth) + ":"
+              + Integer.toString(tmpMaxDepth) + ":"
+              + Long.toString(tmpWaits);
+    }
+
     if (command.equalsIgnoreCase(SERVICE_PROCPREFIX)) {
       if (init) {
         processingPrefix = parameter;
@@ -832,6 +1142,13 @@ public abstract class FlatFileOutputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_DEL_EMPTY_OUT_FILE, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_DEL_EMPTY_ERR_FILE, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PROCPREFIX, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMPRESSION, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMPRESSION_THREADS, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_WRITER_MODE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_WRITER_QUEUE_SIZE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_WRITER_BUFFER_SIZE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_SYNC_ON_COMMIT, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_WRITER_QUEUE_STATS, ClientManager.PARAM_DYNAMIC);
 
     //ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_OUT_FILE_NAME, false, false);
     //ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ERR_FILE_NAME, false, false);
@@ -971,6 +1288,90 @@ public abstract class FlatFileOutputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetOutputCompression()
+          throws InitializationException {
+    String tmpOutputCompression;
+    tmpOutputCompression = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_COMPRESSION,
+            COMPRESSION_NONE);
+
+    return tmpOutputCompression;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetCompressionThreads()
+          throws InitializationException {
+    String tmpCompressionThreads;
+    tmpCompressionThreads = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_COMPRESSION_THREADS,
+            Integer.toString(compressionThreads));
+
+    return tmpCompressionThreads;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetWriterMode()
+          throws InitializationException {
+    String tmpWriterMode;
+    tmpWriterMode = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_WRITER_MODE,
+            WRITER_MODE_BUFFERED);
+
+    return tmpWriterMode;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetWriterQueueSize()
+          throws InitializationException {
+    String tmpWriterQueueSize;
+    tmpWriterQueueSize = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_WRITER_QUEUE_SIZE,
+            Integer.toString(writerQueueSize));
+
+    return tmpWriterQueueSize;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetWriterBufferSize()
+          throws InitializationException {
+    String tmpWriterBufferSize;
+    tmpWriterBufferSize = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_WRITER_BUFFER_SIZE,
+            Integer.toString(writerBufferSize));
+
+    return tmpWriterBufferSize;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetSyncOnCommit()
+          throws InitializationException {
+    String tmpSyncOnCommit;
+    tmpSyncOnCommit = PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_SYNC_ON_COMMIT,
+            SYNC_NONE);
+
+    return tmpSyncOnCommit;
+  }
+
   /**
    * Checks the file name from the input parameters.
    *
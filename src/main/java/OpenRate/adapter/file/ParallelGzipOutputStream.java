@@ -0,0 +1,373 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a gzip stream, compressing blocks of the data in parallel. Each block
+ * is compressed into a gzip member of its own, and the members are written to
+ * the underlying stream in order, which gives a multi-member gzip file that
+ * gunzip and GZIPInputStream read as one stream.
+ *
+ * The blocks are compressed in the threads of the executor passed in, which can
+ * be shared between streams. Only a few blocks are waiting or being compressed
+ * at any time, so the memory used does not depend on the size of the file. If
+ * no executor is passed, the blocks are compressed in the writing thread.
+ *
+ * A stream which has had nothing written to it is closed with an empty member,
+ * so that the file is still valid gzip. Use isEmpty() to check if a compressed
+ * file has any data in it.
+ *
+ * @author ian
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream
+{
+  // The default size of the blocks
+  public static final int DEFAULT_BLOCK_SIZE = 1048576;
+
+  // The executor compressing the blocks, may be null
+  private final ExecutorService executor;
+
+  // The number of blocks which can be waiting or being compressed
+  private final int maxPending;
+
+  // The compressed members, in the order they are to be written
+  private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+  // The block we are filling
+  private final int blockSize;
+  private byte[] block;
+  private int blockCount = 0;
+
+  // Whether any member has been written yet
+  private boolean memberWritten = false;
+
+  private boolean closed = false;
+
+ /**
+  * Create a parallel gzip stream with the default block size.
+  *
+  * @param out The stream to write the compressed data to
+  * @param executor The executor to compress in, null to compress in the
+  * writing thread
+  * @param maxPending The number of blocks which can be in flight at once
+  */
+  public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int maxPending)
+  {
+    this(out, executor, maxPending, DEFAULT_BLOCK_SIZE);
+  }
+
+ /**
+  * Create a parallel gzip stream.
+  *
+  * @param out The stream to write the compressed data to
+  * @param executor The executor to compress in, null to compress in the
+  * writing thread
+  * @param maxPending The number of blocks which can be in flight at once
+  * @param blockSize The size of the blocks to compress
+  */
+  public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int maxPending, int blockSize)
+  {
+    super(out);
+    this.executor = executor;
+    this.maxPending = Math.max(1, maxPending);
+    this.blockSize = blockSize;
+    this.block = new byte[blockSize];
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    block[blockCount++] = (byte) b;
+    if (blockCount == blockSize)
+    {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    while (len > 0)
+    {
+      int tmpLength = Math.min(len, blockSize - blockCount);
+      System.arraycopy(b, off, block, blockCount, tmpLength);
+      blockCount += tmpLength;
+      off += tmpLength;
+      len -= tmpLength;
+
+      if (blockCount == blockSize)
+      {
+        submitBlock();
+      }
+    }
+  }
+
+ /**
+  * Compress the data written so far and write it out. Each flush ends a
+  * member, so flushing often makes the compression worse.
+  *
+  * @throws IOException
+  */
+  @Override
+  public void flush() throws IOException
+  {
+    if (blockCount > 0)
+    {
+      submitBlock();
+    }
+
+    while (!pending.isEmpty())
+    {
+      writeMember();
+    }
+
+    out.flush();
+  }
+
+ /**
+  * Write out the rest of the data and close the underlying stream.
+  *
+  * @throws IOException
+  */
+  @Override
+  public void close() throws IOException
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+
+    try
+    {
+      // an empty stream still needs one member to be valid gzip
+      if (blockCount > 0 || (!memberWritten && pending.isEmpty()))
+      {
+        submitBlock();
+      }
+
+      while (!pending.isEmpty())
+      {
+        writeMember();
+      }
+    }
+    finally
+    {
+      // don't leave compressions running for nothing
+      for (Future<byte[]> tmpMember : pending)
+      {
+        tmpMember.cancel(true);
+      }
+      pending.clear();
+
+      out.close();
+    }
+  }
+
+ /**
+  * Hand the current block over for compression, writing out the oldest
+  * member if too many are in flight.
+  *
+  * @throws IOException
+  */
+  private void submitBlock() throws IOException
+  {
+    final byte[] tmpBlock = block;
+    final int tmpCount = blockCount;
+
+    Callable<byte[]> tmpTask = new Callable<byte[]>()
+    {
+      @Override
+      public byte[] call() throws IOException
+      {
+        return compress(tmpBlock, tmpCount);
+      }
+    };
+
+    if (executor == null)
+    {
+      FutureTask<byte[]> tmpFuture = new FutureTask<>(tmpTask);
+      tmpFuture.run();
+      pending.add(tmpFuture);
+    }
+    else
+    {
+      pending.add(executor.submit(tmpTask));
+    }
+
+    block = new byte[blockSize];
+    blockCount = 0;
+
+    while (pending.size() > maxPending)
+    {
+      writeMember();
+    }
+  }
+
+ /**
+  * Wait for the oldest member to be compressed, and write it out.
+  *
+  * @throws IOException
+  */
+  private void writeMember() throws IOException
+  {
+    Future<byte[]> tmpMember = pending.poll();
+
+    try
+    {
+      out.write(tmpMember.get());
+      memberWritten = true;
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    }
+    catch (ExecutionException ex)
+    {
+      if (ex.getCause() instanceof IOException)
+      {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException("Error compressing block", ex.getCause());
+    }
+  }
+
+ /**
+  * Compress a block into a complete gzip member.
+  *
+  * @param data The data to compress
+  * @param length The number of bytes of the data to compress
+  * @return The gzip member
+  * @throws IOException
+  */
+  static byte[] compress(byte[] data, int length) throws IOException
+  {
+    ByteArrayOutputStream tmpMember = new ByteArrayOutputStream(Math.max(64, length / 4));
+    try (GZIPOutputStream tmpGzip = new GZIPOutputStream(tmpMember, 65536))
+    {
+      tmpGzip.write(data, 0, length);
+    }
+
+    return tmpMember.toByteArray();
+  }
+
+ /**
+  * Check if a gzip file has any data in it. A file with nothing in it at all
+  * is taken as empty too.
+  *
+  * @param file The file to check
+  * @return true if there is no data in the file
+  * @throws IOException
+  */
+  public static boolean isEmpty(File file) throws IOException
+  {
+    if (file.length() == 0)
+    {
+      return true;
+    }
+
+    try (GZIPInputStream tmpStream = new GZIPInputStream(new FileInputStream(file)))
+    {
+      return tmpStream.read() == -1;
+    }
+  }
+
+ /**
+  * Check if a file starts with the gzip magic number.
+  *
+  * @param fileName The name of the file to check
+  * @return true if the file is gzip compressed
+  * @throws IOException
+  */
+  public static boolean isGzipFile(String fileName) throws IOException
+  {
+    byte[] tmpMagic = new byte[2];
+    int tmpRead = 0;
+
+    try (FileInputStream tmpStream = new FileInputStream(fileName))
+    {
+      while (tmpRead < 2)
+      {
+        int tmpCount = tmpStream.read(tmpMagic, tmpRead, 2 - tmpRead);
+        if (tmpCount < 0)
+        {
+          return false;
+        }
+        tmpRead += tmpCount;
+      }
+    }
+
+    return Arrays.equals(tmpMagic, new byte[]{(byte) 0x1f, (byte) 0x8b});
+  }
+}
@@ -0,0 +1,218 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the open writers of a set of output files, keeping at most a given
+ * number of them open. When another file has to be opened, the least recently
+ * used writer is flushed and closed. If the file of a closed writer is written
+ * to again, it is opened again in append mode.
+ *
+ * The pool is not thread safe, it is meant to be used by the output adapter
+ * thread only.
+ *
+ * @author ian
+ */
+public class WriterPool
+{
+ /**
+  * Opens the writers for the pool.
+  */
+  public interface WriterFactory
+  {
+   /**
+    * Open a writer on a file.
+    *
+    * @param fileName The name of the file to open
+    * @param append false if the file is new, true if it was written before
+    * and is to be appended to
+    * @return The writer
+    * @throws IOException
+    */
+    BufferedWriter openWriter(String fileName, boolean append) throws IOException;
+  }
+
+  // The maximum number of open writers, 0 for no limit
+  private final int maxOpen;
+
+  // Opens the writers
+  private final WriterFactory factory;
+
+  // The open writers, least recently used first
+  private final LinkedHashMap<String, BufferedWriter> openWriters = new LinkedHashMap<>(16, 0.75f, true);
+
+  // The files which have been opened and not yet released
+  private final HashSet<String> knownFiles = new HashSet<>();
+
+  // Statistics
+  private long evictions = 0;
+  private long reopens = 0;
+
+ /**
+  * Create a writer pool.
+  *
+  * @param maxOpen The maximum number of open writers, 0 for no limit
+  * @param factory Opens the writers
+  */
+  public WriterPool(int maxOpen, WriterFactory factory)
+  {
+    this.maxOpen = Math.max(0, maxOpen);
+    this.factory = factory;
+  }
+
+ /**
+  * Get the writer for a file, opening it if it is not open. The first time a
+  * file is opened it is created, after that it is appended to.
+  *
+  * @param fileName The name of the file
+  * @return The writer
+  * @throws IOException
+  */
+  public BufferedWriter getWriter(String fileName) throws IOException
+  {
+    BufferedWriter tmpWriter = openWriters.get(fileName);
+
+    if (tmpWriter == null)
+    {
+      if (maxOpen > 0 && openWriters.size() >= maxOpen)
+      {
+        evictEldest();
+      }
+
+      boolean append = knownFiles.contains(fileName);
+      if (append)
+      {
+        reopens++;
+      }
+
+      tmpWriter = factory.openWriter(fileName, append);
+      openWriters.put(fileName, tmpWriter);
+      knownFiles.add(fileName);
+    }
+
+    return tmpWriter;
+  }
+
+ /**
+  * Close the writer of a file if it is open, and forget the file. Writing to
+  * the file after this creates it again.
+  *
+  * @param fileName The name of the file
+  * @throws IOException
+  */
+  public void release(String fileName) throws IOException
+  {
+    knownFiles.remove(fileName);
+    BufferedWriter tmpWriter = openWriters.remove(fileName);
+
+    if (tmpWriter != null)
+    {
+      tmpWriter.close();
+    }
+  }
+
+ /**
+  * Close the least recently used writer.
+  *
+  * @throws IOException
+  */
+  private void evictEldest() throws IOException
+  {
+    Iterator<Map.Entry<String, BufferedWriter>> tmpIter = openWriters.entrySet().iterator();
+    BufferedWriter tmpWriter = tmpIter.next().getValue();
+    tmpIter.remove();
+    evictions++;
+
+    // close flushes the writer
+    tmpWriter.close();
+  }
+
+ /**
+  * Get the number of open writers.
+  *
+  * @return The number of open writers
+  */
+  public int getOpenCount()
+  {
+    return openWriters.size();
+  }
+
+ /**
+  * Get the number of writers which have been closed to make room.
+  *
+  * @return The number of evictions
+  */
+  public long getEvictions()
+  {
+    return evictions;
+  }
+
+ /**
+  * Get the number of files which have been opened again after an eviction.
+  *
+  * @return The number of reopens
+  */
+  public long getReopens()
+  {
+    return reopens;
+  }
+}
@@ -63,6 +63,7 @@ import OpenRate.exception.ProcessingException;
 import OpenRate.logging.LogUtil;
 import OpenRate.parser.IXmlParser;
 import OpenRate.parser.XMLParser;
+import OpenRate.parser.XMLRecordReader;
 import OpenRate.record.HeaderRecord;
 import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
@@ -72,6 +73,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import javax.xml.stream.XMLStreamException;
 import org.apache.oro.io.GlobFilenameFilter;
 import org.apache.oro.text.GlobCompiler;
 
@@ -95,6 +97,15 @@ import org.apache.oro.text.GlobCompiler;
  *
  * uses the tag "customer" to define the limits of the record.
  *
+ * Two parsers are available, selected with the "ParserType" property. The
+ * default "SAX" parser splits the stream into records line by line, and then
+ * parses each record. The "StAX" parser pulls records straight out of the
+ * stream one element at a time, so it does not need the line breaks, holds only
+ * one record in memory, and skips any elements which do not lead to one of the
+ * paths returned by getWantedPaths(). In both cases the values of the record
+ * are collected through setAttribute() and the record is created by
+ * createDataRecord().
+ *
  * afzaal 07-11-2008 initial version
  */
 public abstract class XMLFileInputAdapter
@@ -213,6 +224,17 @@ public abstract class XMLFileInputAdapter
    */
   private BufferedReader reader;
 
+  // The parser types we can use
+  private static final String PARSER_SAX = "SAX";
+  private static final String PARSER_STAX = "StAX";
+
+  // If true, we pull records using StAX instead of splitting lines for SAX
+  private boolean useStAX = false;
+
+  // The stream and record reader used in StAX mode
+  private InputStream xmlStream;
+  private XMLRecordReader recordReader;
+
   // List of Services that this Client supports
   private static final String SERVICE_I_PATH = "InputFilePath";
   private static final String SERVICE_D_PATH = "DoneFilePath";
@@ -224,6 +246,7 @@ public abstract class XMLFileInputAdapter
   private static final String SERVICE_D_SUFFIX = "DoneFileSuffix";
   private static final String SERVICE_E_SUFFIX = "ErrFileSuffix";
   private static final String SERVICE_PROCPREFIX = "ProcessingPrefix";
+  private static final String SERVICE_PARSER_TYPE = "ParserType";
 
   // This is used to hold the calculated file names
   private class TransControlStructure {
@@ -292,6 +315,8 @@ public abstract class XMLFileInputAdapter
     processControlEvent(SERVICE_E_SUFFIX, true, ConfigHelper);
     ConfigHelper = initGetProcPrefix();
     processControlEvent(SERVICE_PROCPREFIX, true, ConfigHelper);
+    ConfigHelper = initGetParserType();
+    processControlEvent(SERVICE_PARSER_TYPE, true, ConfigHelper);
 
     // Check the file name scanning variables, throw initialisation exception
     // if something is wrong.
@@ -353,7 +378,12 @@ public abstract class XMLFileInputAdapter
         // Now that we have the file name, try to open it from
         // the renamed file provided by assignInput
         try {
-          reader = new BufferedReader(new FileReader(getProcName(transactionNumber)), BUF_SIZE);
+          if (useStAX) {
+            xmlStream = new BufferedInputStream(new FileInputStream(getProcName(transactionNumber)), BUF_SIZE);
+            recordReader = new XMLRecordReader(xmlStream, recordIdentifier, getWantedPaths());
+          } else {
+            reader = new BufferedReader(new FileReader(getProcName(transactionNumber)), BUF_SIZE);
+          }
           InputStreamOpen = true;
           InputRecordNumber = 0;
 
@@ -380,15 +410,22 @@ public abstract class XMLFileInputAdapter
                   + getProcName(transactionNumber) + ">",
                   exFileNotFound,
                   getSymbolicName());
+        } catch (XMLStreamException exStream) {
+          message = "Application is not able to open XML stream in file <"
+                  + getProcName(transactionNumber) + ">";
+          getPipeLog().error(message);
+          throw new ProcessingException(message, exStream, getSymbolicName());
         }
       }
 
       // Continue with the open file
       try {
+        // one parser serves the whole batch
+        parser = new XMLParser(this);
+
         // read from the file and prepare the batch
-        while ((reader.ready()) & (ThisBatchCounter < batchSize)) {
+        while ((!useStAX) && (reader.ready()) & (ThisBatchCounter < batchSize)) {
           tmpFileRecord = new StringBuilder();
-          parser = new XMLParser(this);
           xmlValues = new HashMap<>();
 
           while (reader.ready()) {
@@ -428,17 +465,30 @@ public abstract class XMLFileInputAdapter
           }
 
           ThisBatchCounter++;
-          //tmpDataRecord = new XMLRecord(tmpFileRecord.toString(), xmlValues, InputRecordNumber);
+          InputRecordNumber++;
+          addDataRecord(Outbatch);
+        }
 
-          // Call the user layer for any processing that needs to be done
-          //batchRecord = procValidRecord((IRecord) tmpDataRecord);
-          // Add the prepared record to the batch, because of record compression
-          // we may receive a null here. If we do, don't bother adding it
-          //if (batchRecord != null)
-          {
-            InputRecordNumber++;
-            //Outbatch.add(batchRecord);
+        // in StAX mode, pull the records straight from the stream
+        boolean streamEnded = false;
+        while (useStAX && (ThisBatchCounter < batchSize)) {
+          xmlValues = new HashMap<>();
+
+          try {
+            if (recordReader.nextRecord(this) == false) {
+              streamEnded = true;
+              break;
+            }
+          } catch (XMLStreamException exRecordError) {
+            message = "Application is not able to parse the record : '"
+                    + getProcName(transactionNumber) + "' ";
+            getPipeLog().error(message);
+            throw new ProcessingException(message, exRecordError, getSymbolicName());
           }
+
+          ThisBatchCounter++;
+          InputRecordNumber++;
+          addDataRecord(Outbatch);
         }
 
         // see if we have to abort
@@ -452,7 +502,7 @@ public abstract class XMLFileInputAdapter
         updateRecordCount(transactionNumber, InputRecordNumber);
 
         // see the reason that we closed
-        if (reader.ready() == false) {
+        if (useStAX ? streamEnded : (reader.ready() == false)) {
           // we have finished
           InputStreamOpen = false;
 
@@ -519,7 +569,12 @@ public abstract class XMLFileInputAdapter
   public void closeStream(int TransactionNumber)
           throws ProcessingException {
     try {
-      reader.close();
+      if (useStAX) {
+        recordReader.close();
+        xmlStream.close();
+      } else {
+        reader.close();
+      }
     } catch (IOException exFileNotFound) {
       getPipeLog().error("Application is not able to close file : '" + getProcName(TransactionNumber)
               + "' ");
@@ -530,6 +585,54 @@ public abstract class XMLFileInputAdapter
     }
   }
 
+  /**
+   * Create the data record from the values collected for one XML record. The
+   * values are keyed by their element path, for example
+   * "record.account.number". Override this to create the records for the
+   * pipeline.
+   *
+   * @param recordValues The values of the record
+   * @return The record, or null if no record should be created
+   */
+  protected IRecord createDataRecord(HashMap<String, String> recordValues) {
+    // default - do nothing
+    return null;
+  }
+
+  /**
+   * Get the element paths which are needed in StAX mode. Elements which do not
+   * lead to one of these paths are skipped without being read. Override this
+   * to skip the parts of the XML that are not used.
+   *
+   * @return The paths needed, or null if all paths are needed
+   */
+  protected Collection<String> getWantedPaths() {
+    // default - all paths
+    return null;
+  }
+
+  /**
+   * Create the data record for the values we have just collected, pass it to
+   * the user layer and add it to the batch.
+   *
+   * @param Outbatch The batch to add the record to
+   * @throws ProcessingException
+   */
+  private void addDataRecord(Collection<IRecord> Outbatch) throws ProcessingException {
+    IRecord batchRecord = createDataRecord(xmlValues);
+
+    if (batchRecord != null) {
+      // Call the user layer for any processing that needs to be done
+      batchRecord = procValidRecord(batchRecord);
+
+      // Add the prepared record to the batch, because of record compression
+      // we may receive a null here. If we do, don't bother adding it
+      if (batchRecord != null) {
+        Outbatch.add(batchRecord);
+      }
+    }
+  }
+
   /**
    * Provides reader created during init()
    *
@@ -740,6 +843,26 @@ public abstract class XMLFileInputAdapter
       }
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_PARSER_TYPE)) {
+      if (Init) {
+        if (Parameter.equalsIgnoreCase(PARSER_STAX)) {
+          useStAX = true;
+        } else if (Parameter.equalsIgnoreCase(PARSER_SAX)) {
+          useStAX = false;
+        } else {
+          getPipeLog().error("Unknown " + SERVICE_PARSER_TYPE + " <" + Parameter + ">. Using <" + PARSER_SAX + ">.");
+          useStAX = false;
+        }
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return useStAX ? PARSER_STAX : PARSER_SAX;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
     if (ResultCode == 0) {
       getPipeLog().debug(LogUtil.LogECIPipeCommand(getSymbolicName(), getPipeName(), Command, Parameter));
 
@@ -773,6 +896,7 @@ public abstract class XMLFileInputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_D_SUFFIX, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_E_SUFFIX, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PROCPREFIX, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PARSER_TYPE, ClientManager.PARAM_NONE);
   }
 
   // -----------------------------------------------------------------------------
@@ -900,6 +1024,20 @@ public abstract class XMLFileInputAdapter
     return tmpProcPrefix;
   }
 
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetParserType()
+          throws InitializationException {
+    String tmpParserType;
+    tmpParserType = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_PARSER_TYPE,
+            PARSER_SAX);
+
+    return tmpParserType;
+  }
+
   /**
    * Checks the file name from the input parameters. Refactored from init() into
    * a method of its own so that derived classes can still reuse most of the
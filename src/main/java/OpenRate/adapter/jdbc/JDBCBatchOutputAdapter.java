@@ -54,14 +54,21 @@
  */
 package OpenRate.adapter.jdbc;
 
+import OpenRate.CommonConfig;
+import OpenRate.configurationmanager.ClientManager;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
+import OpenRate.logging.LogUtil;
 import OpenRate.record.DBRecord;
 import OpenRate.record.IRecord;
+import OpenRate.utils.PropertyUtils;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Please <a target='new'
@@ -73,11 +80,66 @@ import java.util.Iterator;
  *
  * This is a higher performance version of the JDBC output adapter, which
  * performs batch commits. The rest of the operation is the same as the parent
- * version JDBC output adapter, "JDBCOutputAdapter".
+ * version JDBC output adapter, "JDBCOutputAdapter".<br>
+ *
+ * The inserts are collected into JDBC batches and executed on a worker thread,
+ * so that the pipeline can prepare the next records while the database works.
+ * The following properties tune the writing:
+ * <ul>
+ * <li>"ConnectionCount": the number of connections to insert on in parallel
+ * (default 1). All of the connections are committed and rolled back together.</li>
+ * <li>"InsertBatchSize": the number of rows per JDBC batch (default the
+ * pipeline batch size).</li>
+ * <li>"TargetBatchMillis": if set, the batch size is adapted so that one batch
+ * takes about this long, up to "MaxInsertBatchSize" (default 10 times the
+ * InsertBatchSize).</li>
+ * <li>"MultiRowInsert": if set above 1, an "INSERT ... VALUES (...)" statement
+ * is rewritten to insert this many rows per statement. Drivers which can do
+ * this themselves (for example MySQL "rewriteBatchedStatements=true" or
+ * PostgreSQL "reWriteBatchedInserts=true" on the data source URL) can be left
+ * to do so instead.</li>
+ * <li>"CommitMode": "Block" (the default) commits at the end of every
+ * pipeline block, "Transaction" commits only when the transaction commits, so
+ * that a failed transaction leaves nothing behind even without a rollback
+ * statement.</li>
+ * </ul>
  */
 public abstract class JDBCBatchOutputAdapter
         extends JDBCOutputAdapter {
 
+  // List of Services that this Client supports
+  private final static String SERVICE_CONNECTION_COUNT = "ConnectionCount";
+  private final static String SERVICE_INSERT_BATCH_SIZE = "InsertBatchSize";
+  private final static String SERVICE_MAX_INSERT_BATCH_SIZE = "MaxInsertBatchSize";
+  private final static String SERVICE_TARGET_BATCH_MILLIS = "TargetBatchMillis";
+  private final static String SERVICE_MULTI_ROW_INSERT = "MultiRowInsert";
+  private final static String SERVICE_COMMIT_MODE = "CommitMode";
+  private final static String SERVICE_BATCH_STATS = "BatchStats";
+
+  // Commit modes
+  private final static String COMMIT_MODE_BLOCK = "Block";
+  private final static String COMMIT_MODE_TRANSACTION = "Transaction";
+
+  // The number of connections we write on
+  private int connectionCount = 1;
+
+  // Batch sizing, 0 means use the default
+  private int insertBatchSize = 0;
+  private int maxInsertBatchSize = 0;
+  private long targetBatchMillis = 0;
+
+  // The rows per rewritten insert statement, 0 for no rewriting
+  private int multiRowInsert = 0;
+
+  // If we commit only with the transaction, rather than once per block
+  private boolean commitPerTransaction = false;
+
+  // The writer for the current transaction
+  private ParallelBatchWriter batchWriter = null;
+
+  // The connections we opened in addition to the parent's connection
+  private final List<Connection> extraConnections = new ArrayList<>();
+
   /**
    * Default constructor
    */
@@ -99,9 +161,48 @@ public abstract class JDBCBatchOutputAdapter
   @Override
   public void init(String PipelineName, String ModuleName)
           throws InitializationException {
+    String ConfigHelper;
+
     // perform the initialisation
     super.init(PipelineName, ModuleName);
 
+    ConfigHelper = initGetConnectionCount();
+    processControlEvent(SERVICE_CONNECTION_COUNT, true, ConfigHelper);
+    ConfigHelper = initGetInsertBatchSize();
+    processControlEvent(SERVICE_INSERT_BATCH_SIZE, true, ConfigHelper);
+    ConfigHelper = initGetMaxInsertBatchSize();
+    processControlEvent(SERVICE_MAX_INSERT_BATCH_SIZE, true, ConfigHelper);
+    ConfigHelper = initGetTargetBatchMillis();
+    processControlEvent(SERVICE_TARGET_BATCH_MILLIS, true, ConfigHelper);
+    ConfigHelper = initGetMultiRowInsert();
+    processControlEvent(SERVICE_MULTI_ROW_INSERT, true, ConfigHelper);
+    ConfigHelper = initGetCommitMode();
+    if (processControlEvent(SERVICE_COMMIT_MODE, true, ConfigHelper).equals("OK") == false) {
+      message = "Invalid value for " + SERVICE_COMMIT_MODE + " <" + ConfigHelper + "> in adapter <" + getSymbolicName() + ">. Use <" + COMMIT_MODE_BLOCK + "> or <" + COMMIT_MODE_TRANSACTION + ">.";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (connectionCount < 1) {
+      message = "Output <" + getSymbolicName() + "> " + SERVICE_CONNECTION_COUNT + " must be at least 1.";
+      getPipeLog().fatal(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
+    if (insertBatchSize <= 0) {
+      insertBatchSize = getBatchSize();
+    }
+
+    if (maxInsertBatchSize <= 0) {
+      maxInsertBatchSize = insertBatchSize * 10;
+    }
+
+    if (multiRowInsert > 1 && ParallelBatchWriter.getMultiRowInsert(insertQuery, multiRowInsert) == null) {
+      message = "Output <" + getSymbolicName() + "> cannot rewrite insert statement <" + insertQuery + "> as a multi-row insert. Using single row inserts.";
+      getPipeLog().warning(message);
+      multiRowInsert = 0;
+    }
+
     try {
       // see if we can do batch commits
       JDBCcon = DBUtil.getConnection(dataSourceName);
@@ -132,15 +233,38 @@ public abstract class JDBCBatchOutputAdapter
     // perform any parent processing first
     super.procHeader(r);
 
+    // the parent could not get going
+    if (JDBCcon == null || getTransactionAborted(getTransactionNumber())) {
+      return r;
+    }
+
     try {
-      // set the connection to use controlled commits
-      JDBCcon.setAutoCommit(false);
+      // the parent's connection is the first one, so that the init, commit
+      // and rollback statements share its transaction
+      List<Connection> connections = new ArrayList<>();
+      connections.add(JDBCcon);
+      for (int i = 1; i < connectionCount; i++) {
+        Connection extraConnection = DBUtil.getConnection(dataSourceName);
+        extraConnections.add(extraConnection);
+        connections.add(extraConnection);
+      }
+
+      // The writer sets the connections to use controlled commits
+      batchWriter = new ParallelBatchWriter(connections, insertQuery, multiRowInsert,
+              insertBatchSize, maxInsertBatchSize, targetBatchMillis,
+              getPipeName() + "-" + getSymbolicName() + "-Writer");
     } catch (SQLException Sex) {
       // Not good. Abort the transaction
-      message = "Error changing autocommit. message <" + Sex.getMessage() + "> in adapter <" + getSymbolicName() + ">. Aborting transaction.";
+      message = "Error preparing batch writer. message <" + Sex.getMessage() + "> in adapter <" + getSymbolicName() + ">. Aborting transaction.";
       getPipeLog().fatal(message);
       getExceptionHandler().reportException(new ProcessingException(Sex, getSymbolicName()));
       this.setTransactionAbort(getTransactionNumber());
+    } catch (InitializationException ex) {
+      // Not good. Abort the transaction
+      message = "Error opening batch connection. message <" + ex.getMessage() + "> in adapter <" + getSymbolicName() + ">. Aborting transaction.";
+      getPipeLog().fatal(message);
+      getExceptionHandler().reportException(new ProcessingException(ex, getSymbolicName()));
+      this.setTransactionAbort(getTransactionNumber());
     }
 
     return r;
@@ -155,10 +279,7 @@ public abstract class JDBCBatchOutputAdapter
    */
   @Override
   public IRecord prepValidRecord(IRecord r) throws ProcessingException {
-    int i;
     Collection<IRecord> outRecCol = null;
-    DBRecord outRec;
-    Iterator<IRecord> outRecIter;
 
     try {
       outRecCol = procValidRecord(r);
@@ -190,88 +311,7 @@ public abstract class JDBCBatchOutputAdapter
 
     // Null return means "do not bother to process"
     if (outRecCol != null) {
-      outRecIter = outRecCol.iterator();
-
-      while (outRecIter.hasNext()) {
-        outRec = (DBRecord) outRecIter.next();
-
-        try {
-          // Prepare the parameter values
-          stmtInsertQuery.clearParameters();
-
-          for (i = 0; i < outRec.getOutputColumnCount(); i++) {
-            if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_STRING) {
-              // String value
-              stmtInsertQuery.setString(i + 1, outRec.getOutputColumnValueString(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_INTEGER) {
-              // Integer value
-              stmtInsertQuery.setInt(i + 1, outRec.getOutputColumnValueInt(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_DOUBLE) {
-              // Double value
-              stmtInsertQuery.setDouble(i + 1, outRec.getOutputColumnValueDouble(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_LONG) {
-              // Long value
-              stmtInsertQuery.setLong(i + 1, outRec.getOutputColumnValueLong(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_DATE) {
-              // Date value
-              long DateValue = outRec.getOutputColumnValueLong(i);
-              java.sql.Date DateToSet;
-              DateToSet = new java.sql.Date(DateValue);
-              stmtInsertQuery.setDate(i + 1, DateToSet);
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_BOOL) {
-              // Boolean value
-              boolean value;
-              value = outRec.getOutputColumnValueString(i).equals("1");
-              stmtInsertQuery.setBoolean(i + 1, value);
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_TIME) {
-              // Time value
-              long DateValue = outRec.getOutputColumnValueLong(i);
-              java.sql.Time TimeToSet;
-              TimeToSet = new java.sql.Time(DateValue);
-              stmtInsertQuery.setTime(i + 1, TimeToSet);
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_BINARY) {
-              // Binary value
-              byte[] byteArray = outRec.getOutputColumnValueBytes(i);
-              stmtInsertQuery.setBytes(i + 1, byteArray);
-            }
-          }
-
-          stmtInsertQuery.addBatch();
-        } catch (SQLException Sex) {
-          // Not good. Abort the transaction
-          message = "SQL Exception inserting valid record in module <"
-                  + getSymbolicName() + ">. message <" + Sex.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        } catch (ArrayIndexOutOfBoundsException aiex) {
-          // Not good. Abort the transaction
-          message = "Column Index inserting valid record in module <"
-                  + getSymbolicName() + ">. message <" + aiex.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, aiex, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        } catch (NumberFormatException nfe) {
-          // Not good. Abort the transaction
-          // Not good. Abort the transaction
-          message = "Number format inserting valid record in module <"
-                  + getSymbolicName() + ">. message <" + nfe.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, nfe, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        } catch (Exception ex) {
-          // Not good. Abort the transaction
-          message = "Unknown Exception inserting valid record in module <"
-                  + getSymbolicName() + ">. message <" + ex.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        }
-      }
+      addRecords(outRecCol, "valid");
     }
 
     return r;
@@ -286,10 +326,7 @@ public abstract class JDBCBatchOutputAdapter
    */
   @Override
   public IRecord prepErrorRecord(IRecord r) throws ProcessingException {
-    int i;
     Collection<IRecord> outRecCol = null;
-    DBRecord outRec;
-    Iterator<IRecord> outRecIter;
 
     try {
       outRecCol = procErrorRecord(r);
@@ -321,90 +358,110 @@ public abstract class JDBCBatchOutputAdapter
 
     // Null return means "do not bother to process"
     if (outRecCol != null) {
-      outRecIter = outRecCol.iterator();
+      addRecords(outRecCol, "error");
+    }
 
-      while (outRecIter.hasNext()) {
-        outRec = (DBRecord) outRecIter.next();
+    return r;
+  }
 
-        try {
-          // Prepare the parameter values
-          stmtInsertQuery.clearParameters();
-
-          for (i = 0; i < outRec.getOutputColumnCount(); i++) {
-            if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_STRING) {
-              // String value
-              stmtInsertQuery.setString(i + 1, outRec.getOutputColumnValueString(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_INTEGER) {
-              // Integer value
-              stmtInsertQuery.setInt(i + 1, outRec.getOutputColumnValueInt(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_DOUBLE) {
-              // Double value
-              stmtInsertQuery.setDouble(i + 1, outRec.getOutputColumnValueDouble(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_LONG) {
-              // Long value
-              stmtInsertQuery.setLong(i + 1, outRec.getOutputColumnValueLong(i));
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_DATE) {
-              // Date value
-              long DateValue = outRec.getOutputColumnValueLong(i);
-              java.sql.Date DateToSet;
-              DateToSet = new java.sql.Date(DateValue);
-              stmtInsertQuery.setDate(i + 1, DateToSet);
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_BOOL) {
-              // Boolean value
-              boolean value;
-              value = outRec.getOutputColumnValueString(i).equals("1");
-              stmtInsertQuery.setBoolean(i + 1, value);
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_TIME) {
-              // Time value
-              long DateValue = outRec.getOutputColumnValueLong(i);
-              java.sql.Time TimeToSet;
-              TimeToSet = new java.sql.Time(DateValue);
-              stmtInsertQuery.setTime(i + 1, TimeToSet);
-            } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_BINARY) {
-              // Binary value
-              byte[] byteArray = outRec.getOutputColumnValueBytes(i);
-              stmtInsertQuery.setBytes(i + 1, byteArray);
-            }
-          }
-
-          stmtInsertQuery.addBatch();
-        } catch (SQLException Sex) {
-          // Not good. Abort the transaction
-          message = "SQL Exception inserting error record in module <"
-                  + getSymbolicName() + ">. message <" + Sex.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        } catch (ArrayIndexOutOfBoundsException aiex) {
-          // Not good. Abort the transaction
-          message = "Column Index inserting error record in module <"
-                  + getSymbolicName() + ">. message <" + aiex.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, aiex, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        } catch (NumberFormatException nfe) {
-          // Not good. Abort the transaction
-          message = "Number format inserting error record in module <"
-                  + getSymbolicName() + ">. message <" + nfe.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, nfe, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        } catch (Exception ex) {
-          // Not good. Abort the transaction
-          message = "Unknown Exception inserting error record in module <"
-                  + getSymbolicName() + ">. message <" + ex.getMessage()
-                  + ">. Aborting transaction.";
-          getPipeLog().fatal(message);
-          getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
-          setTransactionAbort(getTransactionNumber());
-        }
+  /**
+   * Add the output records to the batch writer.
+   *
+   * @param outRecCol The records to write
+   * @param recordKind "valid" or "error", for messages
+   */
+  private void addRecords(Collection<IRecord> outRecCol, String recordKind) {
+    DBRecord outRec;
+    Iterator<IRecord> outRecIter;
+
+    // The writer could not be created, and the transaction is aborting
+    if (batchWriter == null) {
+      return;
+    }
+
+    outRecIter = outRecCol.iterator();
+
+    while (outRecIter.hasNext()) {
+      outRec = (DBRecord) outRecIter.next();
+
+      try {
+        batchWriter.addRow(getColumnValues(outRec));
+      } catch (SQLException Sex) {
+        // Not good. Abort the transaction
+        message = "SQL Exception inserting " + recordKind + " record in module <"
+                + getSymbolicName() + ">. message <" + Sex.getMessage()
+                + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
+        setTransactionAbort(getTransactionNumber());
+        return;
+      } catch (ArrayIndexOutOfBoundsException aiex) {
+        // Not good. Abort the transaction
+        message = "Column Index inserting " + recordKind + " record in module <"
+                + getSymbolicName() + ">. message <" + aiex.getMessage()
+                + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, aiex, getSymbolicName()));
+        setTransactionAbort(getTransactionNumber());
+      } catch (NumberFormatException nfe) {
+        // Not good. Abort the transaction
+        message = "Number format inserting " + recordKind + " record in module <"
+                + getSymbolicName() + ">. message <" + nfe.getMessage()
+                + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, nfe, getSymbolicName()));
+        setTransactionAbort(getTransactionNumber());
+      } catch (Exception ex) {
+        // Not good. Abort the transaction
+        message = "Unknown Exception inserting " + recordKind + " record in module <"
+                + getSymbolicName() + ">. message <" + ex.getMessage()
+                + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
+        setTransactionAbort(getTransactionNumber());
       }
     }
+  }
 
-    return r;
+  /**
+   * Get the values of the output columns of a record, as the Java types that
+   * are bound to the insert statement.
+   *
+   * @param outRec The record to get the values of
+   * @return The column values
+   */
+  static Object[] getColumnValues(DBRecord outRec) {
+    Object[] values = new Object[outRec.getOutputColumnCount()];
+
+    for (int i = 0; i < values.length; i++) {
+      if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_STRING) {
+        // String value
+        values[i] = outRec.getOutputColumnValueString(i);
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_INTEGER) {
+        // Integer value
+        values[i] = outRec.getOutputColumnValueInt(i);
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_DOUBLE) {
+        // Double value
+        values[i] = outRec.getOutputColumnValueDouble(i);
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_LONG) {
+        // Long value
+        values[i] = outRec.getOutputColumnValueLong(i);
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_DATE) {
+        // Date value
+        values[i] = new java.sql.Date(outRec.getOutputColumnValueLong(i));
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_BOOL) {
+        // Boolean value
+        values[i] = outRec.getOutputColumnValueString(i).equals("1");
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_TIME) {
+        // Time value
+        values[i] = new java.sql.Time(outRec.getOutputColumnValueLong(i));
+      } else if (outRec.getOutputColumnType(i) == DBRecord.COL_TYPE_BINARY) {
+        // Binary value
+        values[i] = outRec.getOutputColumnValueBytes(i);
+      }
+    }
+
+    return values;
   }
 
   /**
@@ -420,32 +477,11 @@ public abstract class JDBCBatchOutputAdapter
     // block flush at the end of the transaction. We want to flush at the
     // block boundaries, but not at the end of the stream, because flushStream()
     // already did that. We make this decision based on the fact that there
-    // is a transaction open or not
-    if (getTransactionNumber() > 0) {
+    // is a transaction open or not. If we commit with the transaction, the
+    // writer just carries on with the next block.
+    if (getTransactionNumber() > 0 && commitPerTransaction == false) {
       // We are still in a transaction - do the flush
-      try {
-        // perform the batch commit once per block
-        stmtInsertQuery.executeBatch();
-
-        // perform a commit once per block
-        getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
-        JDBCcon.commit();
-      } catch (SQLException Sex) {
-        message = "Error performing batch commit in module <" + getSymbolicName()
-                + ">. message <" + Sex.getMessage() + ">. Aborting transaction.";
-        getPipeLog().fatal(message);
-        String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
-        getPipeLog().fatal(Nextmessage);
-        this.setTransactionAbort(getTransactionNumber());
-        throw new ProcessingException(message, getSymbolicName());
-      } catch (Exception ex) {
-        // Not good. Abort the transaction
-        message = "Error performing batch commit in module <" + getSymbolicName()
-                + ">. message <" + ex.getMessage() + ">. Aborting transaction.";
-        getPipeLog().fatal(message);
-        getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
-        setTransactionAbort(getTransactionNumber());
-      }
+      writeBatches(true);
     }
 
     super.flushBlock();
@@ -461,20 +497,40 @@ public abstract class JDBCBatchOutputAdapter
    */
   @Override
   public void flushStream() throws ProcessingException {
-    // We are still in a transaction - do the flush
-    try {
-      // perform the batch commit once per block
-      stmtInsertQuery.executeBatch();
+    // Write everything that is left, so that any error is seen before the
+    // transaction is flushed
+    writeBatches(commitPerTransaction == false);
 
-      // perform a commit once per block
-      getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
-      JDBCcon.commit();
+    super.flushStream();
+  }
+
+  /**
+   * Write out all of the batched rows, and optionally commit them.
+   *
+   * @param commit true if we should commit after writing
+   * @throws ProcessingException
+   */
+  private void writeBatches(boolean commit) throws ProcessingException {
+    if (batchWriter == null) {
+      return;
+    }
+
+    try {
+      if (commit) {
+        // perform a commit on all connections
+        getPipeLog().debug("Adapter <" + getSymbolicName() + "> performing commit.");
+        batchWriter.commit();
+      } else {
+        batchWriter.flush();
+      }
     } catch (SQLException Sex) {
       message = "Error performing batch commit in module <" + getSymbolicName()
               + ">. message <" + Sex.getMessage() + ">. Aborting transaction.";
       getPipeLog().fatal(message);
-      String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
-      getPipeLog().fatal(Nextmessage);
+      if (Sex.getNextException() != null) {
+        String Nextmessage = "Next message <" + Sex.getNextException().getMessage() + ">";
+        getPipeLog().fatal(Nextmessage);
+      }
       this.setTransactionAbort(getTransactionNumber());
       throw new ProcessingException(message, getSymbolicName());
     } catch (Exception ex) {
@@ -485,7 +541,312 @@ public abstract class JDBCBatchOutputAdapter
       getExceptionHandler().reportException(new ProcessingException(message, ex, getSymbolicName()));
       setTransactionAbort(getTransactionNumber());
     }
+  }
 
-    super.flushStream();
+  // -----------------------------------------------------------------------------
+  // --------------- Start of transactional layer functions ----------------------
+  // -----------------------------------------------------------------------------
+  /**
+   * Perform the commit statement, and then commit all of the connections
+   * together, so that the commit statement and any rows not yet committed
+   * become visible at the same time.
+   *
+   * @param transactionNumber The transaction to commit
+   */
+  @Override
+  public void commitTransaction(int transactionNumber) {
+    super.commitTransaction(transactionNumber);
+
+    if (batchWriter != null) {
+      try {
+        getPipeLog().debug("Adapter <" + getSymbolicName() + "> committing <" + (extraConnections.size() + 1) + "> connections.");
+        batchWriter.commit();
+      } catch (SQLException Sex) {
+        message = "Error committing batch connections in module <" + getSymbolicName() + ">. message <" + Sex.getMessage() + ">";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
+      }
+    }
+  }
+
+  /**
+   * Roll back anything on the connections which has not been committed, then
+   * perform the rollback statement to remove anything which has, and commit
+   * the effect of that.
+   *
+   * @param transactionNumber The transaction to rollback
+   */
+  @Override
+  public void rollbackTransaction(int transactionNumber) {
+    if (batchWriter != null) {
+      try {
+        batchWriter.rollback();
+      } catch (SQLException Sex) {
+        message = "Error rolling back batch connections in module <" + getSymbolicName() + ">. message <" + Sex.getMessage() + ">";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
+      }
+    }
+
+    super.rollbackTransaction(transactionNumber);
+
+    if (JDBCcon != null) {
+      try {
+        JDBCcon.commit();
+      } catch (SQLException Sex) {
+        message = "Error committing rollback statement in module <" + getSymbolicName() + ">. message <" + Sex.getMessage() + ">";
+        getPipeLog().fatal(message);
+        getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
+      }
+    }
+  }
+
+  /**
+   * Stop the batch writer and close the connections we opened for it, then
+   * let the parent close its statements and connection.
+   *
+   * @param transactionNumber The transaction we are working on
+   */
+  @Override
+  public void closeTransaction(int transactionNumber) {
+    if (batchWriter != null) {
+      message = "Adapter <" + getSymbolicName() + "> wrote <" + batchWriter.getRowsWritten()
+              + "> rows in <" + batchWriter.getBatchesExecuted() + "> batches, batch size now <"
+              + batchWriter.getBatchSize() + ">";
+      getPipeLog().info(message);
+
+      // keep what we learned for the next transaction
+      if (targetBatchMillis > 0) {
+        insertBatchSize = batchWriter.getBatchSize();
+      }
+
+      batchWriter.close();
+      batchWriter = null;
+    }
+
+    for (Connection extraConnection : extraConnections) {
+      DBUtil.close(extraConnection);
+    }
+    extraConnections.clear();
+
+    super.closeTransaction(transactionNumber);
+  }
+
+  // -----------------------------------------------------------------------------
+  // ------------- Start of inherited IEventInterface functions ------------------
+  // -----------------------------------------------------------------------------
+  /**
+   * processControlEvent is the event processing hook for the External Control
+   * Interface (ECI). This allows interaction with the external world.
+   *
+   * @param Command The command that we are to work on
+   * @param Init True if the pipeline is currently being constructed
+   * @param Parameter The parameter value for the command
+   * @return The result message of the operation
+   */
+  @Override
+  public String processControlEvent(String Command, boolean Init,
+          String Parameter) {
+    int ResultCode = -1;
+
+    if (Command.equalsIgnoreCase(SERVICE_CONNECTION_COUNT)) {
+      if (Init) {
+        try {
+          connectionCount = Integer.parseInt(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_CONNECTION_COUNT + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(connectionCount);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_INSERT_BATCH_SIZE)) {
+      if (Init) {
+        try {
+          insertBatchSize = Integer.parseInt(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_INSERT_BATCH_SIZE + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(insertBatchSize);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_MAX_INSERT_BATCH_SIZE)) {
+      if (Init) {
+        try {
+          maxInsertBatchSize = Integer.parseInt(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_MAX_INSERT_BATCH_SIZE + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(maxInsertBatchSize);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_TARGET_BATCH_MILLIS)) {
+      if (Init) {
+        try {
+          targetBatchMillis = Long.parseLong(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_TARGET_BATCH_MILLIS + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Long.toString(targetBatchMillis);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_MULTI_ROW_INSERT)) {
+      if (Init) {
+        try {
+          multiRowInsert = Integer.parseInt(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_MULTI_ROW_INSERT + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(multiRowInsert);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_COMMIT_MODE)) {
+      if (Init) {
+        if (Parameter.equalsIgnoreCase(COMMIT_MODE_BLOCK)) {
+          commitPerTransaction = false;
+          ResultCode = 0;
+        } else if (Parameter.equalsIgnoreCase(COMMIT_MODE_TRANSACTION)) {
+          commitPerTransaction = true;
+          ResultCode = 0;
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return commitPerTransaction ? COMMIT_MODE_TRANSACTION : COMMIT_MODE_BLOCK;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_BATCH_STATS)) {
+      ParallelBatchWriter tmpWriter = batchWriter;
+      if (tmpWriter == null) {
+        return Integer.toString(insertBatchSize) + ":0:0:0";
+      }
+      return tmpWriter.getBatchSize() + ":" + tmpWriter.getBatchesExecuted() + ":"
+              + tmpWriter.getRowsWritten() + ":" + tmpWriter.getLastBatchMillis();
+    }
+
+    if (ResultCode == 0) {
+      getPipeLog().debug(LogUtil.LogECIPipeCommand(getSymbolicName(), getPipeName(), Command, Parameter));
+
+      return "OK";
+    } else {
+      // This is not our event, pass it up the stack
+      return super.processControlEvent(Command, Init, Parameter);
+    }
+  }
+
+  /**
+   * registerClientManager registers this class as a client of the ECI listener
+   * and publishes the commands that the plug in understands. The listener is
+   * responsible for delivering only these commands to the plug in.
+   *
+   * @throws OpenRate.exception.InitializationException
+   */
+  @Override
+  public void registerClientManager() throws InitializationException {
+    // Set the client reference and the base services first
+    super.registerClientManager();
+
+    //Register services for this Client
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_CONNECTION_COUNT, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_INSERT_BATCH_SIZE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MAX_INSERT_BATCH_SIZE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_TARGET_BATCH_MILLIS, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MULTI_ROW_INSERT, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMMIT_MODE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_BATCH_STATS, ClientManager.PARAM_DYNAMIC);
+  }
+
+  // -----------------------------------------------------------------------------
+  // --------------- Start of custom initialisation functions ---------------------
+  // -----------------------------------------------------------------------------
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetConnectionCount() throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_CONNECTION_COUNT, "1");
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetInsertBatchSize() throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_INSERT_BATCH_SIZE, "0");
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetMaxInsertBatchSize() throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_MAX_INSERT_BATCH_SIZE, "0");
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetTargetBatchMillis() throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_TARGET_BATCH_MILLIS, "0");
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetMultiRowInsert() throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_MULTI_ROW_INSERT, "0");
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetCommitMode() throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_COMMIT_MODE, COMMIT_MODE_BLOCK);
   }
 }
@@ -71,6 +71,7 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -120,6 +121,21 @@ import java.util.logging.Logger;
  * modules have finished, the transaction is committed by calling the trigger()
  * method with the parameter of "committed" which causes the input file to be
  * renamed and the transaction to be committed or rolled back.
+ *
+ * Reading -------
+ *
+ * The select is read through a forward only, read only cursor, so that drivers
+ * can stream the rows instead of holding the whole result set in memory. The
+ * number of rows fetched from the database at a time is set with "FetchSize",
+ * which defaults to the batch size. (Some drivers need special values here to
+ * stream, for example MySQL streams with a fetch size of -2147483648.)
+ *
+ * Large selects can be read in parallel by setting "PartitionCount" to more
+ * than 1. The select is then split into that many partitions, each read on its
+ * own connection, and the rows of all partitions go into the same transaction.
+ * By default the partitions are made on the numeric column "PartitionColumn"
+ * modulo the number of partitions. Override getPartitionQuery() to partition
+ * in other ways, for example on key ranges.
  */
 public abstract class JDBCInputAdapter
         extends AbstractTransactionalInputAdapter {
@@ -202,6 +218,9 @@ public abstract class JDBCInputAdapter
   private final static String SERVICE_COMMIT_QUERY_KEY = "CommitStatement";
   private final static String SERVICE_ROLLBACK_QUERY_KEY = "RollbackStatement";
   private final static String SERVICE_CONNECTION_TEST_KEY = "ValidateStatement";
+  private final static String SERVICE_FETCH_SIZE = "FetchSize";
+  private final static String SERVICE_PARTITION_COUNT = "PartitionCount";
+  private final static String SERVICE_PARTITION_COLUMN = "PartitionColumn";
 
   // This tells us if we should look for new work or continue with something
   // that is going on at the moment
@@ -213,6 +232,30 @@ public abstract class JDBCInputAdapter
   // this is the persistent result set that we use to incrementally get the records
   ResultSet rs = null;
 
+  // The row we have read ahead, so we know when the select has finished
+  private String[] pendingRow = null;
+
+  // The number of columns in the result set
+  private int columnCount;
+
+  /**
+   * The number of rows to fetch at a time, 0 to use the batch size
+   */
+  protected int fetchSize = 0;
+
+  /**
+   * The number of partitions to read the select in, 1 for no partitioning
+   */
+  protected int partitionCount = 1;
+
+  /**
+   * The column to partition the select on
+   */
+  protected String partitionColumn = null;
+
+  // The reader for the partitions, when we are partitioning
+  private PartitionedSelectReader partitionReader = null;
+
   // used to track the status of our transaction
   private int transactionNumber = 0;
   private int InputRecordNumber = 0;
@@ -274,6 +317,20 @@ public abstract class JDBCInputAdapter
     ConfigHelper = initDataSourceName(PipelineName);
     processControlEvent(SERVICE_DATASOURCE_KEY, true, ConfigHelper);
 
+    // the streaming and partitioning of the select
+    ConfigHelper = initGetFetchSize();
+    processControlEvent(SERVICE_FETCH_SIZE, true, ConfigHelper);
+    ConfigHelper = initGetPartitionCount();
+    processControlEvent(SERVICE_PARTITION_COUNT, true, ConfigHelper);
+    ConfigHelper = initGetPartitionColumn();
+    processControlEvent(SERVICE_PARTITION_COLUMN, true, ConfigHelper);
+
+    if (partitionCount > 1 && getPartitionQuery(0) == null) {
+      message = "JDBCInputAdapter config error. " + SERVICE_PARTITION_COLUMN + " must be set when " + SERVICE_PARTITION_COUNT + " is greater than 1.";
+      getPipeLog().error(message);
+      throw new InitializationException(message, getSymbolicName());
+    }
+
     // prepare the data source - this does not open a connection
     if (DBUtil.initDataSource(dataSourceName) == null) {
       message = "Could not initialise DB connection <" + dataSourceName + "> to in module <" + getSymbolicName() + ">.";
@@ -290,12 +347,8 @@ public abstract class JDBCInputAdapter
    */
   @Override
   protected Collection<IRecord> loadBatch() throws ProcessingException {
-    ResultSetMetaData Rsmd;
     Collection<IRecord> Outbatch;
     int ThisBatchCounter = 0;
-    int ColumnCount;
-    int ColumnIdx;
-    String[] tmpColumns;
 
     // The Record types we will have to deal with
     HeaderRecord tmpHeader;
@@ -317,12 +370,17 @@ public abstract class JDBCInputAdapter
         // the renamed file provided by assignInput
         try {
           // Open the select statement
-          prepareSelectStatement();
-          rs = stmtSelectQuery.executeQuery();
+          if (partitionCount > 1) {
+            openPartitionReader();
+          } else {
+            prepareSelectStatement();
+            rs = stmtSelectQuery.executeQuery();
+            columnCount = rs.getMetaData().getColumnCount();
+          }
 
-          // See if we get an empty result set
-          rs.last();
-          if (rs.getRow() > 0) {
+          // See if we get an empty result set, reading ahead the first row
+          pendingRow = fetchRow();
+          if (pendingRow != null) {
             // Create the new transaction to hold the information. This is done in
             // The transactional layer - we just trigger it here
             // Create the transaction base name according to a simple counter
@@ -331,9 +389,6 @@ public abstract class JDBCInputAdapter
             // This is the transaction identifier for all records in this stream
             ORTransactionId = getTransactionID(transactionNumber);
 
-            // reset the cursor
-            rs.beforeFirst();
-
             InputStreamOpen = true;
             InputRecordNumber = 0;
 
@@ -356,6 +411,9 @@ public abstract class JDBCInputAdapter
             message = "Select statement did not return rows in <" + getSymbolicName() + ">";
             getPipeLog().error(message);
 
+            // Close statement and connection
+            closeSelectStatement();
+
             // No work to do - return the empty batch
             return Outbatch;
           }
@@ -379,25 +437,14 @@ public abstract class JDBCInputAdapter
 
     if (InputStreamOpen) {
       try {
-        // we need to know something about the result set so we can build
-        // the records out of it
-        Rsmd = rs.getMetaData();
-        ColumnCount = Rsmd.getColumnCount();
-
-        while ((ThisBatchCounter < batchSize) & (!rs.isLast())) {
-          // get next row
-          rs.next();
-
+        while ((ThisBatchCounter < batchSize) & (pendingRow != null)) {
           ThisBatchCounter++;
-          tmpColumns = new String[ColumnCount];
-
-          // create the array to transfer the columns into the DBRecord
-          for (ColumnIdx = 0; ColumnIdx < ColumnCount; ColumnIdx++) {
-            tmpColumns[ColumnIdx] = rs.getString(ColumnIdx + 1);
-          }
 
           // create the record
-          tmpRecord = new DBRecord(ColumnCount, tmpColumns, InputRecordNumber);
+          tmpRecord = new DBRecord(pendingRow.length, pendingRow, InputRecordNumber);
+
+          // read ahead the next row
+          pendingRow = fetchRow();
 
           // Call the user layer for any processing that needs to be done
           batchRecord = procValidRecord((IRecord) tmpRecord);
@@ -423,48 +470,51 @@ public abstract class JDBCInputAdapter
       } catch (SQLException Sex) {
         message = "Retrieve SQL Exception in <" + getSymbolicName() + ">. message = <" + Sex.getMessage() + ">";
         getPipeLog().error(message);
+
+        // The stream is broken, so stop the transaction and forget the rest
+        // of the rows
+        cancelTransaction(transactionNumber);
+        pendingRow = null;
+        InputStreamOpen = false;
+
+        // Close statement and connection
+        closeSelectStatement();
+
         throw new ProcessingException(message, getSymbolicName());
       }
 
       // See if we need to add a stream trailer record - this is done immediately
       // after the last real record of the stream
-      try {
-        // see the reason that we closed
-        if (rs.isLast()) {
-          // we have finished
-          InputStreamOpen = false;
-
-          // Inject a stream header record into the stream
-          tmpTrailer = new TrailerRecord();
-          tmpTrailer.setStreamName(ORTransactionId);
-          tmpTrailer.setTransactionNumber(transactionNumber);
-
-          // Pass the header to the user layer for any processing that
-          // needs to be done. To allow for purging in the case of record
-          // compression, we allow multiple calls to procTrailer until the
-          // trailer is returned
+      if (pendingRow == null) {
+        // we have finished
+        InputStreamOpen = false;
+
+        // Inject a stream header record into the stream
+        tmpTrailer = new TrailerRecord();
+        tmpTrailer.setStreamName(ORTransactionId);
+        tmpTrailer.setTransactionNumber(transactionNumber);
+
+        // Pass the header to the user layer for any processing that
+        // needs to be done. To allow for purging in the case of record
+        // compression, we allow multiple calls to procTrailer until the
+        // trailer is returned
+        batchRecord = procTrailer((IRecord) tmpTrailer);
+
+        while (!(batchRecord instanceof TrailerRecord)) {
+          // the call the trailer returned a purged record. Add this
+          // to the batch and fetch again
+          Outbatch.add(batchRecord);
           batchRecord = procTrailer((IRecord) tmpTrailer);
+        }
 
-          while (!(batchRecord instanceof TrailerRecord)) {
-            // the call the trailer returned a purged record. Add this
-            // to the batch and fetch again
-            Outbatch.add(batchRecord);
-            batchRecord = procTrailer((IRecord) tmpTrailer);
-          }
-
-          Outbatch.add(tmpTrailer);
+        Outbatch.add(tmpTrailer);
 
-          // Notify the transaction layer that we have finished
-          setTransactionFlushed(transactionNumber);
+        // Notify the transaction layer that we have finished
+        setTransactionFlushed(transactionNumber);
 
-          // Close the connection
-          // Connection will be closed after commit or rollback
-          closeSelectStatement();
-        }
-      } catch (SQLException Sex) {
-        message = "Close SQL Exception in <" + getSymbolicName() + ">. message = <" + Sex.getMessage() + ">";
-        getPipeLog().error(message);
-        throw new ProcessingException(message, getSymbolicName());
+        // Close the connection
+        // Connection will be closed after commit or rollback
+        closeSelectStatement();
       }
     }
 
@@ -605,6 +655,53 @@ public abstract class JDBCInputAdapter
       }
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_FETCH_SIZE)) {
+      if (Init) {
+        try {
+          fetchSize = Integer.parseInt(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_FETCH_SIZE + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(fetchSize);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_PARTITION_COUNT)) {
+      if (Init) {
+        try {
+          partitionCount = Math.max(Integer.parseInt(Parameter), 1);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_PARTITION_COUNT + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(partitionCount);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_PARTITION_COLUMN)) {
+      if (Init) {
+        partitionColumn = Parameter.isEmpty() ? null : Parameter;
+        ResultCode = 0;
+      } else {
+        if (Parameter.equals("")) {
+          return partitionColumn;
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
     if (ResultCode == 0) {
       getPipeLog().debug(LogUtil.LogECIPipeCommand(getSymbolicName(), getPipeName(), Command, Parameter));
 
@@ -635,6 +732,9 @@ public abstract class JDBCInputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMMIT_QUERY_KEY, ClientManager.PARAM_MANDATORY);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ROLLBACK_QUERY_KEY, ClientManager.PARAM_MANDATORY);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_CONNECTION_TEST_KEY, ClientManager.PARAM_MANDATORY);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_FETCH_SIZE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PARTITION_COUNT, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PARTITION_COLUMN, ClientManager.PARAM_NONE);
   }
 
   // -----------------------------------------------------------------------------
@@ -753,7 +853,7 @@ public abstract class JDBCInputAdapter
 
       // prepare the SQL for the TestStatement
       stmtCountQuery = JDBCcon.prepareStatement(countQuery,
-              ResultSet.TYPE_SCROLL_INSENSITIVE,
+              ResultSet.TYPE_FORWARD_ONLY,
               ResultSet.CONCUR_READ_ONLY);
     } catch (SQLException Sex) {
       message = "SQL Exception in <" + getSymbolicName() + "> preparing query <" + countQuery + ">. message = <" + Sex.getMessage() + ">";
@@ -773,15 +873,9 @@ public abstract class JDBCInputAdapter
       openConnection();
       // prepare the SQL for the TestStatement
       stmtSelectQuery = JDBCcon.prepareStatement(selectQuery,
-              ResultSet.TYPE_SCROLL_INSENSITIVE,
+              ResultSet.TYPE_FORWARD_ONLY,
               ResultSet.CONCUR_READ_ONLY);
-      if (stmtSelectQuery.getMaxRows() > batchSize) {
-        message = "Input Adapter <" + getSymbolicName() + "> cannot get requested batch size <" + batchSize + ">, setting to <" + stmtSelectQuery.getMaxRows() + ">";
-        getPipeLog().warning(message);
-        stmtSelectQuery.setFetchSize(stmtSelectQuery.getMaxRows());
-      } else {
-        stmtSelectQuery.setFetchSize(batchSize);
-      }
+      stmtSelectQuery.setFetchSize(getSelectFetchSize(stmtSelectQuery.getMaxRows()));
     } catch (SQLException Sex) {
       message = "SQL Exception in <" + getSymbolicName() + "> preparing query <" + selectQuery + ">. message = <" + Sex.getMessage() + ">";
       getPipeLog().error(message);
@@ -789,6 +883,108 @@ public abstract class JDBCInputAdapter
     }
   }
 
+  /**
+   * Get the fetch size to use for the select. This is the configured fetch
+   * size, or the batch size if none was configured, limited to the maximum
+   * number of rows of the statement.
+   *
+   * @param maxRows The maximum rows of the statement, 0 for no limit
+   * @return The fetch size to use
+   */
+  private int getSelectFetchSize(int maxRows) {
+    int tmpFetchSize = (fetchSize == 0) ? batchSize : fetchSize;
+
+    if ((maxRows > 0) && (tmpFetchSize > maxRows)) {
+      message = "Input Adapter <" + getSymbolicName() + "> cannot get requested fetch size <" + tmpFetchSize + ">, setting to <" + maxRows + ">";
+      getPipeLog().warning(message);
+      tmpFetchSize = maxRows;
+    }
+
+    return tmpFetchSize;
+  }
+
+  /**
+   * Open a connection for each partition of the select, and start reading the
+   * partitions in parallel.
+   *
+   * @throws ProcessingException
+   */
+  private void openPartitionReader() throws ProcessingException {
+    List<Connection> tmpConnections = new ArrayList<>();
+    List<String> tmpQueries = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < partitionCount; i++) {
+        tmpQueries.add(getPartitionQuery(i));
+        tmpConnections.add(DBUtil.getConnection(dataSourceName));
+      }
+    } catch (InitializationException ie) {
+      // give back the connections we already got
+      for (Connection tmpConnection : tmpConnections) {
+        try {
+          tmpConnection.close();
+        } catch (SQLException Sex) {
+          getPipeLog().error("SQL Exception in <" + getSymbolicName() + "> closing connection. message = <" + Sex.getMessage() + ">");
+        }
+      }
+
+      message = "Could not open partition connections in <" + getSymbolicName() + ">. message = <" + ie.getMessage() + ">";
+      getPipeLog().error(message);
+      throw new ProcessingException(message, ie, getSymbolicName());
+    }
+
+    partitionReader = new PartitionedSelectReader(tmpConnections, tmpQueries,
+            getSelectFetchSize(0), batchSize * 2, getSymbolicName());
+    partitionReader.start();
+  }
+
+  /**
+   * Get the next row of the select, from the result set or from the
+   * partitions.
+   *
+   * @return The columns of the row, or null if there are no more rows
+   * @throws SQLException
+   */
+  private String[] fetchRow() throws SQLException {
+    if (partitionReader != null) {
+      try {
+        return partitionReader.next();
+      } catch (InterruptedException ex) {
+        throw new SQLException("Interrupted reading partitions", ex);
+      }
+    }
+
+    if (rs.next() == false) {
+      return null;
+    }
+
+    String[] tmpColumns = new String[columnCount];
+
+    // create the array to transfer the columns into the DBRecord
+    for (int ColumnIdx = 0; ColumnIdx < columnCount; ColumnIdx++) {
+      tmpColumns[ColumnIdx] = rs.getString(ColumnIdx + 1);
+    }
+
+    return tmpColumns;
+  }
+
+  /**
+   * Get the query for one partition of the select. By default this takes the
+   * rows for which the partition column modulo the number of partitions is
+   * the partition number. Override this to partition in other ways, for
+   * example on key ranges.
+   *
+   * @param partition The partition number, from 0 to partitionCount - 1
+   * @return The query, or null if the partitioning is not configured
+   */
+  protected String getPartitionQuery(int partition) {
+    if (partitionColumn == null) {
+      return null;
+    }
+
+    return PartitionedSelectReader.getModuloQuery(selectQuery, partitionColumn, partition, partitionCount);
+  }
+
   /**
    * PrepareStatements creates the statements from the SQL expressions so that
    * they can be run as needed
@@ -868,6 +1064,11 @@ public abstract class JDBCInputAdapter
    * CloseStatements closes the statements from the SQL expressions
    */
   public void closeSelectStatement() {
+    if (partitionReader != null) {
+      partitionReader.close();
+      partitionReader = null;
+    }
+
     if (stmtSelectQuery != null) {
       try {
         stmtSelectQuery.close();
@@ -1261,4 +1462,46 @@ public abstract class JDBCInputAdapter
 
     return DSN;
   }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetFetchSize()
+          throws InitializationException {
+    String tmpFetchSize;
+    tmpFetchSize = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_FETCH_SIZE,
+            "0");
+
+    return tmpFetchSize;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetPartitionCount()
+          throws InitializationException {
+    String tmpPartitionCount;
+    tmpPartitionCount = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_PARTITION_COUNT,
+            "1");
+
+    return tmpPartitionCount;
+  }
+
+  /**
+   * Temporary function to gather the information from the properties file. Will
+   * be removed with the introduction of the new configuration model.
+   */
+  private String initGetPartitionColumn()
+          throws InitializationException {
+    String tmpPartitionColumn;
+    tmpPartitionColumn = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            SERVICE_PARTITION_COLUMN,
+            "");
+
+    return tmpPartitionColumn;
+  }
 }
@@ -64,12 +64,16 @@ import OpenRate.logging.LogUtil;
 import OpenRate.record.DBRecord;
 import OpenRate.record.IRecord;
 import OpenRate.utils.PropertyUtils;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Please <a target='new'
@@ -100,7 +104,14 @@ import java.util.Iterator;
  * progressively "further away" from the cause), therefore usually initial
  * development should happen on the most primitive adapter, and during the
  * hardening of the project for productive purposes, the right level of
- * performance tuning should be found.
+ * performance tuning should be found.<br>
+ *
+ * Setting "StatementBatchSize" above 1 collects the inserts into JDBC batches
+ * of that size instead of executing them one by one. The init, commit and
+ * rollback statements work as before, and the batch is always executed before
+ * the end of the stream. If a batch fails, the records which the driver
+ * reports as failed are logged with their record number and values, so that
+ * the cause can still be found.
  */
 public abstract class JDBCOutputAdapter
         extends AbstractTransactionalOutputAdapter {
@@ -158,6 +169,7 @@ public abstract class JDBCOutputAdapter
   private static final String INSERT_QUERY_KEY = "RecordInsertStatement";
   private static final String COMMIT_QUERY_KEY = "CommitStatement";
   private static final String ROLLBACK_QUERY_KEY = "RollbackStatement";
+  private static final String STATEMENT_BATCH_SIZE_KEY = "StatementBatchSize";
 
   // List of Services that this Client supports
   private final static String SERVICE_DATASOURCE_KEY = "DataSource";
@@ -166,6 +178,7 @@ public abstract class JDBCOutputAdapter
   private final static String SERVICE_COMMIT_QUERY_KEY = "CommitStatement";
   private final static String SERVICE_ROLLBACK_QUERY_KEY = "RollbackStatement";
   private final static String SERVICE_STATUS_KEY = "PrintStatus";
+  private final static String SERVICE_STATEMENT_BATCH_SIZE_KEY = "StatementBatchSize";
 
   // This tells us if we should look for new work or continue with something
   // that is going on at the moment
@@ -179,6 +192,12 @@ public abstract class JDBCOutputAdapter
   // Extended validation of the columns we are going to insert - number
   private Integer insertQueryParamCount = null;
 
+  // The number of inserts to execute in one JDBC batch, 1 for no batching
+  private int statementBatchSize = 1;
+
+  // The inserts which have been added to the batch but not yet executed
+  private final List<BatchedStatement> batchedStatements = new ArrayList<>();
+
   /**
    * This is our connection object
    */
@@ -237,6 +256,10 @@ public abstract class JDBCOutputAdapter
     ConfigHelper = initDataSourceName();
     processControlEvent(SERVICE_DATASOURCE_KEY, true, ConfigHelper);
 
+    // The number of inserts we batch together
+    ConfigHelper = initStatementBatchSize();
+    processControlEvent(SERVICE_STATEMENT_BATCH_SIZE_KEY, true, ConfigHelper);
+
     // prepare the data source - this does not open a connection
     if (DBUtil.initDataSource(dataSourceName) == null) {
       message = "Could not initialise DB connection <" + dataSourceName + "> to in module <" + getSymbolicName() + ">.";
@@ -409,7 +432,7 @@ public abstract class JDBCOutputAdapter
               }
             }
 
-            stmtInsertQuery.execute();
+            addStatement(r, outRec, "valid");
           } catch (SQLException Sex) {
             // Not good. Abort the transaction
             message = "SQL Exception inserting valid record in module <"
@@ -541,7 +564,7 @@ public abstract class JDBCOutputAdapter
             }
           }
 
-          stmtInsertQuery.execute();
+          addStatement(r, outRec, "error");
         } catch (SQLException Sex) {
           // Not good. Abort the transaction
           message = "SQL Exception inserting error record in module <"
@@ -582,6 +605,133 @@ public abstract class JDBCOutputAdapter
   }
 
   // -----------------------------------------------------------------------------
+  /**
+   * Execute the insert for a record whose values have been bound to the insert
+   * statement, either straight away, or by adding it to the current batch.
+   *
+   * @param r The record the output record was created from
+   * @param outRec The output record which has been bound
+   * @param recordKind "valid" or "error", for messages
+   * @throws SQLException
+   */
+  private void addStatement(IRecord r, DBRecord outRec, String recordKind) throws SQLException {
+    if (statementBatchSize > 1) {
+      stmtInsertQuery.addBatch();
+      batchedStatements.add(new BatchedStatement(r.getRecordID(), outRec, recordKind));
+
+      if (batchedStatements.size() >= statementBatchSize) {
+        executeStatementBatch();
+      }
+    } else {
+      stmtInsertQuery.execute();
+    }
+  }
+
+  /**
+   * Execute the inserts which have been batched. If the batch fails, the
+   * records which the driver tells us failed are logged, and the transaction
+   * is aborted.
+   */
+  protected void executeStatementBatch() {
+    if (batchedStatements.isEmpty()) {
+      return;
+    }
+
+    try {
+      stmtInsertQuery.executeBatch();
+    } catch (BatchUpdateException bue) {
+      List<Integer> failedStatements = getFailedStatements(bue.getUpdateCounts(), batchedStatements.size());
+
+      if (failedStatements.isEmpty()) {
+        message = "SQL Exception executing batch of <" + batchedStatements.size()
+                + "> inserts in module <" + getSymbolicName() + ">. The driver did not report which failed. message <"
+                + bue.getMessage() + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+      }
+
+      for (Integer failedStatement : failedStatements) {
+        BatchedStatement failed = batchedStatements.get(failedStatement);
+        message = "SQL Exception inserting " + failed.recordKind + " record <" + failed.recordID
+                + "> (insert <" + (failedStatement + 1) + "> of batch of <" + batchedStatements.size()
+                + ">) in module <" + getSymbolicName() + ">. message <" + bue.getMessage()
+                + ">. Aborting transaction.";
+        getPipeLog().fatal(message);
+
+        Iterator<String> dumpIter = failed.outRec.getDumpInfo().iterator();
+        while (dumpIter.hasNext()) {
+          getPipeLog().error(dumpIter.next());
+        }
+      }
+
+      getExceptionHandler().reportException(new ProcessingException(message, bue, getSymbolicName()));
+      setTransactionAbort(getTransactionNumber());
+    } catch (SQLException Sex) {
+      // Not good. Abort the transaction
+      message = "SQL Exception executing batch of <" + batchedStatements.size()
+              + "> inserts in module <" + getSymbolicName() + ">. message <" + Sex.getMessage()
+              + ">. Aborting transaction.";
+      getPipeLog().fatal(message);
+      getExceptionHandler().reportException(new ProcessingException(message, Sex, getSymbolicName()));
+      setTransactionAbort(getTransactionNumber());
+    } finally {
+      batchedStatements.clear();
+    }
+  }
+
+  /**
+   * Work out which statements of a batch failed from the update counts of the
+   * batch exception. Drivers either stop at the first failure, in which case
+   * there are fewer counts than statements, and the failure is the statement
+   * after the last count, or carry on, marking each failure.
+   *
+   * @param updateCounts The update counts from the exception, may be null
+   * @param statementCount The number of statements in the batch
+   * @return The indexes of the statements which failed, empty if not known
+   */
+  static List<Integer> getFailedStatements(int[] updateCounts, int statementCount) {
+    List<Integer> failedStatements = new ArrayList<>();
+
+    if (updateCounts != null) {
+      if (updateCounts.length < statementCount) {
+        failedStatements.add(updateCounts.length);
+      } else {
+        for (int i = 0; i < statementCount; i++) {
+          if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+            failedStatements.add(i);
+          }
+        }
+      }
+    }
+
+    return failedStatements;
+  }
+
+  /**
+   * Execute any inserts which are still batched at the end of the block, so
+   * that the block is written when we pass it on.
+   *
+   * @throws OpenRate.exception.ProcessingException
+   */
+  @Override
+  public void flushBlock() throws ProcessingException {
+    executeStatementBatch();
+
+    super.flushBlock();
+  }
+
+  /**
+   * Execute any inserts which are still batched at the end of the stream, so
+   * that any failure is seen before the transaction is flushed.
+   *
+   * @throws OpenRate.exception.ProcessingException
+   */
+  @Override
+  public void flushStream() throws ProcessingException {
+    executeStatementBatch();
+
+    super.flushStream();
+  }
+
   // ------------------ Custom connection management functions -------------------
   // -----------------------------------------------------------------------------
   /**
@@ -769,6 +919,23 @@ public abstract class JDBCOutputAdapter
       }
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_STATEMENT_BATCH_SIZE_KEY)) {
+      if (Init) {
+        try {
+          statementBatchSize = Integer.parseInt(Parameter);
+          ResultCode = 0;
+        } catch (NumberFormatException nfe) {
+          getPipeLog().error("Invalid number for " + SERVICE_STATEMENT_BATCH_SIZE_KEY + " <" + Parameter + ">");
+        }
+      } else {
+        if (Parameter.equals("")) {
+          return Integer.toString(statementBatchSize);
+        } else {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
     if (Command.equalsIgnoreCase(SERVICE_STATUS_KEY)) {
       return "OK";
     }
@@ -802,6 +969,7 @@ public abstract class JDBCOutputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_COMMIT_QUERY_KEY, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ROLLBACK_QUERY_KEY, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_STATUS_KEY, ClientManager.PARAM_DYNAMIC);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_STATEMENT_BATCH_SIZE_KEY, ClientManager.PARAM_NONE);
   }
 
   // -----------------------------------------------------------------------------
@@ -871,6 +1039,9 @@ public abstract class JDBCOutputAdapter
    */
   @Override
   public void closeTransaction(int transactionNumber) {
+    // Anything still batched belongs to an aborted transaction
+    batchedStatements.clear();
+
     // Close the insert statement
     DBUtil.close(stmtInsertQuery);
 
@@ -1013,4 +1184,34 @@ public abstract class JDBCOutputAdapter
 
     return DSN;
   }
+
+  /**
+   * Get the number of inserts to execute in one JDBC batch from the properties
+   *
+   * @return The batch size
+   * @throws OpenRate.exception.InitializationException
+   */
+  private String initStatementBatchSize()
+          throws InitializationException {
+    return PropertyUtils.getPropertyUtils().getBatchOutputAdapterPropertyValueDef(getPipeName(), getSymbolicName(),
+            STATEMENT_BATCH_SIZE_KEY,
+            "1");
+  }
+
+  /**
+   * An insert which has been added to the batch, remembered so that we can say
+   * which record it was if the batch fails.
+   */
+  private static class BatchedStatement {
+
+    private final int recordID;
+    private final DBRecord outRec;
+    private final String recordKind;
+
+    BatchedStatement(int recordID, DBRecord outRec, String recordKind) {
+      this.recordID = recordID;
+      this.outRec = outRec;
+      this.recordKind = recordKind;
+    }
+  }
 }
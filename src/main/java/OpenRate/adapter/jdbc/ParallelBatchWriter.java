@@ -0,0 +1,762 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.jdbc;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes rows into a table using JDBC batches, spread over one or more
+ * connections. The rows are collected into chunks on the caller's thread, and
+ * each chunk is bound, added to a batch and executed by whichever connection
+ * is free next, on that connection's own thread.
+ *
+ * All of the connections are used with manual commit, and are committed or
+ * rolled back together, so that the rows of a transaction are either all
+ * kept or all removed.
+ *
+ * The chunk size can be fixed, or can be adapted after each batch so that
+ * one batch takes about a target time. Small batches waste round trips, while
+ * very large ones hold locks and memory for longer than they need to.
+ *
+ * Optionally the insert statement can be rewritten to insert several rows
+ * per statement ("INSERT ... VALUES (?,?),(?,?)"), which many databases
+ * execute much faster than the same number of single row inserts.
+ *
+ * @author ian
+ */
+class ParallelBatchWriter implements Closeable
+{
+  // The smallest chunk that we adapt down to
+  private static final int MIN_BATCH_SIZE = 1;
+
+  // The connections, each with its own thread
+  private final List<Lane> lanes = new ArrayList<>();
+
+  // The chunks waiting for a connection
+  private final BlockingQueue<List<Object[]>> chunkQueue;
+
+  // The chunk we are filling at the moment
+  private List<Object[]> currentChunk;
+
+  // The number of chunks submitted but not yet finished
+  private int chunksInFlight = 0;
+  private final Object inFlightLock = new Object();
+
+  // The number of rows per multi-row insert, 0 if we do not rewrite
+  private final int rowsPerInsert;
+
+  // The number of parameters in one row of the insert
+  private final int paramsPerRow;
+
+  // Batch sizing
+  private volatile int batchSize;
+  private final int maxBatchSize;
+  private final long targetMillis;
+
+  // The first error that a batch got
+  private volatile SQLException batchError = null;
+
+  // Set when we are closing, so that the lanes stop
+  private volatile boolean closing = false;
+
+  // Statistics
+  private final AtomicLong rowsWritten = new AtomicLong();
+  private final AtomicLong batchesExecuted = new AtomicLong();
+  private volatile long lastBatchMillis = 0;
+
+ /**
+  * Create a writer over a set of connections. The connections are switched to
+  * manual commit, but remain owned by the caller, who must close them after
+  * closing the writer.
+  *
+  * @param connections The connections to write on
+  * @param insertQuery The single row insert statement
+  * @param rowsPerInsert The rows per rewritten multi-row insert, 0 or 1 to not rewrite
+  * @param batchSize The number of rows per batch, or the starting number if adaptive
+  * @param maxBatchSize The largest number of rows per batch when adaptive
+  * @param targetMillis The time one batch should take, 0 for a fixed batch size
+  * @param threadName The base name of the writing threads
+  * @throws SQLException if the statements could not be prepared
+  */
+  ParallelBatchWriter(List<Connection> connections, String insertQuery, int rowsPerInsert,
+                      int batchSize, int maxBatchSize, long targetMillis, String threadName)
+    throws SQLException
+  {
+    String tmpMultiRowInsert = null;
+
+    if (rowsPerInsert > 1)
+    {
+      tmpMultiRowInsert = getMultiRowInsert(insertQuery, rowsPerInsert);
+    }
+
+    this.rowsPerInsert = (tmpMultiRowInsert == null) ? 0 : rowsPerInsert;
+    this.paramsPerRow = countParameters(getValuesGroup(insertQuery));
+    this.batchSize = Math.max(batchSize, MIN_BATCH_SIZE);
+    this.maxBatchSize = Math.max(maxBatchSize, this.batchSize);
+    this.targetMillis = targetMillis;
+
+    chunkQueue = new ArrayBlockingQueue<>(connections.size());
+    currentChunk = new ArrayList<>(this.batchSize);
+
+    try
+    {
+      for (int i = 0 ; i < connections.size() ; i++)
+      {
+        Connection tmpConnection = connections.get(i);
+        tmpConnection.setAutoCommit(false);
+
+        PreparedStatement tmpSingle = tmpConnection.prepareStatement(insertQuery);
+        PreparedStatement tmpMulti = null;
+        if (tmpMultiRowInsert != null)
+        {
+          tmpMulti = tmpConnection.prepareStatement(tmpMultiRowInsert);
+        }
+
+        Lane tmpLane = new Lane(tmpConnection, tmpSingle, tmpMulti, threadName + "-" + i);
+        lanes.add(tmpLane);
+      }
+    }
+    catch (SQLException ex)
+    {
+      closeStatements();
+      throw ex;
+    }
+
+    for (Lane tmpLane : lanes)
+    {
+      tmpLane.thread.start();
+    }
+  }
+
+ /**
+  * Add a row to the current chunk, handing the chunk to a connection when it
+  * is full. If all of the connections are busy, this waits for one to finish.
+  *
+  * @param row The column values of the row
+  * @throws SQLException if an earlier batch failed
+  */
+  void addRow(Object[] row) throws SQLException
+  {
+    checkError();
+
+    currentChunk.add(row);
+
+    if (currentChunk.size() >= batchSize)
+    {
+      submitChunk();
+    }
+  }
+
+ /**
+  * Write all of the rows added so far, and wait until they are written.
+  *
+  * @throws SQLException if any batch failed
+  */
+  void flush() throws SQLException
+  {
+    if (!currentChunk.isEmpty())
+    {
+      submitChunk();
+    }
+
+    waitForChunks();
+
+    checkError();
+  }
+
+ /**
+  * Write all of the rows added so far, then commit all of the connections.
+  *
+  * @throws SQLException if any batch or commit failed
+  */
+  void commit() throws SQLException
+  {
+    flush();
+
+    for (Lane tmpLane : lanes)
+    {
+      tmpLane.connection.commit();
+    }
+  }
+
+ /**
+  * Discard any rows not yet written, wait for the batches that are running,
+  * and roll back all of the connections. Clears any batch error.
+  *
+  * @throws SQLException if any rollback failed
+  */
+  void rollback() throws SQLException
+  {
+    SQLException tmpError = null;
+
+    currentChunk.clear();
+    waitForChunks();
+
+    for (Lane tmpLane : lanes)
+    {
+      try
+      {
+        tmpLane.connection.rollback();
+      }
+      catch (SQLException ex)
+      {
+        if (tmpError == null)
+        {
+          tmpError = ex;
+        }
+      }
+    }
+
+    batchError = null;
+
+    if (tmpError != null)
+    {
+      throw tmpError;
+    }
+  }
+
+ /**
+  * Stop the writing threads and close the statements. Rows which have not
+  * been flushed are discarded. The connections are not closed.
+  */
+  @Override
+  public void close()
+  {
+    closing = true;
+    currentChunk.clear();
+
+    for (Lane tmpLane : lanes)
+    {
+      tmpLane.thread.interrupt();
+    }
+
+    for (Lane tmpLane : lanes)
+    {
+      try
+      {
+        tmpLane.thread.join();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    closeStatements();
+  }
+
+ /**
+  * @return The number of rows per batch at the moment
+  */
+  int getBatchSize()
+  {
+    return batchSize;
+  }
+
+ /**
+  * @return The number of rows which have been written
+  */
+  long getRowsWritten()
+  {
+    return rowsWritten.get();
+  }
+
+ /**
+  * @return The number of batches which have been executed
+  */
+  long getBatchesExecuted()
+  {
+    return batchesExecuted.get();
+  }
+
+ /**
+  * @return The time the last batch took in milliseconds
+  */
+  long getLastBatchMillis()
+  {
+    return lastBatchMillis;
+  }
+
+ /**
+  * @return The number of rows per multi-row insert, 0 if not rewriting
+  */
+  int getRowsPerInsert()
+  {
+    return rowsPerInsert;
+  }
+
+ /**
+  * Rewrite a single row insert of the form "INSERT ... VALUES (...)" into one
+  * that inserts several rows at once. Statements which do not end with their
+  * values list (for example "INSERT ... SELECT", or a trailing "RETURNING")
+  * cannot be rewritten.
+  *
+  * @param insertQuery The single row insert
+  * @param rows The number of rows to insert per statement
+  * @return The multi-row insert, or null if the insert cannot be rewritten
+  */
+  static String getMultiRowInsert(String insertQuery, int rows)
+  {
+    String tmpGroup = getValuesGroup(insertQuery);
+
+    if (tmpGroup == null)
+    {
+      return null;
+    }
+
+    StringBuilder tmpQuery = new StringBuilder(insertQuery.substring(0, insertQuery.lastIndexOf(tmpGroup)));
+    for (int i = 0 ; i < rows ; i++)
+    {
+      if (i > 0)
+      {
+        tmpQuery.append(", ");
+      }
+      tmpQuery.append(tmpGroup);
+    }
+
+    return tmpQuery.toString();
+  }
+
+ /**
+  * Get the bracketed values list at the end of an insert statement.
+  *
+  * @param insertQuery The insert statement
+  * @return The values list including its brackets, or null if there is none
+  */
+  private static String getValuesGroup(String insertQuery)
+  {
+    String tmpQuery = insertQuery.trim();
+    if (tmpQuery.endsWith(";"))
+    {
+      tmpQuery = tmpQuery.substring(0, tmpQuery.length() - 1).trim();
+    }
+
+    int tmpValues = tmpQuery.toUpperCase().lastIndexOf("VALUES");
+    if (tmpValues < 0)
+    {
+      return null;
+    }
+
+    int tmpStart = tmpQuery.indexOf('(', tmpValues);
+    if (tmpStart < 0 || !tmpQuery.substring(tmpValues + 6, tmpStart).trim().isEmpty())
+    {
+      return null;
+    }
+
+    // find the matching bracket, ignoring anything quoted
+    int tmpDepth = 0;
+    boolean tmpQuoted = false;
+    for (int i = tmpStart ; i < tmpQuery.length() ; i++)
+    {
+      char tmpChar = tmpQuery.charAt(i);
+
+      if (tmpChar == '\'')
+      {
+        tmpQuoted = !tmpQuoted;
+      }
+      else if (!tmpQuoted && tmpChar == '(')
+      {
+        tmpDepth++;
+      }
+      else if (!tmpQuoted && tmpChar == ')')
+      {
+        tmpDepth--;
+        if (tmpDepth == 0)
+        {
+          // the values list must be the end of the statement
+          return (i == tmpQuery.length() - 1) ? tmpQuery.substring(tmpStart, i + 1) : null;
+        }
+      }
+    }
+
+    return null;
+  }
+
+ /**
+  * Count the parameter markers in a piece of SQL, ignoring anything quoted.
+  *
+  * @param sql The SQL to count in, may be null
+  * @return The number of parameter markers
+  */
+  private static int countParameters(String sql)
+  {
+    int tmpCount = 0;
+    boolean tmpQuoted = false;
+
+    if (sql != null)
+    {
+      for (int i = 0 ; i < sql.length() ; i++)
+      {
+        char tmpChar = sql.charAt(i);
+        if (tmpChar == '\'')
+        {
+          tmpQuoted = !tmpQuoted;
+        }
+        else if (!tmpQuoted && tmpChar == '?')
+        {
+          tmpCount++;
+        }
+      }
+    }
+
+    return tmpCount;
+  }
+
+ /**
+  * Bind the values of a row to a statement, using the setter for the type of
+  * each value.
+  *
+  * @param statement The statement to bind to
+  * @param offset The number of parameters before the first one of this row
+  * @param row The values to bind
+  * @throws SQLException
+  */
+  static void bindRow(PreparedStatement statement, int offset, Object[] row) throws SQLException
+  {
+    for (int i = 0 ; i < row.length ; i++)
+    {
+      int tmpIndex = offset + i + 1;
+      Object tmpValue = row[i];
+
+      if (tmpValue instanceof Integer)
+      {
+        statement.setInt(tmpIndex, (Integer) tmpValue);
+      }
+      else if (tmpValue instanceof Long)
+      {
+        statement.setLong(tmpIndex, (Long) tmpValue);
+      }
+      else if (tmpValue instanceof Double)
+      {
+        statement.setDouble(tmpIndex, (Double) tmpValue);
+      }
+      else if (tmpValue instanceof java.sql.Date)
+      {
+        statement.setDate(tmpIndex, (java.sql.Date) tmpValue);
+      }
+      else if (tmpValue instanceof java.sql.Time)
+      {
+        statement.setTime(tmpIndex, (java.sql.Time) tmpValue);
+      }
+      else if (tmpValue instanceof Boolean)
+      {
+        statement.setBoolean(tmpIndex, (Boolean) tmpValue);
+      }
+      else if (tmpValue instanceof byte[])
+      {
+        statement.setBytes(tmpIndex, (byte[]) tmpValue);
+      }
+      else
+      {
+        statement.setString(tmpIndex, (tmpValue == null) ? null : tmpValue.toString());
+      }
+    }
+  }
+
+  // hand the current chunk to the next free connection
+  private void submitChunk() throws SQLException
+  {
+    synchronized (inFlightLock)
+    {
+      chunksInFlight++;
+    }
+
+    try
+    {
+      chunkQueue.put(currentChunk);
+    }
+    catch (InterruptedException ex)
+    {
+      chunkFinished();
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted waiting for a free connection");
+    }
+
+    currentChunk = new ArrayList<>(batchSize);
+  }
+
+  // wait until all of the submitted chunks have been executed
+  private void waitForChunks() throws SQLException
+  {
+    synchronized (inFlightLock)
+    {
+      while (chunksInFlight > 0)
+      {
+        try
+        {
+          inFlightLock.wait();
+        }
+        catch (InterruptedException ex)
+        {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted waiting for batches to finish");
+        }
+      }
+    }
+  }
+
+  private void chunkFinished()
+  {
+    synchronized (inFlightLock)
+    {
+      chunksInFlight--;
+      inFlightLock.notifyAll();
+    }
+  }
+
+  private void checkError() throws SQLException
+  {
+    if (batchError != null)
+    {
+      throw batchError;
+    }
+  }
+
+  private void setError(SQLException ex)
+  {
+    if (batchError == null)
+    {
+      batchError = ex;
+    }
+  }
+
+ /**
+  * Adapt the batch size so that a batch of the size we are using takes about
+  * the target time. The change is limited to a factor of two per batch so
+  * that one slow or fast batch does not swing the size too far.
+  *
+  * @param rows The rows in the batch that was executed
+  * @param millis The time the batch took
+  */
+  private synchronized void adaptBatchSize(int rows, long millis)
+  {
+    int tmpCurrent = batchSize;
+
+    // partial chunks from a flush say little about a full batch
+    if (targetMillis <= 0 || rows < tmpCurrent / 2)
+    {
+      return;
+    }
+
+    long tmpWanted = rows * targetMillis / Math.max(millis, 1);
+    tmpWanted = Math.max(tmpWanted, tmpCurrent / 2);
+    tmpWanted = Math.min(tmpWanted, (long) tmpCurrent * 2);
+    tmpWanted = Math.max(tmpWanted, MIN_BATCH_SIZE);
+    tmpWanted = Math.min(tmpWanted, maxBatchSize);
+
+    batchSize = (int) tmpWanted;
+  }
+
+  private void closeStatements()
+  {
+    for (Lane tmpLane : lanes)
+    {
+      try
+      {
+        tmpLane.single.close();
+        if (tmpLane.multi != null)
+        {
+          tmpLane.multi.close();
+        }
+      }
+      catch (SQLException ex)
+      {
+        // nothing more we can do
+      }
+    }
+  }
+
+ /**
+  * One connection, with the thread which executes batches on it.
+  */
+  private class Lane implements Runnable
+  {
+    private final Connection connection;
+    private final PreparedStatement single;
+    private final PreparedStatement multi;
+    private final Thread thread;
+
+    Lane(Connection connection, PreparedStatement single, PreparedStatement multi, String threadName)
+    {
+      this.connection = connection;
+      this.single = single;
+      this.multi = multi;
+
+      thread = new Thread(this, threadName);
+      thread.setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+      while (!closing)
+      {
+        List<Object[]> tmpChunk;
+
+        try
+        {
+          tmpChunk = chunkQueue.take();
+        }
+        catch (InterruptedException ex)
+        {
+          // we are closing
+          break;
+        }
+
+        try
+        {
+          // once something failed, the transaction is lost, so do not write more
+          if (batchError == null)
+          {
+            long tmpStart = System.currentTimeMillis();
+            execute(tmpChunk);
+            long tmpMillis = System.currentTimeMillis() - tmpStart;
+
+            rowsWritten.addAndGet(tmpChunk.size());
+            batchesExecuted.incrementAndGet();
+            lastBatchMillis = tmpMillis;
+            adaptBatchSize(tmpChunk.size(), tmpMillis);
+          }
+        }
+        catch (SQLException ex)
+        {
+          setError(ex);
+        }
+        catch (RuntimeException ex)
+        {
+          setError(new SQLException("Unexpected error writing batch: " + ex.getMessage(), ex));
+        }
+        finally
+        {
+          chunkFinished();
+        }
+      }
+    }
+
+    // bind and execute the rows of one chunk. The statements live across
+    // transactions, so a chunk that fails part way must not leave rows
+    // queued in them for the next executeBatch() to write.
+    private void execute(List<Object[]> chunk) throws SQLException
+    {
+      try
+      {
+        executeChunk(chunk);
+      }
+      finally
+      {
+        clearBatches();
+      }
+    }
+
+    private void executeChunk(List<Object[]> chunk) throws SQLException
+    {
+      int tmpRow = 0;
+
+      if (multi != null)
+      {
+        while (chunk.size() - tmpRow >= rowsPerInsert)
+        {
+          multi.clearParameters();
+          for (int i = 0 ; i < rowsPerInsert ; i++)
+          {
+            Object[] tmpValues = chunk.get(tmpRow++);
+            if (tmpValues.length > paramsPerRow)
+            {
+              throw new SQLException("Row has <" + tmpValues.length + "> values, but the insert has <" + paramsPerRow + "> parameters");
+            }
+            bindRow(multi, i * paramsPerRow, tmpValues);
+          }
+          multi.addBatch();
+        }
+
+        if (tmpRow > 0)
+        {
+          multi.executeBatch();
+        }
+      }
+
+      if (tmpRow < chunk.size())
+      {
+        while (tmpRow < chunk.size())
+        {
+          single.clearParameters();
+          bindRow(single, 0, chunk.get(tmpRow++));
+          single.addBatch();
+        }
+
+        single.executeBatch();
+      }
+    }
+
+    // throw away anything still queued in the statements
+    private void clearBatches() throws SQLException
+    {
+      single.clearBatch();
+      if (multi != null)
+      {
+        multi.clearBatch();
+      }
+    }
+  }
+}
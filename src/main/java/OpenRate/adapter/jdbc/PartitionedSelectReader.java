@@ -0,0 +1,281 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.jdbc;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the rows of a select which has been split into partitions, each
+ * partition on its own connection and its own thread. The rows of all of the
+ * partitions are delivered through one queue, so that the reader sees them as
+ * a single stream. The order of the rows between partitions is not defined.
+ *
+ * Each partition uses a forward only, read only result set, and closes its
+ * statement and connection as soon as it has been read.
+ *
+ * @author ian
+ */
+class PartitionedSelectReader implements Closeable
+{
+  // Marks the end of a partition in the queue
+  private static final String[] END_OF_PARTITION = new String[0];
+
+  // The rows which have been read, but not yet collected
+  private final BlockingQueue<String[]> rowQueue;
+
+  // The partition reading threads
+  private final List<Thread> readers = new ArrayList<>();
+
+  // The number of partitions which have not finished yet
+  private int activePartitions;
+
+  // The first error that a partition got
+  private volatile SQLException partitionError = null;
+
+  // Set when we are closing, so that the partitions stop reading
+  private volatile boolean closing = false;
+
+ /**
+  * Create a reader on a set of partition queries. The connections are owned by
+  * the reader from now on, and are closed when their partition is done.
+  *
+  * @param connections The connection for each partition
+  * @param queries The query for each partition
+  * @param fetchSize The fetch size to use on each result set
+  * @param queueSize The number of rows that may be waiting for collection
+  * @param threadName The base name of the reading threads
+  */
+  PartitionedSelectReader(List<Connection> connections, List<String> queries, int fetchSize, int queueSize, String threadName)
+  {
+    rowQueue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+    activePartitions = queries.size();
+
+    for (int i = 0 ; i < queries.size() ; i++)
+    {
+      Thread tmpReader = new Thread(new PartitionReader(connections.get(i), queries.get(i), fetchSize), threadName + "-" + i);
+      tmpReader.setDaemon(true);
+      readers.add(tmpReader);
+    }
+  }
+
+ /**
+  * Start reading all of the partitions.
+  */
+  void start()
+  {
+    for (Thread tmpReader : readers)
+    {
+      tmpReader.start();
+    }
+  }
+
+ /**
+  * Get the next row from any of the partitions, waiting until one is ready.
+  * If a partition fails, the failure is reported on the next call, without
+  * waiting for the other partitions to finish.
+  *
+  * @return The columns of the row, or null if all partitions are finished
+  * @throws SQLException if any of the partitions failed
+  * @throws InterruptedException
+  */
+  String[] next() throws SQLException, InterruptedException
+  {
+    while (activePartitions > 0)
+    {
+      String[] tmpRow = rowQueue.take();
+
+      // report a failure straight away, the other partitions are stopped when
+      // the reader is closed
+      if (partitionError != null)
+      {
+        throw partitionError;
+      }
+
+      if (tmpRow == END_OF_PARTITION)
+      {
+        activePartitions--;
+      }
+      else
+      {
+        return tmpRow;
+      }
+    }
+
+    return null;
+  }
+
+ /**
+  * Stop any partitions which are still reading, and close their connections.
+  */
+  @Override
+  public void close()
+  {
+    closing = true;
+
+    for (Thread tmpReader : readers)
+    {
+      tmpReader.interrupt();
+    }
+
+    rowQueue.clear();
+  }
+
+ /**
+  * Build the query for one partition, by wrapping the select and taking the
+  * rows for which the partition column modulo the number of partitions is the
+  * partition number.
+  *
+  * @param selectQuery The select to partition
+  * @param partitionColumn The numeric column to partition on
+  * @param partition The partition number, from 0
+  * @param partitionCount The number of partitions
+  * @return The query for the partition
+  */
+  static String getModuloQuery(String selectQuery, String partitionColumn, int partition, int partitionCount)
+  {
+    return "SELECT * FROM (" + selectQuery + ") PARTITIONED_SELECT WHERE MOD(PARTITIONED_SELECT." +
+           partitionColumn + ", " + partitionCount + ") = " + partition;
+  }
+
+ /**
+  * Reads one partition into the row queue.
+  */
+  private class PartitionReader implements Runnable
+  {
+    private final Connection connection;
+    private final String query;
+    private final int fetchSize;
+
+    PartitionReader(Connection connection, String query, int fetchSize)
+    {
+      this.connection = connection;
+      this.query = query;
+      this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void run()
+    {
+      try (PreparedStatement tmpStatement = connection.prepareStatement(query,
+                                                                       ResultSet.TYPE_FORWARD_ONLY,
+                                                                       ResultSet.CONCUR_READ_ONLY))
+      {
+        tmpStatement.setFetchSize(fetchSize);
+
+        try (ResultSet tmpRs = tmpStatement.executeQuery())
+        {
+          int tmpColumnCount = tmpRs.getMetaData().getColumnCount();
+
+          while (!closing && tmpRs.next())
+          {
+            String[] tmpColumns = new String[tmpColumnCount];
+            for (int i = 0 ; i < tmpColumnCount ; i++)
+            {
+              tmpColumns[i] = tmpRs.getString(i + 1);
+            }
+
+            rowQueue.put(tmpColumns);
+          }
+        }
+      }
+      catch (SQLException ex)
+      {
+        if (partitionError == null)
+        {
+          partitionError = ex;
+        }
+      }
+      catch (InterruptedException ex)
+      {
+        // we are closing
+      }
+      finally
+      {
+        try
+        {
+          connection.close();
+        }
+        catch (SQLException ex)
+        {
+          if (partitionError == null)
+          {
+            partitionError = ex;
+          }
+        }
+
+        if (!closing)
+        {
+          try
+          {
+            rowQueue.put(END_OF_PARTITION);
+          }
+          catch (InterruptedException ex)
+          {
+            // we are closing
+          }
+        }
+      }
+    }
+  }
+}
@@ -67,22 +67,40 @@ import OpenRate.record.IRecord;
 import OpenRate.record.QueueMessageRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.jms.*;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQSession;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTopic;
 
 /**
- * ActiveMQ Input Adapter - reads events from an ActiveMQ Queue or Topic. This 
- * adapter runs in a polling mode (as opposed to a listener mode), which works 
- * better to create a batch of records into a transaction. All records (up to 
- * the batch size limit) are read in one go, until no more records arrive within
- * the given timeout. In that case, the batch is processed.
- * 
+ * ActiveMQ Input Adapter - reads events from an ActiveMQ Queue or Topic. The
+ * session delivers messages asynchronously into a bounded local buffer, and the
+ * batches are taken from the buffer without a round trip per message. All
+ * records (up to the batch size limit) are read in one go, until no more
+ * records arrive within the given timeout ("ReceiveTimeout", default 100mS). In
+ * that case, the batch is processed.
+ *
+ * The number of messages the broker sends ahead of being acknowledged is set
+ * with "Prefetch" (default 1000), and the size of the local buffer with
+ * "MessageBufferSize" (default the prefetch). Messages are acknowledged
+ * together, either once the batch has been taken ("AckMode" BATCH, the
+ * default) or when the transaction commits ("AckMode" COMMIT). In COMMIT mode,
+ * messages of a transaction which rolls back are not acknowledged, and are
+ * processed again straight away: they are queued locally ahead of any new
+ * messages, and go into the next transaction. They are acknowledged when that
+ * transaction commits. If the adapter stops before then, the broker delivers
+ * them again once the connection is closed.
+ *
  * The adapter can be configured to use either a Queue or a Topic.
  */
 public abstract class AbstractAMQInputAdapter
@@ -119,6 +137,14 @@ public abstract class AbstractAMQInputAdapter
   private static final String SERVICE_Q_NAME = "QueueName";
   private static final String SERVICE_Q_HOST = "QueueHost";
   private static final String SERVICE_Q_PORT = "QueuePort";
+  private static final String SERVICE_PREFETCH = "Prefetch";
+  private static final String SERVICE_MSG_BUFFER_SIZE = "MessageBufferSize";
+  private static final String SERVICE_RECEIVE_TIMEOUT = "ReceiveTimeout";
+  private static final String SERVICE_ACK_MODE = "AckMode";
+
+  // The ways we acknowledge messages
+  private static final String SERVICE_ACK_MODE_BATCH  = "BATCH";
+  private static final String SERVICE_ACK_MODE_COMMIT = "COMMIT";
 
   // The types of queues we are using
   private static final String SERVICE_Q_TYPE_QUEUE   = "QUEUE";
@@ -143,6 +169,40 @@ public abstract class AbstractAMQInputAdapter
   // and the connection
   private Connection connection;
 
+ /**
+  * The number of messages the broker may send before they are acknowledged
+  */
+  protected int prefetch = 1000;
+
+ /**
+  * The number of messages we buffer locally, 0 to use the prefetch
+  */
+  protected int messageBufferSize = 0;
+
+ /**
+  * The time to wait for a message before closing the transaction in mS
+  */
+  protected long receiveTimeout = 100;
+
+  // Either SERVICE_ACK_MODE_BATCH or SERVICE_ACK_MODE_COMMIT
+  private String ackMode = SERVICE_ACK_MODE_BATCH;
+
+  // The messages delivered by the session, waiting to be taken
+  private MessageBuffer messageBuffer;
+
+  // The messages we have taken from the buffer but not yet processed
+  private final ArrayDeque<Message> waitingMessages = new ArrayDeque<>();
+
+  // The messages of the open transaction, in COMMIT mode
+  private List<Message> transactionMessages = new ArrayList<>();
+
+  // The messages of the flushed transactions waiting to be committed
+  private final Map<Integer, List<Message>> pendingAcks = new ConcurrentHashMap<>();
+
+  // The messages of rolled back transactions, to be processed again before
+  // any new messages
+  private final ConcurrentLinkedQueue<Message> redeliverMessages = new ConcurrentLinkedQueue<>();
+
  /**
   * This tells us if we should look for a file to open or continue reading from
   * the one we have
@@ -195,6 +255,14 @@ public abstract class AbstractAMQInputAdapter
     processControlEvent(SERVICE_Q_HOST, true, ConfigHelper);
     ConfigHelper = initGetInputQueuePort();
     processControlEvent(SERVICE_Q_PORT, true, ConfigHelper);
+    ConfigHelper = initGetPrefetch();
+    processControlEvent(SERVICE_PREFETCH, true, ConfigHelper);
+    ConfigHelper = initGetMessageBufferSize();
+    processControlEvent(SERVICE_MSG_BUFFER_SIZE, true, ConfigHelper);
+    ConfigHelper = initGetReceiveTimeout();
+    processControlEvent(SERVICE_RECEIVE_TIMEOUT, true, ConfigHelper);
+    ConfigHelper = initGetAckMode();
+    processControlEvent(SERVICE_ACK_MODE, true, ConfigHelper);
 
     // initialise the queue consumer
     initConsumer();
@@ -225,6 +293,9 @@ public abstract class AbstractAMQInputAdapter
     IRecord       batchRecord;
     Outbatch = new ArrayList<>();
 
+    // The messages taken in this batch, in BATCH mode
+    List<Message> batchMessages = new ArrayList<>();
+
     // Process records if we are not yet full, or we have files waiting
     while ((ThisBatchCounter < batchSize) & (consumerHasRecords))
     {
@@ -232,19 +303,27 @@ public abstract class AbstractAMQInputAdapter
       // should be started. If we are already in a transaction we can just continue
       if (InputStreamOpen || ((InputStreamOpen==false) && (canStartNewTransaction())))
       {
-        try {
-          // get records, or wait 100mS trying
-          msg = consumer.receive(100);
-        } catch (JMSException ex) {
-          getPipeLog().error("Error getting message <" + ex.getMessage() + ">");
-          throw new ProcessingException("Error getting message <" + ex.getMessage() + ">",ex,getSymbolicName());
-        }
+        // get records, or wait for the receive timeout trying
+        msg = nextMessage(batchSize - ThisBatchCounter);
       }
 
       // See if we have run out of records, in this case we close the transaction
       // we are are in one
       consumerHasRecords = (msg != null);
 
+      // Remember the message so that we can acknowledge it later
+      if (consumerHasRecords)
+      {
+        if (ackMode.equals(SERVICE_ACK_MODE_COMMIT))
+        {
+          transactionMessages.add(msg);
+        }
+        else
+        {
+          batchMessages.add(msg);
+        }
+      }
+
       // see if we can open a new file - we are not in a transaction but we have
       // files waiting, so open a file
       if (InputStreamOpen == false)
@@ -364,6 +443,12 @@ public abstract class AbstractAMQInputAdapter
           Outbatch.add(batchRecord);
           ThisBatchCounter++;
 
+          // Hold the messages of the transaction until it commits
+          if (ackMode.equals(SERVICE_ACK_MODE_COMMIT))
+          {
+            pendingAcks.put(transactionNumber, transactionMessages);
+            transactionMessages = new ArrayList<>();
+          }
 
           // Notify the transaction layer that we have finished
           setTransactionFlushed(transactionNumber);
@@ -374,9 +459,63 @@ public abstract class AbstractAMQInputAdapter
       }
     }
 
+    // Acknowledge the messages of the batch in one go
+    if (batchMessages.size() > 0)
+    {
+      try
+      {
+        MessageBuffer.acknowledge(batchMessages);
+      }
+      catch (JMSException ex)
+      {
+        getPipeLog().error("Error acknowledging messages <" + ex.getMessage() + ">");
+        throw new ProcessingException("Error acknowledging messages <" + ex.getMessage() + ">",ex,getSymbolicName());
+      }
+    }
+
     return Outbatch;
   }
 
+ /**
+  * Get the next message to process. Messages of rolled back transactions come
+  * first. Messages which are already waiting in the buffer are taken without
+  * waiting. Only if there are none do we wait for the receive timeout for one
+  * to arrive.
+  *
+  * @param maxMessages The maximum number of messages to take from the buffer
+  * @return The message, or null if none arrived in time
+  * @throws ProcessingException
+  */
+  private Message nextMessage(int maxMessages) throws ProcessingException
+  {
+    Message tmpMessage = redeliverMessages.poll();
+
+    if (tmpMessage != null)
+    {
+      return tmpMessage;
+    }
+
+    if (waitingMessages.isEmpty())
+    {
+      messageBuffer.drainTo(waitingMessages, Math.max(maxMessages, 1));
+    }
+
+    if (waitingMessages.isEmpty())
+    {
+      try
+      {
+        return messageBuffer.poll(receiveTimeout);
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new ProcessingException("Interrupted getting message",ex,getSymbolicName());
+      }
+    }
+
+    return waitingMessages.poll();
+  }
+
  /**
   * Get the transaction id for the transaction. Intended to be overwritten
   * in the case that you want another transaction ID format.
@@ -439,18 +578,38 @@ public abstract class AbstractAMQInputAdapter
   @Override
   public void commitTransaction(int transactionNumber)
   {
-    // nothing
+    List<Message> tmpMessages = pendingAcks.remove(transactionNumber);
+
+    if (tmpMessages != null)
+    {
+      try
+      {
+        MessageBuffer.acknowledge(tmpMessages);
+      }
+      catch (JMSException ex)
+      {
+        getPipeLog().error("Error acknowledging messages of transaction <" + transactionNumber + "> <" + ex.getMessage() + ">");
+      }
+    }
   }
 
  /**
   * Perform any processing that needs to be done when we are rolling back the
-  * transaction;
+  * transaction. In COMMIT mode the messages of the transaction are queued to
+  * be processed again, ahead of any new messages.
+  *
   * @param transactionNumber The transaction to rollback
   */
   @Override
   public void rollbackTransaction(int transactionNumber)
   {
-    // nothing
+    List<Message> tmpMessages = pendingAcks.remove(transactionNumber);
+
+    if (tmpMessages != null)
+    {
+      getPipeLog().warning("Redelivering <" + tmpMessages.size() + "> messages of transaction <" + transactionNumber + ">");
+      redeliverMessages.addAll(tmpMessages);
+    }
   }
 
  /**
@@ -577,6 +736,115 @@ public abstract class AbstractAMQInputAdapter
       }
     }
 
+    if (Command.equalsIgnoreCase(SERVICE_PREFETCH))
+    {
+      if (Init)
+      {
+        try
+        {
+          prefetch = Math.max(Integer.parseInt(Parameter), 1);
+          ResultCode = 0;
+        }
+        catch (NumberFormatException nfe)
+        {
+          getPipeLog().error("Invalid number for " + SERVICE_PREFETCH + " <" + Parameter + ">");
+        }
+      }
+      else
+      {
+        if (Parameter.equals(""))
+        {
+          return Integer.toString(prefetch);
+        }
+        else
+        {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_MSG_BUFFER_SIZE))
+    {
+      if (Init)
+      {
+        try
+        {
+          messageBufferSize = Math.max(Integer.parseInt(Parameter), 0);
+          ResultCode = 0;
+        }
+        catch (NumberFormatException nfe)
+        {
+          getPipeLog().error("Invalid number for " + SERVICE_MSG_BUFFER_SIZE + " <" + Parameter + ">");
+        }
+      }
+      else
+      {
+        if (Parameter.equals(""))
+        {
+          return Integer.toString(messageBufferSize);
+        }
+        else
+        {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_RECEIVE_TIMEOUT))
+    {
+      if (Init)
+      {
+        try
+        {
+          receiveTimeout = Math.max(Long.parseLong(Parameter), 1);
+          ResultCode = 0;
+        }
+        catch (NumberFormatException nfe)
+        {
+          getPipeLog().error("Invalid number for " + SERVICE_RECEIVE_TIMEOUT + " <" + Parameter + ">");
+        }
+      }
+      else
+      {
+        if (Parameter.equals(""))
+        {
+          return Long.toString(receiveTimeout);
+        }
+        else
+        {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_ACK_MODE))
+    {
+      if (Init)
+      {
+        if (Parameter.equalsIgnoreCase(SERVICE_ACK_MODE_BATCH))
+        {
+          ackMode = SERVICE_ACK_MODE_BATCH;
+          ResultCode = 0;
+        }
+        else if (Parameter.equalsIgnoreCase(SERVICE_ACK_MODE_COMMIT))
+        {
+          ackMode = SERVICE_ACK_MODE_COMMIT;
+          ResultCode = 0;
+        }
+      }
+      else
+      {
+        if (Parameter.equals(""))
+        {
+          return ackMode;
+        }
+        else
+        {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
     if (ResultCode == 0)
     {
       getPipeLog().debug(LogUtil.LogECIPipeCommand(getSymbolicName(), getPipeName(), Command, Parameter));
@@ -607,6 +875,10 @@ public abstract class AbstractAMQInputAdapter
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_Q_NAME, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_Q_HOST, ClientManager.PARAM_NONE);
     ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_Q_PORT, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_PREFETCH, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MSG_BUFFER_SIZE, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_RECEIVE_TIMEOUT, ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_ACK_MODE, ClientManager.PARAM_NONE);
   }
 
   // -----------------------------------------------------------------------------
@@ -690,6 +962,51 @@ public abstract class AbstractAMQInputAdapter
     return configHelper;
   }
 
+ /**
+  * Temporary function to gather the information from the properties file. Will
+  * be removed with the introduction of the new configuration model.
+  */
+  private String initGetPrefetch() throws InitializationException
+  {
+    return PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(),getSymbolicName(),SERVICE_PREFETCH,"1000");
+  }
+
+ /**
+  * Temporary function to gather the information from the properties file. Will
+  * be removed with the introduction of the new configuration model.
+  */
+  private String initGetMessageBufferSize() throws InitializationException
+  {
+    return PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(),getSymbolicName(),SERVICE_MSG_BUFFER_SIZE,"0");
+  }
+
+ /**
+  * Temporary function to gather the information from the properties file. Will
+  * be removed with the introduction of the new configuration model.
+  */
+  private String initGetReceiveTimeout() throws InitializationException
+  {
+    return PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(),getSymbolicName(),SERVICE_RECEIVE_TIMEOUT,"100");
+  }
+
+ /**
+  * The initGetAckMode gets the way we acknowledge messages. This may be either
+  * SERVICE_ACK_MODE_BATCH or SERVICE_ACK_MODE_COMMIT.
+  */
+  private String initGetAckMode() throws InitializationException
+  {
+    String tmpMode;
+    tmpMode = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(getPipeName(),getSymbolicName(),SERVICE_ACK_MODE, SERVICE_ACK_MODE_BATCH);
+
+    if ((tmpMode.equalsIgnoreCase(SERVICE_ACK_MODE_BATCH) || tmpMode.equalsIgnoreCase(SERVICE_ACK_MODE_COMMIT)) == false)
+    {
+      message = "Parameter <" + SERVICE_ACK_MODE + "> must be one of " + SERVICE_ACK_MODE_BATCH + " or " + SERVICE_ACK_MODE_COMMIT + " but received <"+ tmpMode +">";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    return tmpMode;
+  }
+
  /**
    * Tries to connect to the queue, and create a consumer of it.
    *
@@ -702,6 +1019,9 @@ public abstract class AbstractAMQInputAdapter
     
     connectionFactory = new ActiveMQConnectionFactory(url);
 
+    // Let the broker send messages ahead of them being acknowledged
+    connectionFactory.getPrefetchPolicy().setAll(prefetch);
+
     try {
       connection = connectionFactory.createConnection();
       connection.setClientID(getPipeName()+"."+getSymbolicName());
@@ -716,7 +1036,9 @@ public abstract class AbstractAMQInputAdapter
     }
     
     try {
-      session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+      // Acknowledge each message on its own, so that acknowledging a batch
+      // does not also acknowledge the messages still waiting in the buffer
+      session = connection.createSession(false, ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
     } catch (JMSException ex) {
       throw new InitializationException("Could not create session <" + ex.getMessage() + ">",getSymbolicName());
     }
@@ -754,22 +1076,58 @@ public abstract class AbstractAMQInputAdapter
       throw new InitializationException("Could not create consumer <" + ex.getMessage() + ">",getSymbolicName());
     }
 
+    // Have the session deliver the messages into the buffer
+    messageBuffer = new MessageBuffer((messageBufferSize == 0) ? prefetch : messageBufferSize);
+
+    try {
+      consumer.setMessageListener(this);
+    } catch (JMSException ex) {
+      throw new InitializationException("Could not set message listener <" + ex.getMessage() + ">",getSymbolicName());
+    }
+
     return true;
   }
 
+ /**
+  * Stop the delivery of messages and close the connection to the queue.
+  * Messages which were delivered but not acknowledged will be delivered again.
+  */
+  @Override
+  public void cleanup()
+  {
+    if (messageBuffer != null)
+    {
+      messageBuffer.close();
+    }
+
+    if (connection != null)
+    {
+      try
+      {
+        connection.close();
+      }
+      catch (JMSException ex)
+      {
+        getPipeLog().error("Error closing connection <" + ex.getMessage() + ">");
+      }
+    }
+
+    super.cleanup();
+  }
+
   // -----------------------------------------------------------------------------
   // ---------------------- Start stream handling functions ----------------------
   // -----------------------------------------------------------------------------
 
   /**
-   * Triggered if a message is received and we were in listener mode. Not used
-   * for polling mode.
+   * Triggered by the session for each message received. The message is put
+   * into the buffer, to be taken by the next batch.
    * 
    * @param msg The message that was received
    */
   @Override
   public void onMessage(Message msg) {
-    throw new UnsupportedOperationException("Not supported yet.");
+    messageBuffer.onMessage(msg);
   }
 
   /**
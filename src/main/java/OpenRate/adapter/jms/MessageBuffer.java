@@ -0,0 +1,178 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.jms;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+/**
+ * Buffers the messages delivered asynchronously by a JMS session, so that the
+ * input adapter can take them in batches without a round trip per message.
+ * The buffer is bounded: when it is full the delivering thread waits, which
+ * in turn holds back the broker once the consumer prefetch is used up.
+ *
+ * @author ian
+ */
+class MessageBuffer implements MessageListener
+{
+  // How long the delivering thread waits before checking if we are closing
+  private static final long OFFER_WAIT_MS = 100;
+
+  // The messages waiting to be taken
+  private final BlockingQueue<Message> messages;
+
+  // Set when we are closing, so that the delivering thread does not wait
+  private volatile boolean closing = false;
+
+ /**
+  * Create a message buffer.
+  *
+  * @param capacity The number of messages that may be buffered
+  */
+  MessageBuffer(int capacity)
+  {
+    messages = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+  }
+
+ /**
+  * Called by the session for each message delivered. Waits while the buffer
+  * is full. Messages which arrive while we are closing are dropped without
+  * being acknowledged, so the broker will deliver them again.
+  *
+  * @param msg The message delivered
+  */
+  @Override
+  public void onMessage(Message msg)
+  {
+    try
+    {
+      while (!closing)
+      {
+        if (messages.offer(msg, OFFER_WAIT_MS, TimeUnit.MILLISECONDS))
+        {
+          return;
+        }
+      }
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+ /**
+  * Take the messages which are waiting, without waiting for any more.
+  *
+  * @param batch The collection to add the messages to
+  * @param maxMessages The maximum number of messages to take
+  * @return The number of messages taken
+  */
+  int drainTo(Collection<Message> batch, int maxMessages)
+  {
+    return messages.drainTo(batch, maxMessages);
+  }
+
+ /**
+  * Take the next message, waiting for one to arrive.
+  *
+  * @param timeout The time to wait in milliseconds
+  * @return The message, or null if none arrived in time
+  * @throws InterruptedException
+  */
+  Message poll(long timeout) throws InterruptedException
+  {
+    return messages.poll(timeout, TimeUnit.MILLISECONDS);
+  }
+
+ /**
+  * Get the number of messages waiting.
+  *
+  * @return The number of messages
+  */
+  int size()
+  {
+    return messages.size();
+  }
+
+ /**
+  * Stop accepting messages.
+  */
+  void close()
+  {
+    closing = true;
+  }
+
+ /**
+  * Acknowledge a group of messages. The session must be using individual
+  * acknowledgement, so that acknowledging does not also acknowledge the
+  * messages still waiting in the buffer.
+  *
+  * @param batch The messages to acknowledge
+  * @throws JMSException
+  */
+  static void acknowledge(Collection<Message> batch) throws JMSException
+  {
+    for (Message tmpMessage : batch)
+    {
+      tmpMessage.acknowledge();
+    }
+  }
+}
@@ -55,6 +55,9 @@
 package OpenRate.adapter.realTime;
 
 import OpenRate.adapter.objectInterface.AbstractTeeAdapter;
+import OpenRate.buffer.BufferEvent;
+import OpenRate.buffer.IEvent;
+import OpenRate.buffer.IMonitor;
 import OpenRate.exception.ExceptionHandler;
 import OpenRate.logging.AstractLogger;
 import OpenRate.record.HeaderRecord;
@@ -70,9 +73,13 @@ import java.util.logging.Level;
  * to persist real time results into a database. Socket connections are used to
  * perform the communication to the batch pipeline.
  *
+ * The purging thread does not poll. It waits until a batch is opened, and then
+ * until the purge time of that batch has run out, so a part filled batch is
+ * pushed as soon as it is due.
+ *
  * @author ian
  */
-public class TeeBatchConverter implements Runnable
+public class TeeBatchConverter implements Runnable, IMonitor
 {
   /**
    * The PipeLog is the logger which should be used for all pipeline level
@@ -95,6 +102,9 @@ public class TeeBatchConverter implements Runnable
   // the default time we sleep for
   private int sleepTime = 5000;
 
+  // the time that the current batch was opened
+  private long batchOpenedTime = 0;
+
   private AbstractTeeAdapter ParentAdapter;
 
  /**
@@ -141,6 +151,10 @@ public class TeeBatchConverter implements Runnable
         tmpHeader.setStreamName(transID);
         outputBatch = new ArrayList<>();
         outputBatch.add(tmpHeader);
+
+        // start the purge timer for this batch
+        batchOpenedTime = System.currentTimeMillis();
+        notify(BufferEvent.NEW_RECORDS);
       }
 
       outputBatch.add(tmpRecord);
@@ -166,40 +180,59 @@ public class TeeBatchConverter implements Runnable
  /**
   * This thread purges the buffered records to the output stream, either when
   * we have reached the target batch size, or when we just get bored of waiting.
+  * We are woken when a batch is opened, and otherwise wait until the open batch
+  * is due for purging.
   */
   @Override
   public void run()
   {
     boolean threadActive = true;
-    int sleepCounter = 0;
 
-    while (threadActive)
+    synchronized (this)
     {
-      try
+      while (threadActive)
       {
-        // if we had no work to do, think about a sleep
-        if (outputCounter == 0)
+        try
         {
-          Thread.sleep(sleepTime);
+          if (outputCounter == 0)
+          {
+            // no work to do, wait for a batch to be opened
+            wait(sleepTime);
+          }
+          else
+          {
+            long timeToPurge = batchOpenedTime + sleepTime - System.currentTimeMillis();
 
-          sleepCounter = 0;
+            if (timeToPurge <= 0)
+            {
+              // set the batch for purge
+              addRecordToOutputBatch(null, true);
+            }
+            else
+            {
+              wait(timeToPurge);
+            }
+          }
         }
-        else
+        catch (InterruptedException ex)
         {
-          Thread.sleep(100);
-          sleepCounter = sleepCounter + 100;
-
-          if (sleepCounter > sleepTime)
-          {
-            // set the batch for purge
-            addRecordToOutputBatch(null, true);
-          }
+          java.util.logging.Logger.getLogger(TeeBatchConverter.class.getName()).log(Level.SEVERE, null, ex);
         }
       }
-      catch (InterruptedException ex)
-      {
-        java.util.logging.Logger.getLogger(TeeBatchConverter.class.getName()).log(Level.SEVERE, null, ex);
-      }
+    }
+  }
+
+ /**
+  * Wake the purging thread, because a batch has been opened.
+  *
+  * @param e The event
+  */
+  @Override
+  public void notify(IEvent e)
+  {
+    synchronized (this)
+    {
+      notifyAll();
     }
   }
 
@@ -0,0 +1,330 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+
+/**
+ * Reads newline delimited records from one non-blocking socket connection.
+ * The bytes read are framed into records directly in the read buffer, and the
+ * records are held until the input adapter takes them. When too many records
+ * are waiting, reading from the connection is paused, so that the feeder is
+ * held back by TCP flow control until the records have been taken. A record
+ * longer than the maximum record length ends the feed, so that a feeder which
+ * never sends a line ending cannot make the read buffer grow without limit.
+ *
+ * @author ian
+ */
+class SocketFeed
+{
+  // The initial size of the read buffer. It grows for records longer than this
+  private static final int READ_BUFFER_SIZE = 65536;
+
+  // The connection we are reading
+  private final SocketChannel channel;
+
+  // The registration of the connection with the selector
+  private final SelectionKey key;
+
+  // The character set of the records
+  private final Charset charset;
+
+  // The number of records we hold before pausing reading
+  private final int maxPending;
+
+  // The longest record we accept, in bytes
+  private final int maxRecordLength;
+
+  // The bytes read but not yet framed into records
+  private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+  // The records framed, waiting to be taken
+  private final ArrayDeque<String> records = new ArrayDeque<>();
+
+  // Set if the last record ended with a '\r', so we skip a following '\n'
+  private boolean skipLF = false;
+
+  // Set when the feeder has closed the connection
+  private boolean endOfStream = false;
+
+  // Set while reading is paused
+  private boolean paused = false;
+
+ /**
+  * Create a feed for a connection. The connection must already be registered
+  * for reading with the selector.
+  *
+  * @param channel The connection to read
+  * @param key The registration of the connection
+  * @param charset The character set of the records
+  * @param maxPending The number of records to hold before pausing reading
+  * @param maxRecordLength The longest record to accept, in bytes
+  */
+  SocketFeed(SocketChannel channel, SelectionKey key, Charset charset, int maxPending, int maxRecordLength)
+  {
+    this.channel = channel;
+    this.key = key;
+    this.charset = charset;
+    this.maxPending = Math.max(maxPending, 1);
+    this.maxRecordLength = Math.max(maxRecordLength, 1);
+  }
+
+ /**
+  * Read what the connection has available and frame it into records. Called
+  * when the selector reports the connection as readable.
+  *
+  * @return The number of bytes read, -1 if the feeder closed the connection
+  * @throws IOException if the connection failed, or a record is too long
+  */
+  int read() throws IOException
+  {
+    int bytesRead;
+
+    try
+    {
+      bytesRead = channel.read(readBuffer);
+    }
+    catch (IOException ex)
+    {
+      // treat the connection as closed, we keep what we have framed so far
+      endOfStream = true;
+      key.cancel();
+      throw ex;
+    }
+
+    if (bytesRead < 0)
+    {
+      // a last record without a line ending
+      readBuffer.flip();
+      if (readBuffer.hasRemaining())
+      {
+        records.add(decode(readBuffer.position(), readBuffer.limit()));
+      }
+      readBuffer.clear();
+
+      endOfStream = true;
+      key.interestOps(0);
+      return bytesRead;
+    }
+
+    frameRecords();
+
+    if (readBuffer.position() > maxRecordLength)
+    {
+      // the feeder is not sending line endings, give up on the connection and
+      // keep what we have framed so far
+      int tmpLength = readBuffer.position();
+      readBuffer = ByteBuffer.allocate(0);
+      endOfStream = true;
+      key.cancel();
+      throw new IOException("Record longer than <" + maxRecordLength + "> bytes, got <" + tmpLength + "> bytes without a line ending");
+    }
+
+    if (records.size() >= maxPending)
+    {
+      paused = true;
+      key.interestOps(0);
+    }
+
+    return bytesRead;
+  }
+
+ /**
+  * Split the bytes in the read buffer into records on '\n', '\r' or "\r\n",
+  * keeping any incomplete record at the start of the buffer.
+  */
+  private void frameRecords()
+  {
+    readBuffer.flip();
+
+    byte[] bytes = readBuffer.array();
+    int start = readBuffer.position();
+    int end = readBuffer.limit();
+
+    for (int i = start ; i < end ; i++)
+    {
+      byte b = bytes[i];
+
+      if (b == '\n' || b == '\r')
+      {
+        if (skipLF && b == '\n' && i == start)
+        {
+          // the second half of a "\r\n" split across reads
+          start = i + 1;
+        }
+        else
+        {
+          records.add(decode(start, i));
+          start = i + 1;
+
+          if (b == '\r' && i + 1 < end && bytes[i + 1] == '\n')
+          {
+            i++;
+            start = i + 1;
+          }
+        }
+
+        // a '\r' at the end of what we have read may be followed by a '\n'
+        skipLF = (b == '\r') && (start == end) && (bytes[end - 1] == '\r');
+      }
+      else
+      {
+        skipLF = false;
+      }
+    }
+
+    readBuffer.position(start);
+
+    if (start == 0 && end == readBuffer.capacity())
+    {
+      // a record longer than the buffer, make room for the rest of it
+      ByteBuffer tmpBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+      tmpBuffer.put(readBuffer);
+      readBuffer = tmpBuffer;
+    }
+    else
+    {
+      readBuffer.compact();
+    }
+  }
+
+ /**
+  * Decode a record from the read buffer.
+  *
+  * @param start The offset of the first byte of the record
+  * @param end The offset after the last byte of the record
+  * @return The record
+  */
+  private String decode(int start, int end)
+  {
+    return new String(readBuffer.array(), start, end - start, charset);
+  }
+
+ /**
+  * Take the next record, resuming reading if we had paused and the records
+  * waiting have dropped to half the limit.
+  *
+  * @return The record, or null if none is waiting
+  */
+  String nextRecord()
+  {
+    String tmpRecord = records.poll();
+
+    if (paused && !endOfStream && records.size() <= maxPending / 2 && key.isValid())
+    {
+      paused = false;
+      key.interestOps(SelectionKey.OP_READ);
+    }
+
+    return tmpRecord;
+  }
+
+ /**
+  * See if there are records waiting to be taken.
+  *
+  * @return true if there are records waiting
+  */
+  boolean hasRecords()
+  {
+    return !records.isEmpty();
+  }
+
+ /**
+  * See if the feed has finished, that is the feeder has closed the connection
+  * and all the records have been taken.
+  *
+  * @return true if the feed has finished
+  */
+  boolean isFinished()
+  {
+    return endOfStream && records.isEmpty();
+  }
+
+ /**
+  * See if reading is paused because too many records are waiting.
+  *
+  * @return true if reading is paused
+  */
+  boolean isPaused()
+  {
+    return paused;
+  }
+
+ /**
+  * Get the address of the feeder, for logging.
+  *
+  * @return The remote address
+  */
+  String getRemoteAddress()
+  {
+    return String.valueOf(channel.socket().getRemoteSocketAddress());
+  }
+
+ /**
+  * Close the connection.
+  *
+  * @throws IOException
+  */
+  void close() throws IOException
+  {
+    key.cancel();
+    channel.close();
+  }
+}
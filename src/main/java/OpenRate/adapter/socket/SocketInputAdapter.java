@@ -52,7 +52,6 @@
  * Half International.
  * ====================================================================
  */
-
 package OpenRate.adapter.socket;
 
 import OpenRate.adapter.AbstractTransactionalInputAdapter;
@@ -64,15 +63,17 @@ import OpenRate.record.HeaderRecord;
 import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Generic Socket Input InputAdapter.
@@ -91,42 +92,74 @@ import java.util.Iterator;
  * The transaction is initiated by receiving an input record with the HEADER
  * tag. The transaction is closed when a record is received with the TRAILER
  * tag. When the transaction is closed, the socket is closed as well, and
- * must be re-opened.
+ * must be re-opened. If the feeder closes the connection before sending the
+ * TRAILER, the transaction is aborted.
  *
  * <p>  Scanning and Processing<br>
  *   -----------------------
  *
- * <p>[to do]<br>
- *
+ * <p>The listener and the connections are non-blocking and are served by a
+ * single selector in the adapter thread, so that up to "MaxConnections"
+ * (default 16) feeders can be connected at the same time. The records of each
+ * connection are framed from the bytes read and held per connection. The
+ * transactions of the connections are passed into the pipeline one after the
+ * other, in the order the connections were accepted, so that the records of
+ * different transactions are not mixed. When a connection holds more than
+ * "MaxPendingRecords" (default the batch size) records, reading from it is
+ * paused until the records have been taken, which holds the feeder back.
+ * Nothing is read while the pipeline buffers are full. A feeder which sends a
+ * record longer than "MaxRecordLength" bytes (default 1MB) is treated as if it
+ * had closed the connection, so its transaction is aborted.
  */
 public abstract class SocketInputAdapter
   extends AbstractTransactionalInputAdapter
   implements IEventInterface
 {
-  // this is the hard limit on the maximum number of files that we can open
-  // in the same batch
-  private static final int MAX_CONCURRENT_CONNECTIONS = 1;
+  // The default maximum number of feeders that may be connected at once
+  private static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+  // The default longest record we accept, in bytes
+  private static final int DEFAULT_MAX_RECORD_LENGTH = 1048576;
+
+  // The time we wait for something to arrive when we have nothing to do
+  private static final long SELECT_TIMEOUT = 100;
 
   // Port of the Socket to listen on
   private int ListenerPort;
-  /*
-   * Socket is initialized in the init() method and is kept open for loadBatch()
-   * calls and then closed in cleanup().
-   */
-  private ServerSocket serverSocket;
 
-  // Used to hold current communication
-  private Socket InputSocket;
+  // The maximum number of feeders that may be connected at once
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+  // The number of records held per connection before pausing reading, 0 for
+  // the batch size
+  private int maxPendingRecords = 0;
+
+  // The longest record we accept from a feeder, in bytes
+  private int maxRecordLength = DEFAULT_MAX_RECORD_LENGTH;
 
   /*
-   * Socket Reader is initialized in the init() method and is kept open for loadBatch()
-   * calls and then closed in cleanup().
+   * The listener and selector are initialized in the init() method and are
+   * kept open for loadBatch() calls and then closed in cleanup().
    */
-  private BufferedReader socketRecordReader = null;
+  private ServerSocketChannel serverChannel;
+  private Selector selector;
+  private SelectionKey serverKey;
+
+  // The connected feeders, in the order they were accepted
+  private final List<SocketFeed> feeds = new ArrayList<>();
+
+  // The feeder whose records we are passing into the pipeline
+  private SocketFeed currentFeed = null;
+
+  // The character set of the records
+  private final Charset charset = Charset.defaultCharset();
 
   // This is the current transaction number we are working on
   private int      transactionNumber = 0;
 
+  // Set while we are between the HEADER and the TRAILER of a feeder
+  private boolean inTransaction = false;
+
   /**
   * used to track the status of the stream processing. This should normally
   * count the number of input records which have been processed.
@@ -184,6 +217,45 @@ public abstract class SocketInputAdapter
       throw new InitializationException(message,getSymbolicName());
     }
 
+    // Get the number of feeders we serve at once
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, ModuleName, "MaxConnections", Integer.toString(DEFAULT_MAX_CONNECTIONS));
+
+    try
+    {
+      maxConnections = Math.max(Integer.parseInt(ConfigHelper), 1);
+    }
+    catch (NumberFormatException nfe)
+    {
+      message = "Could not parse the MaxConnections value <" + ConfigHelper + ">";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    // Get the number of records we hold per feeder
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, ModuleName, "MaxPendingRecords", "0");
+
+    try
+    {
+      maxPendingRecords = Math.max(Integer.parseInt(ConfigHelper), 0);
+    }
+    catch (NumberFormatException nfe)
+    {
+      message = "Could not parse the MaxPendingRecords value <" + ConfigHelper + ">";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
+    // Get the longest record we accept
+    ConfigHelper = PropertyUtils.getPropertyUtils().getBatchInputAdapterPropertyValueDef(PipelineName, ModuleName, "MaxRecordLength", Integer.toString(DEFAULT_MAX_RECORD_LENGTH));
+
+    try
+    {
+      maxRecordLength = Math.max(Integer.parseInt(ConfigHelper), 1);
+    }
+    catch (NumberFormatException nfe)
+    {
+      message = "Could not parse the MaxRecordLength value <" + ConfigHelper + ">";
+      throw new InitializationException(message,getSymbolicName());
+    }
+
     // Check the file name scanning variables, throw initialisation exception
     // if something is wrong.
     try{
@@ -202,9 +274,10 @@ public abstract class SocketInputAdapter
   * or to scan for work to do, depending on whether we are already processing
   * or not.
   *
-  * The way this works is that we assign a batch of files to work on, and then
-  * work our way through them. This minimizes the directory scans that we have
-  * to do and improves performance.
+  * Each call accepts any new connections and reads what the connected feeders
+  * have sent, then passes the records of the current feeder into the batch.
+  * When the current feeder has sent its TRAILER, we carry on with the next
+  * feeder that has records waiting.
   */
   @Override
   protected Collection<IRecord> loadBatch()
@@ -219,56 +292,67 @@ public abstract class SocketInputAdapter
       FlatRecord    tmpDataRecord;
       IRecord       batchRecord;
       Outbatch = new ArrayList<>();
-      int batchCount = 0;
-      boolean InTrans = false;
-
-      InputRecordNumber = 0;
 
-      // contine with the open file
+      // contine with the open connections
       try
       {
         checkSocket();
 
-        // we don't want the socket to block
-        serverSocket.setSoTimeout(100);
-        serverSocket.setReuseAddress(true);
+        // accept and read the connections, only waiting if there is nothing
+        // to work on
+        pollConnections(hasWork() ? 0 : SELECT_TIMEOUT);
 
-        try
+        // read from the current feeder and prepare the batch
+        while (ThisBatchCounter < batchSize)
         {
-          InputSocket = serverSocket.accept();
-        }
-        catch (SocketTimeoutException ste)
-        {
-          // There was nothing to process - just go back
-          return Outbatch;
-        }
-
-        BufferedReader inputRecordStream = new BufferedReader(new InputStreamReader(InputSocket.getInputStream()));
-
-        // read from the socket and prepare the batch
-        while (InputSocket.isClosed() == false && (ThisBatchCounter < batchSize))
-        {
-          String inputRecord;
-          if(inputRecordStream.ready())
+          if (currentFeed == null)
           {
-            inputRecord = inputRecordStream.readLine();
+            currentFeed = nextFeed();
+
+            if (currentFeed == null)
+            {
+              // There was nothing to process - just go back
+              break;
+            }
           }
-          else
+
+          String inputRecord = currentFeed.nextRecord();
+
+          if (inputRecord == null)
           {
+            if (currentFeed.isFinished())
+            {
+              // the feeder went away without sending the trailer
+              if (inTransaction)
+              {
+                getPipeLog().error("Connection from <" + currentFeed.getRemoteAddress() + "> closed in transaction <" + transactionNumber + ">");
+                setTransactionAbort(transactionNumber);
+                Outbatch.add(flushCurrentTransaction(Outbatch));
+                ThisBatchCounter++;
+              }
+
+              closeFeed(currentFeed);
+              currentFeed = null;
+              continue;
+            }
+
+            // wait for the feeder to send more
             break;
           }
 
           // skip blank records
-          if (inputRecord != null && inputRecord.length() == 0)
+          if (inputRecord.length() == 0)
           {
             continue;
           }
+
         // Handle the header and trailer
         switch (inputRecord) {
           case "HEADER":
             // create the transaction
             transactionNumber = createNewTransaction();
-            InTrans = true;
+            inTransaction = true;
+            InputRecordNumber = 0;
             getPipeLog().info("opening trans " + transactionNumber);
             // Inform the transactional layer that we have started processing
             setTransactionProcessing(transactionNumber);
@@ -280,37 +364,13 @@ public abstract class SocketInputAdapter
             // needs to be done
             tmpHeader = (HeaderRecord)procHeader((IRecord)tmpHeader);
             Outbatch.add(tmpHeader);
-            batchCount = 0;
             break;
           case "TRAILER":
-            // Inject a stream trailer record into the stream
-            tmpTrailer = new TrailerRecord();
-            tmpTrailer.setStreamName("SocketInput_"+transactionNumber);
-            tmpTrailer.setTransactionNumber(transactionNumber);
-            // Pass the header to the user layer for any processing that
-            // needs to be done. To allow for purging in the case of record
-            // compression, we allow mutiple calls to procTrailer until the
-            // trailer is returned
-            batchRecord = procTrailer((IRecord)tmpTrailer);
-            while (!(batchRecord instanceof TrailerRecord))
-            {
-              // the call the trailer returned a purged record. Add this
-              // to the batch and refetch
-              Outbatch.add(batchRecord);
-              batchRecord = procTrailer((IRecord)tmpTrailer);
-            }
-            Outbatch.add(tmpTrailer);
+            Outbatch.add(flushCurrentTransaction(Outbatch));
             ThisBatchCounter++;
             // Close the socket
-            inputRecordStream.close();
-            InputSocket.close();
-            // Notify the transaction layer that we have finished
-            setTransactionFlushed(transactionNumber);
-            InTrans = false;
-            getPipeLog().info("flushed trans " + transactionNumber);
-            // Remove the transaction from the list
-            transactionNumber = 0;
-            getPipeLog().info("Recevive batch count " + batchCount);
+            closeFeed(currentFeed);
+            currentFeed = null;
             break;
           default:
             // All other records
@@ -339,9 +399,9 @@ public abstract class SocketInputAdapter
             }
             else
             {
-              if (InTrans == false)
+              if (inTransaction == false)
               {
-                System.err.println("Record when no trans");
+                getPipeLog().warning("Record when no trans from <" + currentFeed.getRemoteAddress() + ">");
               }
               ThisBatchCounter++;
               tmpDataRecord = new FlatRecord(inputRecord, InputRecordNumber);
@@ -357,7 +417,6 @@ public abstract class SocketInputAdapter
                 Outbatch.add(batchRecord);
               }
             }
-            batchCount++;
             break;
         }
         }
@@ -370,6 +429,46 @@ public abstract class SocketInputAdapter
     return Outbatch;
   }
 
+ /**
+  * Inject the trailer for the current transaction and tell the transaction
+  * layer that we have finished it.
+  *
+  * @param Outbatch The batch to add any purged records to
+  * @return The trailer record
+  * @throws ProcessingException
+  */
+  private IRecord flushCurrentTransaction(Collection<IRecord> Outbatch)
+    throws ProcessingException
+  {
+    TrailerRecord tmpTrailer;
+    IRecord       batchRecord;
+
+    // Inject a stream trailer record into the stream
+    tmpTrailer = new TrailerRecord();
+    tmpTrailer.setStreamName("SocketInput_"+transactionNumber);
+    tmpTrailer.setTransactionNumber(transactionNumber);
+    // Pass the header to the user layer for any processing that
+    // needs to be done. To allow for purging in the case of record
+    // compression, we allow mutiple calls to procTrailer until the
+    // trailer is returned
+    batchRecord = procTrailer((IRecord)tmpTrailer);
+    while (!(batchRecord instanceof TrailerRecord))
+    {
+      // the call the trailer returned a purged record. Add this
+      // to the batch and refetch
+      Outbatch.add(batchRecord);
+      batchRecord = procTrailer((IRecord)tmpTrailer);
+    }
+    // Notify the transaction layer that we have finished
+    setTransactionFlushed(transactionNumber);
+    inTransaction = false;
+    getPipeLog().info("flushed trans " + transactionNumber + " with <" + InputRecordNumber + "> records");
+    // Remove the transaction from the list
+    transactionNumber = 0;
+
+    return tmpTrailer;
+  }
+
   /**
    * Closes down the input stream after all the input has been collected
    *
@@ -379,17 +478,7 @@ public abstract class SocketInputAdapter
   public void closeStream(int TransactionNumber)
     throws ProcessingException
   {
-//    try
-//    {
-//      serverSocket.close();
-//    }
-//    catch (IOException ex)
-//    {
-//      getPipeLog().error("Application is unable to close the Socket: '" + TransactionNumber +
-//                "' ");
-//      throw new ProcessingException("Application is unable to close the Socket : '" +
-//                                    TransactionNumber + "' ", ex);
-//    }
+    // Nothing
   }
 
  /**
@@ -404,20 +493,61 @@ public abstract class SocketInputAdapter
     return null;
   }
 
+ /**
+  * Close the connections, the listener and the selector.
+  */
+  @Override
+  public void cleanup()
+  {
+    try
+    {
+      for (SocketFeed tmpFeed : feeds)
+      {
+        tmpFeed.close();
+      }
+      feeds.clear();
+      currentFeed = null;
 
+      if (serverChannel != null)
+      {
+        serverChannel.close();
+      }
+
+      if (selector != null)
+      {
+        selector.close();
+      }
+    }
+    catch (IOException ex)
+    {
+      getPipeLog().error("Error closing socket. Message <" + ex.getMessage() + ">");
+    }
+
+    super.cleanup();
+  }
 
   // -----------------------------------------------------------------------------
   // ------------------------ Start of custom functions --------------------------
   // -----------------------------------------------------------------------------
 
  /**
+  * Open the non-blocking listener and register it with a new selector.
   *
   * @throws IOException
   */
   private void initSocket() throws IOException
   {
+    if (selector != null)
+    {
+      selector.close();
+    }
 
-    this.serverSocket = new ServerSocket(this.ListenerPort);
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().setReuseAddress(true);
+    serverChannel.socket().bind(new InetSocketAddress(this.ListenerPort));
+    serverChannel.configureBlocking(false);
+    serverKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
     getPipeLog().info("Input Socket Initialized @ port: " + this.ListenerPort);
     System.out.println(getSymbolicName() + " Input Socket Initialized @ port <" + this.ListenerPort + ">");
@@ -430,11 +560,142 @@ public abstract class SocketInputAdapter
    */
   private void checkSocket() throws IOException
   {
-      if(serverSocket.isClosed()){
+      if(serverChannel.isOpen() == false){
           initSocket();
       }
   }
 
+ /**
+  * Accept any waiting connections and read from the connections which have
+  * data available.
+  *
+  * @param timeout The time to wait for something to happen, 0 not to wait
+  * @throws IOException
+  */
+  private void pollConnections(long timeout) throws IOException
+  {
+    if (timeout > 0)
+    {
+      selector.select(timeout);
+    }
+    else
+    {
+      selector.selectNow();
+    }
+
+    Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+
+    while (keyIterator.hasNext())
+    {
+      SelectionKey key = keyIterator.next();
+      keyIterator.remove();
+
+      if (key.isValid() == false)
+      {
+        continue;
+      }
+
+      if (key.isAcceptable())
+      {
+        acceptConnections();
+      }
+      else if (key.isReadable())
+      {
+        SocketFeed tmpFeed = (SocketFeed) key.attachment();
+
+        try
+        {
+          tmpFeed.read();
+        }
+        catch (IOException ioex)
+        {
+          // only this connection is affected
+          getPipeLog().error("Error reading connection from <" + tmpFeed.getRemoteAddress() + ">. Message <" + ioex.getMessage() + ">");
+        }
+      }
+    }
+  }
+
+ /**
+  * Accept the waiting connections, up to the maximum number of connections.
+  * When we reach the maximum, we stop accepting until a connection closes.
+  *
+  * @throws IOException
+  */
+  private void acceptConnections() throws IOException
+  {
+    SocketChannel tmpChannel;
+
+    while (feeds.size() < maxConnections && (tmpChannel = serverChannel.accept()) != null)
+    {
+      tmpChannel.configureBlocking(false);
+      SelectionKey tmpKey = tmpChannel.register(selector, SelectionKey.OP_READ);
+      SocketFeed tmpFeed = new SocketFeed(tmpChannel, tmpKey, charset, (maxPendingRecords == 0) ? batchSize : maxPendingRecords, maxRecordLength);
+      tmpKey.attach(tmpFeed);
+      feeds.add(tmpFeed);
+
+      getPipeLog().debug("Accepted connection from <" + tmpFeed.getRemoteAddress() + ">");
+    }
+
+    if (feeds.size() >= maxConnections)
+    {
+      serverKey.interestOps(0);
+    }
+  }
+
+ /**
+  * Close a connection and remove it from the connected feeders.
+  *
+  * @param feed The connection to close
+  * @throws IOException
+  */
+  private void closeFeed(SocketFeed feed) throws IOException
+  {
+    feeds.remove(feed);
+    feed.close();
+
+    // we have room to accept again
+    if (serverKey.isValid() && feeds.size() < maxConnections)
+    {
+      serverKey.interestOps(SelectionKey.OP_ACCEPT);
+    }
+  }
+
+ /**
+  * Get the first connected feeder which has something for us to do.
+  *
+  * @return The feeder, or null if there is none
+  */
+  private SocketFeed nextFeed()
+  {
+    for (SocketFeed tmpFeed : feeds)
+    {
+      if (tmpFeed.hasRecords() || tmpFeed.isFinished())
+      {
+        return tmpFeed;
+      }
+    }
+
+    return null;
+  }
+
+ /**
+  * See if there are records we can pass into the pipeline straight away.
+  * Records waiting on feeders other than the current one do not count, as
+  * they have to wait for the current feeder to finish.
+  *
+  * @return true if there is work waiting
+  */
+  private boolean hasWork()
+  {
+    if (currentFeed != null)
+    {
+      return currentFeed.hasRecords() || currentFeed.isFinished();
+    }
+
+    return (nextFeed() != null);
+  }
+
   /**
   * Flush Transaction finishes the output of any existing records in the pipe.
   * Any errors or potential error conditions should be handled here, because
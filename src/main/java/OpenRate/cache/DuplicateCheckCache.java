@@ -67,6 +67,7 @@ import java.sql.*;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -493,6 +494,52 @@ public class DuplicateCheckCache
     return false;
   }
 
+ /**
+  * Check a batch of keys for duplicates. This gives the same results as
+  * calling DuplicateCheck for each key in turn, so a key that appears twice in
+  * the batch is a duplicate the second time, but the caches are only located
+  * once for the whole batch.
+  *
+  * @param RecordKeys The keys to check
+  * @param TimeStamps The UTC time stamps of the records, in seconds
+  * @param TransactionNumber The transaction the records belong to
+  * @return For each key, true if the record is a duplicate, otherwise false
+  * @throws ProcessingException
+  */
+  public boolean[] DuplicateCheck(List<String> RecordKeys, long[] TimeStamps, int TransactionNumber) throws ProcessingException
+  {
+    boolean[] results = new boolean[RecordKeys.size()];
+
+    // the main cache may be swapped by a purge, so use the same one throughout
+    ConcurrentHashMap<String, Long> tmpRecordList = recordList;
+    HashMap<String, Long> tmpTransRecordList = TransRecordList.get(TransactionNumber);
+
+    for (int i = 0 ; i < results.length ; i++)
+    {
+      String tmpKey = RecordKeys.get(i);
+
+      if (TimeStamps[i] > bufferLimit)
+      {
+        // look only in the HashMaps
+        if (tmpRecordList.containsKey(tmpKey) || tmpTransRecordList.containsKey(tmpKey))
+        {
+          results[i] = true;
+        }
+        else
+        {
+          tmpTransRecordList.put(tmpKey, TimeStamps[i]);
+        }
+      }
+      else
+      {
+        // older records need the database
+        results[i] = DuplicateCheck(tmpKey, TimeStamps[i], TransactionNumber);
+      }
+    }
+
+    return results;
+  }
+
   // -----------------------------------------------------------------------------
   // ------------------ Start of transaction layer functions ---------------------
   // -----------------------------------------------------------------------------
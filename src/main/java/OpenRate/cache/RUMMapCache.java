@@ -58,6 +58,7 @@ package OpenRate.cache;
 import OpenRate.OpenRate;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
+import OpenRate.record.RUMRegistry;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -131,6 +132,11 @@ public class RUMMapCache
      */
     public String RUM;
 
+    /**
+     * The ID of the RUM in the RUMRegistry, for fast access to the RUM value
+     */
+    public int    RUMID;
+
     /**
      * The resource that we are to impact
      */
@@ -232,6 +238,7 @@ public class RUMMapCache
       tmpRMEntry = new RUMMapEntry();
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
+      tmpRMEntry.RUMID = RUMRegistry.registerRUM(RUM);
       tmpRMEntry.Resource = Resource;
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
@@ -271,6 +278,7 @@ public class RUMMapCache
       tmpRMEntry = new RUMMapEntry();
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
+      tmpRMEntry.RUMID = RUMRegistry.registerRUM(RUM);
       tmpRMEntry.Resource = Resource;
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
@@ -58,6 +58,7 @@ import OpenRate.CommonConfig;
 import OpenRate.OpenRate;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
+import OpenRate.record.RUMRegistry;
 import OpenRate.record.RateMapEntry;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
@@ -164,6 +165,11 @@ public class RUMRateCache
      */
     public String RUM;
 
+    /**
+     * The ID of the RUM in the RUMRegistry, for fast access to the RUM value
+     */
+    public int    RUMID;
+
     /**
      * The resource that we are to impact
      */
@@ -223,6 +229,10 @@ public class RUMRateCache
    */
   protected static String PriceModelDataFile;
 
+  // The generation of the price model data, moved on by each reload so that
+  // results derived from the old data can be recognised and dropped
+  private volatile int generation = 0;
+
 // -----------------------------------------------------------------------------
 // ------------------ Start of inherited Plug In functions ---------------------
 // -----------------------------------------------------------------------------
@@ -442,6 +452,7 @@ public class RUMRateCache
       tmpRMEntry = new RUMMapEntry();
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
+      tmpRMEntry.RUMID = RUMRegistry.registerRUM(RUM);
       tmpRMEntry.Resource = Resource;
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
@@ -481,6 +492,7 @@ public class RUMRateCache
       tmpRMEntry = new RUMMapEntry();
       tmpRMEntry.PriceModel = PriceModel;
       tmpRMEntry.RUM = RUM;
+      tmpRMEntry.RUMID = RUMRegistry.registerRUM(RUM);
       tmpRMEntry.Resource = Resource;
       tmpRMEntry.ResourceCounter = Integer.parseInt(ResourceCounter);
 
@@ -1027,6 +1039,39 @@ public class RUMRateCache
     throw new InitializationException("Not implemented yet",getSymbolicName());
   }
 
+ /**
+  * Reload the data, moving on the generation of the price model data before
+  * and after the reload.
+  *
+  * @throws InitializationException
+  */
+  @Override
+  public void ReloadData() throws InitializationException
+  {
+    generation++;
+
+    try
+    {
+      super.ReloadData();
+    }
+    finally
+    {
+      generation++;
+    }
+  }
+
+ /**
+  * Get the generation of the price model data. This changes each time that
+  * the data is reloaded, and can be used to invalidate anything derived from
+  * the price models.
+  *
+  * @return The current generation
+  */
+  public int getGeneration()
+  {
+    return generation;
+  }
+
  /**
   * Clear down the cache contents in the case that we are ordered to reload
   */
@@ -0,0 +1,636 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import OpenRate.exception.ASN1Exception;
+import java.nio.ByteBuffer;
+
+/**
+ * Cursor style ASN.1 (BER) decoder over a ByteBuffer. The cursor walks the
+ * TLV elements of the data in order, and for each one exposes the tag, the
+ * length and the offset of the value in the buffer, without copying anything.
+ * The decode helpers work straight from the buffer, into primitives or into
+ * buffers that the caller re-uses, so decoding does not allocate per element.
+ *
+ * The buffer can be a heap buffer, a slice of a record, or a mapped file. The
+ * cursor only reads it by absolute position, so the position and limit of the
+ * buffer are not changed.
+ *
+ * Constructed elements are entered by next(), so the following call to next()
+ * returns the first child. Call skip() instead to jump over the whole
+ * constructed element. Filler bytes (0x00 where a tag is expected) are
+ * returned as null tags, as ASN1Parser does.
+ *
+ * The raw tag hex strings used as keys by IASN1Def definitions are available
+ * from getRawTag(), which does not allocate for single byte tags, so existing
+ * definitions can be used with the cursor.
+ *
+ * @author ian
+ */
+public class ASN1Cursor implements IBinaryParser
+{
+ /**
+  * The length reported for indefinite length elements
+  */
+  public static final int INDEFINITE_LENGTH = -1;
+
+  // tag and length encoding
+  private static final int TAG_MASK = 0x1F;
+  private static final int FORM_MASK = 0x20;
+  private static final int LEN_XTND = 0x80;
+  private static final int LEN_MASK = 0x7F;
+
+  // hex digits for the helpers
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  // the raw tag strings of the single byte tags
+  private static final String[] RAW_TAGS = new String[256];
+
+  static
+  {
+    for (int i = 0 ; i < 256 ; i++)
+    {
+      RAW_TAGS[i] = new String(new char[]{HEX[i >> 4], HEX[i & 0x0f]});
+    }
+  }
+
+  // The data we are decoding
+  private ByteBuffer data;
+  private int position;
+  private int end;
+
+  // The current element
+  private boolean nullTag;
+  private int tagByte;
+  private int tag;
+  private int rawTag;
+  private int rawTagLength;
+  private int headerOffset;
+  private int valueOffset;
+  private int length;
+
+  // Used to build strings in parseValue()
+  private final StringBuilder work = new StringBuilder(64);
+
+ /**
+  * Create a cursor with no data.
+  */
+  public ASN1Cursor()
+  {
+    // Nothing
+  }
+
+ /**
+  * Create a cursor over the remaining data of a buffer.
+  *
+  * @param data The data to decode
+  */
+  public ASN1Cursor(ByteBuffer data)
+  {
+    setDataToParse(data);
+  }
+
+ /**
+  * Set the data to be parsed.
+  *
+  * @param data The data to be parsed
+  */
+  @Override
+  public void setDataToParse(byte[] data)
+  {
+    setDataToParse(ByteBuffer.wrap(data));
+  }
+
+ /**
+  * Set the data to be parsed, from the position to the limit of the buffer.
+  *
+  * @param data The data to be parsed
+  */
+  public void setDataToParse(ByteBuffer data)
+  {
+    this.data = data;
+    this.position = data.position();
+    this.end = data.limit();
+    this.headerOffset = position;
+    this.valueOffset = position;
+    this.length = 0;
+  }
+
+ /**
+  * Find out whether there are more elements to read
+  *
+  * @return true if there is more data
+  */
+  public boolean ready()
+  {
+    return position < end;
+  }
+
+ /**
+  * Move to the next element. Primitive elements are moved over, constructed
+  * elements are entered.
+  *
+  * @throws ASN1Exception If the element is not valid, or runs past the end of
+  * the data
+  */
+  public void next() throws ASN1Exception
+  {
+    headerOffset = position;
+    tagByte = readByte();
+
+    // filler byte, used as packing by some formats
+    if (tagByte == 0)
+    {
+      nullTag = true;
+      tag = 0;
+      rawTag = 0;
+      rawTagLength = 1;
+      length = 0;
+      valueOffset = position;
+      return;
+    }
+
+    nullTag = false;
+    rawTag = tagByte;
+    rawTagLength = 1;
+
+    if ((tagByte & TAG_MASK) == TAG_MASK)
+    {
+      // Long tag encoded as sequence of 7-bit values
+      int tmpByte;
+      tag = 0;
+      do
+      {
+        if (rawTagLength == 4)
+        {
+          throw new ASN1Exception("Tag too long at offset <" + headerOffset + ">");
+        }
+        tmpByte = readByte();
+        rawTag = (rawTag << 8) | tmpByte;
+        rawTagLength++;
+        tag = (tag << 7) | (tmpByte & 0x7F);
+      } while ((tmpByte & LEN_XTND) != 0);
+    }
+    else
+    {
+      tag = tagByte & TAG_MASK;
+    }
+
+    // Parse the length
+    int tmpLength = readByte();
+    if (tmpLength == LEN_XTND)
+    {
+      if (!isConstructed())
+      {
+        throw new ASN1Exception("Indefinite length on primitive element at offset <" + headerOffset + ">");
+      }
+      tmpLength = INDEFINITE_LENGTH;
+    }
+    else if ((tmpLength & LEN_XTND) != 0)
+    {
+      int tmpLengthBytes = tmpLength & LEN_MASK;
+      if (tmpLengthBytes > 4)
+      {
+        throw new ASN1Exception("Length cannot be represented as a Java int at offset <" + headerOffset + ">");
+      }
+
+      tmpLength = 0;
+      for (int i = 0 ; i < tmpLengthBytes ; i++)
+      {
+        tmpLength = (tmpLength << 8) | readByte();
+      }
+
+      if (tmpLength < 0)
+      {
+        throw new ASN1Exception("Length cannot be represented as a Java int at offset <" + headerOffset + ">");
+      }
+    }
+
+    length = tmpLength;
+    valueOffset = position;
+
+    if (length != INDEFINITE_LENGTH && length > end - valueOffset)
+    {
+      throw new ASN1Exception("Element at offset <" + headerOffset + "> of length <" + length + "> runs past the end of the data");
+    }
+
+    // step over primitive values, step into constructed ones
+    if (!isConstructed())
+    {
+      position = valueOffset + length;
+    }
+  }
+
+ /**
+  * Skip the rest of the current element. For a constructed element which has
+  * just been entered, this jumps over all of its children by the length,
+  * without decoding them (or walks them to the end of content octets if the
+  * length is indefinite). For a primitive element it does nothing, because
+  * next() has already moved over the value.
+  *
+  * @throws ASN1Exception
+  */
+  public void skip() throws ASN1Exception
+  {
+    if (!isConstructed() || position != valueOffset)
+    {
+      return;
+    }
+
+    if (length != INDEFINITE_LENGTH)
+    {
+      position = valueOffset + length;
+      return;
+    }
+
+    // walk the children to the matching end of contents
+    int tmpDepth = 1;
+    while (tmpDepth > 0)
+    {
+      if (skipEndOfContents())
+      {
+        tmpDepth--;
+        continue;
+      }
+
+      next();
+      if (isConstructed() && length == INDEFINITE_LENGTH)
+      {
+        tmpDepth++;
+      }
+      else if (isConstructed())
+      {
+        position = valueOffset + length;
+      }
+    }
+  }
+
+ /**
+  * See if the cursor is at the end of contents octets (0x00 0x00) which close
+  * an indefinite length element, and if so move over them.
+  *
+  * @return true if the end of contents octets were found
+  */
+  public boolean skipEndOfContents()
+  {
+    if (position + 1 < end && data.get(position) == 0 && data.get(position + 1) == 0)
+    {
+      position += 2;
+      return true;
+    }
+
+    return false;
+  }
+
+  // read the next byte, unsigned
+  private int readByte() throws ASN1Exception
+  {
+    if (position >= end)
+    {
+      throw new ASN1Exception("Unexpected end of data at offset <" + position + ">");
+    }
+
+    return data.get(position++) & 0xFF;
+  }
+
+ /**
+  * @return true if the current element is a filler byte
+  */
+  public boolean isNullTag()
+  {
+    return nullTag;
+  }
+
+ /**
+  * @return true if the current element is constructed
+  */
+  public boolean isConstructed()
+  {
+    return !nullTag && (tagByte & FORM_MASK) == FORM_MASK;
+  }
+
+ /**
+  * @return The tag number of the current element, without class and form
+  */
+  public int getTag()
+  {
+    return tag;
+  }
+
+ /**
+  * @return The class of the current element, 0 (universal) to 3 (private)
+  */
+  public int getTagClass()
+  {
+    return tagByte >> 6;
+  }
+
+ /**
+  * Get the raw tag bytes of the current element packed into an int, e.g.
+  * 0x83 or 0xBF8103.
+  *
+  * @return The raw tag
+  */
+  public int getRawTagValue()
+  {
+    return rawTag;
+  }
+
+ /**
+  * Get the raw tag of the current element as a hex string, the form used for
+  * the keys of IASN1Def definitions. Single byte tags come from a table, so
+  * this does not allocate for them.
+  *
+  * @return The raw tag as hex
+  */
+  public String getRawTag()
+  {
+    if (rawTagLength == 1)
+    {
+      return RAW_TAGS[rawTag & 0xFF];
+    }
+
+    work.setLength(0);
+    appendRawTag(work);
+    return work.toString();
+  }
+
+ /**
+  * Append the raw tag of the current element as hex to a builder, for
+  * building tag paths.
+  *
+  * @param output The builder to append to
+  */
+  public void appendRawTag(StringBuilder output)
+  {
+    for (int i = rawTagLength - 1 ; i >= 0 ; i--)
+    {
+      int tmpByte = (rawTag >>> (8 * i)) & 0xFF;
+      output.append(HEX[tmpByte >> 4]).append(HEX[tmpByte & 0x0f]);
+    }
+  }
+
+ /**
+  * @return The length of the value, or INDEFINITE_LENGTH
+  */
+  public int getLength()
+  {
+    return length;
+  }
+
+ /**
+  * @return The offset of the first byte of the element in the buffer
+  */
+  public int getHeaderOffset()
+  {
+    return headerOffset;
+  }
+
+ /**
+  * @return The offset of the value in the buffer
+  */
+  public int getValueOffset()
+  {
+    return valueOffset;
+  }
+
+ /**
+  * @return The offset of the next byte the cursor will read
+  */
+  public int getPosition()
+  {
+    return position;
+  }
+
+ /**
+  * @return The buffer we are decoding, for reading values directly
+  */
+  public ByteBuffer getData()
+  {
+    return data;
+  }
+
+ /**
+  * Copy the value of the current element into a buffer owned by the caller.
+  *
+  * @param output The buffer to copy into
+  * @return The number of bytes copied, limited by the size of the buffer
+  */
+  public int getValue(byte[] output)
+  {
+    int tmpLength = Math.min(Math.max(length, 0), output.length);
+    for (int i = 0 ; i < tmpLength ; i++)
+    {
+      output[i] = data.get(valueOffset + i);
+    }
+
+    return tmpLength;
+  }
+
+ /**
+  * Decode the value of the current element as a two's complement integer.
+  *
+  * @return The value
+  * @throws ASN1Exception If the value is longer than 8 bytes
+  */
+  public long getInteger() throws ASN1Exception
+  {
+    if (length > 8)
+    {
+      throw new ASN1Exception("Integer too long at offset <" + headerOffset + ">");
+    }
+
+    if (length <= 0)
+    {
+      return 0;
+    }
+
+    // sign extend from the first byte
+    long tmpValue = data.get(valueOffset);
+    for (int i = 1 ; i < length ; i++)
+    {
+      tmpValue = (tmpValue << 8) | (data.get(valueOffset + i) & 0xFF);
+    }
+
+    return tmpValue;
+  }
+
+ /**
+  * Decode the value of the current element as a BCD string, with the high
+  * nibble first. Padding nibbles (0xf) are dropped.
+  *
+  * @param output The builder to append to
+  */
+  public void appendBCDString(StringBuilder output)
+  {
+    for (int i = 0 ; i < length ; i++)
+    {
+      int tmpByte = data.get(valueOffset + i);
+      int hiNibble = (tmpByte & 0xf0) >> 4;
+      int loNibble = tmpByte & 0x0f;
+      if (hiNibble != 0x0f)
+      {
+        output.append((char) (hiNibble + '0'));
+      }
+      if (loNibble != 0x0f)
+      {
+        output.append((char) (loNibble + '0'));
+      }
+    }
+  }
+
+ /**
+  * Decode the value of the current element as a BCD string, with the low
+  * nibble first (Ericsson). Padding nibbles (0xf) are dropped.
+  *
+  * @param output The builder to append to
+  */
+  public void appendBCDStringLE(StringBuilder output)
+  {
+    for (int i = 0 ; i < length ; i++)
+    {
+      int tmpByte = data.get(valueOffset + i);
+      int loNibble = (tmpByte & 0xf0) >> 4;
+      int hiNibble = tmpByte & 0x0f;
+      if (hiNibble != 0x0f)
+      {
+        output.append((char) (hiNibble + '0'));
+      }
+      if (loNibble != 0x0f)
+      {
+        output.append((char) (loNibble + '0'));
+      }
+    }
+  }
+
+ /**
+  * Decode the value of the current element as single byte characters.
+  *
+  * @param output The builder to append to
+  */
+  public void appendPrintableString(StringBuilder output)
+  {
+    for (int i = 0 ; i < length ; i++)
+    {
+      output.append((char) data.get(valueOffset + i));
+    }
+  }
+
+ /**
+  * Decode the value of the current element as an IA5 (ASCII) string. As in
+  * ASN1Parser, a value with a non ASCII character gives an empty string.
+  *
+  * @param output The builder to append to
+  */
+  public void appendIA5String(StringBuilder output)
+  {
+    int tmpStart = output.length();
+    for (int i = 0 ; i < length ; i++)
+    {
+      int tmpByte = data.get(valueOffset + i) & 0xFF;
+      if (tmpByte > 127)
+      {
+        output.setLength(tmpStart);
+        return;
+      }
+      output.append((char) tmpByte);
+    }
+  }
+
+ /**
+  * Decode the value of the current element as hex.
+  *
+  * @param output The builder to append to
+  */
+  public void appendBytes(StringBuilder output)
+  {
+    for (int i = 0 ; i < length ; i++)
+    {
+      int tmpByte = data.get(valueOffset + i) & 0xFF;
+      output.append(HEX[tmpByte >> 4]).append(HEX[tmpByte & 0x0f]);
+    }
+  }
+
+ /**
+  * Decode the value of the current element according to its type, in the
+  * same way as ASN1Parser.parseASN1(). The types are the ones returned by
+  * IASN1Def.getTagType().
+  *
+  * @param tagType The type of the tag
+  * @return The decoded value
+  * @throws ASN1Exception
+  */
+  public String parseValue(int tagType) throws ASN1Exception
+  {
+    if (tagType == ASN1Parser.INTEGER)
+    {
+      return Long.toString(getInteger());
+    }
+
+    work.setLength(0);
+    switch (tagType)
+    {
+      case ASN1Parser.PRINTABLESTRING:
+      case ASN1Parser.OCTETSTRING:     appendPrintableString(work); break;
+      case ASN1Parser.IA5STRING:       appendIA5String(work); break;
+      case ASN1Parser.BCDString:       appendBCDString(work); break;
+      case ASN1Parser.BCDStringLE:     appendBCDStringLE(work); break;
+      default:                         appendBytes(work); break;
+    }
+
+    return work.toString();
+  }
+}
@@ -0,0 +1,300 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import OpenRate.exception.ASN1Exception;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Decodes only the wanted elements of ASN.1 records. The tag paths which are
+ * wanted come from an IASN1SelectiveDef, and are compiled into a tree of raw
+ * tags when the decoder is created. While decoding, each element is looked up
+ * in the tree: wanted elements are handed to the field handler, constructed
+ * elements which lead to wanted elements are entered, and everything else is
+ * skipped by its length without being parsed. Typical CDRs only need a few of
+ * their tags for rating, so most of the record is skipped.
+ *
+ * The decoder holds no decoding state, so one decoder can be shared by
+ * threads, each using its own cursor.
+ *
+ * @author ian
+ */
+public class ASN1SelectiveDecoder
+{
+  // The definition we decode for
+  private final IASN1SelectiveDef ASN1Def;
+
+  // The root of the tree of wanted paths
+  private final PathNode root = new PathNode(null);
+
+ /**
+  * A node of the tree of wanted paths. The children are searched linearly,
+  * because there are only ever a few of them, and this does not box the tags.
+  */
+  private static class PathNode
+  {
+    final String path;
+    boolean wanted = false;
+    int[] childTags = new int[0];
+    PathNode[] children = new PathNode[0];
+
+    PathNode(String path)
+    {
+      this.path = path;
+    }
+
+    PathNode find(int rawTag)
+    {
+      for (int i = 0 ; i < childTags.length ; i++)
+      {
+        if (childTags[i] == rawTag)
+        {
+          return children[i];
+        }
+      }
+
+      return null;
+    }
+
+    PathNode add(int rawTag, String childPath)
+    {
+      PathNode tmpChild = find(rawTag);
+      if (tmpChild == null)
+      {
+        tmpChild = new PathNode(childPath);
+        childTags = Arrays.copyOf(childTags, childTags.length + 1);
+        children = Arrays.copyOf(children, children.length + 1);
+        childTags[childTags.length - 1] = rawTag;
+        children[children.length - 1] = tmpChild;
+      }
+
+      return tmpChild;
+    }
+  }
+
+ /**
+  * Create a selective decoder for a definition.
+  *
+  * @param ASN1Specification The definition, with the wanted tag paths
+  */
+  public ASN1SelectiveDecoder(IASN1SelectiveDef ASN1Specification)
+  {
+    ASN1Def = ASN1Specification;
+
+    for (String tmpPath : ASN1Def.getWantedTagPaths())
+    {
+      addPath(tmpPath);
+    }
+  }
+
+ /**
+  * Add a wanted path to the tree.
+  *
+  * @param tagPath The path, hex raw tags separated by ";"
+  */
+  private void addPath(String tagPath)
+  {
+    String[] tmpSegments = tagPath.split(";");
+    PathNode tmpNode = root;
+    StringBuilder tmpPath = new StringBuilder();
+
+    for (String tmpSegment : tmpSegments)
+    {
+      if (tmpPath.length() > 0)
+      {
+        tmpPath.append(';');
+      }
+      tmpPath.append(tmpSegment);
+
+      int tmpTag;
+      try
+      {
+        tmpTag = (int) Long.parseLong(tmpSegment, 16);
+      }
+      catch (NumberFormatException ex)
+      {
+        throw new IllegalArgumentException("Tag path <" + tagPath + "> has a segment which is not a hex tag: <" + tmpSegment + ">");
+      }
+
+      tmpNode = tmpNode.add(tmpTag, tmpPath.toString());
+    }
+
+    tmpNode.wanted = true;
+  }
+
+ /**
+  * Decode the elements from the cursor position to the end of the data,
+  * handing the wanted ones to the handler.
+  *
+  * @param cursor The cursor, positioned at the first element to decode
+  * @param pathPrefix The start of the tag paths of these elements (e.g. the
+  * record type), or "" if the paths start with the tags of the elements
+  * @param handler The handler for the wanted elements
+  * @return The number of wanted elements found
+  * @throws ASN1Exception
+  */
+  public int decode(ASN1Cursor cursor, String pathPrefix, IASN1FieldHandler handler) throws ASN1Exception
+  {
+    PathNode tmpNode = root;
+
+    if (pathPrefix != null && pathPrefix.length() > 0)
+    {
+      for (String tmpSegment : pathPrefix.split(";"))
+      {
+        tmpNode = tmpNode.find((int) Long.parseLong(tmpSegment, 16));
+        if (tmpNode == null)
+        {
+          // nothing wanted under this prefix, skip the lot
+          while (cursor.ready())
+          {
+            cursor.next();
+            cursor.skip();
+          }
+          return 0;
+        }
+      }
+    }
+
+    return decodeLevel(cursor, tmpNode, Integer.MAX_VALUE, handler);
+  }
+
+ /**
+  * Decode the elements of one level of the tree.
+  *
+  * @param cursor The cursor
+  * @param node The node of the enclosing element
+  * @param end The end of the enclosing element, or -1 if it has an
+  * indefinite length and ends with end of contents octets
+  * @param handler The handler for the wanted elements
+  * @return The number of wanted elements found
+  * @throws ASN1Exception
+  */
+  private int decodeLevel(ASN1Cursor cursor, PathNode node, int end, IASN1FieldHandler handler) throws ASN1Exception
+  {
+    int tmpFound = 0;
+
+    while (cursor.ready())
+    {
+      if (end == -1)
+      {
+        if (cursor.skipEndOfContents())
+        {
+          break;
+        }
+      }
+      else if (cursor.getPosition() >= end)
+      {
+        break;
+      }
+
+      cursor.next();
+      if (cursor.isNullTag())
+      {
+        continue;
+      }
+
+      PathNode tmpChild = node.find(cursor.getRawTagValue());
+
+      if (tmpChild != null && tmpChild.wanted)
+      {
+        handler.field(tmpChild.path, cursor);
+        tmpFound++;
+        cursor.skip();
+      }
+      else if (cursor.isConstructed())
+      {
+        if (tmpChild == null)
+        {
+          // nothing we want in here
+          cursor.skip();
+        }
+        else
+        {
+          int tmpEnd = (cursor.getLength() == ASN1Cursor.INDEFINITE_LENGTH) ? -1 : cursor.getValueOffset() + cursor.getLength();
+          tmpFound += decodeLevel(cursor, tmpChild, tmpEnd, handler);
+        }
+      }
+    }
+
+    return tmpFound;
+  }
+
+ /**
+  * Decode the wanted elements into a map of tag name to value, using the
+  * names and types of the definition.
+  *
+  * @param cursor The cursor, positioned at the first element to decode
+  * @param pathPrefix The start of the tag paths of these elements
+  * @return The values by tag name, in the order found
+  * @throws ASN1Exception
+  */
+  public LinkedHashMap<String, String> decodeFields(ASN1Cursor cursor, String pathPrefix) throws ASN1Exception
+  {
+    final LinkedHashMap<String, String> tmpFields = new LinkedHashMap<>();
+
+    decode(cursor, pathPrefix, new IASN1FieldHandler()
+    {
+      @Override
+      public void field(String tagPath, ASN1Cursor cursor) throws ASN1Exception
+      {
+        tmpFields.put(ASN1Def.getTagName(tagPath), cursor.parseValue(ASN1Def.getTagType(tagPath)));
+      }
+    });
+
+    return tmpFields;
+  }
+}
@@ -58,11 +58,13 @@
  */
 package OpenRate.parser;
 
-import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -84,6 +86,10 @@ public class XMLParser extends DefaultHandler
 
 	private static SAXParserFactory factory = SAXParserFactory.newInstance();
 
+  //	SAX parsers are expensive to create and not thread safe, so we keep one
+  //	per thread and reset it after each use
+  private static final ThreadLocal<SAXParser> threadParser = new ThreadLocal<>();
+
   //	Used to store xml tag names
   private ArrayList<String> tmpQNames = new ArrayList<>(5);
   private StringBuffer tmpValue;
@@ -119,11 +125,39 @@ public void parseXML(String xmlToParse, String headerIdentifier) throws Exceptio
     }
 
 		this.headerIdentifier = headerIdentifier;
-		SAXParser parser;
-		parser = factory.newSAXParser();
-		parser.parse(new ByteArrayInputStream(xmlToParse.getBytes()), this);
+    tmpQNames.clear();
+
+		SAXParser parser = getParser();
+    try
+    {
+      parser.parse(new InputSource(new StringReader(xmlToParse)), this);
+    }
+    finally
+    {
+      parser.reset();
+    }
 	}
 
+/**
+ * Get the SAX parser for this thread, creating it on the first use
+ *
+ * @return The parser
+ * @throws ParserConfigurationException
+ * @throws SAXException
+ */
+  private static SAXParser getParser() throws ParserConfigurationException, SAXException
+  {
+    SAXParser parser = threadParser.get();
+
+    if (parser == null)
+    {
+      parser = factory.newSAXParser();
+      threadParser.set(parser);
+    }
+
+    return parser;
+  }
+
 /**
  * Add a start element
  *
@@ -0,0 +1,310 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pulls records out of an XML stream one record element at a time, using a
+ * StAX reader. Unlike XMLParser, the stream does not have to be split into
+ * record sized strings first, and the XML does not have to have a line break
+ * after each element: the reader simply moves forward to the next record
+ * element and delivers the values inside it to the IXmlParser client. This
+ * means that only one record is ever held in memory, however large the file.
+ *
+ * The values are named in the same way as XMLParser names them: the record
+ * element is the root of the path, and child elements are appended with ".",
+ * for example "record.account.number".
+ *
+ * If a set of wanted paths is given, only the values for these paths are
+ * delivered, and any element which does not lead to a wanted path is skipped
+ * without its contents being collected.
+ *
+ * The input factory is held per thread, so that it does not have to be looked
+ * up each time a stream is opened.
+ *
+ * @author ian
+ */
+public class XMLRecordReader implements Closeable
+{
+  // The factory for this thread
+  private static final ThreadLocal<XMLInputFactory> factory = new ThreadLocal<XMLInputFactory>()
+  {
+    @Override
+    protected XMLInputFactory initialValue()
+    {
+      XMLInputFactory tmpFactory = XMLInputFactory.newInstance();
+      tmpFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      tmpFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      return tmpFactory;
+    }
+  };
+
+  // The StAX reader we are pulling from
+  private final XMLStreamReader reader;
+
+  // The element which delimits records
+  private final String recordIdentifier;
+
+  // The wanted paths, or null if all paths are wanted
+  private final HashSet<String> wantedPaths;
+
+  // The paths which lead to wanted paths, or null if all paths are wanted
+  private final HashSet<String> wantedPrefixes;
+
+  // The path of each open element in the current record
+  private final ArrayList<String> tmpQNames = new ArrayList<>(5);
+
+  // The text of the current element
+  private final StringBuilder tmpValue = new StringBuilder();
+
+  // The number of elements skipped
+  private long skippedCount = 0;
+
+ /**
+  * Create a record reader on a stream.
+  *
+  * @param input The stream to read
+  * @param recordIdentifier The name of the element which delimits records
+  * @param wantedPaths The paths to deliver, or null to deliver all of them
+  * @throws XMLStreamException
+  */
+  public XMLRecordReader(InputStream input, String recordIdentifier, Collection<String> wantedPaths)
+    throws XMLStreamException
+  {
+    this.reader = factory.get().createXMLStreamReader(input);
+    this.recordIdentifier = recordIdentifier;
+
+    if (wantedPaths == null)
+    {
+      this.wantedPaths = null;
+      this.wantedPrefixes = null;
+    }
+    else
+    {
+      this.wantedPaths = new HashSet<>(wantedPaths);
+      this.wantedPrefixes = new HashSet<>();
+
+      // every parent of a wanted path has to be entered
+      for (String tmpPath : wantedPaths)
+      {
+        int tmpDot = tmpPath.lastIndexOf('.');
+        while (tmpDot > 0)
+        {
+          tmpPath = tmpPath.substring(0, tmpDot);
+          wantedPrefixes.add(tmpPath);
+          tmpDot = tmpPath.lastIndexOf('.');
+        }
+      }
+    }
+  }
+
+ /**
+  * Read the next record from the stream, and deliver its values to the
+  * client.
+  *
+  * @param client The client to deliver the values to
+  * @return true if a record was read, false if the stream has ended
+  * @throws XMLStreamException
+  */
+  public boolean nextRecord(IXmlParser client) throws XMLStreamException
+  {
+    // move forward to the start of the next record
+    if (!findRecordStart())
+    {
+      return false;
+    }
+
+    tmpQNames.clear();
+    tmpQNames.add(recordIdentifier);
+    tmpValue.setLength(0);
+
+    while (reader.hasNext())
+    {
+      switch (reader.next())
+      {
+        case XMLStreamConstants.START_ELEMENT:
+          String tmpPath = tmpQNames.get(tmpQNames.size() - 1) + "." + reader.getLocalName();
+          if (isEntered(tmpPath))
+          {
+            tmpQNames.add(tmpPath);
+            tmpValue.setLength(0);
+          }
+          else
+          {
+            skipElement();
+          }
+          break;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+          tmpValue.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          if (tmpQNames.size() == 1)
+          {
+            // end of the record
+            return true;
+          }
+
+          String tmpEndPath = tmpQNames.remove(tmpQNames.size() - 1);
+          if (wantedPaths == null || wantedPaths.contains(tmpEndPath))
+          {
+            client.setAttribute(tmpEndPath, tmpValue.toString());
+          }
+          tmpValue.setLength(0);
+          break;
+      }
+    }
+
+    throw new XMLStreamException("Stream ended inside record <" + recordIdentifier + ">");
+  }
+
+ /**
+  * Get the number of elements which have been skipped because they did not
+  * lead to a wanted path.
+  *
+  * @return The number of skipped elements
+  */
+  public long getSkippedCount()
+  {
+    return skippedCount;
+  }
+
+ /**
+  * Close the reader. The underlying stream is not closed.
+  *
+  * @throws IOException
+  */
+  @Override
+  public void close() throws IOException
+  {
+    try
+    {
+      reader.close();
+    }
+    catch (XMLStreamException ex)
+    {
+      throw new IOException(ex);
+    }
+  }
+
+ /**
+  * Move forward to the start of the next record element.
+  *
+  * @return true if a record was found, false if the stream has ended
+  * @throws XMLStreamException
+  */
+  private boolean findRecordStart() throws XMLStreamException
+  {
+    while (reader.hasNext())
+    {
+      if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+          reader.getLocalName().equals(recordIdentifier))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+ /**
+  * See if an element has to be entered, either because it is wanted, or
+  * because it leads to a wanted element.
+  *
+  * @param path The path of the element
+  * @return true if the element has to be entered
+  */
+  private boolean isEntered(String path)
+  {
+    return wantedPaths == null || wantedPaths.contains(path) || wantedPrefixes.contains(path);
+  }
+
+ /**
+  * Skip the element we are positioned on, with all of its contents.
+  *
+  * @throws XMLStreamException
+  */
+  private void skipElement() throws XMLStreamException
+  {
+    int tmpDepth = 1;
+
+    skippedCount++;
+    while (tmpDepth > 0)
+    {
+      int tmpEvent = reader.next();
+      if (tmpEvent == XMLStreamConstants.START_ELEMENT)
+      {
+        tmpDepth++;
+      }
+      else if (tmpEvent == XMLStreamConstants.END_ELEMENT)
+      {
+        tmpDepth--;
+      }
+    }
+  }
+}
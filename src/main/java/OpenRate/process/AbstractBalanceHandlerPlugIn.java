@@ -63,6 +63,7 @@ import OpenRate.lang.Counter;
 import OpenRate.lang.DiscountInformation;
 import OpenRate.record.BalanceImpact;
 import OpenRate.record.IRatingRecord;
+import OpenRate.record.RUMRegistry;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
 
@@ -383,7 +384,10 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
 
     DiscountInformation tmpReturnInfo = new DiscountInformation();
 
-    tmpRUMValue = currentRecord.getRUMValue(rumToUse);
+    // resolve the RUM once, we access it several times
+    int rumID = RUMRegistry.getRUMID(rumToUse);
+
+    tmpRUMValue = currentRecord.getRUMValue(rumID);
     Counter tmpCounter = checkCounterExists(balanceGroupId, counterId, currentRecord.getUTCEventDate());
 
     if (tmpCounter == null)
@@ -391,7 +395,7 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
       tmpCounter = addCounter(balanceGroupId,counterId,utcBalanceStartValidity,UTCBalanceEndValidity,initialBalance);
 
       // Add the balance impact
-      tmpBalImpact = new BalanceImpact();
+      tmpBalImpact = currentRecord.newBalanceImpact();
       tmpBalImpact.type = "D";
       tmpBalImpact.balanceGroup = balanceGroupId;
       tmpBalImpact.cpiName = discountName;
@@ -425,12 +429,12 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
       {
         // we are crossing a threshold
         tmpDiscount = tmpCounter.CurrentBalance;
-        currentRecord.updateRUMValue(rumToUse,-tmpCounter.CurrentBalance);
+        currentRecord.updateRUMValue(rumID,-tmpCounter.CurrentBalance);
         double oldBal = tmpCounter.CurrentBalance;
         tmpCounter.CurrentBalance = 0;
 
         // Add the balance impact
-        tmpBalImpact = new BalanceImpact();
+        tmpBalImpact = currentRecord.newBalanceImpact();
         tmpBalImpact.type = "D";
         tmpBalImpact.balanceGroup = balanceGroupId;
         tmpBalImpact.cpiName = discountName;
@@ -438,7 +442,7 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
         tmpBalImpact.rumUsed = rumToUse;
         tmpBalImpact.counterID = counterId;
         tmpBalImpact.recID = tmpCounter.RecId;
-        tmpBalImpact.rumValueAfter = currentRecord.getRUMValue(rumToUse);
+        tmpBalImpact.rumValueAfter = currentRecord.getRUMValue(rumID);
         tmpBalImpact.rumValueUsed = tmpDiscount;
         tmpBalImpact.balanceAfter = 0;
         tmpBalImpact.balanceDelta = tmpBalImpact.balanceAfter - oldBal;
@@ -473,11 +477,11 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
         double oldBal = tmpCounter.CurrentBalance;
         tmpCounter.CurrentBalance -= tmpRUMValue;
         tmpDiscount = tmpRUMValue;
-        currentRecord.updateRUMValue(rumToUse,-currentRecord.getRUMValue(rumToUse));
+        currentRecord.updateRUMValue(rumID,-currentRecord.getRUMValue(rumID));
         tmpReturnInfo.setDiscountApplied(true);
 
         // Add the balance impact
-        tmpBalImpact = new BalanceImpact();
+        tmpBalImpact = currentRecord.newBalanceImpact();
         tmpBalImpact.type = "D";
         tmpBalImpact.balanceGroup = balanceGroupId;
         tmpBalImpact.cpiName = discountName;
@@ -567,7 +571,7 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
     tmpDiscount = tmpRUMValue;
 
     // Add the balance impact
-    tmpBalImpact = new BalanceImpact();
+    tmpBalImpact = currentRecord.newBalanceImpact();
     tmpBalImpact.type = "D";
     tmpBalImpact.balanceGroup = balanceGroupId;
     tmpBalImpact.cpiName = discountName;
@@ -652,7 +656,7 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
       tmpCounter = addCounter(balanceGroupId,counterId,utcBalanceStartValidity,UTCBalanceEndValidity,initialBalance);
 
       // Add the balance impact
-      tmpBalImpact = new BalanceImpact();
+      tmpBalImpact = currentRecord.newBalanceImpact();
       tmpBalImpact.type = "D";
       tmpBalImpact.balanceGroup = balanceGroupId;
       tmpBalImpact.cpiName = discountName;
@@ -678,7 +682,7 @@ public abstract class AbstractBalanceHandlerPlugIn extends AbstractTransactional
     tmpReturnInfo.setDiscountApplied(true);
 
     // Add the balance impact
-    tmpBalImpact = new BalanceImpact();
+    tmpBalImpact = currentRecord.newBalanceImpact();
     tmpBalImpact.type = "D";
     tmpBalImpact.balanceGroup = balanceGroupId;
     tmpBalImpact.cpiName = discountName;
@@ -58,10 +58,12 @@ package OpenRate.process;
 import OpenRate.cache.CustomerCache;
 import OpenRate.cache.ICacheManager;
 import OpenRate.exception.InitializationException;
+import OpenRate.exception.ProcessingException;
 import OpenRate.lang.ProductList;
 import OpenRate.record.IRecord;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
+import java.util.List;
 
 /**
  * This class is a somewhat degenerate example of a Filter, but it does show how
@@ -155,6 +157,21 @@ public abstract class AbstractCustomerLookup
     return null;
   }
 
+ /**
+  * Process a run of valid records in the order of their batch key. Override
+  * getBatchKey to return the alias of the record, and the records of the same
+  * account are looked up one after the other, which keeps the account data hot
+  * in the CPU cache. The order of the records in the stream is not changed.
+  *
+  * @param records The valid records to process
+  * @throws ProcessingException
+  */
+  @Override
+  public void procValidBatch(List<IRecord> records) throws ProcessingException
+  {
+    procValidRecordsByKey(records);
+  }
+
   // -----------------------------------------------------------------------------
   // ------------------------ Start of custom functions --------------------------
   // -----------------------------------------------------------------------------
@@ -64,8 +64,10 @@ import OpenRate.logging.LogUtil;
 import OpenRate.record.IRecord;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * This class provides the abstract base for an duplicate check
@@ -195,6 +197,110 @@ public abstract class AbstractDuplicateCheck
     }
   }
 
+  /**
+   * Process a run of valid records. Modules that override getDuplicateKey,
+   * getDuplicateDate and procDuplicateResult have the keys of the whole run
+   * checked together, instead of calling CheckDuplicate from
+   * procValidRecord for each record. Records without a key are passed to
+   * procValidRecord as usual.
+   *
+   * @param records The valid records to process
+   * @throws ProcessingException
+   */
+  @Override
+  public void procValidBatch(List<IRecord> records) throws ProcessingException
+  {
+    ArrayList<IRecord> tmpCheckRecords = new ArrayList<>(records.size());
+    ArrayList<String> tmpKeys = new ArrayList<>(records.size());
+    long[] tmpTimeStamps = new long[records.size()];
+    boolean[] tmpResults;
+
+    for (int i = 0 ; i < records.size() ; i++)
+    {
+      IRecord r = records.get(i);
+      String tmpKey = getDuplicateKey(r);
+
+      if (tmpKey == null)
+      {
+        processValidRecord(r);
+      }
+      else
+      {
+        tmpTimeStamps[tmpKeys.size()] = getDuplicateDate(r).getTime() / 1000;
+        tmpKeys.add(tmpKey);
+        tmpCheckRecords.add(r);
+      }
+    }
+
+    if (tmpKeys.isEmpty())
+    {
+      return;
+    }
+
+    if (Active)
+    {
+      tmpResults = DupCache.DuplicateCheck(tmpKeys, tmpTimeStamps, getTransactionNumber());
+    }
+    else
+    {
+      tmpResults = new boolean[tmpKeys.size()];
+    }
+
+    for (int i = 0 ; i < tmpCheckRecords.size() ; i++)
+    {
+      try
+      {
+        procDuplicateResult(tmpCheckRecords.get(i), tmpResults[i]);
+      }
+      catch (ProcessingException pe)
+      {
+        // report it, and carry on with the rest of the run
+        getPipeLog().error("Processing exception caught in Plug In <" +
+                    getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+        getExceptionHandler().reportException(pe);
+      }
+    }
+  }
+
+  /**
+   * Get the key to check a record with in batch mode. The default returns null,
+   * which passes the record to procValidRecord.
+   *
+   * @param r The record to check
+   * @return The Call Reference ID, or null to use procValidRecord
+   */
+  protected String getDuplicateKey(IRecord r)
+  {
+    return null;
+  }
+
+  /**
+   * Get the date to check a record with in batch mode. Only called for records
+   * for which getDuplicateKey returned a key.
+   *
+   * @param r The record to check
+   * @return The date of the CDR
+   */
+  protected Date getDuplicateDate(IRecord r)
+  {
+    return null;
+  }
+
+  /**
+   * Handle the result of the batch mode duplicate check of a record, for
+   * example by adding an error to duplicates. The default does nothing.
+   *
+   * @param r The record that was checked
+   * @param isDuplicate True if the record is a duplicate
+   * @return The record
+   * @throws ProcessingException
+   */
+  protected IRecord procDuplicateResult(IRecord r, boolean isDuplicate) throws ProcessingException
+  {
+    return r;
+  }
+
   // -----------------------------------------------------------------------------
   // ------------------ Start of transaction layer functions ---------------------
   // -----------------------------------------------------------------------------
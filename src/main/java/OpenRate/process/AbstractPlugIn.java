@@ -73,9 +73,12 @@ import OpenRate.record.HeaderRecord;
 import OpenRate.record.IRecord;
 import OpenRate.record.TrailerRecord;
 import OpenRate.utils.PropertyUtils;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * The AbstractPlugIn provides a partially implemented PlugIn allowing simpler
@@ -231,6 +234,10 @@ public abstract class AbstractPlugIn
     // processing list for batch events
     Collection<IRecord> in;
 
+    // the run of valid records collected for procValidBatch. This is local
+    // because several threads may run the same plug in
+    ArrayList<IRecord> validRun = new ArrayList<>();
+
     // Print the thread startup message
     OpenRate.getOpenRateStatsLog().debug("PlugIn <" + Thread.currentThread().getName() +
                    "> started, pulling from buffer <" + getBatchInbound().toString() +
@@ -269,7 +276,9 @@ public abstract class AbstractPlugIn
           iter = in.iterator();
 
           // Process each of the block of records and trigger the processing
-          // functions for each type (header, trailer, valid and error)
+          // functions for each type (header, trailer, valid and error). Runs
+          // of valid records are collected and passed to procValidBatch,
+          // the run being processed before the record that ends it.
           while (iter.hasNext())
           {
             try
@@ -281,10 +290,17 @@ public abstract class AbstractPlugIn
               // the record
               if (r.isValid())
               {
-                procValidRecord(r);
+                validRun.add(r);
+
+                if (!iter.hasNext())
+                {
+                  processValidRun(validRun);
+                }
               }
               else
               {
+                processValidRun(validRun);
+
                 if (r.isErrored())
                 {
                   procErrorRecord(r);
@@ -645,6 +661,195 @@ public abstract class AbstractPlugIn
   */
   public abstract IRecord procHeader(IRecord r);
 
+ /**
+  * Process a run of consecutive valid records. By default each record is
+  * passed to procValidRecord in turn. Override this to amortise work over the
+  * records of the run, such as bulk lookups. Overrides should report the
+  * failure of a single record and carry on with the rest of the run, for
+  * example by using processValidRecord, because an exception thrown out of
+  * here leaves the rest of the run unprocessed.
+  *
+  * @param records The valid records to process, in stream order
+  * @throws ProcessingException
+  */
+  public void procValidBatch(List<IRecord> records) throws ProcessingException
+  {
+    for (int i = 0 ; i < records.size() ; i++)
+    {
+      processValidRecord(records.get(i));
+    }
+  }
+
+ /**
+  * Pass one valid record of a run to procValidRecord, reporting any exception
+  * in the same way as process() does, so that the rest of the run is still
+  * processed.
+  *
+  * @param r The record to process
+  */
+  protected void processValidRecord(IRecord r)
+  {
+    try
+    {
+      procValidRecord(r);
+    }
+    catch (ProcessingException pe)
+    {
+      getPipeLog().error("Processing exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(pe);
+    }
+    catch (ClassCastException cce)
+    {
+      getPipeLog().error("Record Class Cast exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(new ProcessingException(cce,getSymbolicName()));
+    }
+    catch (NullPointerException npe)
+    {
+      getPipeLog().error("Null pointer exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(new ProcessingException(npe,getSymbolicName()));
+    }
+    catch (ArrayIndexOutOfBoundsException aiob)
+    {
+      getPipeLog().error("Array Index Out of Bounds exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(new ProcessingException(aiob,getSymbolicName()));
+    }
+    catch (Exception ge)
+    {
+      getPipeLog().fatal("General exception caught in Plug In <" +
+                getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(new ProcessingException(ge,getSymbolicName()));
+    }
+  }
+
+ /**
+  * Get the key that procValidRecordsByKey orders records by, for example the
+  * customer alias or the price model. The default returns null, which leaves
+  * the records in stream order.
+  *
+  * @param r The record to get the key for
+  * @return The key, or null
+  */
+  protected String getBatchKey(IRecord r)
+  {
+    return null;
+  }
+
+ /**
+  * Pass a run of valid records to procValidRecord in the order of their batch
+  * key, so that records sharing a key are processed one after the other and
+  * the cache data they use stays hot. Records without a key are processed
+  * first, in stream order. The order of the records in the stream is not
+  * changed, so only use this where the processing of a record does not depend
+  * on the records before it.
+  *
+  * @param records The valid records to process
+  * @throws ProcessingException
+  */
+  protected void procValidRecordsByKey(List<IRecord> records) throws ProcessingException
+  {
+    ArrayList<KeyedRecord> tmpKeyed = null;
+
+    for (int i = 0 ; i < records.size() ; i++)
+    {
+      IRecord r = records.get(i);
+      String tmpKey = getBatchKey(r);
+
+      if (tmpKey == null)
+      {
+        processValidRecord(r);
+      }
+      else
+      {
+        if (tmpKeyed == null)
+        {
+          tmpKeyed = new ArrayList<>(records.size());
+        }
+
+        tmpKeyed.add(new KeyedRecord(tmpKey, r));
+      }
+    }
+
+    if (tmpKeyed != null)
+    {
+      // stable, so records with the same key keep their stream order
+      Collections.sort(tmpKeyed);
+
+      for (int i = 0 ; i < tmpKeyed.size() ; i++)
+      {
+        processValidRecord(tmpKeyed.get(i).record);
+      }
+    }
+  }
+
+ /**
+  * Pass the collected run of valid records to procValidBatch and empty it.
+  * The default procValidBatch reports the exceptions of each record itself.
+  * Exceptions from overrides which throw are reported here, so that the record
+  * which ended the run is still processed.
+  *
+  * @param validRun The run of valid records
+  */
+  private void processValidRun(ArrayList<IRecord> validRun)
+  {
+    if (validRun.isEmpty())
+    {
+      return;
+    }
+
+    try
+    {
+      procValidBatch(validRun);
+    }
+    catch (ProcessingException pe)
+    {
+      getPipeLog().error("Processing exception caught in Plug In <" +
+                  getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(pe);
+    }
+    catch (Throwable t)
+    {
+      getPipeLog().fatal("Unexpected exception caught in Plug In <" +
+                getSymbolicName() + ">. See Error Log for the Stack Trace.");
+
+      getExceptionHandler().reportException(new ProcessingException(t,getSymbolicName()));
+    }
+    finally
+    {
+      validRun.clear();
+    }
+  }
+
+ /**
+  * A record with its batch key, for ordering
+  */
+  private static class KeyedRecord implements Comparable<KeyedRecord>
+  {
+    final String key;
+    final IRecord record;
+
+    KeyedRecord(String key, IRecord record)
+    {
+      this.key = key;
+      this.record = record;
+    }
+
+    @Override
+    public int compareTo(KeyedRecord other)
+    {
+      return key.compareTo(other.key);
+    }
+  }
+
  /**
   * This is called when a data record is encountered. You should do any normal
   * processing here.
@@ -219,11 +219,11 @@ public abstract class AbstractRUMMap extends AbstractPlugIn
       // deal with the time splitting flag
       if (tmpCPNew.timeSplitting == AbstractRUMTimeMatch.TIME_SPLITTING_CHECK_SPLITTING)
       {
-        tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCPNew.rumName) * tmpCPNew.splittingFactor;
+        tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpRUMMapEntry.RUMID) * tmpCPNew.splittingFactor;
       }
       else
       {
-        tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpCPNew.rumName);
+        tmpCPNew.rumQuantity = CurrentRecord.getRUMValue(tmpRUMMapEntry.RUMID);
       }
 
       tmpCPNew.resource    = tmpRUMMapEntry.Resource;
@@ -340,11 +340,11 @@ public abstract class AbstractRUMMap extends AbstractPlugIn
           // deal with the time splitting flag
           if (tmpCP.timeSplitting == AbstractRUMTimeMatch.TIME_SPLITTING_CHECK_SPLITTING)
           {
-            tmpCP.rumQuantity = CurrentRecord.getRUMValue(tmpCP.rumName) * tmpCP.splittingFactor;
+            tmpCP.rumQuantity = CurrentRecord.getRUMValue(tmpRUMMapEntry.RUMID) * tmpCP.splittingFactor;
           }
           else
           {
-            tmpCP.rumQuantity = CurrentRecord.getRUMValue(tmpCP.rumName);
+            tmpCP.rumQuantity = CurrentRecord.getRUMValue(tmpRUMMapEntry.RUMID);
           }
 
           // get the rating type
@@ -391,7 +391,7 @@ public abstract class AbstractRUMMap extends AbstractPlugIn
             // preparation and then rating. I think that it's quicker this
             // way, but there's the potential to do some timing/tuning here
             Replace = true;
-            tmpCPNew = tmpCP.Clone();
+            tmpCPNew = CurrentRecord.cloneChargePacket(tmpCP);
             tmpCPNew.priceGroup = PriceGroup;
 
             // Get the value of the RUM
@@ -55,10 +55,13 @@
 
 package OpenRate.process;
 
+import OpenRate.CommonConfig;
 import OpenRate.cache.ICacheManager;
 import OpenRate.cache.RUMRateCache;
+import OpenRate.configurationmanager.ClientManager;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
+import OpenRate.logging.LogUtil;
 import OpenRate.record.*;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
@@ -99,6 +102,13 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
   // parent module for handling
   private boolean reportExceptions = false;
 
+  // The memo of rating results, null if it is not used
+  private RatingMemo memo = null;
+
+  // List of Services that this Client supports
+  private final static String SERVICE_MEMO_SIZE  = "RatingMemoSize";
+  private final static String SERVICE_MEMO_STATS = "RatingMemoStats";
+
   // -----------------------------------------------------------------------------
   // ------------------ Start of inherited Plug In functions ---------------------
   // -----------------------------------------------------------------------------
@@ -118,6 +128,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
             throws InitializationException
   {
     String CacheObjectName;
+    String ConfigHelper;
 
     // Do the inherited work, e.g. setting the symbolic name etc
     super.init(PipelineName,ModuleName);
@@ -152,6 +163,13 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
       message = "<" + CacheObjectName + "> is not an instance of RUMRateCache. Aborting.";
       throw new InitializationException(message,getSymbolicName());
     }
+
+    // Get the size of the rating memo, 0 means that it is not used
+    ConfigHelper = PropertyUtils.getPropertyUtils().getPluginPropertyValueDef(PipelineName,
+                                                           ModuleName,
+                                                           SERVICE_MEMO_SIZE,
+                                                           "0");
+    processControlEvent(SERVICE_MEMO_SIZE, true, ConfigHelper);
   }
 
   @Override
@@ -246,12 +264,12 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
                 // don't try to re-use the original ones. This saves a loop of
                 // preparation and then rating. I think that it's quicker this
                 // way, but there's the potential to do some timing/tuning here
-                tmpCPNew = tmpCP.Clone();
+                tmpCPNew = CurrentRecord.cloneChargePacket(tmpCP);
                 tmpCPList.add(tmpCPNew);
                 CPUpdated = true;
 
                 // Get the value of the RUM
-                RUMValue = CurrentRecord.getRUMValue(tmpRUMMapEntry.RUM);
+                RUMValue = CurrentRecord.getRUMValue(tmpRUMMapEntry.RUMID);
                 tmpCPNew.priceModel = tmpRUMMapEntry.PriceModel;
                 tmpCPNew.rumQuantity = RUMValue;
                 tmpCPNew.rumName = tmpRUMMapEntry.RUM;
@@ -272,7 +290,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
                       tmpCPNew.ratingTypeDesc = "FLAT";
                       if (tmpRUMMapEntry.ConsumeRUM)
                       {
-                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUM,-tmpRatingResult.RUMUsed);
+                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUMID,-tmpRatingResult.RUMUsed);
                       }
                       break;
                     }
@@ -285,7 +303,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
                       tmpCPNew.ratingTypeDesc = "TIERED";
                       if (tmpRUMMapEntry.ConsumeRUM)
                       {
-                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUM,-tmpRatingResult.RUMUsed);
+                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUMID,-tmpRatingResult.RUMUsed);
                       }
                       break;
                     }
@@ -298,7 +316,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
                       tmpCPNew.ratingTypeDesc = "THRESHOLD";
                       if (tmpRUMMapEntry.ConsumeRUM)
                       {
-                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUM,-tmpRatingResult.RUMUsed);
+                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUMID,-tmpRatingResult.RUMUsed);
                       }
                       break;
                     }
@@ -311,7 +329,7 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
                       tmpCPNew.ratingTypeDesc = "EVENT";
                       if (tmpRUMMapEntry.ConsumeRUM)
                       {
-                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUM,-tmpRatingResult.RUMUsed);
+                        CurrentRecord.updateRUMValue(tmpRUMMapEntry.RUMID,-tmpRatingResult.RUMUsed);
                       }
                       break;
                     }
@@ -403,13 +421,35 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
   {
     ArrayList<RateMapEntry>  tmpRateModel;
     RatingResult tmpRatingResult;
+    int          memoGeneration;
+
+    // Get the generation before the rate model, so that a reload during the
+    // rating makes the result too old to be remembered
+    memoGeneration = RRC.getGeneration();
 
     // Look up the rate model to use
     tmpRateModel = RRC.getPriceModel(priceModel);
 
+    // see if we have already rated this
+    if (memo != null && !BreakDown)
+    {
+      tmpRatingResult = getMemoResult(memoGeneration, RATE_TIERED, priceModel, valueToRate, CDRDate);
+
+      if (tmpRatingResult != null)
+      {
+        return tmpRatingResult;
+      }
+    }
+
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationTiered(priceModel, tmpRateModel, valueToRate, CDRDate, BreakDown);
 
+    // remember the result for the next time
+    if (memo != null && !BreakDown)
+    {
+      putMemoResult(memoGeneration, RATE_TIERED, priceModel, tmpRateModel, valueToRate, CDRDate, tmpRatingResult);
+    }
+
     // return the rating result
     return tmpRatingResult;
   }
@@ -431,13 +471,35 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
   {
     ArrayList<RateMapEntry>  tmpRateModel;
     RatingResult tmpRatingResult;
+    int          memoGeneration;
+
+    // Get the generation before the rate model, so that a reload during the
+    // rating makes the result too old to be remembered
+    memoGeneration = RRC.getGeneration();
 
     // Look up the rate model to use
     tmpRateModel = RRC.getPriceModel(priceModel);
 
+    // see if we have already rated this
+    if (memo != null && !BreakDown)
+    {
+      tmpRatingResult = getMemoResult(memoGeneration, RATE_THRESHOLD, priceModel, valueToRate, CDRDate);
+
+      if (tmpRatingResult != null)
+      {
+        return tmpRatingResult;
+      }
+    }
+
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationThreshold(priceModel, tmpRateModel, valueToRate, CDRDate, BreakDown);
 
+    // remember the result for the next time
+    if (memo != null && !BreakDown)
+    {
+      putMemoResult(memoGeneration, RATE_THRESHOLD, priceModel, tmpRateModel, valueToRate, CDRDate, tmpRatingResult);
+    }
+
     // return the rating result
     return tmpRatingResult;
   }
@@ -458,13 +520,35 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
   {
     ArrayList<RateMapEntry>  tmpRateModel;
     RatingResult tmpRatingResult;
+    int          memoGeneration;
+
+    // Get the generation before the rate model, so that a reload during the
+    // rating makes the result too old to be remembered
+    memoGeneration = RRC.getGeneration();
 
     // Look up the rate model to use
     tmpRateModel = RRC.getPriceModel(priceModel);
 
+    // see if we have already rated this
+    if (memo != null && !BreakDown)
+    {
+      tmpRatingResult = getMemoResult(memoGeneration, RATE_FLAT, priceModel, valueToRate, CDRDate);
+
+      if (tmpRatingResult != null)
+      {
+        return tmpRatingResult;
+      }
+    }
+
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationFlat(priceModel, tmpRateModel, valueToRate, CDRDate, BreakDown);
 
+    // remember the result for the next time
+    if (memo != null && !BreakDown)
+    {
+      putMemoResult(memoGeneration, RATE_FLAT, priceModel, tmpRateModel, valueToRate, CDRDate, tmpRatingResult);
+    }
+
     // return the rating result
     return tmpRatingResult;
   }
@@ -483,13 +567,35 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
   {
     ArrayList<RateMapEntry>  tmpRateModel;
     RatingResult tmpRatingResult;
+    int          memoGeneration;
+
+    // Get the generation before the rate model, so that a reload during the
+    // rating makes the result too old to be remembered
+    memoGeneration = RRC.getGeneration();
 
     // Look up the rate model to use
     tmpRateModel = RRC.getPriceModel(priceModel);
 
+    // see if we have already rated this
+    if (memo != null && !BreakDown)
+    {
+      tmpRatingResult = getMemoResult(memoGeneration, RATE_EVENT, priceModel, valueToRate, CDRDate);
+
+      if (tmpRatingResult != null)
+      {
+        return tmpRatingResult;
+      }
+    }
+
     // perform the rating using the selected rate model
     tmpRatingResult = performRateEvaluationEvent(priceModel, tmpRateModel, (long) valueToRate, CDRDate, BreakDown);
 
+    // remember the result for the next time
+    if (memo != null && !BreakDown)
+    {
+      putMemoResult(memoGeneration, RATE_EVENT, priceModel, tmpRateModel, valueToRate, CDRDate, tmpRatingResult);
+    }
+
     // return the rating result
     return tmpRatingResult;
   }
@@ -575,4 +681,198 @@ public abstract class AbstractRUMRateCalc extends AbstractRateCalc
 
     return tmpcalculationResult;
   }
+
+// -----------------------------------------------------------------------------
+// ------------------------ Start of rating memo functions ---------------------
+// -----------------------------------------------------------------------------
+
+ /**
+  * Get a result from the rating memo.
+  *
+  * @param memoGeneration The generation of the price model data being used
+  * @param ratingType The rating type
+  * @param priceModel The price model
+  * @param valueToRate The value to rate
+  * @param CDRDate The date to rate at
+  * @return The rating result, or null if it is not in the memo
+  */
+  private RatingResult getMemoResult(int memoGeneration, int ratingType, String priceModel, double valueToRate, long CDRDate)
+  {
+    RatingMemo.Entry tmpEntry;
+    RatingResult     tmpRatingResult;
+
+    tmpEntry = memo.get(ratingType, priceModel, valueToRate, CDRDate, memoGeneration);
+
+    if (tmpEntry == null)
+    {
+      return null;
+    }
+
+    tmpRatingResult = new RatingResult();
+    tmpRatingResult.RatedValue = tmpEntry.ratedValue;
+    tmpRatingResult.RUMUsed = tmpEntry.RUMUsed;
+
+    return tmpRatingResult;
+  }
+
+ /**
+  * Store a result in the rating memo. The result is valid for the period in
+  * which all of the validity segments of the tiers reached by the value are
+  * valid, which is worked out here by resolving them again. The result is
+  * only kept if the price model data has not been reloaded since the
+  * generation was read.
+  *
+  * @param memoGeneration The generation read before the rating
+  * @param ratingType The rating type
+  * @param priceModel The price model
+  * @param tmpRateModel The price model definition
+  * @param valueToRate The value rated
+  * @param CDRDate The date rated at
+  * @param tmpRatingResult The rating result
+  */
+  private void putMemoResult(int memoGeneration, int ratingType, String priceModel, ArrayList<RateMapEntry> tmpRateModel, double valueToRate, long CDRDate, RatingResult tmpRatingResult)
+  {
+    long         validFrom = Long.MIN_VALUE;
+    long         validTo = Long.MAX_VALUE;
+    double       tmpValue = (ratingType == RATE_EVENT) ? (long) valueToRate : valueToRate;
+    int          tierCount = (ratingType == RATE_FLAT) ? 1 : tmpRateModel.size();
+    RateMapEntry tmpEntry;
+
+    for (int Index = 0 ; Index < tierCount ; Index++)
+    {
+      tmpEntry = tmpRateModel.get(Index);
+
+      if (ratingType == RATE_FLAT || tmpValue > tmpEntry.getFrom())
+      {
+        tmpEntry = getRateModelEntryForTime(tmpEntry, CDRDate);
+
+        if (tmpEntry == null)
+        {
+          // not covered, so don't remember it
+          return;
+        }
+
+        validFrom = Math.max(validFrom, tmpEntry.getStartTime());
+        validTo = Math.min(validTo, tmpEntry.getEndTime());
+      }
+    }
+
+    memo.put(new RatingMemo.Entry(memoGeneration, ratingType, priceModel, valueToRate, validFrom, validTo,
+                                  tmpRatingResult.RatedValue, tmpRatingResult.RUMUsed), RRC.getGeneration());
+  }
+
+// -----------------------------------------------------------------------------
+// ------------- Start of inherited IEventInterface functions ------------------
+// -----------------------------------------------------------------------------
+
+ /**
+  * registerClientManager registers this class as a client of the ECI listener
+  * and publishes the commands that the plug in understands. The listener is
+  * responsible for delivering only these commands to the plug in.
+  *
+  */
+  @Override
+  public void registerClientManager() throws InitializationException
+  {
+    // Set the client reference and the base services first
+    super.registerClientManager();
+
+    //Register services for this Client
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MEMO_SIZE,  ClientManager.PARAM_NONE);
+    ClientManager.getClientManager().registerClientService(getSymbolicName(), SERVICE_MEMO_STATS, ClientManager.PARAM_DYNAMIC);
+  }
+
+ /**
+  * processControlEvent is the event processing hook for the External Control
+  * Interface (ECI). This allows interaction with the external world.
+  *
+  * The memo statistics are returned as "hits:misses:hit rate percent", and
+  * are reset by sending "reset".
+  *
+  * @param Command The command that we are to work on
+  * @param Init True if the pipeline is currently being constructed
+  * @param Parameter The parameter value for the command
+  * @return The result message of the operation
+  */
+  @Override
+  public String processControlEvent(String Command, boolean Init, String Parameter)
+  {
+    int ResultCode = -1;
+    int tmpSize;
+    long Hits;
+    long Lookups;
+
+    if (Command.equalsIgnoreCase(SERVICE_MEMO_SIZE))
+    {
+      if (Init)
+      {
+        try
+        {
+          tmpSize = Integer.parseInt(Parameter);
+
+          if (tmpSize > RatingMemo.MAX_SIZE)
+          {
+            getPipeLog().error("Rating memo size too large, using <" + RatingMemo.MAX_SIZE + ">. Passed value = <" + Parameter + ">");
+            tmpSize = RatingMemo.MAX_SIZE;
+          }
+
+          if (tmpSize > 0)
+          {
+            memo = new RatingMemo(tmpSize, RRC.getGeneration());
+          }
+        }
+        catch (NumberFormatException nfe)
+        {
+          getPipeLog().error("Invalid number for rating memo size. Passed value = <" + Parameter + ">");
+        }
+        ResultCode = 0;
+      }
+      else
+      {
+        if (Parameter.equals(""))
+        {
+          return (memo == null) ? "0" : Integer.toString(memo.getSize());
+        }
+        else
+        {
+          return CommonConfig.NON_DYNAMIC_PARAM;
+        }
+      }
+    }
+
+    if (Command.equalsIgnoreCase(SERVICE_MEMO_STATS))
+    {
+      if (memo == null)
+      {
+        return "disabled";
+      }
+
+      if (Parameter.equalsIgnoreCase("reset"))
+      {
+        memo.resetStatistics();
+        ResultCode = 0;
+      }
+      else
+      {
+        Hits = memo.getHitCount();
+        Lookups = Hits + memo.getMissCount();
+
+        return Long.toString(Hits) + ":" +
+               Long.toString(Lookups - Hits) + ":" +
+               Double.toString((Lookups == 0) ? 0 : (Hits * 100.0) / Lookups);
+      }
+    }
+
+    if (ResultCode == 0)
+    {
+      getPipeLog().debug(LogUtil.LogECIPipeCommand(getSymbolicName(), getPipeName(), Command, Parameter));
+
+      return "OK";
+    }
+    else
+    {
+      // This is not our event, pass it up the stack
+      return super.processControlEvent(Command, Init, Parameter);
+    }
+  }
 }
@@ -313,7 +313,7 @@ public abstract class AbstractRUMTimeMatch extends AbstractTimeMatch
                     else
                     {
                       // other charge packets need to be cloned
-                      tmpCPNew = tmpCPCloneSource.Clone();
+                      tmpCPNew = CurrentRecord.cloneChargePacket(tmpCPCloneSource);
 
                       // update the information in the packet
                       fillCPWithTimeMatchChildData(CurrentRecord,tmpCP,TimeZones.get(ZoneIndex).TimeResult,TimeZones.get(ZoneIndex).Duration / (double) TimeZones.get(ZoneIndex).TotalDuration);
@@ -67,6 +67,8 @@ import OpenRate.record.RatingResult;
 import OpenRate.resource.CacheFactory;
 import OpenRate.utils.PropertyUtils;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * Please <a target='new' href='http://www.open-rate.com/wiki/index.php?title=Rate_Calculation'>click here</a> to go to wiki page.
@@ -84,6 +86,12 @@ public abstract class AbstractRateCalc extends AbstractPlugIn
   // The zone model object
   private RateCache RC;
 
+  // The rating types for batch rating
+  public static final int RATE_TIERED    = 0;
+  public static final int RATE_THRESHOLD = 1;
+  public static final int RATE_FLAT      = 2;
+  public static final int RATE_EVENT     = 3;
+
   // -----------------------------------------------------------------------------
   // ------------------ Start of inherited Plug In functions ---------------------
   // -----------------------------------------------------------------------------
@@ -158,6 +166,22 @@ public abstract class AbstractRateCalc extends AbstractPlugIn
     return r;
   }
 
+ /**
+  * Process a run of valid records in the order of their batch key. Override
+  * getBatchKey to return the price model of the record, and the records rated
+  * with the same price model are rated one after the other, which keeps the
+  * model data hot in the CPU cache. The order of the records in the stream is
+  * not changed.
+  *
+  * @param records The valid records to process
+  * @throws ProcessingException
+  */
+  @Override
+  public void procValidBatch(List<IRecord> records) throws ProcessingException
+  {
+    procValidRecordsByKey(records);
+  }
+
   // -----------------------------------------------------------------------------
   // ------------------------ Start of utiity functions --------------------------
   // -----------------------------------------------------------------------------
@@ -1333,4 +1357,423 @@ public abstract class AbstractRateCalc extends AbstractPlugIn
     // return the right bit
     return tmpEntry;
   }
+
+  // -----------------------------------------------------------------------------
+  // ------------------------ Start of batch rating functions --------------------
+  // -----------------------------------------------------------------------------
+
+ /**
+  * Rates a batch of values against a single price model. This gives the same
+  * results as calling the single value rateCalculate* method for each value,
+  * but the price model is looked up once for the whole batch, the tiers are
+  * held in an array and the validity segment resolved for each tier is kept
+  * for the following values, so that re-rating runs (where most of the values
+  * fall into the same validity period) do not walk the validity chain again
+  * for every value.
+  *
+  * Values that cannot be rated (undefined price model, missing validity
+  * coverage) get NaN as the rated value instead of aborting the whole batch.
+  *
+  * @param ratingType One of RATE_TIERED, RATE_THRESHOLD, RATE_FLAT, RATE_EVENT
+  * @param priceModel The price model to use
+  * @param valuesToRate The values to rate, truncated to long for RATE_EVENT
+  * @param CDRDates The dates to use for price model version selection
+  * @param count The number of values to rate from the start of the arrays
+  * @param ratedValues The array to fill with the rated values
+  * @param RUMsUsed The array to fill with the RUM used, or null if not needed
+  * @return The number of values that could not be rated
+  * @throws OpenRate.exception.ProcessingException
+  */
+  public int rateCalculateBatch(int ratingType, String priceModel, double[] valuesToRate, long[] CDRDates, int count, double[] ratedValues, double[] RUMsUsed)
+    throws ProcessingException
+  {
+    checkBatchArguments(ratingType, valuesToRate, CDRDates, count, ratedValues, RUMsUsed);
+
+    return rateBatchGroup(ratingType, RC.getPriceModel(priceModel), valuesToRate, CDRDates, null, 0, count, ratedValues, RUMsUsed);
+  }
+
+ /**
+  * Rates a batch of values, each with its own price model. The values are
+  * grouped by price model and each group is rated in one pass, so that the
+  * data of one model stays hot in the CPU cache while its values are rated.
+  * The results are written back in the original order.
+  *
+  * Values that cannot be rated (undefined price model, missing validity
+  * coverage) get NaN as the rated value instead of aborting the whole batch.
+  *
+  * @param ratingType One of RATE_TIERED, RATE_THRESHOLD, RATE_FLAT, RATE_EVENT
+  * @param priceModels The price model to use for each value
+  * @param valuesToRate The values to rate, truncated to long for RATE_EVENT
+  * @param CDRDates The dates to use for price model version selection
+  * @param count The number of values to rate from the start of the arrays
+  * @param ratedValues The array to fill with the rated values
+  * @param RUMsUsed The array to fill with the RUM used, or null if not needed
+  * @return The number of values that could not be rated
+  * @throws OpenRate.exception.ProcessingException
+  */
+  public int rateCalculateBatch(int ratingType, String[] priceModels, double[] valuesToRate, long[] CDRDates, int count, double[] ratedValues, double[] RUMsUsed)
+    throws ProcessingException
+  {
+    HashMap<String, Integer> groupIndex = new HashMap<>();
+    ArrayList<String>        groupModels = new ArrayList<>();
+    int[]                    groupOf = new int[count];
+    int[]                    groupStart;
+    int[]                    groupFill;
+    int[]                    order = new int[count];
+    Integer                  tmpGroup;
+    int                      failed = 0;
+
+    checkBatchArguments(ratingType, valuesToRate, CDRDates, count, ratedValues, RUMsUsed);
+
+    if (priceModels.length < count)
+    {
+      throw new ProcessingException("Batch arrays shorter than count <" + count + ">",getSymbolicName());
+    }
+
+    // assign each value to the group of its price model
+    for (int i = 0 ; i < count ; i++)
+    {
+      tmpGroup = groupIndex.get(priceModels[i]);
+      if (tmpGroup == null)
+      {
+        tmpGroup = groupModels.size();
+        groupIndex.put(priceModels[i], tmpGroup);
+        groupModels.add(priceModels[i]);
+      }
+      groupOf[i] = tmpGroup;
+    }
+
+    // counting sort of the value indexes by group, stable within the group
+    groupStart = new int[groupModels.size() + 1];
+    for (int i = 0 ; i < count ; i++)
+    {
+      groupStart[groupOf[i] + 1]++;
+    }
+    for (int g = 0 ; g < groupModels.size() ; g++)
+    {
+      groupStart[g + 1] += groupStart[g];
+    }
+    groupFill = groupStart.clone();
+    for (int i = 0 ; i < count ; i++)
+    {
+      order[groupFill[groupOf[i]]++] = i;
+    }
+
+    // rate each group with its price model
+    for (int g = 0 ; g < groupModels.size() ; g++)
+    {
+      failed += rateBatchGroup(ratingType, RC.getPriceModel(groupModels.get(g)), valuesToRate, CDRDates, order, groupStart[g], groupStart[g + 1], ratedValues, RUMsUsed);
+    }
+
+    return failed;
+  }
+
+ /**
+  * Checks the arguments of a batch rating call.
+  */
+  private void checkBatchArguments(int ratingType, double[] valuesToRate, long[] CDRDates, int count, double[] ratedValues, double[] RUMsUsed)
+    throws ProcessingException
+  {
+    if (ratingType < RATE_TIERED || ratingType > RATE_EVENT)
+    {
+      throw new ProcessingException("Unknown rating type <" + ratingType + ">",getSymbolicName());
+    }
+
+    if (valuesToRate.length < count || CDRDates.length < count || ratedValues.length < count ||
+        (RUMsUsed != null && RUMsUsed.length < count))
+    {
+      throw new ProcessingException("Batch arrays shorter than count <" + count + ">",getSymbolicName());
+    }
+  }
+
+ /**
+  * Rates the values at the given positions against one price model.
+  *
+  * @param ratingType The rating type
+  * @param tmpRateModel The price model definition, null if not defined
+  * @param valuesToRate The values to rate
+  * @param CDRDates The dates to rate at
+  * @param order The value indexes to rate, or null to rate start..end directly
+  * @param start The first position to rate
+  * @param end The position after the last one to rate
+  * @param ratedValues The rated values
+  * @param RUMsUsed The RUM used, may be null
+  * @return The number of values that could not be rated
+  */
+  private int rateBatchGroup(int ratingType, ArrayList<RateMapEntry> tmpRateModel, double[] valuesToRate, long[] CDRDates, int[] order, int start, int end, double[] ratedValues, double[] RUMsUsed)
+  {
+    BatchModel tmpModel = null;
+    boolean    rated;
+    int        failed = 0;
+    int        idx;
+
+    if (tmpRateModel != null && tmpRateModel.size() > 0)
+    {
+      tmpModel = new BatchModel(tmpRateModel);
+    }
+
+    for (int i = start ; i < end ; i++)
+    {
+      idx = (order == null) ? i : order[i];
+
+      if (tmpModel == null)
+      {
+        rated = false;
+      }
+      else
+      {
+        switch (ratingType)
+        {
+          case RATE_TIERED:
+            rated = tmpModel.rateTiered(valuesToRate[idx], CDRDates[idx]);
+            break;
+          case RATE_THRESHOLD:
+            rated = tmpModel.rateThreshold(valuesToRate[idx], CDRDates[idx]);
+            break;
+          case RATE_FLAT:
+            rated = tmpModel.rateFlat(valuesToRate[idx], CDRDates[idx]);
+            break;
+          default:
+            rated = tmpModel.rateEvent((long) valuesToRate[idx], CDRDates[idx]);
+            break;
+        }
+      }
+
+      if (rated)
+      {
+        ratedValues[idx] = tmpModel.ratedValue;
+        if (RUMsUsed != null)
+        {
+          RUMsUsed[idx] = tmpModel.RUMUsed;
+        }
+      }
+      else
+      {
+        failed++;
+        ratedValues[idx] = Double.NaN;
+        if (RUMsUsed != null)
+        {
+          RUMsUsed[idx] = Double.NaN;
+        }
+      }
+    }
+
+    return failed;
+  }
+
+ /**
+  * The working copy of a price model used during batch rating. The tiers are
+  * held in an array, and for each tier the validity segment found for the
+  * last value is kept, so that the validity chain is only walked again when
+  * the date moves out of that segment. The rating arithmetic is the same as
+  * in the performRateEvaluation* methods.
+  */
+  private final class BatchModel
+  {
+    final RateMapEntry[] tiers;
+    final RateMapEntry[] segments;
+    final long[]         segmentStart;
+    final long[]         segmentEnd;
+
+    // the results of the last value rated
+    double ratedValue;
+    double RUMUsed;
+
+    BatchModel(ArrayList<RateMapEntry> tmpRateModel)
+    {
+      tiers = tmpRateModel.toArray(new RateMapEntry[tmpRateModel.size()]);
+      segments = new RateMapEntry[tiers.length];
+      segmentStart = new long[tiers.length];
+      segmentEnd = new long[tiers.length];
+    }
+
+   /**
+    * Get the validity segment of a tier for the date, or null if not covered
+    */
+    RateMapEntry resolve(int tier, long CDRDate)
+    {
+      RateMapEntry tmpEntry = segments[tier];
+
+      if (tmpEntry != null && segmentStart[tier] <= CDRDate && CDRDate < segmentEnd[tier])
+      {
+        return tmpEntry;
+      }
+
+      tmpEntry = getRateModelEntryForTime(tiers[tier], CDRDate);
+      if (tmpEntry != null)
+      {
+        segments[tier] = tmpEntry;
+        segmentStart[tier] = tmpEntry.getStartTime();
+        segmentEnd[tier] = tmpEntry.getEndTime();
+      }
+
+      return tmpEntry;
+    }
+
+   /**
+    * Get the number of beats for the RUM in a tier
+    */
+    long beatCount(double ThisTierRUMUsed, RateMapEntry tmpEntry)
+    {
+      long ThisTierBeatCount = Math.round(ThisTierRUMUsed / tmpEntry.getBeat());
+
+      // Deal with unfinished beats
+      if ((ThisTierRUMUsed - ThisTierBeatCount*tmpEntry.getBeat()) > 0)
+      {
+        ThisTierBeatCount++;
+      }
+
+      // Deal with the empty beat
+      if (ThisTierBeatCount == 0)
+      {
+        ThisTierBeatCount = 1;
+      }
+
+      return ThisTierBeatCount;
+    }
+
+   /**
+    * Batch version of performRateEvaluationTiered
+    */
+    boolean rateTiered(double valueToRate, long CDRDate)
+    {
+      double       AllTiersValue = 0;
+      double       RUMValueUsed = 0;
+      double       ThisTierRUMUsed;
+      RateMapEntry tmpEntry;
+
+      for (int Index = 0 ; Index < tiers.length ; Index++)
+      {
+        if (valueToRate > tiers[Index].getFrom())
+        {
+          tmpEntry = resolve(Index, CDRDate);
+          if (tmpEntry == null)
+          {
+            return false;
+          }
+
+          if (valueToRate >= tiers[Index].getTo())
+          {
+            ThisTierRUMUsed = (tmpEntry.getTo() - tmpEntry.getFrom());
+          }
+          else
+          {
+            ThisTierRUMUsed = (valueToRate - tmpEntry.getFrom());
+          }
+
+          RUMValueUsed = RUMValueUsed + ThisTierRUMUsed;
+          AllTiersValue = AllTiersValue + (beatCount(ThisTierRUMUsed, tmpEntry) * tmpEntry.getFactor()) * tmpEntry.getBeat() / tmpEntry.getChargeBase();
+        }
+      }
+
+      ratedValue = AllTiersValue;
+      RUMUsed = RUMValueUsed;
+      return true;
+    }
+
+   /**
+    * Batch version of performRateEvaluationThreshold
+    */
+    boolean rateThreshold(double valueToRate, long CDRDate)
+    {
+      double       AllTiersValue = 0;
+      double       RUMValueUsed = 0;
+      RateMapEntry tmpEntry;
+
+      for (int Index = 0 ; Index < tiers.length ; Index++)
+      {
+        if (valueToRate > tiers[Index].getFrom())
+        {
+          if (valueToRate < tiers[Index].getTo())
+          {
+            tmpEntry = resolve(Index, CDRDate);
+            if (tmpEntry == null)
+            {
+              return false;
+            }
+
+            RUMValueUsed = RUMValueUsed + valueToRate;
+            AllTiersValue = AllTiersValue + (beatCount(valueToRate, tmpEntry) * tmpEntry.getFactor()) * tmpEntry.getBeat() / tmpEntry.getChargeBase();
+          }
+          else if (tiers[Index].getFrom() == tiers[Index].getTo())
+          {
+            // Singularity rate
+            tmpEntry = resolve(Index, CDRDate);
+            if (tmpEntry == null)
+            {
+              return false;
+            }
+
+            AllTiersValue = AllTiersValue + tmpEntry.getFactor() * tmpEntry.getBeat() / tmpEntry.getChargeBase();
+          }
+        }
+      }
+
+      ratedValue = AllTiersValue;
+      RUMUsed = RUMValueUsed;
+      return true;
+    }
+
+   /**
+    * Batch version of performRateEvaluationFlat
+    */
+    boolean rateFlat(double valueToRate, long CDRDate)
+    {
+      RateMapEntry tmpEntry = resolve(0, CDRDate);
+
+      if (tmpEntry == null)
+      {
+        return false;
+      }
+
+      ratedValue = (valueToRate * tmpEntry.getFactor()) / tmpEntry.getChargeBase();
+      RUMUsed = valueToRate;
+      return true;
+    }
+
+   /**
+    * Batch version of performRateEvaluationEvent
+    */
+    boolean rateEvent(long valueToRate, long CDRDate)
+    {
+      double       AllTiersValue = 0;
+      double       RUMValueUsed = 0;
+      double       ThisTierRUMUsed;
+      RateMapEntry tmpEntry;
+
+      for (int Index = 0 ; Index < tiers.length ; Index++)
+      {
+        if (valueToRate > tiers[Index].getFrom())
+        {
+          tmpEntry = resolve(Index, CDRDate);
+          if (tmpEntry == null)
+          {
+            return false;
+          }
+
+          if (valueToRate >= tiers[Index].getTo())
+          {
+            ThisTierRUMUsed = (tmpEntry.getTo() - tmpEntry.getFrom());
+          }
+          else
+          {
+            ThisTierRUMUsed = (valueToRate - tmpEntry.getFrom());
+          }
+
+          // Deal with the case that we have the empty beat
+          if (ThisTierRUMUsed == 0)
+          {
+            ThisTierRUMUsed++;
+          }
+
+          RUMValueUsed = RUMValueUsed + ThisTierRUMUsed;
+          AllTiersValue = AllTiersValue + ThisTierRUMUsed * tmpEntry.getFactor();
+        }
+      }
+
+      ratedValue = AllTiersValue;
+      RUMUsed = RUMValueUsed;
+      return true;
+    }
+  }
 }
@@ -202,7 +202,7 @@ public class GatherRUMImpacts extends AbstractStubPlugIn
 
       if (createImpact)
       {
-        tmpBalImpact = new BalanceImpact();
+        tmpBalImpact = CurrentRecord.newBalanceImpact();
 
         tmpBalImpact.type = "R";
         tmpBalImpact.balanceDelta = tmpImpactsRider.child.ResourceValue;
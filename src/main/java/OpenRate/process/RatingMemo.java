@@ -0,0 +1,288 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.process;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded memo of rating results. Many events share the same price model
+ * and RUM value (single SMS events, fixed duration calls, bundle models) and
+ * so produce exactly the same rating result. The memo stores the rated value
+ * and the RUM used for a (rating type, price model, value) key, together with
+ * the period in which all of the validity segments used for the result are
+ * valid. A lookup only hits if the event date falls into that period.
+ *
+ * The memo is a fixed size direct mapped table: each key has exactly one slot,
+ * and a new result simply replaces whatever was in its slot. This keeps the
+ * size bounded and the lookups free of locking, because the entries are never
+ * changed once they have been created.
+ *
+ * The memo is tied to a generation of the price model data, and is emptied
+ * when the generation changes (the price model cache has been reloaded). Each
+ * entry also carries the generation that was current before its result was
+ * worked out, so that a result worked out while a reload was running is
+ * neither stored nor returned.
+ *
+ * @author ian
+ */
+class RatingMemo
+{
+ /**
+  * The largest number of slots a memo can have
+  */
+  static final int MAX_SIZE = 1 << 24;
+
+ /**
+  * One memoised result. Immutable once created.
+  */
+  static final class Entry
+  {
+    final int    generation;
+    final int    ratingType;
+    final String priceModel;
+    final double valueToRate;
+    final long   validFrom;
+    final long   validTo;
+
+   /**
+    * The rated value
+    */
+    final double ratedValue;
+
+   /**
+    * The RUM used in rating
+    */
+    final double RUMUsed;
+
+    Entry(int generation, int ratingType, String priceModel, double valueToRate, long validFrom, long validTo, double ratedValue, double RUMUsed)
+    {
+      this.generation = generation;
+      this.ratingType = ratingType;
+      this.priceModel = priceModel;
+      this.valueToRate = valueToRate;
+      this.validFrom = validFrom;
+      this.validTo = validTo;
+      this.ratedValue = ratedValue;
+      this.RUMUsed = RUMUsed;
+    }
+  }
+
+  // the slots, a power of two in size
+  private final AtomicReferenceArray<Entry> slots;
+  private final int mask;
+
+  // the generation of the price model data the entries were made from
+  private volatile int generation;
+
+  // Statistics
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+
+ /**
+  * Create a new memo.
+  *
+  * @param size The number of slots, rounded up to a power of two, at most MAX_SIZE
+  * @param generation The current generation of the price model data
+  */
+  RatingMemo(int size, int generation)
+  {
+    int tmpWanted = Math.min(Math.max(size, 1), MAX_SIZE);
+    int tmpSize = Integer.highestOneBit(tmpWanted);
+
+    if (tmpSize < tmpWanted)
+    {
+      tmpSize <<= 1;
+    }
+
+    slots = new AtomicReferenceArray<>(tmpSize);
+    mask = tmpSize - 1;
+    this.generation = generation;
+  }
+
+ /**
+  * Look up a result.
+  *
+  * @param ratingType The rating type
+  * @param priceModel The price model
+  * @param valueToRate The value rated
+  * @param CDRDate The date rated at
+  * @param currentGeneration The current generation of the price model data
+  * @return The result, or null if it is not in the memo
+  */
+  Entry get(int ratingType, String priceModel, double valueToRate, long CDRDate, int currentGeneration)
+  {
+    Entry tmpEntry;
+
+    if (isNewer(currentGeneration))
+    {
+      clear(currentGeneration);
+    }
+
+    tmpEntry = slots.get(slotFor(ratingType, priceModel, valueToRate));
+
+    if (tmpEntry != null &&
+        tmpEntry.generation == currentGeneration &&
+        tmpEntry.valueToRate == valueToRate &&
+        tmpEntry.ratingType == ratingType &&
+        tmpEntry.validFrom <= CDRDate && CDRDate < tmpEntry.validTo &&
+        tmpEntry.priceModel.equals(priceModel))
+    {
+      hitCount.incrementAndGet();
+      return tmpEntry;
+    }
+
+    missCount.incrementAndGet();
+    return null;
+  }
+
+ /**
+  * Store a result, replacing the result held in the slot. The result is
+  * discarded if the price model data has been reloaded since the generation
+  * of the entry was read.
+  *
+  * @param tmpEntry The result to store
+  * @param currentGeneration The current generation of the price model data
+  */
+  void put(Entry tmpEntry, int currentGeneration)
+  {
+    if (tmpEntry.generation != currentGeneration)
+    {
+      return;
+    }
+
+    if (isNewer(currentGeneration))
+    {
+      clear(currentGeneration);
+    }
+
+    slots.set(slotFor(tmpEntry.ratingType, tmpEntry.priceModel, tmpEntry.valueToRate), tmpEntry);
+  }
+
+ /**
+  * Empty the memo and move it to a new generation of the price model data.
+  *
+  * @param newGeneration The new generation
+  */
+  synchronized void clear(int newGeneration)
+  {
+    if (isNewer(newGeneration))
+    {
+      for (int i = 0 ; i < slots.length() ; i++)
+      {
+        slots.set(i, null);
+      }
+
+      generation = newGeneration;
+    }
+  }
+
+ /**
+  * @return The number of slots
+  */
+  int getSize()
+  {
+    return slots.length();
+  }
+
+ /**
+  * @return The number of lookups that found a result
+  */
+  long getHitCount()
+  {
+    return hitCount.get();
+  }
+
+ /**
+  * @return The number of lookups that did not find a result
+  */
+  long getMissCount()
+  {
+    return missCount.get();
+  }
+
+ /**
+  * Reset the statistics
+  */
+  void resetStatistics()
+  {
+    hitCount.set(0);
+    missCount.set(0);
+  }
+
+  // see if a generation is later than the one the memo holds, so that a
+  // rating which started before a reload cannot move the memo back
+  private boolean isNewer(int testGeneration)
+  {
+    return testGeneration - generation > 0;
+  }
+
+  // get the slot for a key
+  private int slotFor(int ratingType, String priceModel, double valueToRate)
+  {
+    long tmpBits = Double.doubleToLongBits(valueToRate);
+    int  tmpHash = priceModel.hashCode() * 31 + (int) (tmpBits ^ (tmpBits >>> 32));
+
+    tmpHash = tmpHash * 31 + ratingType;
+
+    // spread the bits, as the values are often small whole numbers
+    tmpHash ^= (tmpHash >>> 16);
+    tmpHash *= 0x85ebca6b;
+    tmpHash ^= (tmpHash >>> 13);
+
+    return tmpHash & mask;
+  }
+}
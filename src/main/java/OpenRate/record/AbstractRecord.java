@@ -55,6 +55,8 @@
 
 package OpenRate.record;
 
+import java.io.IOException;
+import java.io.InvalidClassException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,7 +70,7 @@ import java.util.List;
  *  - record type
  *  - record id
  */
-public abstract class AbstractRecord implements IRecord
+public abstract class AbstractRecord implements IRecord, IPoolable
 {
   /**
    * Default UID for Serializable class
@@ -127,6 +129,14 @@ public abstract class AbstractRecord implements IRecord
    */
   public Object currentStateObject = null;
 
+  // The pool this record was acquired from, if any, and whether the record has
+  // been released back to it
+  private transient ObjectPool<?> ownerPool = null;
+  private transient boolean released = false;
+
+  // The layout version of the fields written by writeBinary()
+  private static final int BINARY_VERSION = 1;
+
  /**
   * default constructor
   */
@@ -147,6 +157,8 @@ public abstract class AbstractRecord implements IRecord
   @Override
   public boolean isValid()
   {
+    checkNotReleased();
+
     return validRecord;
   }
 
@@ -158,6 +170,8 @@ public abstract class AbstractRecord implements IRecord
   @Override
   public void setValid(boolean NewValue)
   {
+    checkNotReleased();
+
     validRecord = NewValue;
   }
 
@@ -219,6 +233,8 @@ public abstract class AbstractRecord implements IRecord
   @Override
   public boolean isErrored()
   {
+    checkNotReleased();
+
     return errors.size() > 0;
   }
 
@@ -233,6 +249,8 @@ public abstract class AbstractRecord implements IRecord
   @Override
   public List<IError> getErrors()
   {
+    checkNotReleased();
+
     return this.errors;
   }
 
@@ -255,6 +273,8 @@ public abstract class AbstractRecord implements IRecord
   @Override
   public void addError(IError error)
   {
+    checkNotReleased();
+
     if (error.getModuleName().isEmpty())
     {
       // get the name of the calling class
@@ -327,6 +347,8 @@ public abstract class AbstractRecord implements IRecord
   {
     int i;
 
+    checkNotReleased();
+
     if (outputs.isEmpty())
     {
       // we do not have outputs defined, so by default we write to all outputs
@@ -381,6 +403,8 @@ public abstract class AbstractRecord implements IRecord
   @Override
   public boolean deleteOutput(String OutputToDelete, boolean TerminatingAdapter)
   {
+    checkNotReleased();
+
     if (outputs.size() > 0)
     {
       if (outputsWritten >= outputs.size())
@@ -513,4 +537,195 @@ public abstract class AbstractRecord implements IRecord
 
     return tmpDumpList;
   }
+
+  /**
+   * Reset the record to its newly created state so that it can be re-used from
+   * a pool. Derived records must reset their own fields and call this.
+   */
+  @Override
+  public void resetForReuse()
+  {
+    // don't clear the error list, it may have been handed to us by setErrors()
+    if (!errors.isEmpty())
+    {
+      errors = new ArrayList<>();
+    }
+
+    outputs.clear();
+    outputsWritten = 0;
+    RecordNumber = 0;
+    RECORD_TYPE = 0;
+    validRecord = true;
+    RTRecord = false;
+    dumpRecord = false;
+    currentStateObject = null;
+  }
+
+  /**
+   * Write the record to the binary record codec. Each record class that adds
+   * fields overrides this to write its own fields after calling the parent,
+   * starting with the version of its own layout. The current state object and
+   * the exceptions attached to errors are not written.
+   *
+   * @param out The buffer to write to
+   */
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    out.writeUnsignedVarInt(BINARY_VERSION);
+    out.writeVarInt(RecordNumber);
+    out.writeVarInt(RECORD_TYPE);
+    out.writeBoolean(validRecord);
+    out.writeBoolean(RTRecord);
+    out.writeBoolean(dumpRecord);
+    out.writeUnsignedVarInt(outputsWritten);
+
+    out.writeUnsignedVarInt(outputs.size());
+    for (String tmpOutput : outputs)
+    {
+      out.writeString(tmpOutput);
+    }
+
+    out.writeUnsignedVarInt(errors.size());
+    for (IError tmpError : errors)
+    {
+      out.writeString(tmpError.getType() == null ? null : tmpError.getType().getName());
+      out.writeString(tmpError.getMessage());
+      out.writeString(tmpError.getModuleName());
+      out.writeString(tmpError.getErrorDescription());
+      out.writeVarInt(tmpError.getSeverity());
+      out.writeVarInt(tmpError.getErrorNumber());
+    }
+  }
+
+  /**
+   * Read the record from the binary record codec, replacing the current
+   * contents. Each record class that overrides writeBinary() must also
+   * override this to read its own fields after calling the parent.
+   *
+   * @param in The buffer to read from
+   * @throws IOException If the data is corrupt or of an unknown layout
+   */
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    checkBinaryVersion(in, BINARY_VERSION, AbstractRecord.class);
+
+    RecordNumber = in.readVarInt();
+    RECORD_TYPE = in.readVarInt();
+    validRecord = in.readBoolean();
+    RTRecord = in.readBoolean();
+    dumpRecord = in.readBoolean();
+    outputsWritten = in.readUnsignedVarInt();
+    currentStateObject = null;
+
+    outputs.clear();
+    int tmpCount = in.readUnsignedVarInt();
+    for (int i = 0 ; i < tmpCount ; i++)
+    {
+      outputs.add(in.readString());
+    }
+
+    tmpCount = in.readUnsignedVarInt();
+    errors = new ArrayList<>(Math.max(tmpCount, 1));
+    for (int i = 0 ; i < tmpCount ; i++)
+    {
+      String tmpTypeName = in.readString();
+      ErrorType tmpType = (tmpTypeName == null) ? null : ErrorType.forName(tmpTypeName);
+      String tmpMessage = in.readString();
+      String tmpModule = in.readString();
+      String tmpDescription = in.readString();
+
+      RecordError tmpError = new RecordError(tmpMessage, tmpType, tmpModule, tmpDescription);
+      tmpError.setSeverity(in.readVarInt());
+      tmpError.setErrorNumber(in.readVarInt());
+      errors.add(tmpError);
+    }
+  }
+
+  /**
+   * Read the layout version written at the start of the fields of a record
+   * class, and check that we know how to read it.
+   *
+   * @param in The buffer to read from
+   * @param currentVersion The layout version the class writes
+   * @param recordClass The class whose fields are being read
+   * @return The version read
+   * @throws IOException If the version is newer than the current one
+   */
+  protected static int checkBinaryVersion(BinaryRecordInput in, int currentVersion, Class<?> recordClass) throws IOException
+  {
+    int tmpVersion = in.readUnsignedVarInt();
+
+    if (tmpVersion < 1 || tmpVersion > currentVersion)
+    {
+      throw new InvalidClassException(recordClass.getName(), "Unsupported binary layout version <" + tmpVersion + ">");
+    }
+
+    return tmpVersion;
+  }
+
+  /**
+   * Release the record to the pool it was acquired from. This does nothing if
+   * the record was not acquired from a pool.
+   */
+  public void release()
+  {
+    ObjectPool.releaseToOwner(this);
+  }
+
+  /**
+   * Get the pool this record was acquired from
+   *
+   * @return The owning pool, or null if the record is not pooled
+   */
+  @Override
+  public ObjectPool<?> getOwnerPool()
+  {
+    return ownerPool;
+  }
+
+  /**
+   * Set the pool this record was acquired from
+   *
+   * @param pool The owning pool
+   */
+  @Override
+  public void setOwnerPool(ObjectPool<?> pool)
+  {
+    ownerPool = pool;
+  }
+
+  /**
+   * Return true if the record has been released to its pool
+   *
+   * @return true if released, otherwise false
+   */
+  @Override
+  public boolean isReleased()
+  {
+    return released;
+  }
+
+  /**
+   * Set the released state of the record, managed by the pool
+   *
+   * @param released The new released state
+   */
+  @Override
+  public void setReleased(boolean released)
+  {
+    this.released = released;
+  }
+
+  /**
+   * When the pool debugging is on, check that the record is not being used
+   * after it was released to its pool.
+   */
+  protected final void checkNotReleased()
+  {
+    if (ObjectPool.DEBUG && released)
+    {
+      throw new IllegalStateException("Record <" + RecordNumber + "> of type <" +
+                                      getClass().getName() + "> used after release to its pool");
+    }
+  }
 }
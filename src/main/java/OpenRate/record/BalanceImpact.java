@@ -51,12 +51,14 @@
 
 package OpenRate.record;
 
+import java.io.IOException;
+
 /**
  * Balance Impact class to map the balance impacts in the pipe.
  *
  * @author Ian
  */
-public class BalanceImpact
+public class BalanceImpact implements IPoolable
 {
  /**
   * The BalanceImpact structure holds the information about the impacts that
@@ -137,10 +139,129 @@ public class BalanceImpact
   */
   public long   endDate;
 
+  // The pool this balance impact was acquired from, if any, and whether it has been
+  // released back to it
+  private ObjectPool<?> ownerPool = null;
+  private boolean released = false;
+
   /**
    * Creates a new instance of BalanceImpact
    */
   public BalanceImpact()
   {
   }
+
+ /**
+  * Write the balance impact to the binary record codec
+  *
+  * @param out The buffer to write to
+  */
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    out.writeVarLong(balanceGroup);
+    out.writeString(type);
+    out.writeString(cpiName);
+    out.writeString(ruleName);
+    out.writeString(rumUsed);
+    out.writeDouble(rumValueUsed);
+    out.writeDouble(rumValueAfter);
+    out.writeDouble(balanceDelta);
+    out.writeDouble(balanceAfter);
+    out.writeString(Resource);
+    out.writeVarInt(counterID);
+    out.writeVarLong(recID);
+    out.writeVarLong(startDate);
+    out.writeVarLong(endDate);
+  }
+
+ /**
+  * Read the balance impact from the binary record codec
+  *
+  * @param in The buffer to read from
+  * @throws IOException If the data is corrupt
+  */
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    balanceGroup = in.readVarLong();
+    type = in.readString();
+    cpiName = in.readString();
+    ruleName = in.readString();
+    rumUsed = in.readString();
+    rumValueUsed = in.readDouble();
+    rumValueAfter = in.readDouble();
+    balanceDelta = in.readDouble();
+    balanceAfter = in.readDouble();
+    Resource = in.readString();
+    counterID = in.readVarInt();
+    recID = in.readVarLong();
+    startDate = in.readVarLong();
+    endDate = in.readVarLong();
+  }
+
+ /**
+  * Reset the balance impact so that it can be re-used from a pool
+  */
+  @Override
+  public void resetForReuse()
+  {
+    balanceGroup = 0;
+    type = null;
+    cpiName = null;
+    ruleName = null;
+    rumUsed = null;
+    rumValueUsed = 0;
+    rumValueAfter = 0;
+    balanceDelta = 0;
+    balanceAfter = 0;
+    Resource = null;
+    counterID = 0;
+    recID = 0;
+    startDate = 0;
+    endDate = 0;
+  }
+
+ /**
+  * Get the pool this balance impact was acquired from
+  *
+  * @return The owning pool, or null if the balance impact is not pooled
+  */
+  @Override
+  public ObjectPool<?> getOwnerPool()
+  {
+    return ownerPool;
+  }
+
+ /**
+  * Set the pool this balance impact was acquired from
+  *
+  * @param pool The owning pool
+  */
+  @Override
+  public void setOwnerPool(ObjectPool<?> pool)
+  {
+    ownerPool = pool;
+  }
+
+ /**
+  * Return true if the balance impact has been released to its pool
+  *
+  * @return true if released, otherwise false
+  */
+  @Override
+  public boolean isReleased()
+  {
+    return released;
+  }
+
+ /**
+  * Set the released state of the balance impact, managed by the pool
+  *
+  * @param released The new released state
+  */
+  @Override
+  public void setReleased(boolean released)
+  {
+    this.released = released;
+  }
 }
+
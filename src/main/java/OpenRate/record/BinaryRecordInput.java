@@ -0,0 +1,501 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * The input buffer for the binary record codec. This reads back the values
+ * written by BinaryRecordOutput, see there for the encoding.
+ *
+ * The string dictionary lives as long as the buffer, so the records of a
+ * stream must be read in the order in which they were written.
+ *
+ * @author ian
+ */
+public class BinaryRecordInput
+{
+  // The buffer, the read position and the end of the valid data
+  private byte[] buffer;
+  private int position = 0;
+  private int limit = 0;
+
+  // The string dictionary, indexed by the dictionary reference
+  private final ArrayList<String> dictionary = new ArrayList<>(1024);
+
+  // Scratch space for decoding strings
+  private char[] chars = new char[128];
+
+ /**
+  * Create a new, empty input buffer
+  */
+  public BinaryRecordInput()
+  {
+    buffer = new byte[4096];
+  }
+
+ /**
+  * Create a new input buffer reading the given bytes
+  *
+  * @param data The encoded data
+  */
+  public BinaryRecordInput(byte[] data)
+  {
+    setInput(data, 0, data.length);
+  }
+
+ /**
+  * Read from the given bytes. The dictionary is kept.
+  *
+  * @param data The encoded data
+  * @param offset The offset of the first byte to read
+  * @param length The number of bytes to read
+  */
+  public final void setInput(byte[] data, int offset, int length)
+  {
+    buffer = data;
+    position = offset;
+    limit = offset + length;
+  }
+
+ /**
+  * Discard the dictionary, ready to read a new stream
+  */
+  public void clearDictionary()
+  {
+    dictionary.clear();
+  }
+
+ /**
+  * Get the number of bytes left to read
+  *
+  * @return The number of bytes
+  */
+  public int remaining()
+  {
+    return limit - position;
+  }
+
+ /**
+  * Get the read position in the buffer
+  *
+  * @return The position
+  */
+  public int getPosition()
+  {
+    return position;
+  }
+
+ /**
+  * Read the next frame of a stream into the buffer. A frame is a 4 byte length
+  * followed by that many bytes.
+  *
+  * @param in The stream to read
+  * @return false if the stream has ended, otherwise true
+  * @throws IOException
+  */
+  public boolean readFrame(InputStream in) throws IOException
+  {
+    int tmpLength = 0;
+
+    for (int i = 0 ; i < 4 ; i++)
+    {
+      int tmpByte = in.read();
+
+      if (tmpByte < 0)
+      {
+        if (i == 0)
+        {
+          return false;
+        }
+
+        throw new EOFException("Stream ended inside a frame length");
+      }
+
+      tmpLength = (tmpLength << 8) | tmpByte;
+    }
+
+    if (tmpLength < 0)
+    {
+      throw new StreamCorruptedException("Invalid frame length <" + tmpLength + ">");
+    }
+
+    if (buffer.length < tmpLength + 4)
+    {
+      buffer = new byte[Math.max(tmpLength + 4, buffer.length * 2)];
+    }
+
+    // keep the length in front of the data, so the frame reads the same as
+    // it does from a byte array
+    buffer[0] = (byte) (tmpLength >>> 24);
+    buffer[1] = (byte) (tmpLength >>> 16);
+    buffer[2] = (byte) (tmpLength >>> 8);
+    buffer[3] = (byte) tmpLength;
+
+    int tmpRead = 0;
+
+    while (tmpRead < tmpLength)
+    {
+      int tmpCount = in.read(buffer, 4 + tmpRead, tmpLength - tmpRead);
+
+      if (tmpCount < 0)
+      {
+        throw new EOFException("Stream ended inside a frame");
+      }
+
+      tmpRead += tmpCount;
+    }
+
+    position = 0;
+    limit = tmpLength + 4;
+
+    return true;
+  }
+
+ /**
+  * Read a single byte
+  *
+  * @return The byte, as an unsigned value
+  * @throws IOException
+  */
+  public int readByte() throws IOException
+  {
+    if (position >= limit)
+    {
+      throw new EOFException("Read past the end of the record data");
+    }
+
+    return buffer[position++] & 0xFF;
+  }
+
+ /**
+  * Read a boolean
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public boolean readBoolean() throws IOException
+  {
+    return readByte() != 0;
+  }
+
+ /**
+  * Read a 4 byte big endian integer
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public int readFixedInt() throws IOException
+  {
+    checkAvailable(4);
+
+    int tmpValue = ((buffer[position] & 0xFF) << 24) |
+                   ((buffer[position + 1] & 0xFF) << 16) |
+                   ((buffer[position + 2] & 0xFF) << 8) |
+                   (buffer[position + 3] & 0xFF);
+    position += 4;
+
+    return tmpValue;
+  }
+
+ /**
+  * Read an unsigned varint
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public int readUnsignedVarInt() throws IOException
+  {
+    int tmpValue = 0;
+
+    for (int tmpShift = 0 ; tmpShift < 35 ; tmpShift += 7)
+    {
+      int tmpByte = readByte();
+      tmpValue |= (tmpByte & 0x7F) << tmpShift;
+
+      if ((tmpByte & 0x80) == 0)
+      {
+        return tmpValue;
+      }
+    }
+
+    throw new StreamCorruptedException("Malformed varint");
+  }
+
+ /**
+  * Read a zig-zag encoded signed varint
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public int readVarInt() throws IOException
+  {
+    int tmpValue = readUnsignedVarInt();
+
+    return (tmpValue >>> 1) ^ -(tmpValue & 1);
+  }
+
+ /**
+  * Read an unsigned varint long
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public long readUnsignedVarLong() throws IOException
+  {
+    long tmpValue = 0;
+
+    for (int tmpShift = 0 ; tmpShift < 70 ; tmpShift += 7)
+    {
+      int tmpByte = readByte();
+      tmpValue |= (long) (tmpByte & 0x7F) << tmpShift;
+
+      if ((tmpByte & 0x80) == 0)
+      {
+        return tmpValue;
+      }
+    }
+
+    throw new StreamCorruptedException("Malformed varint");
+  }
+
+ /**
+  * Read a zig-zag encoded signed varint long
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public long readVarLong() throws IOException
+  {
+    long tmpValue = readUnsignedVarLong();
+
+    return (tmpValue >>> 1) ^ -(tmpValue & 1);
+  }
+
+ /**
+  * Read a double
+  *
+  * @return The value
+  * @throws IOException
+  */
+  public double readDouble() throws IOException
+  {
+    long tmpMarker = readUnsignedVarLong();
+
+    if ((tmpMarker & 1) == 0)
+    {
+      // whole number
+      tmpMarker >>>= 1;
+      return (tmpMarker >>> 1) ^ -(tmpMarker & 1);
+    }
+
+    checkAvailable(8);
+
+    long tmpBits = 0;
+    for (int i = 0 ; i < 8 ; i++)
+    {
+      tmpBits = (tmpBits << 8) | (buffer[position++] & 0xFF);
+    }
+
+    return Double.longBitsToDouble(tmpBits);
+  }
+
+ /**
+  * Read a date, which may be null
+  *
+  * @return The date
+  * @throws IOException
+  */
+  public Date readDate() throws IOException
+  {
+    if (readBoolean())
+    {
+      return new Date(readVarLong());
+    }
+
+    return null;
+  }
+
+ /**
+  * Read a string written with writeString or writeLiteral
+  *
+  * @return The string, which may be null
+  * @throws IOException
+  */
+  public String readString() throws IOException
+  {
+    int tmpMarker = readUnsignedVarInt();
+
+    switch (tmpMarker)
+    {
+      case BinaryRecordOutput.STRING_NULL:
+        return null;
+
+      case BinaryRecordOutput.STRING_NEW:
+      {
+        String tmpValue = readChars();
+        dictionary.add(tmpValue);
+        return tmpValue;
+      }
+
+      case BinaryRecordOutput.STRING_LITERAL:
+        return readChars();
+
+      default:
+      {
+        int tmpIndex = tmpMarker - BinaryRecordOutput.STRING_REFERENCE;
+
+        if (tmpIndex < 0 || tmpIndex >= dictionary.size())
+        {
+          throw new StreamCorruptedException("Unknown dictionary reference <" + tmpIndex + ">");
+        }
+
+        return dictionary.get(tmpIndex);
+      }
+    }
+  }
+
+ /**
+  * Read the UTF-8 length and bytes of a string
+  *
+  * @return The string
+  * @throws IOException
+  */
+  private String readChars() throws IOException
+  {
+    int tmpLength = readUnsignedVarInt();
+
+    checkAvailable(tmpLength);
+
+    if (chars.length < tmpLength)
+    {
+      chars = new char[Math.max(tmpLength, chars.length * 2)];
+    }
+
+    int tmpEnd = position + tmpLength;
+    int tmpCharCount = 0;
+
+    while (position < tmpEnd)
+    {
+      int b = buffer[position++] & 0xFF;
+
+      if (b < 0x80)
+      {
+        chars[tmpCharCount++] = (char) b;
+      }
+      else if (b < 0xE0)
+      {
+        chars[tmpCharCount++] = (char) (((b & 0x1F) << 6) | (nextContinuation(tmpEnd)));
+      }
+      else if (b < 0xF0)
+      {
+        int tmpHigh = nextContinuation(tmpEnd);
+        chars[tmpCharCount++] = (char) (((b & 0x0F) << 12) | (tmpHigh << 6) | nextContinuation(tmpEnd));
+      }
+      else
+      {
+        int tmpCodePoint = ((b & 0x07) << 18) | (nextContinuation(tmpEnd) << 12);
+        tmpCodePoint |= nextContinuation(tmpEnd) << 6;
+        tmpCodePoint |= nextContinuation(tmpEnd);
+
+        if (tmpCodePoint > Character.MAX_CODE_POINT)
+        {
+          throw new StreamCorruptedException("Malformed string");
+        }
+
+        tmpCharCount += Character.toChars(tmpCodePoint, chars, tmpCharCount);
+      }
+    }
+
+    return new String(chars, 0, tmpCharCount);
+  }
+
+ /**
+  * Get the payload of a UTF-8 continuation byte
+  *
+  * @param end The end of the string being decoded
+  * @return The 6 bits of payload
+  * @throws IOException
+  */
+  private int nextContinuation(int end) throws IOException
+  {
+    if (position >= end)
+    {
+      throw new StreamCorruptedException("Malformed string");
+    }
+
+    return buffer[position++] & 0x3F;
+  }
+
+ /**
+  * Check that there is enough data left in the buffer
+  *
+  * @param needed The number of bytes we are about to read
+  * @throws IOException
+  */
+  private void checkAvailable(int needed) throws IOException
+  {
+    if (needed < 0 || limit - position < needed)
+    {
+      throw new EOFException("Read past the end of the record data");
+    }
+  }
+}
@@ -0,0 +1,480 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * The output buffer for the binary record codec. This writes the primitive
+ * values that the records are made of into a growable byte array in a compact
+ * form:
+ *
+ * - integers are written as variable length integers ("varints"), so that the
+ *   small values which make up most of a record take one or two bytes
+ * - signed values are zig-zag encoded before they are written so that small
+ *   negative values are also short
+ * - doubles holding a whole number are written as a varint, others as the
+ *   raw 8 bytes
+ * - short strings are dictionary encoded: the first time a string is written
+ *   it is written in full and added to the dictionary, after that only the
+ *   dictionary index is written. Service names, rate plans, RUM names, zone
+ *   results and the like are therefore only written once per stream.
+ *
+ * The dictionary lives as long as the buffer, so that a stream of records
+ * shares one dictionary. The reader must therefore read the records of a
+ * stream in the order in which they were written. Use clearDictionary() to
+ * start a new stream.
+ *
+ * @author ian
+ */
+public class BinaryRecordOutput
+{
+  // Strings longer than this are written literally
+  static final int MAX_DICTIONARY_STRING = 64;
+
+  // The maximum number of entries in the dictionary. Strings written once the
+  // dictionary is full are written literally.
+  static final int MAX_DICTIONARY_SIZE = 65536;
+
+  // String markers. Values above STRING_LITERAL are dictionary references.
+  static final int STRING_NULL = 0;
+  static final int STRING_NEW = 1;
+  static final int STRING_LITERAL = 2;
+  static final int STRING_REFERENCE = 3;
+
+  // The buffer and the write position in it
+  private byte[] buffer;
+  private int position = 0;
+
+  // The string dictionary
+  private final HashMap<String, Integer> dictionary = new HashMap<>(1024);
+
+ /**
+  * Create a new output buffer
+  */
+  public BinaryRecordOutput()
+  {
+    this(4096);
+  }
+
+ /**
+  * Create a new output buffer
+  *
+  * @param initialSize The initial size of the buffer in bytes
+  */
+  public BinaryRecordOutput(int initialSize)
+  {
+    buffer = new byte[Math.max(16, initialSize)];
+  }
+
+ /**
+  * Discard the contents of the buffer, keeping the dictionary
+  */
+  public void reset()
+  {
+    position = 0;
+  }
+
+ /**
+  * Discard the dictionary. The next record written will be the first of a new
+  * stream.
+  */
+  public void clearDictionary()
+  {
+    dictionary.clear();
+  }
+
+ /**
+  * Get the number of bytes written to the buffer
+  *
+  * @return The number of bytes
+  */
+  public int size()
+  {
+    return position;
+  }
+
+ /**
+  * Get a copy of the contents of the buffer
+  *
+  * @return The bytes written
+  */
+  public byte[] toByteArray()
+  {
+    return Arrays.copyOf(buffer, position);
+  }
+
+ /**
+  * Write the contents of the buffer to a stream and empty the buffer
+  *
+  * @param out The stream to write to
+  * @throws IOException
+  */
+  public void writeTo(OutputStream out) throws IOException
+  {
+    out.write(buffer, 0, position);
+    position = 0;
+  }
+
+ /**
+  * Write a single byte
+  *
+  * @param value The byte to write
+  */
+  public void writeByte(int value)
+  {
+    ensureCapacity(1);
+    buffer[position++] = (byte) value;
+  }
+
+ /**
+  * Write a boolean as a single byte
+  *
+  * @param value The value to write
+  */
+  public void writeBoolean(boolean value)
+  {
+    writeByte(value ? 1 : 0);
+  }
+
+ /**
+  * Write a 4 byte big endian integer
+  *
+  * @param value The value to write
+  */
+  public void writeFixedInt(int value)
+  {
+    ensureCapacity(4);
+    putFixedInt(position, value);
+    position += 4;
+  }
+
+ /**
+  * Overwrite a 4 byte big endian integer that has already been written. Used
+  * to fill in a length once the data it covers has been written.
+  *
+  * @param offset The offset of the integer in the buffer
+  * @param value The value to write
+  */
+  public void putFixedInt(int offset, int value)
+  {
+    buffer[offset]     = (byte) (value >>> 24);
+    buffer[offset + 1] = (byte) (value >>> 16);
+    buffer[offset + 2] = (byte) (value >>> 8);
+    buffer[offset + 3] = (byte) value;
+  }
+
+ /**
+  * Write a non-negative integer as a varint. Negative values are legal but
+  * take 5 bytes.
+  *
+  * @param value The value to write
+  */
+  public void writeUnsignedVarInt(int value)
+  {
+    ensureCapacity(5);
+
+    while ((value & ~0x7F) != 0)
+    {
+      buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    buffer[position++] = (byte) value;
+  }
+
+ /**
+  * Write a signed integer as a zig-zag encoded varint
+  *
+  * @param value The value to write
+  */
+  public void writeVarInt(int value)
+  {
+    writeUnsignedVarInt((value << 1) ^ (value >> 31));
+  }
+
+ /**
+  * Write an unsigned long as a varint
+  *
+  * @param value The value to write
+  */
+  public void writeUnsignedVarLong(long value)
+  {
+    ensureCapacity(10);
+
+    while ((value & ~0x7FL) != 0)
+    {
+      buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    buffer[position++] = (byte) value;
+  }
+
+ /**
+  * Write a signed long as a zig-zag encoded varint
+  *
+  * @param value The value to write
+  */
+  public void writeVarLong(long value)
+  {
+    writeUnsignedVarLong((value << 1) ^ (value >> 63));
+  }
+
+ /**
+  * Write a double. Whole numbers (which covers most durations, volumes and
+  * event counts) are written as a varint, anything else as the raw 8 bytes.
+  *
+  * @param value The value to write
+  */
+  public void writeDouble(double value)
+  {
+    long tmpWhole = (long) value;
+
+    if (tmpWhole == value && Math.abs(tmpWhole) < (1L << 53) &&
+        (tmpWhole != 0 || Double.doubleToRawLongBits(value) == 0))
+    {
+      // even marker: whole number
+      writeUnsignedVarLong(((tmpWhole << 1) ^ (tmpWhole >> 63)) << 1);
+    }
+    else
+    {
+      // odd marker: raw bits
+      long tmpBits = Double.doubleToRawLongBits(value);
+
+      writeByte(1);
+      ensureCapacity(8);
+      for (int i = 56 ; i >= 0 ; i -= 8)
+      {
+        buffer[position++] = (byte) (tmpBits >>> i);
+      }
+    }
+  }
+
+ /**
+  * Write a date, which may be null
+  *
+  * @param value The date to write
+  */
+  public void writeDate(Date value)
+  {
+    if (value == null)
+    {
+      writeBoolean(false);
+    }
+    else
+    {
+      writeBoolean(true);
+      writeVarLong(value.getTime());
+    }
+  }
+
+ /**
+  * Write a string, which may be null, using the dictionary. Use this for
+  * values which repeat from record to record.
+  *
+  * @param value The string to write
+  */
+  public void writeString(String value)
+  {
+    if (value == null)
+    {
+      writeUnsignedVarInt(STRING_NULL);
+      return;
+    }
+
+    if (value.length() > MAX_DICTIONARY_STRING)
+    {
+      writeUnsignedVarInt(STRING_LITERAL);
+      writeChars(value);
+      return;
+    }
+
+    Integer tmpIndex = dictionary.get(value);
+
+    if (tmpIndex != null)
+    {
+      writeUnsignedVarInt(STRING_REFERENCE + tmpIndex);
+    }
+    else if (dictionary.size() < MAX_DICTIONARY_SIZE)
+    {
+      dictionary.put(value, dictionary.size());
+      writeUnsignedVarInt(STRING_NEW);
+      writeChars(value);
+    }
+    else
+    {
+      writeUnsignedVarInt(STRING_LITERAL);
+      writeChars(value);
+    }
+  }
+
+ /**
+  * Write a string, which may be null, without using the dictionary. Use this
+  * for values which are different in every record, such as the original
+  * record data, so that they do not fill up the dictionary.
+  *
+  * @param value The string to write
+  */
+  public void writeLiteral(String value)
+  {
+    if (value == null)
+    {
+      writeUnsignedVarInt(STRING_NULL);
+    }
+    else
+    {
+      writeUnsignedVarInt(STRING_LITERAL);
+      writeChars(value);
+    }
+  }
+
+ /**
+  * Write the UTF-8 length and bytes of a string. ASCII, which is what almost
+  * all record data is, is copied straight into the buffer.
+  *
+  * @param value The string to write
+  */
+  private void writeChars(String value)
+  {
+    int tmpLength = value.length();
+    int tmpUTFLength = tmpLength;
+
+    // work out the encoded length
+    for (int i = 0 ; i < tmpLength ; i++)
+    {
+      char c = value.charAt(i);
+
+      if (c >= 0x80)
+      {
+        if (c < 0x800)
+        {
+          tmpUTFLength += 1;
+        }
+        else if (Character.isHighSurrogate(c) && i + 1 < tmpLength && Character.isLowSurrogate(value.charAt(i + 1)))
+        {
+          // 4 bytes for the pair
+          tmpUTFLength += 2;
+          i++;
+        }
+        else
+        {
+          tmpUTFLength += 2;
+        }
+      }
+    }
+
+    writeUnsignedVarInt(tmpUTFLength);
+    ensureCapacity(tmpUTFLength);
+
+    if (tmpUTFLength == tmpLength)
+    {
+      for (int i = 0 ; i < tmpLength ; i++)
+      {
+        buffer[position++] = (byte) value.charAt(i);
+      }
+    }
+    else
+    {
+      for (int i = 0 ; i < tmpLength ; i++)
+      {
+        char c = value.charAt(i);
+
+        if (c < 0x80)
+        {
+          buffer[position++] = (byte) c;
+        }
+        else if (c < 0x800)
+        {
+          buffer[position++] = (byte) (0xC0 | (c >> 6));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+        else if (Character.isHighSurrogate(c) && i + 1 < tmpLength && Character.isLowSurrogate(value.charAt(i + 1)))
+        {
+          int tmpCodePoint = Character.toCodePoint(c, value.charAt(++i));
+
+          buffer[position++] = (byte) (0xF0 | (tmpCodePoint >> 18));
+          buffer[position++] = (byte) (0x80 | ((tmpCodePoint >> 12) & 0x3F));
+          buffer[position++] = (byte) (0x80 | ((tmpCodePoint >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (tmpCodePoint & 0x3F));
+        }
+        else
+        {
+          buffer[position++] = (byte) (0xE0 | (c >> 12));
+          buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+  }
+
+ /**
+  * Make sure that there is room in the buffer
+  *
+  * @param needed The number of bytes we are about to write
+  */
+  private void ensureCapacity(int needed)
+  {
+    if (position + needed > buffer.length)
+    {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + needed));
+    }
+  }
+}
@@ -55,6 +55,7 @@
 
 package OpenRate.record;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -64,7 +65,7 @@ import java.util.Iterator;
  *
  * @author ian
  */
-public class ChargePacket
+public class ChargePacket implements IPoolable
 {
  /**
   * Identifier for Flat Rating
@@ -206,6 +207,11 @@ public class ChargePacket
   */
   public ArrayList<RatingBreakdown> breakDown;
 
+  // The pool this charge packet was acquired from, if any, and whether it has been
+  // released back to it
+  private ObjectPool<?> ownerPool = null;
+  private boolean released = false;
+
   /** Creates a new instance of ChargePacket */
   public ChargePacket()
   {
@@ -218,6 +224,16 @@ public class ChargePacket
    * @param toClone
    */
   public ChargePacket(ChargePacket toClone)
+  {
+    copyFrom(toClone);
+  }
+
+  /**
+   * Copy the contents of another charge packet into this one
+   *
+   * @param toClone The charge packet to copy
+   */
+  public final void copyFrom(ChargePacket toClone)
   {
     this.packetType           = toClone.packetType;
     this.ratePlanName         = toClone.ratePlanName;
@@ -275,4 +291,195 @@ public class ChargePacket
   {
     return new ChargePacket(this);
   }
+
+ /**
+  * Write the charge packet to the binary record codec
+  *
+  * @param out The buffer to write to
+  */
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    out.writeBoolean(Valid);
+    out.writeString(packetType);
+    out.writeString(ratePlanName);
+    out.writeString(zoneModel);
+    out.writeString(timeModel);
+    out.writeString(service);
+    out.writeString(priceGroup);
+    out.writeString(priceModel);
+    out.writeString(rumName);
+    out.writeDouble(rumQuantity);
+    out.writeString(resource);
+    out.writeVarInt(resCounter);
+    out.writeDouble(chargedValue);
+    out.writeVarInt(priority);
+    out.writeString(timeResult);
+    out.writeString(zoneResult);
+    out.writeString(zoneInfo);
+    out.writeString(subscriptionID);
+    out.writeVarInt(ratingType);
+    out.writeString(ratingTypeDesc);
+    out.writeVarInt(timeSplitting);
+    out.writeDouble(splittingFactor);
+
+    if (breakDown == null)
+    {
+      out.writeVarInt(-1);
+    }
+    else
+    {
+      out.writeVarInt(breakDown.size());
+
+      for (RatingBreakdown tmpRB : breakDown)
+      {
+        out.writeVarInt(tmpRB.stepUsed);
+        out.writeDouble(tmpRB.tierFrom);
+        out.writeDouble(tmpRB.tierTo);
+        out.writeDouble(tmpRB.RUMRated);
+        out.writeDouble(tmpRB.factor);
+        out.writeDouble(tmpRB.beat);
+        out.writeDouble(tmpRB.chargeBase);
+        out.writeDouble(tmpRB.ratedAmount);
+        out.writeVarLong(tmpRB.beatCount);
+        out.writeVarLong(tmpRB.validFrom);
+        out.writeVarLong(tmpRB.validTo);
+      }
+    }
+  }
+
+ /**
+  * Read the charge packet from the binary record codec
+  *
+  * @param in The buffer to read from
+  * @throws IOException If the data is corrupt
+  */
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    Valid = in.readBoolean();
+    packetType = in.readString();
+    ratePlanName = in.readString();
+    zoneModel = in.readString();
+    timeModel = in.readString();
+    service = in.readString();
+    priceGroup = in.readString();
+    priceModel = in.readString();
+    rumName = in.readString();
+    rumQuantity = in.readDouble();
+    resource = in.readString();
+    resCounter = in.readVarInt();
+    chargedValue = in.readDouble();
+    priority = in.readVarInt();
+    timeResult = in.readString();
+    zoneResult = in.readString();
+    zoneInfo = in.readString();
+    subscriptionID = in.readString();
+    ratingType = in.readVarInt();
+    ratingTypeDesc = in.readString();
+    timeSplitting = in.readVarInt();
+    splittingFactor = in.readDouble();
+
+    int tmpCount = in.readVarInt();
+
+    if (tmpCount < 0)
+    {
+      breakDown = null;
+    }
+    else
+    {
+      breakDown = new ArrayList<>(tmpCount);
+
+      for (int i = 0 ; i < tmpCount ; i++)
+      {
+        RatingBreakdown tmpRB = new RatingBreakdown();
+        tmpRB.stepUsed    = in.readVarInt();
+        tmpRB.tierFrom    = in.readDouble();
+        tmpRB.tierTo      = in.readDouble();
+        tmpRB.RUMRated    = in.readDouble();
+        tmpRB.factor      = in.readDouble();
+        tmpRB.beat        = in.readDouble();
+        tmpRB.chargeBase  = in.readDouble();
+        tmpRB.ratedAmount = in.readDouble();
+        tmpRB.beatCount   = in.readVarLong();
+        tmpRB.validFrom   = in.readVarLong();
+        tmpRB.validTo     = in.readVarLong();
+        breakDown.add(tmpRB);
+      }
+    }
+  }
+
+ /**
+  * Reset the charge packet so that it can be re-used from a pool
+  */
+  @Override
+  public void resetForReuse()
+  {
+    Valid = true;
+    packetType = null;
+    ratePlanName = null;
+    zoneModel = null;
+    timeModel = null;
+    service = null;
+    priceGroup = null;
+    priceModel = null;
+    rumName = null;
+    rumQuantity = 0;
+    resource = null;
+    resCounter = 0;
+    chargedValue = 0;
+    priority = 0;
+    timeResult = null;
+    zoneResult = null;
+    zoneInfo = null;
+    subscriptionID = null;
+    ratingType = 0;
+    ratingTypeDesc = null;
+    timeSplitting = 0;
+    splittingFactor = 1;
+    breakDown = null;
+  }
+
+ /**
+  * Get the pool this charge packet was acquired from
+  *
+  * @return The owning pool, or null if the charge packet is not pooled
+  */
+  @Override
+  public ObjectPool<?> getOwnerPool()
+  {
+    return ownerPool;
+  }
+
+ /**
+  * Set the pool this charge packet was acquired from
+  *
+  * @param pool The owning pool
+  */
+  @Override
+  public void setOwnerPool(ObjectPool<?> pool)
+  {
+    ownerPool = pool;
+  }
+
+ /**
+  * Return true if the charge packet has been released to its pool
+  *
+  * @return true if released, otherwise false
+  */
+  @Override
+  public boolean isReleased()
+  {
+    return released;
+  }
+
+ /**
+  * Set the released state of the charge packet, managed by the pool
+  *
+  * @param released The new released state
+  */
+  @Override
+  public void setReleased(boolean released)
+  {
+    this.released = released;
+  }
 }
+
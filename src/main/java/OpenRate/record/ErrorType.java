@@ -56,6 +56,7 @@
 package OpenRate.record;
 
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represent a Type of error. An error type will store a unique id
@@ -72,6 +73,10 @@ public class ErrorType implements Serializable
   private final static  Object idLock = new Object();
   private static        int    nextId = 0;
 
+  // The error types by name, so that error types can be found again when
+  // records are decoded. The first type created with a name wins.
+  private static final ConcurrentHashMap<String, ErrorType> typesByName = new ConcurrentHashMap<>();
+
   /**
    * data not found error type
    */
@@ -143,6 +148,28 @@ public class ErrorType implements Serializable
   {
     this.id     = nextId++;
     this.name   = name;
+
+    typesByName.putIfAbsent(name, this);
+  }
+
+  /**
+   * Get the error type with the given name, creating it if there is none.
+   *
+   * @param name The name of the error type
+   * @return The error type
+   */
+  public static ErrorType forName(String name)
+  {
+    ErrorType tmpType = typesByName.get(name);
+
+    if (tmpType == null)
+    {
+      // the constructor registers the type, but another thread may beat us
+      new ErrorType(name);
+      tmpType = typesByName.get(name);
+    }
+
+    return tmpType;
   }
 
   /**
@@ -0,0 +1,424 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.io.Serializable;
+
+/**
+ * A lazy view of the fields of a delimited record. Instead of splitting the
+ * record into a String[] up front (which allocates every field of every
+ * record, even though most processing modules only look at a handful of them)
+ * the view keeps the original line, and locates the field boundaries on the
+ * first field access in a single scan. A field is only turned into a String
+ * when it is asked for, and numeric fields can be parsed straight out of the
+ * original line without creating a String at all.
+ *
+ * The view is copy-on-write: setting a field never changes the original data,
+ * it stores the new value alongside it. getData() returns the original line
+ * untouched if nothing was changed, otherwise the reassembled line.
+ *
+ * Unlike String.split(), trailing empty fields are retained, so a record
+ * always has one more field than it has delimiters.
+ *
+ * @author ian
+ */
+public class FieldView implements Serializable
+{
+  private static final long serialVersionUID = -3204948236741085317L;
+
+  // powers of ten that are exactly representable as doubles
+  private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+    1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+  // the original data we are viewing
+  private final String data;
+
+  // the field delimiter
+  private final char delimiter;
+
+  // the start offset of each field. There is one more entry than there are
+  // fields, so that field i always ends at fieldStart[i + 1] - 1
+  private int[] fieldStart = null;
+
+  // the number of fields, -1 until the offsets have been calculated
+  private int fieldCount = -1;
+
+  // the fields that have been materialised or overwritten
+  private String[] values = null;
+
+  // true if any field has been overwritten
+  private boolean modified = false;
+
+ /**
+  * Creates a new view over the given data
+  *
+  * @param data The delimited data to view
+  * @param delimiter The field delimiter
+  */
+  public FieldView(String data, char delimiter)
+  {
+    this.data = data;
+    this.delimiter = delimiter;
+  }
+
+ /**
+  * Get the number of fields in the data
+  *
+  * @return The number of fields
+  */
+  public int getFieldCount()
+  {
+    if (fieldCount < 0)
+    {
+      tokenize();
+    }
+
+    return fieldCount;
+  }
+
+ /**
+  * Get the field at the given index as a string.
+  *
+  * @param Index The index of the field to get
+  * @return The field value
+  */
+  public String getField(int Index)
+  {
+    checkIndex(Index);
+
+    if (values == null)
+    {
+      values = new String[fieldCount];
+    }
+
+    String tmpValue = values[Index];
+
+    if (tmpValue == null)
+    {
+      tmpValue = data.substring(fieldStart[Index], fieldStart[Index + 1] - 1);
+      values[Index] = tmpValue;
+    }
+
+    return tmpValue;
+  }
+
+ /**
+  * Get the field at the given index parsed as a long. Unchanged fields are
+  * parsed directly from the original data.
+  *
+  * @param Index The index of the field to get
+  * @return The field value
+  * @throws NumberFormatException if the field is not a valid long
+  */
+  public long getLong(int Index)
+  {
+    checkIndex(Index);
+
+    if (values != null && values[Index] != null)
+    {
+      return Long.parseLong(values[Index]);
+    }
+
+    int start = fieldStart[Index];
+    int end = fieldStart[Index + 1] - 1;
+    int pos = start;
+    boolean negative = false;
+
+    if (pos < end && (data.charAt(pos) == '-' || data.charAt(pos) == '+'))
+    {
+      negative = (data.charAt(pos) == '-');
+      pos++;
+    }
+
+    // leave anything long enough to overflow to the JDK
+    if (pos == end || end - pos > 18)
+    {
+      return Long.parseLong(getField(Index));
+    }
+
+    long result = 0;
+    for ( ; pos < end ; pos++)
+    {
+      int digit = data.charAt(pos) - '0';
+
+      if (digit < 0 || digit > 9)
+      {
+        throw new NumberFormatException("For input string: \"" + getField(Index) + "\"");
+      }
+
+      result = result * 10 + digit;
+    }
+
+    return negative ? -result : result;
+  }
+
+ /**
+  * Get the field at the given index parsed as a double. Unchanged plain
+  * decimal fields (e.g. "-123.45") are parsed directly from the original data,
+  * anything else is handed to Double.parseDouble().
+  *
+  * @param Index The index of the field to get
+  * @return The field value
+  * @throws NumberFormatException if the field is not a valid double
+  */
+  public double getDouble(int Index)
+  {
+    checkIndex(Index);
+
+    if (values != null && values[Index] != null)
+    {
+      return Double.parseDouble(values[Index]);
+    }
+
+    int start = fieldStart[Index];
+    int end = fieldStart[Index + 1] - 1;
+    int pos = start;
+    boolean negative = false;
+
+    if (pos < end && (data.charAt(pos) == '-' || data.charAt(pos) == '+'))
+    {
+      negative = (data.charAt(pos) == '-');
+      pos++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = -1;
+
+    for ( ; pos < end ; pos++)
+    {
+      char tmpChar = data.charAt(pos);
+
+      if (tmpChar >= '0' && tmpChar <= '9')
+      {
+        mantissa = mantissa * 10 + (tmpChar - '0');
+        digits++;
+
+        if (decimals >= 0)
+        {
+          decimals++;
+        }
+      }
+      else if (tmpChar == '.' && decimals < 0)
+      {
+        decimals = 0;
+      }
+      else
+      {
+        // exponents, whitespace, NaN etc.
+        return Double.parseDouble(getField(Index));
+      }
+    }
+
+    // Both the mantissa and the divisor are exact here, so the division is
+    // correctly rounded, just as parseDouble() would be
+    if (digits == 0 || digits > 15)
+    {
+      return Double.parseDouble(getField(Index));
+    }
+
+    double result = (decimals > 0) ? mantissa / POW10[decimals] : mantissa;
+
+    return negative ? -result : result;
+  }
+
+ /**
+  * Set the field at the given index. The original data is not changed.
+  *
+  * @param Index The index of the field to set
+  * @param NewValue The new value to set
+  */
+  public void setField(int Index, String NewValue)
+  {
+    checkIndex(Index);
+
+    if (values == null)
+    {
+      values = new String[fieldCount];
+    }
+
+    values[Index] = NewValue;
+    modified = true;
+  }
+
+ /**
+  * Return true if any field has been set since the view was created
+  *
+  * @return true if modified, otherwise false
+  */
+  public boolean isModified()
+  {
+    return modified;
+  }
+
+ /**
+  * Get the delimiter the view splits on
+  *
+  * @return The delimiter
+  */
+  public char getDelimiter()
+  {
+    return delimiter;
+  }
+
+ /**
+  * Get the data of the view. This is the original data if no field has been
+  * set, otherwise the fields are reassembled using the delimiter.
+  *
+  * @return The data
+  */
+  public String getData()
+  {
+    if (!modified)
+    {
+      return data;
+    }
+
+    StringBuilder tmpReassemble = new StringBuilder(data.length() + 32);
+
+    for (int Index = 0 ; Index < fieldCount ; Index++)
+    {
+      if (Index > 0)
+      {
+        tmpReassemble.append(delimiter);
+      }
+
+      if (values[Index] != null)
+      {
+        tmpReassemble.append(values[Index]);
+      }
+      else
+      {
+        tmpReassemble.append(data, fieldStart[Index], fieldStart[Index + 1] - 1);
+      }
+    }
+
+    return tmpReassemble.toString();
+  }
+
+ /**
+  * Materialise all of the fields into an array, for code that needs the
+  * classic split fields.
+  *
+  * @return The fields as an array
+  */
+  public String[] toArray()
+  {
+    String[] tmpFields = new String[getFieldCount()];
+
+    for (int Index = 0 ; Index < fieldCount ; Index++)
+    {
+      tmpFields[Index] = getField(Index);
+    }
+
+    return tmpFields;
+  }
+
+ /**
+  * Check that the index is inside the record, calculating the field offsets
+  * if we have not done so yet.
+  *
+  * @param Index The index to check
+  */
+  private void checkIndex(int Index)
+  {
+    if (fieldCount < 0)
+    {
+      tokenize();
+    }
+
+    if (Index < 0 || Index >= fieldCount)
+    {
+      throw new ArrayIndexOutOfBoundsException(Index);
+    }
+  }
+
+ /**
+  * Locate the field boundaries in a single scan of the data
+  */
+  private void tokenize()
+  {
+    int length = data.length();
+    int[] tmpStart = new int[16];
+    int count = 0;
+
+    tmpStart[0] = 0;
+
+    for (int pos = 0 ; pos < length ; pos++)
+    {
+      if (data.charAt(pos) == delimiter)
+      {
+        count++;
+
+        if (count + 1 >= tmpStart.length)
+        {
+          int[] tmpGrown = new int[tmpStart.length * 2];
+          System.arraycopy(tmpStart, 0, tmpGrown, 0, tmpStart.length);
+          tmpStart = tmpGrown;
+        }
+
+        tmpStart[count] = pos + 1;
+      }
+    }
+
+    // the last field ends at the end of the data
+    count++;
+    tmpStart[count] = length + 1;
+
+    fieldStart = tmpStart;
+    fieldCount = count;
+  }
+}
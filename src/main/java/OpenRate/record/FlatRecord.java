@@ -55,6 +55,7 @@
 
 package OpenRate.record;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -69,6 +70,9 @@ public class FlatRecord extends AbstractRecord
   // the original data we received
   private String OriginalData;
 
+  // The layout version of the fields written by writeBinary()
+  private static final int BINARY_VERSION = 1;
+
   /**
    * Creates a new instance of FlatRecord
    *
@@ -120,6 +124,29 @@ public class FlatRecord extends AbstractRecord
     this.OriginalData = DataToSet;
   }
 
+  /**
+   * Reset the record so that it can be re-used from a pool
+   */
+  @Override
+  public void resetForReuse()
+  {
+    super.resetForReuse();
+
+    this.OriginalData = null;
+  }
+
+  /**
+   * Get a lazy field view of the original data. The fields are only located
+   * and extracted when they are accessed.
+   *
+   * @param delimiter The field delimiter
+   * @return The field view over the data
+   */
+  public FieldView getFieldView(char delimiter)
+  {
+    return new FieldView(this.OriginalData, delimiter);
+  }
+
  /**
   * This returns the dump information. Should be overwritten by the final
   * implementation class
@@ -154,4 +181,33 @@ public class FlatRecord extends AbstractRecord
 
     return tmpDumpList;
   }
+
+ /**
+  * Write the record to the binary record codec
+  *
+  * @param out The buffer to write to
+  */
+  @Override
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    super.writeBinary(out);
+
+    out.writeUnsignedVarInt(BINARY_VERSION);
+    out.writeLiteral(OriginalData);
+  }
+
+ /**
+  * Read the record from the binary record codec
+  *
+  * @param in The buffer to read from
+  * @throws IOException If the data is corrupt or of an unknown layout
+  */
+  @Override
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    super.readBinary(in);
+
+    checkBinaryVersion(in, BINARY_VERSION, FlatRecord.class);
+    OriginalData = in.readString();
+  }
 }
@@ -55,6 +55,7 @@
 
 package OpenRate.record;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -72,6 +73,9 @@ public class HeaderRecord extends AbstractRecord
   // This is used to pass the transaction number down the pipe
   private int TransactionNumber = 0;
 
+  // The layout version of the fields written by writeBinary()
+  private static final int BINARY_VERSION = 1;
+
   /** Overloaded constructor for derived classes */
   public HeaderRecord()
   {
@@ -139,4 +143,35 @@ public class HeaderRecord extends AbstractRecord
   {
     return TransactionNumber;
   }
+
+ /**
+  * Write the record to the binary record codec
+  *
+  * @param out The buffer to write to
+  */
+  @Override
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    super.writeBinary(out);
+
+    out.writeUnsignedVarInt(BINARY_VERSION);
+    out.writeString(StreamName);
+    out.writeVarInt(TransactionNumber);
+  }
+
+ /**
+  * Read the record from the binary record codec
+  *
+  * @param in The buffer to read from
+  * @throws IOException If the data is corrupt or of an unknown layout
+  */
+  @Override
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    super.readBinary(in);
+
+    checkBinaryVersion(in, BINARY_VERSION, HeaderRecord.class);
+    StreamName = in.readString();
+    TransactionNumber = in.readVarInt();
+  }
 }
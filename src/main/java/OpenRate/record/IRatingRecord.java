@@ -72,6 +72,15 @@ public interface IRatingRecord extends Serializable
   */
   public double getRUMValue(String RUM);
 
+ /**
+  * Get the value of an existing RUM using the RUM ID from the RUMRegistry, or
+  * 0 if not found
+  *
+  * @param RUMID The ID of the RUM value to get
+  * @return The current value of the RUM
+  */
+  public double getRUMValue(int RUMID);
+
  /**
   * Set the value of a RUM, return true if OK, false if not OK (e.g. overwrite
   * existing value)
@@ -82,6 +91,16 @@ public interface IRatingRecord extends Serializable
   */
   public boolean setRUMValue(String RUM, double NewValue);
 
+ /**
+  * Set the value of a RUM using the RUM ID from the RUMRegistry, return true
+  * if OK, false if not OK (e.g. overwrite existing value)
+  *
+  * @param RUMID The ID of the RUM value to set
+  * @param NewValue The new value to set
+  * @return true if the value was set, false if it already exists
+  */
+  public boolean setRUMValue(int RUMID, double NewValue);
+
  /**
   * Set the value of a RUM, return true if OK, false if not OK (e.g. overwrite
   * existing value)
@@ -92,6 +111,16 @@ public interface IRatingRecord extends Serializable
   */
   public boolean updateRUMValue(String RUM, double ValueDelta);
 
+ /**
+  * Apply a delta to the value of a RUM using the RUM ID from the RUMRegistry,
+  * return true if OK, false if not OK (e.g. RUM not set)
+  *
+  * @param RUMID The ID of the RUM value to update
+  * @param ValueDelta The delta to apply to the RUM value
+  * @return true if the delta was applied, otherwise false
+  */
+  public boolean updateRUMValue(int RUMID, double ValueDelta);
+
  /**
   * Get the UTC event date of the rating record
   *
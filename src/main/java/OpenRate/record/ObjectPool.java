@@ -0,0 +1,302 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of recyclable objects. Pooling is opt-in: an input adapter that wants
+ * to recycle its records creates a pool for its record class and acquires
+ * records from it instead of creating them with "new". The output adapter
+ * chain releases each record back to its pool once the record has been
+ * completely written, and the release of a rating record also releases its
+ * charge packets and balance impacts to their pools.
+ *
+ * Records are usually acquired in one thread (the input adapter) and
+ * released in another (the output adapter), so the pool is in two tiers: each
+ * thread has a small local cache which is used without any locking, and the
+ * threads exchange objects through a shared queue when their local cache
+ * overflows or runs dry. Objects released when the shared queue is full are
+ * simply left to the garbage collector.
+ *
+ * Setting the system property "OpenRate.PoolDebug" to "true" turns on the
+ * use-after-release checks: releasing an object twice throws an exception,
+ * and records throw an exception if they are used after they have been
+ * released. The checks cost nothing when they are turned off.
+ *
+ * Usage:
+ * <pre>
+ *   ObjectPool&lt;MyRecord&gt; recordPool = new ObjectPool&lt;MyRecord&gt;("MyRecord", 10000)
+ *   {
+ *     protected MyRecord create()
+ *     {
+ *       return new MyRecord();
+ *     }
+ *   };
+ * </pre>
+ *
+ * @param <T> The type of object pooled
+ * @author ian
+ */
+public abstract class ObjectPool<T extends IPoolable>
+{
+ /**
+  * True if the use-after-release checks are turned on
+  */
+  public static final boolean DEBUG = Boolean.getBoolean("OpenRate.PoolDebug");
+
+  // The maximum number of objects in each thread local cache
+  private static final int LOCAL_CACHE_SIZE = 256;
+
+  // The number of objects moved between the local cache and the shared queue
+  private static final int TRANSFER_SIZE = LOCAL_CACHE_SIZE / 2;
+
+  // The name of the pool, for statistics
+  private final String poolName;
+
+  // The maximum number of objects held in the shared queue
+  private final int maxShared;
+
+  // The thread local caches
+  private final ThreadLocal<ArrayDeque<T>> localCache = new ThreadLocal<ArrayDeque<T>>()
+  {
+    @Override
+    protected ArrayDeque<T> initialValue()
+    {
+      return new ArrayDeque<>(LOCAL_CACHE_SIZE);
+    }
+  };
+
+  // The shared queue for exchanging objects between threads
+  private final ConcurrentLinkedQueue<T> sharedQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger sharedCount = new AtomicInteger(0);
+
+  // Statistics
+  private final AtomicLong createdCount = new AtomicLong(0);
+  private final AtomicLong reusedCount = new AtomicLong(0);
+  private final AtomicLong releasedCount = new AtomicLong(0);
+
+ /**
+  * Create a new pool
+  *
+  * @param poolName The name of the pool
+  * @param maxShared The maximum number of objects to hold in the shared queue
+  */
+  public ObjectPool(String poolName, int maxShared)
+  {
+    this.poolName = poolName;
+    this.maxShared = maxShared;
+  }
+
+ /**
+  * Create a new object for the pool. Called when the pool is empty.
+  *
+  * @return The new object
+  */
+  protected abstract T create();
+
+ /**
+  * Get an object from the pool, creating a new one if the pool is empty.
+  *
+  * @return The object
+  */
+  public T acquire()
+  {
+    ArrayDeque<T> tmpLocal = localCache.get();
+    T tmpObject = tmpLocal.pollLast();
+
+    if (tmpObject == null)
+    {
+      // refill the local cache from the shared queue
+      for (int i = 0 ; i < TRANSFER_SIZE ; i++)
+      {
+        T tmpShared = sharedQueue.poll();
+
+        if (tmpShared == null)
+        {
+          break;
+        }
+
+        sharedCount.decrementAndGet();
+        tmpLocal.addLast(tmpShared);
+      }
+
+      tmpObject = tmpLocal.pollLast();
+    }
+
+    if (tmpObject == null)
+    {
+      tmpObject = create();
+      tmpObject.setOwnerPool(this);
+      createdCount.incrementAndGet();
+    }
+    else
+    {
+      reusedCount.incrementAndGet();
+
+      if (DEBUG && !tmpObject.isReleased())
+      {
+        throw new IllegalStateException("Pool <" + poolName + "> handed out an object that is in use");
+      }
+    }
+
+    tmpObject.setReleased(false);
+
+    return tmpObject;
+  }
+
+ /**
+  * Reset an object and return it to the pool.
+  *
+  * @param pooledObject The object to release
+  */
+  public void release(T pooledObject)
+  {
+    if (pooledObject.isReleased())
+    {
+      if (DEBUG)
+      {
+        throw new IllegalStateException("Object released twice to pool <" + poolName + ">");
+      }
+
+      // already back in the pool, don't add it twice
+      return;
+    }
+
+    pooledObject.resetForReuse();
+    pooledObject.setReleased(true);
+    releasedCount.incrementAndGet();
+
+    ArrayDeque<T> tmpLocal = localCache.get();
+    tmpLocal.addLast(pooledObject);
+
+    if (tmpLocal.size() > LOCAL_CACHE_SIZE)
+    {
+      // hand the oldest objects over to the other threads, or drop them if
+      // the shared queue is full
+      for (int i = 0 ; i < TRANSFER_SIZE ; i++)
+      {
+        T tmpOld = tmpLocal.pollFirst();
+
+        if (sharedCount.get() < maxShared)
+        {
+          sharedQueue.offer(tmpOld);
+          sharedCount.incrementAndGet();
+        }
+      }
+    }
+  }
+
+ /**
+  * Release an object to the pool that created it. Objects that were not
+  * created by a pool are ignored.
+  *
+  * @param pooledObject The object to release
+  */
+  @SuppressWarnings("unchecked")
+  public static void releaseToOwner(IPoolable pooledObject)
+  {
+    ObjectPool<IPoolable> tmpPool = (ObjectPool<IPoolable>) pooledObject.getOwnerPool();
+
+    if (tmpPool != null)
+    {
+      tmpPool.release(pooledObject);
+    }
+  }
+
+ /**
+  * Get the name of the pool
+  *
+  * @return The pool name
+  */
+  public String getPoolName()
+  {
+    return poolName;
+  }
+
+ /**
+  * Get the number of objects the pool has created
+  *
+  * @return The created count
+  */
+  public long getCreatedCount()
+  {
+    return createdCount.get();
+  }
+
+ /**
+  * Get the number of times an object has been handed out again
+  *
+  * @return The reuse count
+  */
+  public long getReusedCount()
+  {
+    return reusedCount.get();
+  }
+
+ /**
+  * Get the number of objects released to the pool
+  *
+  * @return The release count
+  */
+  public long getReleasedCount()
+  {
+    return releasedCount.get();
+  }
+}
@@ -0,0 +1,170 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RUM registry assigns each RUM name a small integer ID, so that records
+ * can store their RUM quantities in primitive arrays indexed by that ID instead
+ * of scanning a list of RUMInfo objects and comparing names on every access.
+ *
+ * IDs are assigned on first registration and are never re-used or withdrawn
+ * for the life of the JVM, which means that an ID held by a cache entry stays
+ * valid across cache reloads. RUMs are normally registered at cache load time
+ * (RUMRateCache, RUMMapCache), but RUMs set by name on a record are registered
+ * on the fly, so the name based record methods continue to work unchanged.
+ *
+ * @author ian
+ */
+public class RUMRegistry
+{
+  // The name to ID mapping, read without locking
+  private static final ConcurrentHashMap<String, Integer> rumIDs = new ConcurrentHashMap<>();
+
+  // The ID to name mapping, replaced (never modified) under the class lock
+  private static volatile String[] rumNames = new String[0];
+
+ /**
+  * Utility class - no instances
+  */
+  private RUMRegistry()
+  {
+    // Nop
+  }
+
+ /**
+  * Get the ID for a RUM name, registering the RUM if it is not yet known.
+  *
+  * @param RUM The name of the RUM to register
+  * @return The ID of the RUM
+  */
+  public static int registerRUM(String RUM)
+  {
+    Integer tmpID = rumIDs.get(RUM);
+
+    if (tmpID != null)
+    {
+      return tmpID;
+    }
+
+    synchronized (RUMRegistry.class)
+    {
+      // check again, someone may have beaten us to it
+      tmpID = rumIDs.get(RUM);
+
+      if (tmpID == null)
+      {
+        String[] tmpNames = new String[rumNames.length + 1];
+        System.arraycopy(rumNames, 0, tmpNames, 0, rumNames.length);
+        tmpNames[rumNames.length] = RUM;
+        tmpID = rumNames.length;
+
+        rumNames = tmpNames;
+        rumIDs.put(RUM, tmpID);
+      }
+
+      return tmpID;
+    }
+  }
+
+ /**
+  * Get the ID for a RUM name without registering it.
+  *
+  * @param RUM The name of the RUM to look up
+  * @return The ID of the RUM, or -1 if the RUM is not registered
+  */
+  public static int getRUMID(String RUM)
+  {
+    Integer tmpID = rumIDs.get(RUM);
+
+    if (tmpID == null)
+    {
+      return -1;
+    }
+
+    return tmpID;
+  }
+
+ /**
+  * Get the name of the RUM with the given ID.
+  *
+  * @param RUMID The ID of the RUM
+  * @return The RUM name, or null if the ID is not registered
+  */
+  public static String getRUMName(int RUMID)
+  {
+    String[] tmpNames = rumNames;
+
+    if (RUMID < 0 || RUMID >= tmpNames.length)
+    {
+      return null;
+    }
+
+    return tmpNames[RUMID];
+  }
+
+ /**
+  * Get the number of RUMs registered so far. All registered IDs are lower than
+  * this value.
+  *
+  * @return The number of registered RUMs
+  */
+  public static int getRUMCount()
+  {
+    return rumNames.length;
+  }
+}
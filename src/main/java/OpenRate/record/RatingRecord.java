@@ -56,9 +56,13 @@
 package OpenRate.record;
 
 import OpenRate.lang.CustProductInfo;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A Record corresponds to a unit of work that is being processed by the
@@ -102,10 +106,19 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   private static final long serialVersionUID = 5417534942969198413L;
 
   /**
-   * The split fields of the record
+   * The split fields of the record. For records mapped with mapFields() this
+   * is null until getFields() materialises the fields.
    */
   public String[] fields;
 
+  /**
+   * The lazily split fields of the record. This is used in place of "fields"
+   * when the record has been mapped with mapFields(). Once getFields() has
+   * materialised the fields, the array holds the current values, and the view
+   * is brought up to date with it whenever getFieldView() is called.
+   */
+  protected FieldView fieldView = null;
+
   /**
    * This holds the original data
    */
@@ -127,10 +140,16 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   // Rating information for updating the DB
   private ArrayList<BalanceImpact> BalanceImpacts = new ArrayList<>();
 
-  /**
-   * RUM information - holds the list of RUMs and their values
-   */
-  public ArrayList<RUMInfo> RUMs = new ArrayList<>();
+  // RUM information - the current and original RUM values, indexed by the ID
+  // assigned by the RUMRegistry. These are transient because the IDs are only
+  // valid inside this JVM: serialisation writes the RUMs by name instead.
+  private transient double[] rumValues = null;
+  private transient double[] origRUMValues = null;
+  private transient boolean[] rumPresent = null;
+
+  // The IDs of the RUMs that have been set, in the order they were set
+  private transient int[] rumOrder = null;
+  private transient int rumCount = 0;
 
   /**
    * This is the counter index for monthly counters, usually filled with YYYYMM
@@ -157,6 +176,33 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
    */
   public boolean CreateBreakdown = true;
 
+  // The layout version of the fields written by writeBinary()
+  private static final int BINARY_VERSION = 1;
+
+  // How the fields are held in the binary layout
+  private static final int FIELDS_NONE = 0;
+  private static final int FIELDS_SPLIT = 1;
+  private static final int FIELDS_VIEW = 2;
+
+  // The pools for the charge packets and balance impacts of pooled records
+  private static final ObjectPool<ChargePacket> chargePacketPool = new ObjectPool<ChargePacket>("ChargePacket", 100000)
+  {
+    @Override
+    protected ChargePacket create()
+    {
+      return new ChargePacket();
+    }
+  };
+
+  private static final ObjectPool<BalanceImpact> balanceImpactPool = new ObjectPool<BalanceImpact>("BalanceImpact", 100000)
+  {
+    @Override
+    protected BalanceImpact create()
+    {
+      return new BalanceImpact();
+    }
+  };
+
  /**
   * Default Constructor for RateRecord, creating the empty record container
   */
@@ -207,6 +253,8 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   */
   public ChargePacket getChargePacket(int Index)
   {
+    checkNotReleased();
+
     return this.ChargePackets.get(Index);
   }
 
@@ -217,6 +265,13 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   */
   public void addChargePacket(ChargePacket newCP)
   {
+    checkNotReleased();
+
+    if (ObjectPool.DEBUG && newCP.isReleased())
+    {
+      throw new IllegalStateException("Charge packet added after release to its pool");
+    }
+
     this.ChargePackets.add(newCP);
   }
 
@@ -227,16 +282,44 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   */
   public ChargePacket newChargePacket()
   {
+    // pooled records use pooled charge packets, which are released with them
+    if (getOwnerPool() != null)
+    {
+      return chargePacketPool.acquire();
+    }
+
     return new ChargePacket();
   }
 
  /**
-  * Replace a previous set of charge packets with a new one
+  * Create a copy of a charge packet, using the charge packet pool if this
+  * record is pooled
+  *
+  * @param toClone The charge packet to copy
+  * @return the new charge packet
+  */
+  public ChargePacket cloneChargePacket(ChargePacket toClone)
+  {
+    ChargePacket tmpCP = newChargePacket();
+    tmpCP.copyFrom(toClone);
+
+    return tmpCP;
+  }
+
+ /**
+  * Replace a previous set of charge packets with a new one. If this record is
+  * pooled, the packets which are not carried over into the new set are
+  * released to their pool.
   *
   * @param tmpCPList The new Charge Packets to use
   */
   public void replaceChargePackets(ArrayList<ChargePacket> tmpCPList)
   {
+    if (getOwnerPool() != null)
+    {
+      releaseReplaced(this.ChargePackets, tmpCPList);
+    }
+
     this.ChargePackets.clear();
     this.ChargePackets.addAll(tmpCPList);
   }
@@ -262,6 +345,8 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public BalanceImpact getBalanceImpact(int Index)
   {
+    checkNotReleased();
+
     return this.BalanceImpacts.get(Index);
   }
 
@@ -273,6 +358,13 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public void addBalanceImpact(BalanceImpact newBI)
   {
+    checkNotReleased();
+
+    if (ObjectPool.DEBUG && newBI.isReleased())
+    {
+      throw new IllegalStateException("Balance impact added after release to its pool");
+    }
+
     this.BalanceImpacts.add(newBI);
   }
 
@@ -284,20 +376,137 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public BalanceImpact newBalanceImpact()
   {
+    // pooled records use pooled balance impacts, which are released with them
+    if (getOwnerPool() != null)
+    {
+      return balanceImpactPool.acquire();
+    }
+
     return new BalanceImpact();
   }
 
  /**
-  * Replace a previous set of charge packets with a new one
+  * Replace a previous set of balance impacts with a new one. If this record is
+  * pooled, the impacts which are not carried over into the new set are
+  * released to their pool.
   *
   * @param tmpBIList The new Balance Impacts to use
   */
   public void replaceBalanceImpacts(ArrayList<BalanceImpact> tmpBIList)
   {
+    if (getOwnerPool() != null)
+    {
+      releaseReplaced(this.BalanceImpacts, tmpBIList);
+    }
+
     this.BalanceImpacts.clear();
     this.BalanceImpacts.addAll(tmpBIList);
   }
 
+ /**
+  * Release the objects of a list that is being replaced, except for those
+  * that are also in the new list. The lists are short, so they are simply
+  * searched for the same object.
+  *
+  * @param oldList The list being replaced
+  * @param newList The list replacing it
+  */
+  private static void releaseReplaced(List<? extends IPoolable> oldList, List<? extends IPoolable> newList)
+  {
+    for (int Index = 0 ; Index < oldList.size() ; Index++)
+    {
+      IPoolable tmpOld = oldList.get(Index);
+      boolean tmpKept = false;
+
+      for (int NewIndex = 0 ; NewIndex < newList.size() ; NewIndex++)
+      {
+        if (newList.get(NewIndex) == tmpOld)
+        {
+          tmpKept = true;
+          break;
+        }
+      }
+
+      if (!tmpKept)
+      {
+        ObjectPool.releaseToOwner(tmpOld);
+      }
+    }
+  }
+
+ /**
+  * Map the original data into a lazy field view, splitting on the given
+  * delimiter. Fields are only extracted when they are accessed through
+  * getField() and the other field accessors, which saves splitting the whole
+  * record when only a few fields are used.
+  *
+  * @param delimiter The field delimiter
+  */
+  public void mapFields(char delimiter)
+  {
+    fields = null;
+    fieldView = new FieldView(OriginalData, delimiter);
+  }
+
+ /**
+  * Get the lazy field view, if the record was mapped with mapFields(). If the
+  * fields have been materialised with getFields() since then, the array holds
+  * the current values, so any field changed through it is copied into the
+  * view first. The array stays in use.
+  *
+  * @return The field view, or null if the record was not mapped
+  */
+  public FieldView getFieldView()
+  {
+    if (fields != null && fieldView != null)
+    {
+      for (int Index = 0 ; Index < fields.length ; Index++)
+      {
+        String tmpValue = (fields[Index] == null) ? "" : fields[Index];
+
+        if (!tmpValue.equals(fieldView.getField(Index)))
+        {
+          fieldView.setField(Index, tmpValue);
+        }
+      }
+    }
+
+    return fieldView;
+  }
+
+ /**
+  * Get the fields of the record as an array. If the record was mapped with
+  * mapFields(), this materialises all of the fields the first time, and from
+  * then on the array holds the current values of the fields. Changes made
+  * to the array are seen by the field accessors and by getFieldView().
+  *
+  * @return The fields of the record
+  */
+  public String[] getFields()
+  {
+    if (fields == null && fieldView != null)
+    {
+      fields = fieldView.toArray();
+    }
+
+    return fields;
+  }
+
+ /**
+  * Get the number of fields in the record
+  *
+  * @return The number of fields
+  */
+  public int getFieldCount()
+  {
+    if (fields == null && fieldView != null)
+    {
+      return fieldView.getFieldCount();
+    }
+
+    return fields.length;
+  }
+
  /**
   * Utility function to return the field at the index given.
   *
@@ -306,18 +515,67 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   */
   public String getField(int Index)
   {
+    checkNotReleased();
+
+    if (fields == null && fieldView != null)
+    {
+      return fieldView.getField(Index);
+    }
 
     return fields[Index];
   }
 
  /**
-  * Utility function to set the field at the index given.
+  * Utility function to return the field at the index given as a long. When
+  * using a field view, the value is parsed without creating a string.
+  *
+  * @param Index The index of the field to return
+  * @return The returned value
+  * @throws NumberFormatException if the field is not a long
+  */
+  public long getFieldAsLong(int Index)
+  {
+    if (fields == null && fieldView != null)
+    {
+      return fieldView.getLong(Index);
+    }
+
+    return Long.parseLong(fields[Index]);
+  }
+
+ /**
+  * Utility function to return the field at the index given as a double. When
+  * using a field view, the value is parsed without creating a string.
+  *
+  * @param Index The index of the field to return
+  * @return The returned value
+  * @throws NumberFormatException if the field is not a double
+  */
+  public double getFieldAsDouble(int Index)
+  {
+    if (fields == null && fieldView != null)
+    {
+      return fieldView.getDouble(Index);
+    }
+
+    return Double.parseDouble(fields[Index]);
+  }
+
+ /**
+  * Utility function to set the field at the index given. When using a field
+  * view, the original data is left untouched.
   *
   * @param Index The index of the field to set
   * @param NewValue The new value to set
   */
   public void setField(int Index, String NewValue)
   {
+    if (fields == null && fieldView != null)
+    {
+      fieldView.setField(Index, NewValue);
+      return;
+    }
+
     fields[Index] = NewValue;
   }
 
@@ -350,17 +608,24 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public double getRUMValue(String RUM)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    return getRUMValue(RUMRegistry.getRUMID(RUM));
+  }
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
-    {
-      tmpRUM = RUMs.get(Index);
+ /**
+  * Get the value of an existing RUM using the RUM ID from the RUMRegistry, or
+  * 0 if not found
+  *
+  * @param RUMID The ID of the RUM value to get
+  * @return The current value of the RUM
+  */
+  @Override
+  public double getRUMValue(int RUMID)
+  {
+    checkNotReleased();
 
-      if (tmpRUM.RUMName.equals(RUM))
-      {
-        return tmpRUM.RUMQuantity;
-      }
+    if (isRUMSet(RUMID))
+    {
+      return rumValues[RUMID];
     }
 
     return 0;
@@ -374,17 +639,21 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   */
   public double getOriginalRUMValue(String RUM)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    return getOriginalRUMValue(RUMRegistry.getRUMID(RUM));
+  }
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
+ /**
+  * Get the original value of an existing RUM using the RUM ID from the
+  * RUMRegistry, or 0 if not found
+  *
+  * @param RUMID The ID of the RUM value to get
+  * @return The original value of the RUM
+  */
+  public double getOriginalRUMValue(int RUMID)
+  {
+    if (isRUMSet(RUMID))
     {
-      tmpRUM = RUMs.get(Index);
-
-      if (tmpRUM.RUMName.equals(RUM))
-      {
-        return tmpRUM.OrigQuantity;
-      }
+      return origRUMValues[RUMID];
     }
 
     return 0;
@@ -401,22 +670,33 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public boolean setRUMValue(String RUM, double NewValue)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    return setRUMValue(RUMRegistry.registerRUM(RUM), NewValue);
+  }
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
-    {
-      tmpRUM = RUMs.get(Index);
+ /**
+  * Set the value of a RUM using the RUM ID from the RUMRegistry, return true
+  * if OK, false if not OK (e.g. overwrite existing value)
+  *
+  * @param RUMID The ID of the RUM value to set
+  * @param NewValue The new value to set
+  * @return true if the value was set, false if it already exists
+  */
+  @Override
+  public boolean setRUMValue(int RUMID, double NewValue)
+  {
+    checkNotReleased();
 
-      if (tmpRUM.RUMName.equals(RUM))
-      {
-        return false;
-      }
+    if (isRUMSet(RUMID))
+    {
+      return false;
     }
 
-    tmpRUM = new RUMInfo(RUM,NewValue);
+    ensureRUMCapacity(RUMID);
 
-    RUMs.add(tmpRUM);
+    rumValues[RUMID] = NewValue;
+    origRUMValues[RUMID] = NewValue;
+    rumPresent[RUMID] = true;
+    rumOrder[rumCount++] = RUMID;
 
     return true;
   }
@@ -432,21 +712,359 @@ public abstract class RatingRecord extends AbstractRecord implements IRatingReco
   @Override
   public boolean updateRUMValue(String RUM, double ValueDelta)
   {
-    RUMInfo tmpRUM;
-    int Index;
+    return updateRUMValue(RUMRegistry.getRUMID(RUM), ValueDelta);
+  }
+
+ /**
+  * Apply a delta to the value of a RUM using the RUM ID from the RUMRegistry,
+  * return true if OK, false if not OK (e.g. RUM not set)
+  *
+  * @param RUMID The ID of the RUM value to update
+  * @param ValueDelta The delta to apply to the RUM value
+  * @return true if the delta was applied, otherwise false
+  */
+  @Override
+  public boolean updateRUMValue(int RUMID, double ValueDelta)
+  {
+    if (isRUMSet(RUMID))
+    {
+      rumValues[RUMID] += ValueDelta;
+      return true;
+    }
+
+    return false;
+  }
+
+ /**
+  * Get the RUMs that have been set on this record, in the order that they were
+  * set. The list is a snapshot: changing the returned objects does not change
+  * the RUM values of the record.
+  *
+  * @return The list of RUMs with their original and current values
+  */
+  public ArrayList<RUMInfo> getRUMs()
+  {
+    ArrayList<RUMInfo> tmpRUMList = new ArrayList<>(rumCount);
+
+    for (int Index = 0 ; Index < rumCount ; Index++)
+    {
+      int tmpRUMID = rumOrder[Index];
+      RUMInfo tmpRUM = new RUMInfo(RUMRegistry.getRUMName(tmpRUMID),origRUMValues[tmpRUMID]);
+      tmpRUM.RUMQuantity = rumValues[tmpRUMID];
+      tmpRUMList.add(tmpRUM);
+    }
+
+    return tmpRUMList;
+  }
+
+ /**
+  * Get the number of RUMs that have been set on this record
+  *
+  * @return The number of RUMs
+  */
+  public int getRUMCount()
+  {
+    return rumCount;
+  }
+
+ /**
+  * Check if the RUM with the given ID has been set on this record
+  *
+  * @param RUMID The ID of the RUM to check
+  * @return true if the RUM is set, otherwise false
+  */
+  private boolean isRUMSet(int RUMID)
+  {
+    return (rumPresent != null && RUMID >= 0 && RUMID < rumPresent.length && rumPresent[RUMID]);
+  }
+
+ /**
+  * Make sure that the RUM arrays can hold the given RUM ID. The arrays are
+  * sized to the number of RUMs registered so far, so that normally they are
+  * allocated once per record.
+  *
+  * @param RUMID The ID of the RUM that is about to be stored
+  */
+  private void ensureRUMCapacity(int RUMID)
+  {
+    if (rumPresent != null && RUMID < rumPresent.length)
+    {
+      return;
+    }
+
+    int newSize = Math.max(RUMID + 1, RUMRegistry.getRUMCount());
+
+    if (rumPresent == null)
+    {
+      rumValues = new double[newSize];
+      origRUMValues = new double[newSize];
+      rumPresent = new boolean[newSize];
+      rumOrder = new int[newSize];
+    }
+    else
+    {
+      double[] tmpValues = new double[newSize];
+      double[] tmpOrigValues = new double[newSize];
+      boolean[] tmpPresent = new boolean[newSize];
+      int[] tmpOrder = new int[newSize];
+      System.arraycopy(rumValues, 0, tmpValues, 0, rumValues.length);
+      System.arraycopy(origRUMValues, 0, tmpOrigValues, 0, origRUMValues.length);
+      System.arraycopy(rumPresent, 0, tmpPresent, 0, rumPresent.length);
+      System.arraycopy(rumOrder, 0, tmpOrder, 0, rumCount);
+      rumValues = tmpValues;
+      origRUMValues = tmpOrigValues;
+      rumPresent = tmpPresent;
+      rumOrder = tmpOrder;
+    }
+  }
+
+ /**
+  * Reset the record so that it can be re-used from a pool. The charge packets
+  * and balance impacts are released to their pools. Derived records must reset
+  * their own fields and call this.
+  */
+  @Override
+  public void resetForReuse()
+  {
+    super.resetForReuse();
+
+    clearRatingFields();
+  }
+
+ /**
+  * Clear the rating record fields, releasing the charge packets and balance
+  * impacts to their pools.
+  */
+  private void clearRatingFields()
+  {
+    fields = null;
+    fieldView = null;
+    OriginalData = null;
+    Service = null;
+    RatePlans.clear();
+
+    for (int Index = 0 ; Index < ChargePackets.size() ; Index++)
+    {
+      ObjectPool.releaseToOwner(ChargePackets.get(Index));
+    }
+    ChargePackets.clear();
+
+    for (int Index = 0 ; Index < BalanceImpacts.size() ; Index++)
+    {
+      ObjectPool.releaseToOwner(BalanceImpacts.get(Index));
+    }
+    BalanceImpacts.clear();
 
-    for (Index = 0 ; Index < RUMs.size() ; Index++)
+    // only clear the RUMs that were set, the arrays are kept for re-use
+    for (int Index = 0 ; Index < rumCount ; Index++)
     {
-      tmpRUM = RUMs.get(Index);
+      rumPresent[rumOrder[Index]] = false;
+    }
+    rumCount = 0;
+
+    CounterCycle = 0;
+    EventStartDate = null;
+    EventEndDate = null;
+    UTCEventDate = 0;
+    CreateBreakdown = true;
+  }
 
-      if (tmpRUM.RUMName.equals(RUM))
+ /**
+  * Write the record to the binary record codec. The RUMs are written by name,
+  * because the RUM IDs are not stable between JVMs.
+  *
+  * @param out The buffer to write to
+  */
+  @Override
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    super.writeBinary(out);
+
+    out.writeUnsignedVarInt(BINARY_VERSION);
+
+    // the fields, which are either split or held in a field view
+    if (fields != null)
+    {
+      out.writeByte(FIELDS_SPLIT);
+      out.writeUnsignedVarInt(fields.length);
+      for (String tmpField : fields)
       {
-        tmpRUM.RUMQuantity += ValueDelta;
-        return true;
+        out.writeLiteral(tmpField);
       }
     }
+    else if (fieldView != null)
+    {
+      out.writeByte(FIELDS_VIEW);
+      out.writeUnsignedVarInt(fieldView.getDelimiter());
+      out.writeLiteral(fieldView.getData());
+    }
+    else
+    {
+      out.writeByte(FIELDS_NONE);
+    }
 
-    return false;
+    out.writeLiteral(OriginalData);
+    out.writeString(Service);
+    out.writeVarInt(CounterCycle);
+    out.writeDate(EventStartDate);
+    out.writeDate(EventEndDate);
+    out.writeVarLong(UTCEventDate);
+    out.writeBoolean(CreateBreakdown);
+
+    out.writeUnsignedVarInt(rumCount);
+    for (int Index = 0 ; Index < rumCount ; Index++)
+    {
+      int tmpRUMID = rumOrder[Index];
+      out.writeString(RUMRegistry.getRUMName(tmpRUMID));
+      out.writeDouble(origRUMValues[tmpRUMID]);
+      out.writeDouble(rumValues[tmpRUMID]);
+    }
+
+    out.writeUnsignedVarInt(RatePlans.size());
+    for (CustProductInfo tmpProduct : RatePlans)
+    {
+      out.writeString(tmpProduct.getProductID());
+      out.writeString(tmpProduct.getSubID());
+      out.writeString(tmpProduct.getService());
+      out.writeVarLong(tmpProduct.getProductRefId());
+      out.writeVarLong(tmpProduct.getUTCValidFrom());
+      out.writeVarLong(tmpProduct.getUTCValidTo());
+      out.writeVarInt(tmpProduct.getQuantity());
+      out.writeVarInt(tmpProduct.getStatus());
+      out.writeVarInt(tmpProduct.getPriority());
+    }
+
+    out.writeUnsignedVarInt(ChargePackets.size());
+    for (int Index = 0 ; Index < ChargePackets.size() ; Index++)
+    {
+      ChargePackets.get(Index).writeBinary(out);
+    }
+
+    out.writeUnsignedVarInt(BalanceImpacts.size());
+    for (int Index = 0 ; Index < BalanceImpacts.size() ; Index++)
+    {
+      BalanceImpacts.get(Index).writeBinary(out);
+    }
+  }
+
+ /**
+  * Read the record from the binary record codec, registering the RUMs by name
+  * in this JVM.
+  *
+  * @param in The buffer to read from
+  * @throws IOException If the data is corrupt or of an unknown layout
+  */
+  @Override
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    super.readBinary(in);
+
+    checkBinaryVersion(in, BINARY_VERSION, RatingRecord.class);
+    clearRatingFields();
+
+    int tmpFieldStorage = in.readByte();
+    if (tmpFieldStorage == FIELDS_SPLIT)
+    {
+      fields = new String[in.readUnsignedVarInt()];
+      for (int Index = 0 ; Index < fields.length ; Index++)
+      {
+        fields[Index] = in.readString();
+      }
+    }
+    else if (tmpFieldStorage == FIELDS_VIEW)
+    {
+      char tmpDelimiter = (char) in.readUnsignedVarInt();
+      fieldView = new FieldView(in.readString(), tmpDelimiter);
+    }
+
+    OriginalData = in.readString();
+    Service = in.readString();
+    CounterCycle = in.readVarInt();
+    EventStartDate = in.readDate();
+    EventEndDate = in.readDate();
+    UTCEventDate = in.readVarLong();
+    CreateBreakdown = in.readBoolean();
+
+    int tmpCount = in.readUnsignedVarInt();
+    for (int Index = 0 ; Index < tmpCount ; Index++)
+    {
+      int tmpRUMID = RUMRegistry.registerRUM(in.readString());
+      setRUMValue(tmpRUMID, in.readDouble());
+      rumValues[tmpRUMID] = in.readDouble();
+    }
+
+    tmpCount = in.readUnsignedVarInt();
+    for (int Index = 0 ; Index < tmpCount ; Index++)
+    {
+      CustProductInfo tmpProduct = new CustProductInfo();
+      tmpProduct.setProductID(in.readString());
+      tmpProduct.setSubID(in.readString());
+      tmpProduct.setService(in.readString());
+      tmpProduct.setProductRefId((int) in.readVarLong());
+      tmpProduct.setUTCValidFrom(in.readVarLong());
+      tmpProduct.setUTCValidTo(in.readVarLong());
+      tmpProduct.setQuantity(in.readVarInt());
+      tmpProduct.setStatus(in.readVarInt());
+      tmpProduct.setPriority(in.readVarInt());
+      RatePlans.add(tmpProduct);
+    }
+
+    tmpCount = in.readUnsignedVarInt();
+    for (int Index = 0 ; Index < tmpCount ; Index++)
+    {
+      ChargePacket tmpCP = newChargePacket();
+      tmpCP.readBinary(in);
+      ChargePackets.add(tmpCP);
+    }
+
+    tmpCount = in.readUnsignedVarInt();
+    for (int Index = 0 ; Index < tmpCount ; Index++)
+    {
+      BalanceImpact tmpBI = newBalanceImpact();
+      tmpBI.readBinary(in);
+      BalanceImpacts.add(tmpBI);
+    }
+  }
+
+ /**
+  * Serialise the record, writing the RUMs by name, because the RUM IDs are
+  * not stable between JVMs.
+  *
+  * @param out The stream to write to
+  * @throws IOException
+  */
+  private void writeObject(ObjectOutputStream out) throws IOException
+  {
+    out.defaultWriteObject();
+
+    out.writeInt(rumCount);
+    for (int Index = 0 ; Index < rumCount ; Index++)
+    {
+      int tmpRUMID = rumOrder[Index];
+      out.writeUTF(RUMRegistry.getRUMName(tmpRUMID));
+      out.writeDouble(origRUMValues[tmpRUMID]);
+      out.writeDouble(rumValues[tmpRUMID]);
+    }
+  }
+
+ /**
+  * De-serialise the record, registering the RUMs by name in this JVM.
+  *
+  * @param in The stream to read from
+  * @throws IOException
+  * @throws ClassNotFoundException
+  */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    int tmpRUMCount = in.readInt();
+    for (int Index = 0 ; Index < tmpRUMCount ; Index++)
+    {
+      int tmpRUMID = RUMRegistry.registerRUM(in.readUTF());
+      setRUMValue(tmpRUMID, in.readDouble());
+      rumValues[tmpRUMID] = in.readDouble();
+    }
   }
 
  /**
@@ -0,0 +1,395 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+
+/**
+ * A compact binary codec for records, for use where records have to be
+ * persisted or moved to another process in flight (spill files, checkpoints,
+ * tees to other processes). This is much faster and much more compact than
+ * Java serialisation, because each record class writes its own fields in a
+ * fixed layout (see AbstractRecord.writeBinary()) instead of being described
+ * by reflection, and the values are written as varints and dictionary
+ * encoded strings (see BinaryRecordOutput).
+ *
+ * The encoded data is a sequence of frames, each of which is a 4 byte length,
+ * a varint record type ID and the record data. A stream starts with a stream
+ * header frame holding the format version, which also starts a new string
+ * dictionary. Each record class writes a layout version in front of its own
+ * fields, so that a record class can evolve without breaking data written by
+ * the older layout.
+ *
+ * Record classes must be registered with a type ID and a factory which creates
+ * empty records to decode into. The header, trailer and flat records are
+ * registered by default, and all other types must be registered with IDs of
+ * FIRST_USER_TYPE or more by both the writer and the reader, e.g.:
+ *
+ * <pre>
+ *   RecordCodec codec = new RecordCodec();
+ *   codec.registerType(RecordCodec.FIRST_USER_TYPE, MyRecord.class);
+ *   codec.registerType(RecordCodec.FIRST_USER_TYPE + 1, FlexRecord.class, FlexRecordFactory.GetFlexRecordFactory());
+ * </pre>
+ *
+ * The codec itself is not thread safe, and neither are the buffers.
+ *
+ * @author ian
+ */
+public class RecordCodec
+{
+ /**
+  * The version of the frame format
+  */
+  public static final int FORMAT_VERSION = 1;
+
+  // Identifies a stream header: "ORBC"
+  private static final int STREAM_MAGIC = 0x4F524243;
+
+ /**
+  * The type ID of the stream header frame
+  */
+  public static final int TYPE_STREAM_HEADER = 0;
+
+ /**
+  * The type ID of HeaderRecord
+  */
+  public static final int TYPE_HEADER_RECORD = 1;
+
+ /**
+  * The type ID of TrailerRecord
+  */
+  public static final int TYPE_TRAILER_RECORD = 2;
+
+ /**
+  * The type ID of FlatRecord
+  */
+  public static final int TYPE_FLAT_RECORD = 3;
+
+ /**
+  * The first type ID available for user record types
+  */
+  public static final int FIRST_USER_TYPE = 16;
+
+  // The type IDs of the registered record classes
+  private final HashMap<Class<?>, Integer> typeIDs = new HashMap<>();
+
+  // The factories of the registered record types
+  private final HashMap<Integer, IRecordFactory> factories = new HashMap<>();
+
+  // The buffers used by encode() and decode()
+  private BinaryRecordOutput encodeBuffer = null;
+  private BinaryRecordInput decodeBuffer = null;
+
+ /**
+  * Create a new codec, with the built in record types registered
+  */
+  public RecordCodec()
+  {
+    addType(TYPE_HEADER_RECORD, HeaderRecord.class, newReflectionFactory(HeaderRecord.class));
+    addType(TYPE_TRAILER_RECORD, TrailerRecord.class, newReflectionFactory(TrailerRecord.class));
+    addType(TYPE_FLAT_RECORD, FlatRecord.class, newReflectionFactory(FlatRecord.class));
+  }
+
+ /**
+  * Register a record type, creating the empty records to decode into with the
+  * public no-argument constructor of the class.
+  *
+  * @param typeID The type ID to use, FIRST_USER_TYPE or more
+  * @param recordClass The record class
+  */
+  public void registerType(int typeID, Class<? extends AbstractRecord> recordClass)
+  {
+    registerType(typeID, recordClass, newReflectionFactory(recordClass));
+  }
+
+ /**
+  * Register a record type, creating the empty records to decode into with the
+  * given factory. Passing an ObjectPool based factory allows decoded records
+  * to be pooled.
+  *
+  * @param typeID The type ID to use, FIRST_USER_TYPE or more
+  * @param recordClass The record class
+  * @param factory The factory for empty records
+  */
+  public void registerType(int typeID, Class<? extends AbstractRecord> recordClass, IRecordFactory factory)
+  {
+    if (typeID < FIRST_USER_TYPE)
+    {
+      throw new IllegalArgumentException("Record type ID <" + typeID + "> is reserved");
+    }
+
+    if (factories.containsKey(typeID))
+    {
+      throw new IllegalArgumentException("Record type ID <" + typeID + "> is already registered");
+    }
+
+    addType(typeID, recordClass, factory);
+  }
+
+ /**
+  * Write a stream header. This must be written at the start of every stream,
+  * and starts a new string dictionary.
+  *
+  * @param out The buffer to write to
+  */
+  public void writeStreamHeader(BinaryRecordOutput out)
+  {
+    int tmpStart = out.size();
+
+    out.clearDictionary();
+    out.writeFixedInt(0);
+    out.writeUnsignedVarInt(TYPE_STREAM_HEADER);
+    out.writeFixedInt(STREAM_MAGIC);
+    out.writeUnsignedVarInt(FORMAT_VERSION);
+    out.putFixedInt(tmpStart, out.size() - tmpStart - 4);
+  }
+
+ /**
+  * Write a record as a frame
+  *
+  * @param record The record to write
+  * @param out The buffer to write to
+  * @throws IOException If the record type is not registered
+  */
+  public void write(IRecord record, BinaryRecordOutput out) throws IOException
+  {
+    Integer tmpTypeID = typeIDs.get(record.getClass());
+
+    if (tmpTypeID == null)
+    {
+      throw new NotSerializableException("Record type <" + record.getClass().getName() + "> is not registered with the codec");
+    }
+
+    int tmpStart = out.size();
+
+    out.writeFixedInt(0);
+    out.writeUnsignedVarInt(tmpTypeID);
+    ((AbstractRecord) record).writeBinary(out);
+    out.putFixedInt(tmpStart, out.size() - tmpStart - 4);
+  }
+
+ /**
+  * Read the next record from the buffer. Stream headers are processed and
+  * skipped.
+  *
+  * @param in The buffer to read
+  * @return The record, or null if the buffer is empty
+  * @throws IOException If the data is corrupt or of an unknown type
+  */
+  public IRecord read(BinaryRecordInput in) throws IOException
+  {
+    while (in.remaining() > 0)
+    {
+      int tmpLength = in.readFixedInt();
+      int tmpEnd = in.getPosition() + tmpLength;
+
+      if (tmpLength < 0 || tmpLength > in.remaining())
+      {
+        throw new StreamCorruptedException("Invalid frame length <" + tmpLength + ">");
+      }
+
+      int tmpTypeID = in.readUnsignedVarInt();
+
+      if (tmpTypeID == TYPE_STREAM_HEADER)
+      {
+        if (in.readFixedInt() != STREAM_MAGIC)
+        {
+          throw new StreamCorruptedException("Invalid stream header");
+        }
+
+        int tmpVersion = in.readUnsignedVarInt();
+
+        if (tmpVersion > FORMAT_VERSION)
+        {
+          throw new InvalidClassException("Unsupported record stream version <" + tmpVersion + ">");
+        }
+
+        in.clearDictionary();
+      }
+      else
+      {
+        IRecordFactory tmpFactory = factories.get(tmpTypeID);
+
+        if (tmpFactory == null)
+        {
+          throw new InvalidClassException("Record type ID <" + tmpTypeID + "> is not registered with the codec");
+        }
+
+        AbstractRecord tmpRecord = tmpFactory.newRecord();
+        tmpRecord.readBinary(in);
+
+        if (in.getPosition() != tmpEnd)
+        {
+          throw new StreamCorruptedException("Record type ID <" + tmpTypeID + "> read " +
+                  (in.getPosition() - tmpEnd + tmpLength) + " bytes of a " + tmpLength + " byte frame");
+        }
+
+        return tmpRecord;
+      }
+
+      if (in.getPosition() != tmpEnd)
+      {
+        throw new StreamCorruptedException("Invalid stream header");
+      }
+    }
+
+    return null;
+  }
+
+ /**
+  * Encode a single record as a self contained byte array, with its own
+  * stream header and dictionary
+  *
+  * @param record The record to encode
+  * @return The encoded record
+  * @throws IOException If the record type is not registered
+  */
+  public byte[] encode(IRecord record) throws IOException
+  {
+    if (encodeBuffer == null)
+    {
+      encodeBuffer = new BinaryRecordOutput();
+    }
+
+    encodeBuffer.reset();
+    writeStreamHeader(encodeBuffer);
+    write(record, encodeBuffer);
+
+    return encodeBuffer.toByteArray();
+  }
+
+ /**
+  * Decode a record encoded with encode()
+  *
+  * @param data The encoded record
+  * @return The decoded record
+  * @throws IOException If the data is corrupt or of an unknown type
+  */
+  public IRecord decode(byte[] data) throws IOException
+  {
+    if (decodeBuffer == null)
+    {
+      decodeBuffer = new BinaryRecordInput(data);
+    }
+    else
+    {
+      decodeBuffer.setInput(data, 0, data.length);
+    }
+
+    IRecord tmpRecord = read(decodeBuffer);
+
+    if (tmpRecord == null)
+    {
+      throw new StreamCorruptedException("No record in the data");
+    }
+
+    return tmpRecord;
+  }
+
+ /**
+  * Add a record type to the registry
+  *
+  * @param typeID The type ID
+  * @param recordClass The record class
+  * @param factory The factory for empty records
+  */
+  private void addType(int typeID, Class<? extends AbstractRecord> recordClass, IRecordFactory factory)
+  {
+    typeIDs.put(recordClass, typeID);
+    factories.put(typeID, factory);
+  }
+
+ /**
+  * Create a factory which uses the no-argument constructor of a record class
+  *
+  * @param recordClass The record class
+  * @return The factory
+  */
+  private static IRecordFactory newReflectionFactory(Class<? extends AbstractRecord> recordClass)
+  {
+    final Constructor<? extends AbstractRecord> tmpConstructor;
+
+    try
+    {
+      tmpConstructor = recordClass.getConstructor();
+    }
+    catch (NoSuchMethodException ex)
+    {
+      throw new IllegalArgumentException("Record type <" + recordClass.getName() + "> has no public no-argument constructor", ex);
+    }
+
+    return new IRecordFactory()
+    {
+      @Override
+      public AbstractRecord newRecord()
+      {
+        try
+        {
+          return tmpConstructor.newInstance();
+        }
+        catch (ReflectiveOperationException ex)
+        {
+          throw new IllegalStateException("Could not create record of type <" + tmpConstructor.getDeclaringClass().getName() + ">", ex);
+        }
+      }
+    };
+  }
+}
@@ -58,13 +58,19 @@ package OpenRate.record.flexRecord;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
 import OpenRate.record.AbstractRecord;
+import OpenRate.record.BinaryRecordInput;
+import OpenRate.record.BinaryRecordOutput;
 import OpenRate.record.ErrorType;
 import OpenRate.record.IError;
 import OpenRate.record.RecordError;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A flex record is a type of record that is used in situations where we want
@@ -159,11 +165,24 @@ public class FlexRecord extends AbstractRecord
   // of that type that have been created and the index to the block object
   HashMap<String, Integer> BlockCount;
 
+  // The block instances that compiled field accessors have used, indexed by
+  // the block slot of the accessor. Cleared whenever a block is mapped.
+  private RecordBlock[] BlockSlotCache = null;
+
   /**
    * This is the root block
    */
   private RecordBlockDef defRoot;
 
+  // The layout version of the fields written by writeBinary()
+  private static final int BINARY_VERSION = 1;
+
+  // The field value types in the binary layout
+  private static final int VALUE_NULL    = 0;
+  private static final int VALUE_STRING  = 1;
+  private static final int VALUE_INTEGER = 2;
+  private static final int VALUE_FLOAT   = 3;
+
  /**
   * Creates a new instance of FlatRecord
   *
@@ -187,6 +206,17 @@ public class FlexRecord extends AbstractRecord
     String         tmpRootBlock;
     String         tmpPathSoFar;
 
+    // See if we have resolved this block before
+    if (getDefRoot() != null)
+    {
+      tmpRecordBlock = getDefRoot().ResolvedBlocks.get(BlockName);
+
+      if (tmpRecordBlock != null)
+      {
+        return tmpRecordBlock;
+      }
+    }
+
     // force correct splitting
     tmpRootBlock = BlockName + ".";
 
@@ -217,6 +247,9 @@ public class FlexRecord extends AbstractRecord
           throw new InitializationException("Cannot find path to <" + BlockName + ">",getSymbolicName());
         }
       }
+
+      // remember it for next time
+      getDefRoot().ResolvedBlocks.put(BlockName, tmpRecordBlock);
     }
 
     return tmpRecordBlock;
@@ -413,7 +446,10 @@ public class FlexRecord extends AbstractRecord
   }
 
  /**
-  * This adds a definition of the separator for a block
+  * This adds a definition of the separator for a block. The separator is a
+  * regular expression, as for String.split(). Separators which stand for a
+  * single literal character (for example ";" or "\|") are split without the
+  * regex engine, with the same result.
   *
   * @param BlockName The name of the block
   * @param Separator The separator
@@ -438,6 +474,14 @@ public class FlexRecord extends AbstractRecord
     if (tmpRecordBlock != null)
     {
       tmpRecordBlock.Separator = tmpSep;
+
+      // literal single character separators are split without a regex
+      int tmpSepChar = getLiteralSeparator(tmpSep);
+      tmpRecordBlock.SingleCharSeparator = (tmpSepChar >= 0);
+      if (tmpRecordBlock.SingleCharSeparator)
+      {
+        tmpRecordBlock.SeparatorChar = (char) tmpSepChar;
+      }
     }
     else
     {
@@ -484,7 +528,14 @@ public class FlexRecord extends AbstractRecord
 
     if (tmpRecordBlockDef != null)
     {
-      tmpFields = tmpData.split(tmpRecordBlockDef.Separator);
+      if (tmpRecordBlockDef.SingleCharSeparator)
+      {
+        tmpFields = splitFields(tmpData, tmpRecordBlockDef.SeparatorChar);
+      }
+      else
+      {
+        tmpFields = tmpData.split(tmpRecordBlockDef.Separator);
+      }
 
       // check the length of the data we have
       if (tmpFields.length < tmpRecordBlockDef.NumberOfFields)
@@ -553,6 +604,12 @@ public class FlexRecord extends AbstractRecord
         }
       }
 
+      // the block instances have changed, so forget any we have cached
+      if (BlockSlotCache != null)
+      {
+        Arrays.fill(BlockSlotCache, null);
+      }
+
       // we have the block, now perform the split and store the data
       if (BlockName.equalsIgnoreCase("ROOT"))
       {
@@ -614,6 +671,141 @@ public class FlexRecord extends AbstractRecord
     return tmpDumpList;
   }
 
+ /**
+  * Write the record to the binary record codec. The definition of the record
+  * is not written: the reader must create its records from the same
+  * definition (see FlexRecordFactory). Field values that are not strings,
+  * integers or floats are written as strings.
+  *
+  * @param out The buffer to write to
+  */
+  @Override
+  public void writeBinary(BinaryRecordOutput out)
+  {
+    super.writeBinary(out);
+
+    out.writeUnsignedVarInt(BINARY_VERSION);
+
+    out.writeUnsignedVarInt(BlockCount.size());
+    for (String tmpBlockName : BlockCount.keySet())
+    {
+      out.writeString(tmpBlockName);
+      out.writeUnsignedVarInt(BlockCount.get(tmpBlockName));
+    }
+
+    out.writeUnsignedVarInt(BlockIndex.size());
+    for (String tmpBlockKey : BlockIndex.keySet())
+    {
+      RecordBlock tmpRecordBlock = BlockIndex.get(tmpBlockKey);
+
+      out.writeString(tmpBlockKey);
+      out.writeUnsignedVarInt(tmpRecordBlock.Fields.length);
+
+      for (Object tmpValue : tmpRecordBlock.Fields)
+      {
+        if (tmpValue == null)
+        {
+          out.writeByte(VALUE_NULL);
+        }
+        else if (tmpValue instanceof Integer)
+        {
+          out.writeByte(VALUE_INTEGER);
+          out.writeVarInt((Integer) tmpValue);
+        }
+        else if (tmpValue instanceof Double)
+        {
+          out.writeByte(VALUE_FLOAT);
+          out.writeDouble((Double) tmpValue);
+        }
+        else
+        {
+          out.writeByte(VALUE_STRING);
+          out.writeLiteral(tmpValue.toString());
+        }
+      }
+
+      out.writeUnsignedVarInt(tmpRecordBlock.FieldMap.size());
+      for (String tmpFieldName : tmpRecordBlock.FieldMap.keySet())
+      {
+        out.writeString(tmpFieldName);
+        out.writeUnsignedVarInt(tmpRecordBlock.FieldMap.get(tmpFieldName));
+      }
+    }
+  }
+
+ /**
+  * Read the record from the binary record codec
+  *
+  * @param in The buffer to read from
+  * @throws IOException If the data is corrupt or of an unknown layout
+  */
+  @Override
+  public void readBinary(BinaryRecordInput in) throws IOException
+  {
+    super.readBinary(in);
+
+    checkBinaryVersion(in, BINARY_VERSION, FlexRecord.class);
+
+    BlockCount.clear();
+    BlockIndex.clear();
+
+    if (BlockSlotCache != null)
+    {
+      Arrays.fill(BlockSlotCache, null);
+    }
+
+    int tmpCount = in.readUnsignedVarInt();
+    for (int i = 0 ; i < tmpCount ; i++)
+    {
+      String tmpBlockName = in.readString();
+      BlockCount.put(tmpBlockName, in.readUnsignedVarInt());
+    }
+
+    tmpCount = in.readUnsignedVarInt();
+    for (int i = 0 ; i < tmpCount ; i++)
+    {
+      String tmpBlockKey = in.readString();
+      RecordBlock tmpRecordBlock = new RecordBlock();
+      tmpRecordBlock.Fields = new Object[in.readUnsignedVarInt()];
+
+      for (int j = 0 ; j < tmpRecordBlock.Fields.length ; j++)
+      {
+        int tmpType = in.readByte();
+
+        switch (tmpType)
+        {
+          case VALUE_NULL:
+            break;
+
+          case VALUE_STRING:
+            tmpRecordBlock.Fields[j] = in.readString();
+            break;
+
+          case VALUE_INTEGER:
+            tmpRecordBlock.Fields[j] = in.readVarInt();
+            break;
+
+          case VALUE_FLOAT:
+            tmpRecordBlock.Fields[j] = in.readDouble();
+            break;
+
+          default:
+            throw new StreamCorruptedException("Unknown field value type <" + tmpType + ">");
+        }
+      }
+
+      int tmpMapCount = in.readUnsignedVarInt();
+      tmpRecordBlock.FieldMap = new HashMap<>(Math.max(10, tmpMapCount * 2));
+      for (int j = 0 ; j < tmpMapCount ; j++)
+      {
+        String tmpFieldName = in.readString();
+        tmpRecordBlock.FieldMap.put(tmpFieldName, in.readUnsignedVarInt());
+      }
+
+      BlockIndex.put(tmpBlockKey, tmpRecordBlock);
+    }
+  }
+
  /**
   * This is a recursive way of getting the information from the blocks
   */
@@ -813,5 +1005,260 @@ public class FlexRecord extends AbstractRecord
 
     tmpFieldIndex = ((Number)tmpRecordBlock.FieldMap.get(SplitName[1])).intValue();
     tmpRecordBlock.Fields[tmpFieldIndex] = NewValue;
-  }  
+  }
+
+ /**
+  * Compile a field name into a reusable accessor. The field name has the same
+  * form as for GetFieldFloat(), that is the block instance and the field name
+  * separated by "~" (e.g. "ROOT~Duration" or "ROOT.CHARGE_0~Amount"). The
+  * block definition and field index are resolved here, once, so that the
+  * accessor methods do not have to parse the name for each record.
+  *
+  * @param FieldName The field name to compile
+  * @return The compiled accessor
+  * @throws InitializationException if the block or field is not defined
+  */
+  public FieldAccessor compileFieldAccessor(String FieldName) throws InitializationException
+  {
+    FieldAccessor tmpAccessor;
+    RecordBlockDef tmpRecordBlockDef;
+    String tmpBlockKey;
+    String tmpBlockName;
+    String tmpFieldName;
+    int tmpSplit;
+    int i;
+
+    tmpSplit = FieldName.lastIndexOf('~');
+
+    if (tmpSplit < 0)
+    {
+      throw new InitializationException("Field name <" + FieldName + "> must be of the form <block>~<field>",getSymbolicName());
+    }
+
+    tmpBlockKey = FieldName.substring(0, tmpSplit);
+    tmpFieldName = FieldName.substring(tmpSplit + 1);
+
+    // Child block instances are numbered, strip the number to get the block
+    tmpBlockName = tmpBlockKey;
+    if (!tmpBlockKey.equalsIgnoreCase("ROOT"))
+    {
+      int tmpInstance = tmpBlockKey.lastIndexOf('_');
+
+      if (tmpInstance < 0)
+      {
+        throw new InitializationException("Block instance <" + tmpBlockKey + "> must be of the form <block>_<number>",getSymbolicName());
+      }
+
+      tmpBlockName = tmpBlockKey.substring(0, tmpInstance);
+    }
+
+    tmpRecordBlockDef = FindBlock(tmpBlockName);
+
+    tmpAccessor = new FieldAccessor();
+    tmpAccessor.FieldName = FieldName;
+    tmpAccessor.BlockKey = tmpBlockKey;
+    tmpAccessor.BlockDef = tmpRecordBlockDef;
+    tmpAccessor.FieldIndex = -1;
+
+    for (i = 0 ; i < tmpRecordBlockDef.NumberOfFields ; i++)
+    {
+      if (tmpFieldName.equalsIgnoreCase(tmpRecordBlockDef.FieldNames[i]))
+      {
+        tmpAccessor.FieldIndex = i;
+        tmpAccessor.FieldType = tmpRecordBlockDef.FieldTypes[i];
+        break;
+      }
+    }
+
+    if (tmpAccessor.FieldIndex < 0)
+    {
+      throw new InitializationException("Field name <" + tmpFieldName + "> not found in block <" + tmpBlockName + ">",getSymbolicName());
+    }
+
+    // Get the slot for the block instance, shared by all records of this
+    // definition
+    ConcurrentHashMap<String, Integer> tmpSlots = getDefRoot().BlockSlots;
+    synchronized (tmpSlots)
+    {
+      Integer tmpSlot = tmpSlots.get(tmpBlockKey);
+
+      if (tmpSlot == null)
+      {
+        tmpSlot = tmpSlots.size();
+        tmpSlots.put(tmpBlockKey, tmpSlot);
+      }
+
+      tmpAccessor.BlockSlot = tmpSlot;
+    }
+
+    return tmpAccessor;
+  }
+
+ /**
+  * Get the value of a field using a compiled accessor.
+  *
+  * @param Accessor The compiled field accessor
+  * @return The field value, or null if the block or field is not mapped
+  */
+  public Object GetField(FieldAccessor Accessor)
+  {
+    RecordBlock tmpRecordBlock = getBlock(Accessor);
+
+    if (tmpRecordBlock == null)
+    {
+      return null;
+    }
+
+    return tmpRecordBlock.Fields[Accessor.FieldIndex];
+  }
+
+ /**
+  * Get the value of a float field using a compiled accessor.
+  *
+  * @param Accessor The compiled field accessor
+  * @return The float value
+  */
+  public double GetFieldFloat(FieldAccessor Accessor)
+  {
+    Object tmpField = GetField(Accessor);
+
+    if (tmpField instanceof Double || tmpField instanceof Integer)
+    {
+      return ((Number)tmpField).doubleValue();
+    }
+    else
+    {
+      this.addError(new RecordError("Cannot retrieve float value",ErrorType.DATA_VALIDATION));
+    }
+
+    return 0;
+  }
+
+ /**
+  * Put a float field using a compiled accessor.
+  *
+  * @param Accessor The compiled field accessor
+  * @param NewValue The value
+  */
+  public void PutFieldFloat(FieldAccessor Accessor, double NewValue)
+  {
+    RecordBlock tmpRecordBlock = getBlock(Accessor);
+
+    if (tmpRecordBlock == null)
+    {
+      this.addError(new RecordError("Cannot set float value",ErrorType.DATA_VALIDATION));
+      return;
+    }
+
+    tmpRecordBlock.Fields[Accessor.FieldIndex] = NewValue;
+  }
+
+ /**
+  * Get the block instance for a compiled accessor. The block is looked up in
+  * the block index the first time, after which it is held in the block slot
+  * cache until the next block is mapped.
+  *
+  * @param Accessor The compiled field accessor
+  * @return The block instance, or null if the block is not mapped
+  */
+  private RecordBlock getBlock(FieldAccessor Accessor)
+  {
+    RecordBlock tmpRecordBlock;
+
+    if (BlockSlotCache == null || Accessor.BlockSlot >= BlockSlotCache.length)
+    {
+      int tmpSize = Math.max(Accessor.BlockSlot + 1, getDefRoot().BlockSlots.size());
+
+      if (BlockSlotCache == null)
+      {
+        BlockSlotCache = new RecordBlock[tmpSize];
+      }
+      else
+      {
+        BlockSlotCache = Arrays.copyOf(BlockSlotCache, tmpSize);
+      }
+    }
+
+    tmpRecordBlock = BlockSlotCache[Accessor.BlockSlot];
+
+    if (tmpRecordBlock == null)
+    {
+      tmpRecordBlock = BlockIndex.get(Accessor.BlockKey);
+      BlockSlotCache[Accessor.BlockSlot] = tmpRecordBlock;
+    }
+
+    return tmpRecordBlock;
+  }
+
+ /**
+  * Work out if a separator regex stands for a single literal character, so
+  * that splitFields() gives the same result as String.split(). This is the
+  * case for a single character which is not a regex meta character, or a
+  * backslash followed by a character which is not a letter or a digit.
+  *
+  * @param Separator The separator regex
+  * @return The character to split on, or -1 if the regex has to be used
+  */
+  static int getLiteralSeparator(String Separator)
+  {
+    char tmpChar;
+
+    if (Separator.length() == 1)
+    {
+      tmpChar = Separator.charAt(0);
+
+      if (".$|()[{^?*+\\".indexOf(tmpChar) < 0 && !Character.isSurrogate(tmpChar))
+      {
+        return tmpChar;
+      }
+    }
+    else if (Separator.length() == 2 && Separator.charAt(0) == '\\')
+    {
+      tmpChar = Separator.charAt(1);
+
+      if (!Character.isLetterOrDigit(tmpChar) && tmpChar < 128)
+      {
+        return tmpChar;
+      }
+    }
+
+    return -1;
+  }
+
+ /**
+  * Split the data on a single character separator, without using a regex.
+  * As with String.split(), trailing empty fields are removed.
+  *
+  * @param Data The data to split
+  * @param Separator The separator character
+  * @return The split fields
+  */
+  static String[] splitFields(String Data, char Separator)
+  {
+    ArrayList<String> tmpFields = new ArrayList<>(32);
+    int tmpStart = 0;
+    int tmpPos;
+
+    while ((tmpPos = Data.indexOf(Separator, tmpStart)) >= 0)
+    {
+      tmpFields.add(Data.substring(tmpStart, tmpPos));
+      tmpStart = tmpPos + 1;
+    }
+    if (tmpStart == 0)
+    {
+      // no separator, the whole data is the only field
+      return new String[] {Data};
+    }
+
+    tmpFields.add(Data.substring(tmpStart));
+
+    // remove the trailing empty fields
+    int tmpCount = tmpFields.size();
+    while (tmpCount > 0 && tmpFields.get(tmpCount - 1).isEmpty())
+    {
+      tmpCount--;
+    }
+
+    return tmpFields.subList(0, tmpCount).toArray(new String[tmpCount]);
+  }
 }
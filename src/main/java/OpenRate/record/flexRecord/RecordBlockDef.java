@@ -57,6 +57,7 @@ package OpenRate.record.flexRecord;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class defines the structures and mappings that allow us to construct
@@ -73,6 +74,10 @@ public class RecordBlockDef
   // the field separator for this block
   String   Separator = null;
 
+  // Single character separators are split literally, without using a regex
+  boolean  SingleCharSeparator = false;
+  char     SeparatorChar;
+
   // This is the name of the block
   String   BlockName;
 
@@ -88,5 +93,14 @@ public class RecordBlockDef
   // the full path name and returns the block reference and the field info
   // (Offset, type)
   HashMap<String, Integer> FieldNameIndex;
+
+  // The following are only used in the root block, and are shared by all
+  // records created from the definition.
+
+  // Resolved block definitions, so that we only parse the block path once
+  ConcurrentHashMap<String, RecordBlockDef> ResolvedBlocks = new ConcurrentHashMap<>();
+
+  // The slots assigned to block instances by compiled field accessors
+  ConcurrentHashMap<String, Integer> BlockSlots = new ConcurrentHashMap<>();
 }
 
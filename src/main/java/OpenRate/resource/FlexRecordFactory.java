@@ -56,6 +56,9 @@ package OpenRate.resource;
 
 import OpenRate.OpenRate;
 import OpenRate.exception.InitializationException;
+import OpenRate.record.AbstractRecord;
+import OpenRate.record.IRecordFactory;
+import OpenRate.record.flexRecord.FieldAccessor;
 import OpenRate.record.flexRecord.FlexRecord;
 import OpenRate.utils.PropertyUtils;
 import java.io.BufferedReader;
@@ -75,7 +78,7 @@ import java.io.IOException;
  *
  * This has been created primarily for a rules engine implementation.
  */
-public class FlexRecordFactory implements IResource
+public class FlexRecordFactory implements IResource, IRecordFactory
 {
   // This is the symbolic name of the resource
   private String symbolicName;
@@ -322,6 +325,33 @@ public class FlexRecordFactory implements IResource
     return tmpFlexRecord;
   }
 
+  /**
+   * Create a new flex record from the master template, for the binary record
+   * codec to decode into
+   *
+   * @return The new instance
+   */
+  @Override
+  public AbstractRecord newRecord()
+  {
+    return CreateNewFlexRecord();
+  }
+
+  /**
+   * Compile a field name into an accessor that can be used with all of the
+   * records created by this factory. Compile the accessors once at start up,
+   * and use them in processing instead of the field names.
+   *
+   * @param FieldName The field name to compile, of the form block~field
+   * @return The compiled accessor
+   * @throws InitializationException
+   */
+  public FieldAccessor CompileFieldAccessor(String FieldName)
+    throws InitializationException
+  {
+    return MasterRecord.compileFieldAccessor(FieldName);
+  }
+
   /**
    * Get the reference to the factory
    *
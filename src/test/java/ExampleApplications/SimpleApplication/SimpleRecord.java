@@ -140,13 +140,15 @@ public final class SimpleRecord extends RatingRecord
   /**
    * We split up the record at the tabs, and put the information into fields
    * so that we can manipulate it as we want. For the purposes of this example
-   * we only need the B Number field. In general we put often used values in
-   * local working variables in the record, for speed any clarity of code.
+   * we only need the B Number field, so we map the fields lazily: only the
+   * fields we actually access get extracted. In general we put often used
+   * values in local working variables in the record, for speed any clarity of
+   * code.
    */
   public void mapData()
   {
 
-    this.fields = this.getOriginalData().split("\\t");
+    this.mapFields('\t');
 
     // Pull out the B-Number and make it easy to access for the lookup. Note
     // that we don't have to do this, we could just as easily leave it where
@@ -166,38 +168,13 @@ public final class SimpleRecord extends RatingRecord
    */
   public String unmapOriginalData()
   {
-
-    int NumberOfFields;
-    int i;
-    StringBuilder tmpReassemble;
-
     if (this.RECORD_TYPE == DETAIL_RECORD)
     {
-      // We use the string buffer for the reassembly of the record. Avoid
-      // just catenating strings, as it is a LOT slower because of the
-      // java internal string handling (it has to allocate/deallocate many
-      // times to rebuild the string).
-      tmpReassemble = new StringBuilder(1024);
-
-      // write the destination information back
+      // write the destination information back. The field view reassembles
+      // the record for us, leaving the unchanged fields as they were
       this.setField(DESTINATION_IDX, Destination);
-      NumberOfFields = this.fields.length;
-
-      for (i = 0; i < NumberOfFields; i++)
-      {
-
-        if (i == 0)
-        {
-          tmpReassemble.append(this.fields[i]);
-        }
-        else
-        {
-          tmpReassemble.append("\t");
-          tmpReassemble.append(this.fields[i]);
-        }
-      }
-
-      return tmpReassemble.toString();
+
+      return this.getFieldView().getData();
     }
     else
     {
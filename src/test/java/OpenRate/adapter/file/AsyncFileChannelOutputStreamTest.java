@@ -0,0 +1,177 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.*;
+
+/**
+ * Tests writing files through the background channel writer.
+ *
+ * @author ian
+ */
+public class AsyncFileChannelOutputStreamTest
+{
+  private static ExecutorService executor;
+  private File tmpFile;
+
+  public AsyncFileChannelOutputStreamTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    executor.shutdownNow();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tmpFile = File.createTempFile("AsyncFileChannelOutputStreamTest", ".txt");
+  }
+
+  @After
+  public void tearDown() {
+    tmpFile.delete();
+  }
+
+  /**
+   * Test that a file written through many small buffers reads back in order,
+   * and that the queue stays within its limit.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    System.out.println("RoundTrip");
+
+    // small buffers, so that we queue lots of them
+    AsyncFileChannelOutputStream instance = new AsyncFileChannelOutputStream(new FileOutputStream(tmpFile).getChannel(), executor, 3, 1000);
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(instance, StandardCharsets.UTF_8)))
+    {
+      for (int i = 0 ; i < 10000 ; i++)
+      {
+        out.write("CDR;" + i + ";Zürich\n");
+      }
+
+      // everything written so far is in the file after a flush
+      out.flush();
+      Assert.assertEquals(instance.getBytesQueued(), tmpFile.length());
+      Assert.assertEquals(0, instance.getQueueDepth());
+    }
+
+    Assert.assertTrue(instance.getMaxQueueDepth() <= 4);
+    Assert.assertEquals(tmpFile.length(), instance.getBytesQueued());
+
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(tmpFile), StandardCharsets.UTF_8)))
+    {
+      for (int i = 0 ; i < 10000 ; i++)
+      {
+        Assert.assertEquals("CDR;" + i + ";Zürich", in.readLine());
+      }
+      Assert.assertNull(in.readLine());
+    }
+  }
+
+  /**
+   * Test writing in the writing thread, and syncing to the disk.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testForce() throws IOException {
+    System.out.println("Force");
+
+    AsyncFileChannelOutputStream instance = new AsyncFileChannelOutputStream(new FileOutputStream(tmpFile).getChannel(), null, 1, 16);
+    instance.write("0123456789012345678901234567890123456789".getBytes(StandardCharsets.US_ASCII));
+    instance.force(true);
+    Assert.assertEquals(40, tmpFile.length());
+    instance.close();
+    instance.close();
+    Assert.assertEquals(40, tmpFile.length());
+  }
+
+  /**
+   * Test that an error writing in the background is reported to the writer.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testWriteError() throws IOException {
+    System.out.println("WriteError");
+
+    FileChannel channel = new FileOutputStream(tmpFile).getChannel();
+    AsyncFileChannelOutputStream instance = new AsyncFileChannelOutputStream(channel, executor, 2, 16);
+    channel.close();
+
+    try
+    {
+      instance.write(new byte[100]);
+      instance.close();
+      Assert.fail("Expected an exception");
+    }
+    catch (IOException ex)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.*;
+
+/**
+ * Tests framing binary records out of a buffer.
+ *
+ * @author ian
+ */
+public class BinaryRecordFramerTest
+{
+  public BinaryRecordFramerTest() {
+  }
+
+  // get the content of a frame as a string
+  private static String text(ByteBuffer frame)
+  {
+    byte[] tmpBytes = new byte[frame.remaining()];
+    frame.get(tmpBytes);
+    return new String(tmpBytes, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Test fixed length framing, including an incomplete record.
+   */
+  @Test
+  public void testFixedLength() {
+    System.out.println("FixedLength");
+
+    BinaryRecordFramer framer = BinaryRecordFramer.fixedLength(3);
+    ByteBuffer buffer = ByteBuffer.wrap("abcdefgh".getBytes(StandardCharsets.US_ASCII));
+
+    Assert.assertEquals("abc", text(framer.frame(buffer)));
+    Assert.assertEquals("def", text(framer.frame(buffer)));
+    Assert.assertNull(framer.frame(buffer));
+    Assert.assertEquals(6, buffer.position());
+  }
+
+  /**
+   * Test length prefixed framing with both byte orders, and with the prefix
+   * counted in the length.
+   */
+  @Test
+  public void testLengthPrefixed() {
+    System.out.println("LengthPrefixed");
+
+    BinaryRecordFramer framer = BinaryRecordFramer.lengthPrefixed(2, ByteOrder.BIG_ENDIAN, false);
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0, 2, 'a', 'b', 0, 0, 0, 3, 'c'});
+
+    Assert.assertEquals("ab", text(framer.frame(buffer)));
+    Assert.assertEquals("", text(framer.frame(buffer)));
+
+    // only one of three bytes there
+    int tmpPosition = buffer.position();
+    Assert.assertNull(framer.frame(buffer));
+    buffer.position(tmpPosition);
+
+    framer = BinaryRecordFramer.lengthPrefixed(4, ByteOrder.LITTLE_ENDIAN, true);
+    buffer = ByteBuffer.wrap(new byte[]{6, 0, 0, 0, 'x', 'y'});
+    Assert.assertEquals("xy", text(framer.frame(buffer)));
+    Assert.assertFalse(buffer.hasRemaining());
+  }
+
+  /**
+   * Test delimited framing with a two byte delimiter.
+   */
+  @Test
+  public void testDelimited() {
+    System.out.println("Delimited");
+
+    BinaryRecordFramer framer = BinaryRecordFramer.delimited(new byte[]{'\r', '\n'});
+    ByteBuffer buffer = ByteBuffer.wrap("one\r\ntw\ro\r\nthree\r".getBytes(StandardCharsets.US_ASCII));
+
+    Assert.assertEquals("one", text(framer.frame(buffer)));
+    Assert.assertEquals("tw\ro", text(framer.frame(buffer)));
+    Assert.assertNull(framer.frame(buffer));
+  }
+
+  /**
+   * Test that delimited framing carries on where it stopped when more data has
+   * been read, including a delimiter split over two reads.
+   */
+  @Test
+  public void testDelimitedMoreData() {
+    System.out.println("DelimitedMoreData");
+
+    BinaryRecordFramer framer = BinaryRecordFramer.delimited(new byte[]{'\r', '\n'});
+
+    // the record start moves to the start of the buffer, as after compact()
+    Assert.assertNull(framer.frame(ByteBuffer.wrap("ab".getBytes(StandardCharsets.US_ASCII))));
+    Assert.assertNull(framer.frame(ByteBuffer.wrap("abcd\r".getBytes(StandardCharsets.US_ASCII))));
+
+    ByteBuffer buffer = ByteBuffer.wrap("abcd\r\nef\r\n".getBytes(StandardCharsets.US_ASCII));
+    Assert.assertEquals("abcd", text(framer.frame(buffer)));
+    Assert.assertEquals("ef", text(framer.frame(buffer)));
+
+    // a new file starts the search again
+    Assert.assertNull(framer.frame(ByteBuffer.wrap("xyz".getBytes(StandardCharsets.US_ASCII))));
+    framer.reset();
+    Assert.assertEquals("x", text(framer.frame(ByteBuffer.wrap("x\r\n".getBytes(StandardCharsets.US_ASCII)))));
+  }
+}
@@ -0,0 +1,216 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import org.junit.*;
+
+/**
+ * Tests the byte level line reader against BufferedReader.
+ *
+ * @author ian
+ */
+public class ByteLineReaderTest
+{
+  public ByteLineReaderTest() {
+  }
+
+  /**
+   * Test that the lines read are the same as those read by a BufferedReader,
+   * for all the kinds of line ending and for lines longer than the buffer.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testReadLine() throws IOException {
+    System.out.println("ReadLine");
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0 ; i < 2000 ; i++)
+    {
+      content.append("CDR;").append(i).append(";0039123456");
+      switch (i % 4)
+      {
+        case 0: content.append("\n"); break;
+        case 1: content.append("\r\n"); break;
+        case 2: content.append("\r"); break;
+        default: content.append("\n\n"); break;
+      }
+
+      // a line longer than the buffer
+      if (i == 1000)
+      {
+        for (int j = 0 ; j < 5000 ; j++)
+        {
+          content.append('x');
+        }
+        content.append("\r\n");
+      }
+    }
+    content.append("last line without an ending");
+
+    compare(content.toString(), StandardCharsets.UTF_8);
+    compare(content.toString(), StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Test the decoding of lines that are not plain ASCII.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testDecode() throws IOException {
+    System.out.println("Decode");
+
+    String content = "plain\nMünchen;€12\r\nZürich\n";
+
+    compare(content, StandardCharsets.UTF_8);
+    compare(content.replace("€", "E"), StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Test reading a range of the file, continuing from a saved position.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testRange() throws IOException {
+    System.out.println("Range");
+
+    File tmpFile = writeFile("line1\nline2\r\nline3\nline4", StandardCharsets.US_ASCII);
+
+    ByteLineReader lineReader = new ByteLineReader(tmpFile.getPath(), 1024, StandardCharsets.US_ASCII);
+    Assert.assertEquals("line1", lineReader.readLine());
+    long position = lineReader.getPosition();
+    Assert.assertEquals(6, position);
+    lineReader.close();
+
+    // the range ends in the middle of line 3, so we get a part line
+    lineReader = new ByteLineReader(tmpFile.getPath(), 1024, StandardCharsets.US_ASCII, position, 16);
+    Assert.assertTrue(lineReader.ready());
+    Assert.assertEquals("line2", lineReader.readLine());
+    Assert.assertEquals("lin", lineReader.readLine());
+    Assert.assertFalse(lineReader.ready());
+    Assert.assertNull(lineReader.readLine());
+    lineReader.close();
+
+    tmpFile.delete();
+  }
+
+  /**
+   * Test that character sets which are not ASCII compatible are rejected.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testCharsetCheck() throws IOException {
+    System.out.println("CharsetCheck");
+
+    Assert.assertTrue(ByteLineReader.isAsciiCompatible(StandardCharsets.UTF_8));
+    Assert.assertTrue(ByteLineReader.isAsciiCompatible(StandardCharsets.ISO_8859_1));
+    Assert.assertFalse(ByteLineReader.isAsciiCompatible(StandardCharsets.UTF_16));
+    Assert.assertFalse(ByteLineReader.isAsciiCompatible(StandardCharsets.UTF_16LE));
+
+    File tmpFile = writeFile("line1\nline2\n", StandardCharsets.UTF_16LE);
+
+    try {
+      new ByteLineReader(tmpFile.getPath(), 1024, StandardCharsets.UTF_16LE).close();
+      Assert.fail("Expected an exception");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+
+    tmpFile.delete();
+  }
+
+  // compare the lines read by the two readers
+  private void compare(String content, Charset charset) throws IOException {
+    File tmpFile = writeFile(content, charset);
+
+    ArrayList<String> expected = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tmpFile), charset));
+    while (reader.ready())
+    {
+      expected.add(reader.readLine());
+    }
+    reader.close();
+
+    ArrayList<String> result = new ArrayList<>();
+    ByteLineReader lineReader = new ByteLineReader(tmpFile.getPath(), 1024, charset);
+    while (lineReader.ready())
+    {
+      result.add(lineReader.readLine());
+    }
+    lineReader.close();
+
+    Assert.assertEquals(expected, result);
+
+    tmpFile.delete();
+  }
+
+  // write a temporary file
+  private File writeFile(String content, Charset charset) throws IOException {
+    File tmpFile = File.createTempFile("ByteLineReaderTest", ".dat");
+    try (OutputStream out = new FileOutputStream(tmpFile))
+    {
+      out.write(content.getBytes(charset));
+    }
+    return tmpFile;
+  }
+}
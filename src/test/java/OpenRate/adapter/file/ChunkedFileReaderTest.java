@@ -0,0 +1,164 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.*;
+
+/**
+ * Tests reading a file in parallel chunks.
+ *
+ * @author ian
+ */
+public class ChunkedFileReaderTest
+{
+  private static ExecutorService executor;
+  private static File tmpFile;
+  private static ArrayList<String> expected = new ArrayList<>();
+
+  public ChunkedFileReaderTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    executor = Executors.newFixedThreadPool(8);
+
+    tmpFile = File.createTempFile("ChunkedFileReaderTest", ".dat");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))
+    {
+      for (int i = 0 ; i < 20000 ; i++)
+      {
+        out.write("CDR;" + i + ";Zürich");
+        switch (i % 3)
+        {
+          case 0: out.write("\n"); break;
+          case 1: out.write("\r\n"); break;
+          default: out.write("\r"); break;
+        }
+      }
+    }
+
+    ByteLineReader lineReader = new ByteLineReader(tmpFile.getPath(), 65536, StandardCharsets.UTF_8);
+    while (lineReader.ready())
+    {
+      expected.add(lineReader.readLine());
+    }
+    lineReader.close();
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    executor.shutdownNow();
+    tmpFile.delete();
+  }
+
+  /**
+   * Test that the chunk boundaries all fall at the start of a line.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testChunkBoundaries() throws IOException {
+    System.out.println("ChunkBoundaries");
+
+    long[] boundaries = ChunkedFileReader.findChunkBoundaries(tmpFile.getPath(), 7);
+    Assert.assertEquals(0, boundaries[0]);
+    Assert.assertEquals(tmpFile.length(), boundaries[7]);
+
+    try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "r"))
+    {
+      for (int i = 1 ; i < 7 ; i++)
+      {
+        Assert.assertTrue(boundaries[i] > boundaries[i - 1]);
+
+        // the byte before is a line ending, and not the '\r' of a "\r\n"
+        raf.seek(boundaries[i] - 1);
+        int before = raf.read();
+        int after = raf.read();
+        Assert.assertTrue(before == '\n' || (before == '\r' && after != '\n'));
+      }
+    }
+  }
+
+  /**
+   * Test that the lines come out in file order for any number of chunks.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testReadChunks() throws IOException {
+    System.out.println("ReadChunks");
+
+    for (int chunks = 1 ; chunks <= 8 ; chunks++)
+    {
+      ArrayList<String> result = new ArrayList<>();
+      ChunkedFileReader reader = new ChunkedFileReader(tmpFile.getPath(), StandardCharsets.UTF_8, chunks, 4096, executor);
+      while (reader.ready())
+      {
+        result.add(reader.readLine());
+      }
+
+      Assert.assertEquals(chunks, reader.getChunksCompleted());
+      reader.close();
+
+      Assert.assertEquals(expected, result);
+    }
+  }
+}
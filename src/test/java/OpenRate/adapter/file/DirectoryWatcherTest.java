@@ -0,0 +1,192 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.*;
+
+/**
+ * Tests finding new input files by watching the directory.
+ *
+ * @author ian
+ */
+public class DirectoryWatcherTest
+{
+  private File tmpDir;
+  private DirectoryWatcher watcher;
+
+  // accept files called "CDR*.dat"
+  private final FilenameFilter filter = new FilenameFilter()
+  {
+    @Override
+    public boolean accept(File dir, String name)
+    {
+      return name.startsWith("CDR") && name.endsWith(".dat");
+    }
+  };
+
+  public DirectoryWatcherTest() {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tmpDir = Files.createTempDirectory("DirectoryWatcherTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    if (watcher != null) {
+      watcher.close();
+    }
+
+    for (File tmpFile : tmpDir.listFiles()) {
+      tmpFile.delete();
+    }
+    tmpDir.delete();
+  }
+
+  /**
+   * Wait for the watcher to queue the given number of files.
+   */
+  private String[] waitForFiles(int count) throws InterruptedException {
+    String[] pending = watcher.getPendingFiles();
+    for (int i = 0 ; i < 100 && pending.length < count ; i++) {
+      Thread.sleep(50);
+      pending = watcher.getPendingFiles();
+    }
+
+    return pending;
+  }
+
+  /**
+   * Test that new files matching the filter are queued in order, and stay
+   * queued until they are removed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testNewFiles() throws Exception {
+    System.out.println("NewFiles");
+
+    watcher = new DirectoryWatcher(tmpDir.getPath(), filter, 0, null);
+    watcher.start("DirectoryWatcherTest");
+
+    // the first pass always scans the directory
+    Assert.assertTrue(watcher.isFullScanDue());
+    watcher.fullScanDone();
+    Assert.assertFalse(watcher.isFullScanDue());
+
+    new File(tmpDir, "CDR_2.dat").createNewFile();
+    new File(tmpDir, "other.dat").createNewFile();
+    new File(tmpDir, "CDR_1.dat").createNewFile();
+
+    String[] pending = waitForFiles(2);
+    Assert.assertArrayEquals(new String[]{"CDR_1.dat", "CDR_2.dat"}, pending);
+
+    // still there until we remove it
+    watcher.removeFile("CDR_1.dat");
+    Assert.assertArrayEquals(new String[]{"CDR_2.dat"}, watcher.getPendingFiles());
+
+    // files which have gone away are dropped
+    new File(tmpDir, "CDR_2.dat").delete();
+    Assert.assertEquals(0, watcher.getPendingFiles().length);
+  }
+
+  /**
+   * Test that the full scan comes round again after the interval.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testFullScanInterval() throws Exception {
+    System.out.println("FullScanInterval");
+
+    watcher = new DirectoryWatcher(tmpDir.getPath(), filter, 100, null);
+
+    watcher.fullScanDone();
+    Assert.assertFalse(watcher.isFullScanDue());
+
+    Thread.sleep(150);
+    Assert.assertTrue(watcher.isFullScanDue());
+  }
+
+  /**
+   * Test that the names of a full scan which could not be assigned are offered
+   * again on the next pass.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testAddFiles() throws Exception {
+    System.out.println("AddFiles");
+
+    watcher = new DirectoryWatcher(tmpDir.getPath(), filter, 0, null);
+
+    new File(tmpDir, "CDR_1.dat").createNewFile();
+    new File(tmpDir, "CDR_2.dat").createNewFile();
+    new File(tmpDir, "CDR_3.dat").createNewFile();
+
+    // the scan found three files, but only the first could be assigned
+    watcher.fullScanDone();
+    watcher.addFiles(new String[]{"CDR_1.dat", "CDR_2.dat", "CDR_3.dat"}, 1);
+
+    Assert.assertFalse(watcher.isFullScanDue());
+    Assert.assertArrayEquals(new String[]{"CDR_2.dat", "CDR_3.dat"}, watcher.getPendingFiles());
+  }
+}
@@ -0,0 +1,163 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.file;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import org.junit.*;
+
+/**
+ * Tests writing gzip files with parallel compression, and reading them back.
+ *
+ * @author ian
+ */
+public class ParallelGzipOutputStreamTest
+{
+  private static ExecutorService executor;
+  private File tmpFile;
+
+  public ParallelGzipOutputStreamTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    executor.shutdownNow();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tmpFile = File.createTempFile("ParallelGzipOutputStreamTest", ".gz");
+  }
+
+  @After
+  public void tearDown() {
+    tmpFile.delete();
+  }
+
+  /**
+   * Test that a file written in many members reads back as one stream, with
+   * both GZIPInputStream and the prefetcher.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    System.out.println("RoundTrip");
+
+    // small blocks, so that we get lots of members
+    try (Writer out = new OutputStreamWriter(new ParallelGzipOutputStream(new FileOutputStream(tmpFile), executor, 3, 1000), StandardCharsets.UTF_8))
+    {
+      for (int i = 0 ; i < 10000 ; i++)
+      {
+        out.write("CDR;" + i + ";Zürich\n");
+      }
+    }
+
+    Assert.assertTrue(ParallelGzipOutputStream.isGzipFile(tmpFile.getPath()));
+    Assert.assertFalse(ParallelGzipOutputStream.isEmpty(tmpFile));
+
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(tmpFile)), StandardCharsets.UTF_8)))
+    {
+      for (int i = 0 ; i < 10000 ; i++)
+      {
+        Assert.assertEquals("CDR;" + i + ";Zürich", in.readLine());
+      }
+      Assert.assertNull(in.readLine());
+    }
+
+    FilePrefetcher prefetcher = new FilePrefetcher(tmpFile.getPath(), StandardCharsets.UTF_8, true, true, 65536);
+    executor.execute(prefetcher);
+
+    int count = 0;
+    while (prefetcher.ready())
+    {
+      Assert.assertEquals("CDR;" + count + ";Zürich", prefetcher.readLine());
+      count++;
+    }
+    Assert.assertEquals(10000, count);
+    prefetcher.close();
+  }
+
+  /**
+   * Test that a stream with nothing written to it is still valid gzip, and is
+   * seen as empty. Also compress in the writing thread.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testEmptyStream() throws IOException {
+    System.out.println("EmptyStream");
+
+    new ParallelGzipOutputStream(new FileOutputStream(tmpFile), null, 1).close();
+
+    Assert.assertTrue(tmpFile.length() > 0);
+    Assert.assertTrue(ParallelGzipOutputStream.isGzipFile(tmpFile.getPath()));
+    Assert.assertTrue(ParallelGzipOutputStream.isEmpty(tmpFile));
+
+    try (InputStream in = new GZIPInputStream(new FileInputStream(tmpFile)))
+    {
+      Assert.assertEquals(-1, in.read());
+    }
+  }
+}
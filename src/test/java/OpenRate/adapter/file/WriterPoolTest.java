@@ -0,0 +1,160 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.file;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.*;
+
+/**
+ * Tests the bounded pool of output file writers.
+ *
+ * @author ian
+ */
+public class WriterPoolTest
+{
+  private File tmpDir;
+
+  public WriterPoolTest() {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tmpDir = Files.createTempDirectory("WriterPoolTest").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File tmpFile : tmpDir.listFiles()) {
+      tmpFile.delete();
+    }
+    tmpDir.delete();
+  }
+
+  /**
+   * Test that writing to more files than the pool holds keeps the number of
+   * open writers bounded, and that the evicted files are appended to when
+   * they are written again.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testEviction() throws IOException {
+    System.out.println("Eviction");
+
+    WriterPool instance = new WriterPool(3, new WriterPool.WriterFactory() {
+      @Override
+      public BufferedWriter openWriter(String fileName, boolean append) throws IOException {
+        return new BufferedWriter(new FileWriter(fileName, append));
+      }
+    });
+
+    // write round robin to 10 files
+    for (int i = 0; i < 1000; i++) {
+      BufferedWriter out = instance.getWriter(getFileName(i % 10));
+      out.write("CDR;" + i);
+      out.newLine();
+      Assert.assertTrue(instance.getOpenCount() <= 3);
+    }
+
+    Assert.assertTrue(instance.getEvictions() > 0);
+    Assert.assertTrue(instance.getReopens() > 0);
+
+    for (int stream = 0; stream < 10; stream++) {
+      instance.release(getFileName(stream));
+    }
+    Assert.assertEquals(0, instance.getOpenCount());
+
+    for (int stream = 0; stream < 10; stream++) {
+      List<String> lines = Files.readAllLines(new File(getFileName(stream)).toPath(), StandardCharsets.UTF_8);
+      Assert.assertEquals(100, lines.size());
+      for (int i = 0; i < 100; i++) {
+        Assert.assertEquals("CDR;" + (i * 10 + stream), lines.get(i));
+      }
+    }
+  }
+
+  /**
+   * Test that a released file is created again rather than appended to.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testRelease() throws IOException {
+    System.out.println("Release");
+
+    WriterPool instance = new WriterPool(0, new WriterPool.WriterFactory() {
+      @Override
+      public BufferedWriter openWriter(String fileName, boolean append) throws IOException {
+        return new BufferedWriter(new FileWriter(fileName, append));
+      }
+    });
+
+    instance.getWriter(getFileName(0)).write("first");
+    instance.release(getFileName(0));
+    instance.getWriter(getFileName(0)).write("second");
+    instance.release(getFileName(0));
+
+    Assert.assertEquals("second", new String(Files.readAllBytes(new File(getFileName(0)).toPath()), StandardCharsets.UTF_8));
+    Assert.assertEquals(0, instance.getEvictions());
+    Assert.assertEquals(0, instance.getReopens());
+  }
+
+  private String getFileName(int stream) {
+    return new File(tmpDir, "stream_" + stream + ".txt").getPath();
+  }
+}
@@ -0,0 +1,145 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.*;
+
+/**
+ * Tests finding the records which failed in a statement batch.
+ *
+ * @author ian
+ */
+public class JDBCOutputAdapterTest
+{
+  private static final String DB_URL = "jdbc:hsqldb:mem:JDBCOutputAdapterTest";
+
+  public JDBCOutputAdapterTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE TEST_BATCH (ID INTEGER PRIMARY KEY, NAME VARCHAR(20))");
+    }
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE TEST_BATCH");
+    }
+  }
+
+  /**
+   * Test working out the failed statements for drivers which stop at the
+   * first failure and for drivers which carry on.
+   */
+  @Test
+  public void testGetFailedStatements() {
+    System.out.println("getFailedStatements");
+
+    // stopped after two good statements
+    Assert.assertEquals(Arrays.asList(2), JDBCOutputAdapter.getFailedStatements(new int[]{1, 1}, 5));
+
+    // carried on, marking the failures
+    int[] updateCounts = new int[]{1, Statement.EXECUTE_FAILED, 1, Statement.SUCCESS_NO_INFO, Statement.EXECUTE_FAILED};
+    Assert.assertEquals(Arrays.asList(1, 4), JDBCOutputAdapter.getFailedStatements(updateCounts, 5));
+
+    // nothing known
+    Assert.assertTrue(JDBCOutputAdapter.getFailedStatements(null, 5).isEmpty());
+  }
+
+  /**
+   * Test that a real driver failure is attributed to the right statement.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testBatchFailureAttribution() throws Exception {
+    System.out.println("batchFailureAttribution");
+
+    int[] ids = new int[]{1, 2, 3, 1, 4};
+
+    try (Connection conn = getConnection();
+         PreparedStatement stmt = conn.prepareStatement("INSERT INTO TEST_BATCH (ID, NAME) VALUES (?, ?)")) {
+      for (int id : ids) {
+        stmt.setInt(1, id);
+        stmt.setString(2, "Name" + id);
+        stmt.addBatch();
+      }
+
+      try {
+        stmt.executeBatch();
+        Assert.fail("Expected an exception");
+      } catch (BatchUpdateException bue) {
+        List<Integer> failed = JDBCOutputAdapter.getFailedStatements(bue.getUpdateCounts(), ids.length);
+        Assert.assertTrue(failed.contains(3));
+        Assert.assertFalse(failed.contains(0));
+      }
+    }
+  }
+
+  private static Connection getConnection() throws SQLException {
+    return DriverManager.getConnection(DB_URL, "SA", "");
+  }
+}
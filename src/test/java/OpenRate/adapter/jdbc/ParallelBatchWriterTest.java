@@ -0,0 +1,300 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+
+/**
+ * Tests writing batches over several connections.
+ *
+ * @author ian
+ */
+public class ParallelBatchWriterTest
+{
+  private static final String DB_URL = "jdbc:hsqldb:mem:ParallelBatchWriterTest";
+  private static final String INSERT = "INSERT INTO TEST_LOAD (ID, NAME) VALUES (?, ?)";
+  private static final int ROW_COUNT = 1000;
+
+  private List<Connection> connections;
+
+  public ParallelBatchWriterTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      // let the connections insert into the same table at the same time
+      stmt.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+      stmt.execute("CREATE TABLE TEST_LOAD (ID INTEGER PRIMARY KEY, NAME VARCHAR(20))");
+    }
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE TEST_LOAD");
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("DELETE FROM TEST_LOAD");
+    }
+
+    connections = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (Connection conn : connections) {
+      conn.close();
+    }
+  }
+
+  /**
+   * Test that the rows spread over several connections are all there after
+   * the commit.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testParallelInsert() throws Exception {
+    System.out.println("parallelInsert");
+
+    ParallelBatchWriter instance = new ParallelBatchWriter(openConnections(4), INSERT, 0, 50, 50, 0, "WriterTest");
+    addRows(instance, 0, ROW_COUNT);
+    instance.commit();
+
+    Assert.assertEquals(ROW_COUNT, instance.getRowsWritten());
+    Assert.assertEquals(ROW_COUNT / 50, instance.getBatchesExecuted());
+    Assert.assertEquals(ROW_COUNT, countRows());
+    instance.close();
+  }
+
+  /**
+   * Test that nothing is visible before the commit, and that a rollback
+   * removes the rows from all connections.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRollback() throws Exception {
+    System.out.println("rollback");
+
+    ParallelBatchWriter instance = new ParallelBatchWriter(openConnections(3), INSERT, 0, 50, 50, 0, "WriterTest");
+    addRows(instance, 0, ROW_COUNT);
+    instance.flush();
+
+    Assert.assertEquals(ROW_COUNT, instance.getRowsWritten());
+    Assert.assertEquals(0, countRows());
+
+    instance.rollback();
+    Assert.assertEquals(0, countRows());
+    instance.close();
+  }
+
+  /**
+   * Test the rewriting of a single row insert into a multi-row insert.
+   */
+  @Test
+  public void testGetMultiRowInsert() {
+    System.out.println("getMultiRowInsert");
+
+    Assert.assertEquals("INSERT INTO TEST_LOAD (ID, NAME) VALUES (?, ?), (?, ?), (?, ?)",
+                        ParallelBatchWriter.getMultiRowInsert(INSERT, 3));
+    Assert.assertEquals("insert into T values (?, 'a)b', NOW()), (?, 'a)b', NOW())",
+                        ParallelBatchWriter.getMultiRowInsert("insert into T values (?, 'a)b', NOW());", 2));
+    Assert.assertNull(ParallelBatchWriter.getMultiRowInsert("INSERT INTO T SELECT * FROM U", 2));
+    Assert.assertNull(ParallelBatchWriter.getMultiRowInsert("INSERT INTO T VALUES (?) RETURNING ID", 2));
+  }
+
+  /**
+   * Test that multi-row inserts write every row, including the ones left over
+   * which do not fill a whole statement.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testMultiRowInsert() throws Exception {
+    System.out.println("multiRowInsert");
+
+    ParallelBatchWriter instance = new ParallelBatchWriter(openConnections(2), INSERT, 7, 30, 30, 0, "WriterTest");
+    Assert.assertEquals(7, instance.getRowsPerInsert());
+    addRows(instance, 0, ROW_COUNT);
+    instance.commit();
+
+    Assert.assertEquals(ROW_COUNT, countRows());
+    instance.close();
+  }
+
+  /**
+   * Test that fast batches make the batch size grow up to the maximum.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testAdaptiveBatchSize() throws Exception {
+    System.out.println("adaptiveBatchSize");
+
+    // a batch of a few rows will take far less than the target
+    ParallelBatchWriter instance = new ParallelBatchWriter(openConnections(1), INSERT, 0, 10, 80, 10000, "WriterTest");
+    addRows(instance, 0, ROW_COUNT);
+    instance.commit();
+
+    Assert.assertEquals(80, instance.getBatchSize());
+    Assert.assertEquals(ROW_COUNT, countRows());
+    instance.close();
+  }
+
+  /**
+   * Test that a failing batch is reported, and that the transaction can be
+   * rolled back afterwards.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testBatchError() throws Exception {
+    System.out.println("batchError");
+
+    // one connection, so that the duplicates do not wait on another transaction
+    ParallelBatchWriter instance = new ParallelBatchWriter(openConnections(1), INSERT, 0, 50, 50, 0, "WriterTest");
+    addRows(instance, 0, 100);
+    // duplicate keys
+    addRows(instance, 0, 100);
+
+    try {
+      instance.commit();
+      Assert.fail("Expected an exception");
+    } catch (SQLException ex) {
+      // expected
+    }
+
+    instance.rollback();
+    Assert.assertEquals(0, countRows());
+    instance.close();
+  }
+
+  /**
+   * Test that the rows of a chunk which failed part way are not written by
+   * the next transaction on the same connection.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRollbackClearsBatch() throws Exception {
+    System.out.println("rollbackClearsBatch");
+
+    ParallelBatchWriter instance = new ParallelBatchWriter(openConnections(1), INSERT, 2, 6, 6, 0, "WriterTest");
+
+    // two multi-row inserts are batched before the bad row is found
+    addRows(instance, 0, 4);
+    instance.addRow(new Object[]{4, "Name4", "Extra"});
+    instance.addRow(new Object[]{5, "Name5"});
+
+    try {
+      instance.commit();
+      Assert.fail("Expected an exception");
+    } catch (SQLException ex) {
+      // expected
+    }
+
+    instance.rollback();
+
+    addRows(instance, 100, 106);
+    instance.commit();
+
+    Assert.assertEquals(6, countRows());
+    Assert.assertEquals(0, countRows("ID < 100"));
+    instance.close();
+  }
+
+  private List<Connection> openConnections(int count) throws SQLException {
+    for (int i = 0; i < count; i++) {
+      connections.add(getConnection());
+    }
+
+    return connections;
+  }
+
+  private static void addRows(ParallelBatchWriter writer, int from, int to) throws SQLException {
+    for (int i = from; i < to; i++) {
+      writer.addRow(new Object[]{i, "Name" + i});
+    }
+  }
+
+  private static int countRows() throws SQLException {
+    return countRows("1 = 1");
+  }
+
+  private static int countRows(String condition) throws SQLException {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement();
+         ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM TEST_LOAD WHERE " + condition)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  private static Connection getConnection() throws SQLException {
+    return DriverManager.getConnection(DB_URL, "SA", "");
+  }
+}
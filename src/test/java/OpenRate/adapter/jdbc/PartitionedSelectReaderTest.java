@@ -0,0 +1,179 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.adapter.jdbc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.*;
+
+/**
+ * Tests reading a partitioned select in parallel.
+ *
+ * @author ian
+ */
+public class PartitionedSelectReaderTest
+{
+  private static final String DB_URL = "jdbc:hsqldb:mem:PartitionedSelectReaderTest";
+  private static final int ROW_COUNT = 1000;
+
+  public PartitionedSelectReaderTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE TEST_EXTRACT (ID INTEGER, NAME VARCHAR(20))");
+      for (int i = 0; i < ROW_COUNT; i++) {
+        stmt.execute("INSERT INTO TEST_EXTRACT VALUES (" + i + ", 'Name" + i + "')");
+      }
+    }
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+      stmt.execute("DROP TABLE TEST_EXTRACT");
+    }
+  }
+
+  /**
+   * Test that the partitions together deliver every row exactly once.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testPartitionedRead() throws Exception {
+    System.out.println("partitionedRead");
+
+    int partitionCount = 4;
+    List<Connection> connections = new ArrayList<>();
+    List<String> queries = new ArrayList<>();
+    for (int i = 0; i < partitionCount; i++) {
+      connections.add(getConnection());
+      queries.add(PartitionedSelectReader.getModuloQuery("SELECT ID, NAME FROM TEST_EXTRACT", "ID", i, partitionCount));
+    }
+
+    // use a small queue so that the partitions have to wait for us
+    PartitionedSelectReader instance = new PartitionedSelectReader(connections, queries, 50, 10, "PartitionTest");
+    instance.start();
+
+    HashSet<String> ids = new HashSet<>();
+    String[] row;
+    while ((row = instance.next()) != null) {
+      Assert.assertEquals(2, row.length);
+      Assert.assertEquals("Name" + row[0], row[1]);
+      Assert.assertTrue(ids.add(row[0]));
+    }
+
+    Assert.assertEquals(ROW_COUNT, ids.size());
+    instance.close();
+
+    for (Connection conn : connections) {
+      Assert.assertTrue(conn.isClosed());
+    }
+  }
+
+  /**
+   * Test that a failing partition is reported straight away, without waiting
+   * for the other partitions to finish, and that closing the reader stops
+   * them.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testPartitionError() throws Exception {
+    System.out.println("partitionError");
+
+    List<Connection> connections = new ArrayList<>();
+    List<String> queries = new ArrayList<>();
+    connections.add(getConnection());
+    queries.add("SELECT ID, NAME FROM TEST_EXTRACT");
+    connections.add(getConnection());
+    queries.add("SELECT ID, NAME FROM NO_SUCH_TABLE");
+
+    PartitionedSelectReader instance = new PartitionedSelectReader(connections, queries, 50, 10, "PartitionTest");
+    instance.start();
+
+    int rows = 0;
+    try {
+      while (instance.next() != null) {
+        rows++;
+      }
+      Assert.fail("Expected an exception");
+    } catch (SQLException ex) {
+      // expected
+    }
+
+    // the small queue holds the good partition back, so it cannot have
+    // finished when the failure is reported
+    Assert.assertTrue(rows < ROW_COUNT);
+    instance.close();
+
+    for (int i = 0; i < 100 && !connections.get(0).isClosed(); i++) {
+      Thread.sleep(50);
+    }
+    Assert.assertTrue(connections.get(0).isClosed());
+  }
+
+  private static Connection getConnection() throws SQLException {
+    return DriverManager.getConnection(DB_URL, "SA", "");
+  }
+}
@@ -0,0 +1,184 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.jms.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.*;
+
+/**
+ * Tests buffering messages delivered asynchronously, using an embedded broker
+ * in place of a real ActiveMQ.
+ *
+ * @author ian
+ */
+public class MessageBufferTest
+{
+  private static final String BROKER_URL = "vm://MessageBufferTest";
+  private static final int MESSAGE_COUNT = 100;
+
+  private static BrokerService broker;
+
+  public MessageBufferTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    broker = new BrokerService();
+    broker.setBrokerName("MessageBufferTest");
+    broker.setPersistent(false);
+    broker.setUseJmx(false);
+    broker.start();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    if (broker != null) {
+      broker.stop();
+    }
+  }
+
+  /**
+   * Test that the messages can be taken as a batch once they have arrived,
+   * and that the messages of an acknowledged batch are not delivered again
+   * while those of an unacknowledged batch are.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testBatchAcknowledge() throws Exception {
+    System.out.println("batchAcknowledge");
+
+    sendMessages("BatchAcknowledge", MESSAGE_COUNT);
+
+    // take and acknowledge half the messages
+    Connection connection = getConnection(10);
+    Session session = connection.createSession(false, ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
+    MessageConsumer consumer = session.createConsumer(session.createQueue("BatchAcknowledge"));
+    MessageBuffer instance = new MessageBuffer(20);
+    consumer.setMessageListener(instance);
+
+    List<Message> batch = takeMessages(instance, MESSAGE_COUNT / 2);
+    Assert.assertEquals(MESSAGE_COUNT / 2, batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      Assert.assertEquals("Message" + i, ((TextMessage) batch.get(i)).getText());
+    }
+    MessageBuffer.acknowledge(batch);
+
+    // the buffer is bounded
+    Assert.assertTrue(instance.size() <= 20);
+
+    // take the rest, but don't acknowledge them
+    batch = takeMessages(instance, MESSAGE_COUNT / 2);
+    Assert.assertEquals(MESSAGE_COUNT / 2, batch.size());
+    Assert.assertNull(instance.poll(100));
+    instance.close();
+    connection.close();
+
+    // only the unacknowledged messages are delivered again
+    connection = getConnection(10);
+    session = connection.createSession(false, ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
+    consumer = session.createConsumer(session.createQueue("BatchAcknowledge"));
+    instance = new MessageBuffer(20);
+    consumer.setMessageListener(instance);
+
+    batch = takeMessages(instance, MESSAGE_COUNT);
+    Assert.assertEquals(MESSAGE_COUNT / 2, batch.size());
+    Assert.assertEquals("Message" + MESSAGE_COUNT / 2, ((TextMessage) batch.get(0)).getText());
+    MessageBuffer.acknowledge(batch);
+    instance.close();
+    connection.close();
+  }
+
+  /**
+   * Take messages from the buffer, draining those waiting and waiting for
+   * more until none arrive.
+   */
+  private static List<Message> takeMessages(MessageBuffer buffer, int maxMessages) throws InterruptedException {
+    List<Message> batch = new ArrayList<>();
+    while (batch.size() < maxMessages) {
+      if (buffer.drainTo(batch, maxMessages - batch.size()) == 0) {
+        Message msg = buffer.poll(500);
+        if (msg == null) {
+          break;
+        }
+        batch.add(msg);
+      }
+    }
+    return batch;
+  }
+
+  private static void sendMessages(String queueName, int count) throws JMSException {
+    Connection connection = getConnection(1000);
+    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    MessageProducer producer = session.createProducer(session.createQueue(queueName));
+    for (int i = 0; i < count; i++) {
+      producer.send(session.createTextMessage("Message" + i));
+    }
+    connection.close();
+  }
+
+  private static Connection getConnection(int prefetch) throws JMSException {
+    ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL + "?create=false");
+    factory.getPrefetchPolicy().setAll(prefetch);
+    Connection connection = factory.createConnection();
+    connection.start();
+    return connection;
+  }
+}
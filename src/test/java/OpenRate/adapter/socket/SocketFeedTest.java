@@ -0,0 +1,255 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.adapter.socket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+
+/**
+ * Tests framing records from a non-blocking socket connection.
+ *
+ * @author ian
+ */
+public class SocketFeedTest
+{
+  private ServerSocketChannel serverChannel;
+  private Selector selector;
+
+  public SocketFeedTest() {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress("localhost", 0));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    serverChannel.close();
+    selector.close();
+  }
+
+  /**
+   * Test that records are framed for all the kinds of line ending, for
+   * endings split across reads and for records longer than the buffer.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testFraming() throws Exception {
+    System.out.println("framing");
+
+    StringBuilder longRecord = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      longRecord.append('x');
+    }
+
+    final List<String> expected = new ArrayList<>();
+    try (final Socket client = connect()) {
+      SocketFeed instance = accept(1000000);
+      final OutputStream out = client.getOutputStream();
+
+      // split a "\r\n" across two reads
+      out.write("first\r".getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      readAvailable(instance);
+      out.write("\n".getBytes(StandardCharsets.UTF_8));
+      expected.add("first");
+
+      for (int i = 0; i < 1000; i++) {
+        expected.add((i == 500) ? longRecord.toString() : "CDR;" + i + ";0039123456");
+      }
+      expected.add("last");
+
+      // write the rest while we read, so the socket buffers don't fill up
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 1; i < expected.size() - 1; i++) {
+              switch (i % 3) {
+                case 0: out.write((expected.get(i) + "\n").getBytes(StandardCharsets.UTF_8)); break;
+                case 1: out.write((expected.get(i) + "\r\n").getBytes(StandardCharsets.UTF_8)); break;
+                default: out.write((expected.get(i) + "\r").getBytes(StandardCharsets.UTF_8)); break;
+              }
+            }
+            out.write("last".getBytes(StandardCharsets.UTF_8));
+            client.shutdownOutput();
+          } catch (IOException ex) {
+            // the test fails on the records received
+          }
+        }
+      };
+      writer.start();
+
+      List<String> received = new ArrayList<>();
+      while (!instance.isFinished()) {
+        readAvailable(instance);
+        String record;
+        while ((record = instance.nextRecord()) != null) {
+          received.add(record);
+        }
+      }
+
+      Assert.assertEquals(expected, received);
+      instance.close();
+      writer.join();
+    }
+  }
+
+  /**
+   * Test that reading pauses when too many records are waiting, and resumes
+   * once they have been taken.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testBackPressure() throws IOException {
+    System.out.println("backPressure");
+
+    try (Socket client = connect()) {
+      SocketFeed instance = accept(10);
+      OutputStream out = client.getOutputStream();
+      for (int i = 0; i < 100; i++) {
+        out.write(("CDR;" + i + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+      out.flush();
+
+      while (!instance.isPaused()) {
+        readAvailable(instance);
+      }
+
+      // we don't read any more while paused
+      Assert.assertEquals(0, selector.selectNow());
+
+      int taken = 0;
+      while (instance.isPaused()) {
+        Assert.assertNotNull(instance.nextRecord());
+        taken++;
+      }
+      Assert.assertTrue(taken >= 5);
+
+      // and read again once resumed
+      Assert.assertTrue(instance.hasRecords() || selector.select(1000) > 0);
+      instance.close();
+    }
+  }
+
+  /**
+   * Test that a record longer than the maximum record length ends the feed,
+   * keeping the records framed before it.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testRecordTooLong() throws Exception {
+    System.out.println("recordTooLong");
+
+    try (final Socket client = connect()) {
+      SocketChannel channel = serverChannel.accept();
+      channel.configureBlocking(false);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      SocketFeed instance = new SocketFeed(channel, key, StandardCharsets.UTF_8, 1000, 1000);
+
+      final OutputStream out = client.getOutputStream();
+      out.write("CDR;1\n".getBytes(StandardCharsets.UTF_8));
+      out.write(new byte[5000]);
+      out.flush();
+
+      try {
+        for (int i = 0; i < 10; i++) {
+          readAvailable(instance);
+        }
+        Assert.fail("Expected an exception");
+      } catch (IOException ex) {
+        // expected
+      }
+
+      Assert.assertEquals("CDR;1", instance.nextRecord());
+      Assert.assertTrue(instance.isFinished());
+      instance.close();
+    }
+  }
+
+  private Socket connect() throws IOException {
+    return new Socket("localhost", serverChannel.socket().getLocalPort());
+  }
+
+  private SocketFeed accept(int maxPending) throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    channel.configureBlocking(false);
+    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+    return new SocketFeed(channel, key, StandardCharsets.UTF_8, maxPending, 1000000);
+  }
+
+  private void readAvailable(SocketFeed instance) throws IOException {
+    if (selector.select(1000) > 0) {
+      selector.selectedKeys().clear();
+      instance.read();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import OpenRate.exception.ASN1Exception;
+import java.nio.ByteBuffer;
+import org.junit.*;
+
+/**
+ * Tests the cursor ASN.1 decoder, against the same data as the ASN1Parser
+ * tests.
+ *
+ * @author ian
+ */
+public class ASN1CursorTest
+{
+  // The captured Huawei SMS CDR used by ASN1ParserTest
+  static final byte[] TEST_CDR = {
+    -128, 1, 7, -127, 7, -111, 50, -107, -103, -103, 25, -16, -126, 8, 38, 2,
+    3, 17, 70, 9, 18, -9, -125, 8, 83, 20, 84, 64, 36, 96, 73, -16,
+    -124, 7, -111, 50, -107, 35, -121, 82, -13, -123, 3, 51, 89, -128, -122, 7,
+    -111, 50, -107, -103, -103, 9, -15, -89, 8, -128, 2, 36, 84, -127, 2, 6,
+    -99, -120, 9, 18, 18, 49, 35, 67, 72, 43, 1, 0, -117, 1, 2, -65,
+    -127, 2, 3, -125, 1, 33, -65, -127, 5, 3, -128, 1, 2, -97, -127, 13,
+    1, 1, -97, -127, 39, 2, 43, 9, -97, -127, 40, 2, -104, 8, -97, -127,
+    60, 7, 38, -14, 48, 36, 84, 6, -99, -97, -127, 62, 1, 10, -97, -127,
+    64, 3, 38, -14, 48, -97, -127, 67, 1, -1, -97, -127, 73, 3, -95, 65,
+    65, -97, -127, 74, 5, 25, 10, 4, -22, 103, -97, -127, 104, 4, 107, -1,
+    -72, -1
+  };
+
+  public ASN1CursorTest() {
+  }
+
+  /**
+   * Test decoding the captured CDR with the Huawei definition, which must give
+   * the same result as ASN1Parser.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testParseCDR() throws Exception {
+    System.out.println("parseCDR");
+
+    HuaweiDef asn1Specification = new HuaweiDef();
+    asn1Specification.initTags();
+
+    StringBuilder recordContents = new StringBuilder();
+    StringBuilder tagIndex = new StringBuilder();
+
+    // decode from the middle of a bigger buffer, to check the offsets
+    ByteBuffer tmpBuffer = ByteBuffer.allocate(TEST_CDR.length + 10);
+    tmpBuffer.position(5);
+    tmpBuffer.put(TEST_CDR);
+    tmpBuffer.position(5);
+    tmpBuffer.limit(5 + TEST_CDR.length);
+
+    ASN1Cursor instance = new ASN1Cursor(tmpBuffer);
+
+    // get the cdr type
+    instance.next();
+    StringBuilder cdrType = new StringBuilder();
+    instance.appendBytes(cdrType);
+    recordContents.append(asn1Specification.getCDRName(cdrType.toString())).append(";");
+
+    while (instance.ready())
+    {
+      instance.next();
+
+      tagIndex.setLength(0);
+      tagIndex.append(cdrType).append(';');
+      instance.appendRawTag(tagIndex);
+
+      if (instance.isConstructed())
+      {
+        instance.skip();
+      }
+
+      String tmpTag = tagIndex.toString();
+      if (asn1Specification.getTagType(tmpTag) >= 0)
+      {
+        recordContents.append("{").append(asn1Specification.getTagName(tmpTag)).append("=").append(instance.parseValue(asn1Specification.getTagType(tmpTag))).append("};");
+      }
+    }
+
+    String expectedResult = "SMMT;{IMSI=260203114609127};{IMEI=531454402460490};{MSISDN=9132952387523};{Timestamp=1212312343482;0100};";
+    Assert.assertEquals(expectedResult, recordContents.toString());
+
+    // the buffer itself is not moved
+    Assert.assertEquals(5, tmpBuffer.position());
+  }
+
+  /**
+   * Test long tags, long lengths and integer decoding.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testTagsAndLengths() throws Exception {
+    System.out.println("tagsAndLengths");
+
+    ASN1Cursor instance = new ASN1Cursor();
+
+    // 3 byte tag 130, constructed, empty
+    instance.setDataToParse(new byte[]{-65, -127, 2, 0});
+    instance.next();
+    Assert.assertEquals(130, instance.getTag());
+    Assert.assertEquals("bf8102", instance.getRawTag());
+    Assert.assertTrue(instance.isConstructed());
+    Assert.assertEquals(0, instance.getLength());
+
+    // 2 byte length, value not there
+    instance.setDataToParse(new byte[]{-96, -126, 1, 61});
+    try
+    {
+      instance.next();
+      Assert.fail("Expected an exception for the truncated element");
+    }
+    catch (ASN1Exception ex)
+    {
+      // expected
+    }
+
+    // negative and positive integers
+    instance.setDataToParse(new byte[]{2, 2, -1, 56, 2, 3, 1, 0, 0});
+    instance.next();
+    Assert.assertEquals(-200, instance.getInteger());
+    Assert.assertEquals("-200", instance.parseValue(ASN1Parser.INTEGER));
+    instance.next();
+    Assert.assertEquals(65536, instance.getInteger());
+    Assert.assertFalse(instance.ready());
+  }
+
+  /**
+   * Test skipping a constructed element of indefinite length, with a nested
+   * indefinite element inside.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testSkipIndefinite() throws Exception {
+    System.out.println("skipIndefinite");
+
+    ASN1Cursor instance = new ASN1Cursor();
+    instance.setDataToParse(new byte[]{
+      0x30, (byte) 0x80,
+        (byte) 0x81, 1, 7,
+        (byte) 0xA2, (byte) 0x80, (byte) 0x83, 1, 9, 0, 0,
+      0, 0,
+      (byte) 0x84, 1, 5});
+
+    instance.next();
+    Assert.assertEquals(ASN1Cursor.INDEFINITE_LENGTH, instance.getLength());
+    instance.skip();
+
+    instance.next();
+    Assert.assertEquals("84", instance.getRawTag());
+    Assert.assertEquals(5, instance.getInteger());
+
+    byte[] tmpValue = new byte[4];
+    Assert.assertEquals(1, instance.getValue(tmpValue));
+    Assert.assertEquals(5, tmpValue[0]);
+    Assert.assertFalse(instance.ready());
+  }
+}
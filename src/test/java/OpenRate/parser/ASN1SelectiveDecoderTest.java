@@ -0,0 +1,157 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import OpenRate.exception.ASN1Exception;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import org.junit.*;
+
+/**
+ * Tests decoding only the wanted tags of ASN.1 records.
+ *
+ * @author ian
+ */
+public class ASN1SelectiveDecoderTest
+{
+  /**
+   * The Huawei definition, wanting only some of the tags.
+   */
+  private static class SelectiveHuaweiDef extends HuaweiDef implements IASN1SelectiveDef
+  {
+    private final Collection<String> wantedTagPaths;
+
+    SelectiveHuaweiDef(String... wantedTagPaths)
+    {
+      this.wantedTagPaths = Arrays.asList(wantedTagPaths);
+      initTags();
+    }
+
+    @Override
+    public Collection<String> getWantedTagPaths()
+    {
+      return wantedTagPaths;
+    }
+  }
+
+  public ASN1SelectiveDecoderTest() {
+  }
+
+  /**
+   * Test decoding some of the fields of the captured CDR.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testDecodeCDR() throws Exception {
+    System.out.println("decodeCDR");
+
+    ASN1SelectiveDecoder instance = new ASN1SelectiveDecoder(new SelectiveHuaweiDef("07;82", "07;84", "07;88"));
+    ASN1Cursor cursor = new ASN1Cursor();
+    cursor.setDataToParse(ASN1CursorTest.TEST_CDR);
+
+    // the record type is the first element
+    cursor.next();
+    StringBuilder cdrType = new StringBuilder();
+    cursor.appendBytes(cdrType);
+    Assert.assertEquals("07", cdrType.toString());
+
+    LinkedHashMap<String, String> result = instance.decodeFields(cursor, cdrType.toString());
+    Assert.assertEquals("{IMSI=260203114609127, MSISDN=9132952387523, Timestamp=1212312343482;0100}", result.toString());
+    Assert.assertFalse(cursor.ready());
+
+    // nothing wanted for this record type
+    cursor.setDataToParse(ASN1CursorTest.TEST_CDR);
+    cursor.next();
+    Assert.assertEquals(0, instance.decodeFields(cursor, "00").size());
+    Assert.assertFalse(cursor.ready());
+  }
+
+  /**
+   * Test that unwanted subtrees are skipped without being parsed, and that
+   * wanted subtrees are entered, with both definite and indefinite lengths.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testSkipSubtrees() throws Exception {
+    System.out.println("skipSubtrees");
+
+    ASN1SelectiveDecoder instance = new ASN1SelectiveDecoder(new SelectiveHuaweiDef("a2;83", "a3;84"));
+    ASN1Cursor cursor = new ASN1Cursor();
+
+    // the contents of a1 are not valid BER, so would fail if they were parsed
+    cursor.setDataToParse(new byte[]{
+      (byte) 0xA1, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+      (byte) 0xA2, 6, (byte) 0x81, 1, 1, (byte) 0x83, 1, 9,
+      (byte) 0xA3, (byte) 0x80, (byte) 0x84, 1, 5, 0, 0,
+      (byte) 0x83, 1, 7});
+
+    final StringBuilder found = new StringBuilder();
+    int count = instance.decode(cursor, "", new IASN1FieldHandler()
+    {
+      @Override
+      public void field(String tagPath, ASN1Cursor cursor) throws ASN1Exception
+      {
+        found.append(tagPath).append('=').append(cursor.getInteger()).append(' ');
+      }
+    });
+
+    Assert.assertEquals(2, count);
+    Assert.assertEquals("a2;83=9 a3;84=5 ", found.toString());
+  }
+}
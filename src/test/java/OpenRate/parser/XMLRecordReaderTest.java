@@ -0,0 +1,203 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.parser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import javax.xml.stream.XMLStreamException;
+import org.junit.*;
+
+/**
+ * Tests pulling records out of an XML stream.
+ *
+ * @author ian
+ */
+public class XMLRecordReaderTest
+{
+  // A stream with two records, the first without any line breaks
+  private static final String TEST_XML =
+          "<?xml version=\"1.0\"?>\n" +
+          "<customers>" +
+          "<customer><id>1</id><account><number>123</number><pricePlan>Bas</pricePlan></account>" +
+          "<history><event>a</event><event>b</event></history></customer>\n" +
+          "<customer>\n" +
+          "  <id>2</id>\n" +
+          "  <account>\n" +
+          "    <number>456</number>\n" +
+          "    <pricePlan><![CDATA[Plus & more]]></pricePlan>\n" +
+          "  </account>\n" +
+          "</customer>\n" +
+          "</customers>\n";
+
+  /**
+   * Collects the values delivered by the reader.
+   */
+  private static class Collector implements IXmlParser
+  {
+    LinkedHashMap<String, String> values = new LinkedHashMap<>();
+
+    @Override
+    public void setAttribute(String name, String value)
+    {
+      values.put(name, value);
+    }
+  }
+
+  public XMLRecordReaderTest() {
+  }
+
+  /**
+   * Test reading all of the values of each record.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testNextRecord() throws Exception {
+    System.out.println("nextRecord");
+
+    XMLRecordReader instance = new XMLRecordReader(new ByteArrayInputStream(TEST_XML.getBytes(StandardCharsets.UTF_8)), "customer", null);
+
+    Collector client = new Collector();
+    Assert.assertTrue(instance.nextRecord(client));
+    Assert.assertEquals("1", client.values.get("customer.id"));
+    Assert.assertEquals("123", client.values.get("customer.account.number"));
+    Assert.assertEquals("Bas", client.values.get("customer.account.pricePlan"));
+    Assert.assertEquals("b", client.values.get("customer.history.event"));
+
+    client = new Collector();
+    Assert.assertTrue(instance.nextRecord(client));
+    Assert.assertEquals("2", client.values.get("customer.id"));
+    Assert.assertEquals("456", client.values.get("customer.account.number"));
+    Assert.assertEquals("Plus & more", client.values.get("customer.account.pricePlan"));
+    Assert.assertFalse(client.values.containsKey("customer.history.event"));
+
+    Assert.assertFalse(instance.nextRecord(new Collector()));
+    Assert.assertEquals(0, instance.getSkippedCount());
+    instance.close();
+  }
+
+  /**
+   * Test that elements which do not lead to a wanted path are skipped.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testWantedPaths() throws Exception {
+    System.out.println("wantedPaths");
+
+    XMLRecordReader instance = new XMLRecordReader(new ByteArrayInputStream(TEST_XML.getBytes(StandardCharsets.UTF_8)), "customer",
+            Arrays.asList("customer.account.number"));
+
+    Collector client = new Collector();
+    Assert.assertTrue(instance.nextRecord(client));
+    Assert.assertEquals(1, client.values.size());
+    Assert.assertEquals("123", client.values.get("customer.account.number"));
+
+    // id and history in the first record, id in the second, and the price
+    // plans are skipped
+    client = new Collector();
+    Assert.assertTrue(instance.nextRecord(client));
+    Assert.assertEquals(1, client.values.size());
+    Assert.assertEquals("456", client.values.get("customer.account.number"));
+    Assert.assertEquals(5, instance.getSkippedCount());
+
+    Assert.assertFalse(instance.nextRecord(client));
+    instance.close();
+  }
+
+  /**
+   * Test that a stream which ends inside a record is an error.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testTruncatedRecord() throws Exception {
+    System.out.println("truncatedRecord");
+
+    String truncated = "<customers><customer><id>1</id>";
+    XMLRecordReader instance = new XMLRecordReader(new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8)), "customer", null);
+
+    try {
+      instance.nextRecord(new Collector());
+      Assert.fail("Expected an exception");
+    } catch (XMLStreamException ex) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that the SAX parser gives the same paths when it is reused.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testXMLParserReuse() throws Exception {
+    System.out.println("XMLParserReuse");
+
+    Collector client = new Collector();
+    XMLParser parser = new XMLParser(client);
+
+    parser.parseXML("<record><account><number>123</number></account></record>", "record");
+    Assert.assertEquals("123", client.values.get("record.account.number"));
+
+    client.values.clear();
+    parser.parseXML("<record><account><number>456</number></account></record>", "record");
+    Assert.assertEquals("456", client.values.get("record.account.number"));
+    Assert.assertEquals(2, client.values.size());
+  }
+}
@@ -58,16 +58,21 @@ import OpenRate.OpenRate;
 import OpenRate.db.DBUtil;
 import OpenRate.exception.InitializationException;
 import OpenRate.exception.ProcessingException;
+import OpenRate.record.AbstractRecord;
+import OpenRate.record.ErrorType;
 import OpenRate.record.IRecord;
+import OpenRate.record.RecordError;
 import OpenRate.transaction.ITransactionManager;
 import OpenRate.transaction.TransactionManagerFactory;
 import OpenRate.utils.ConversionUtils;
 import TestUtils.FrameworkUtils;
+import TestUtils.TestRatingRecord;
 import TestUtils.TransactionUtils;
 import java.net.URL;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import org.junit.*;
@@ -286,6 +291,59 @@ public class AbstractDuplicateCheckTest
     }    
   }
 
+  /**
+   * Test of the batch mode duplicate check: the keys of a run of records are
+   * checked together, and a key repeated in the run is a duplicate.
+   */
+  @Test
+  public void testCheckDuplicateBatch() throws ProcessingException
+  {
+    int oldTransNum;
+
+    System.out.println("testCheckDuplicateBatch");
+
+    // Start a new transaction
+    transNumber = TransactionUtils.startTransactionPlugIn(instance);
+
+    Date eventDate = new Date();
+    ArrayList<IRecord> batch = new ArrayList<>();
+    batch.add(newBatchRecord("Batch_1", eventDate));
+    batch.add(newBatchRecord("Batch_2", eventDate));
+    batch.add(newBatchRecord("Batch_1", eventDate));
+    batch.add(newBatchRecord(null, eventDate));
+
+    instance.procValidBatch(batch);
+
+    Assert.assertFalse(batch.get(0).isErrored());
+    Assert.assertFalse(batch.get(1).isErrored());
+    Assert.assertTrue(batch.get(2).isErrored());
+
+    // records without a key go through procValidRecord
+    Assert.assertFalse(batch.get(3).isErrored());
+    Assert.assertEquals(1, ((TestRatingRecord) batch.get(3)).RecordNumber);
+
+    // the keys were added to the transaction as usual
+    Assert.assertTrue(instance.CheckDuplicate(eventDate, "Batch_2"));
+
+    // Close the transaction - this will write the rows into the table
+    oldTransNum = transNumber;
+    transNumber = TransactionUtils.endTransactionPlugIn(instance,transNumber);
+    System.out.println("testCheckDuplicateBatch: Closed transaction <" + oldTransNum + ">");
+
+    Assert.assertEquals(1, getTableRowCount(false, "Batch_1"));
+  }
+
+ /**
+  * Create a record for the batch test
+  */
+  private IRecord newBatchRecord(String key, Date eventDate)
+  {
+    TestRatingRecord tmpRecord = new TestRatingRecord();
+    tmpRecord.fields = new String[] {key};
+    tmpRecord.EventStartDate = eventDate;
+    return tmpRecord;
+  }
+
   /**
    * Test of the performance of the duplicate check cache module, during the 
    * checking and the commit phases. We expect hundreds of thousands per
@@ -810,6 +868,50 @@ public class AbstractDuplicateCheckTest
     @Override
     public IRecord procValidRecord(IRecord r) throws ProcessingException
     {
+      // mark the records that did not use the batch check
+      ((AbstractRecord) r).RecordNumber = 1;
+      return r;
+    }
+
+   /**
+    * The batch mode key, from the first field
+    *
+    * @param r input record
+    * @return the key
+    */
+    @Override
+    protected String getDuplicateKey(IRecord r)
+    {
+      return ((TestRatingRecord) r).fields[0];
+    }
+
+   /**
+    * The batch mode date
+    *
+    * @param r input record
+    * @return the date
+    */
+    @Override
+    protected Date getDuplicateDate(IRecord r)
+    {
+      return ((TestRatingRecord) r).EventStartDate;
+    }
+
+   /**
+    * Error the duplicates
+    *
+    * @param r input record
+    * @param isDuplicate the result of the check
+    * @return return record
+    */
+    @Override
+    protected IRecord procDuplicateResult(IRecord r, boolean isDuplicate)
+    {
+      if (isDuplicate)
+      {
+        r.addError(new RecordError("ERR_DUPLICATE", ErrorType.SPECIAL));
+      }
+
       return r;
     }
 
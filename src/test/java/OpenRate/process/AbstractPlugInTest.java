@@ -0,0 +1,198 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+package OpenRate.process;
+
+import OpenRate.exception.ExceptionHandler;
+import OpenRate.exception.ProcessingException;
+import OpenRate.logging.ILogger;
+import OpenRate.record.IRecord;
+import TestUtils.TestRatingRecord;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.*;
+
+/**
+ * Tests the default processing of runs of valid records.
+ *
+ * @author ian
+ */
+public class AbstractPlugInTest
+{
+  public AbstractPlugInTest() {
+  }
+
+  /**
+   * Test that a record which fails in the middle of a run is reported, and
+   * that the records after it are still processed.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testProcValidBatchFailingRecord() throws Exception {
+    System.out.println("procValidBatchFailingRecord");
+
+    TestPlugIn instance = new TestPlugIn(false);
+    instance.procValidBatch(getRun(5));
+
+    Assert.assertEquals("[1, 2, 3, 4, 5]", instance.processed.toString());
+    Assert.assertEquals(1, instance.getExceptionHandler().getExceptionList().size());
+  }
+
+  /**
+   * Test the same when the run is processed in key order.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testProcValidRecordsByKeyFailingRecord() throws Exception {
+    System.out.println("procValidRecordsByKeyFailingRecord");
+
+    TestPlugIn instance = new TestPlugIn(true);
+    instance.procValidBatch(getRun(5));
+
+    // odd records have no key, so come first, then the even ones
+    Assert.assertEquals("[1, 3, 5, 2, 4]", instance.processed.toString());
+    Assert.assertEquals(1, instance.getExceptionHandler().getExceptionList().size());
+
+    // and with a keyed record failing
+    instance = new TestPlugIn(true);
+    instance.failRecord = 2;
+    instance.procValidBatch(getRun(5));
+
+    Assert.assertEquals("[1, 3, 5, 2, 4]", instance.processed.toString());
+    Assert.assertEquals(1, instance.getExceptionHandler().getExceptionList().size());
+  }
+
+  private static List<IRecord> getRun(int count) {
+    List<IRecord> run = new ArrayList<>();
+    for (int i = 1; i <= count; i++) {
+      TestRatingRecord r = new TestRatingRecord();
+      r.setRecordID(i);
+      run.add(r);
+    }
+
+    return run;
+  }
+
+  /**
+   * Plug in which records the order of the records it processed, and fails
+   * one of them.
+   */
+  private static class TestPlugIn extends AbstractPlugIn
+  {
+    final List<Integer> processed = new ArrayList<>();
+    final boolean byKey;
+    int failRecord = 3;
+
+    TestPlugIn(boolean byKey) {
+      this.byKey = byKey;
+      setExceptionHandler(new ExceptionHandler());
+    }
+
+    @Override
+    public void procValidBatch(List<IRecord> records) throws ProcessingException {
+      if (byKey) {
+        procValidRecordsByKey(records);
+      } else {
+        super.procValidBatch(records);
+      }
+    }
+
+    @Override
+    protected String getBatchKey(IRecord r) {
+      return (r.getRecordID() % 2 == 0) ? "Key" + r.getRecordID() : null;
+    }
+
+    @Override
+    public IRecord procValidRecord(IRecord r) throws ProcessingException {
+      processed.add(r.getRecordID());
+
+      if (r.getRecordID() == failRecord) {
+        throw new ProcessingException("Failed record " + r.getRecordID(), getSymbolicName());
+      }
+
+      return r;
+    }
+
+    @Override
+    public IRecord procHeader(IRecord r) {
+      return r;
+    }
+
+    @Override
+    public IRecord procErrorRecord(IRecord r) {
+      return r;
+    }
+
+    @Override
+    public IRecord procTrailer(IRecord r) {
+      return r;
+    }
+
+    @Override
+    public ILogger getPipeLog() {
+      // discard everything
+      return (ILogger) Proxy.newProxyInstance(ILogger.class.getClassLoader(), new Class<?>[]{ILogger.class}, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          return (method.getReturnType() == boolean.class) ? Boolean.FALSE : null;
+        }
+      });
+    }
+  }
+}
@@ -672,6 +672,79 @@ public class AbstractRateCalcTest
       assertEquals(expResult, result, 0.0);
     }
 
+    /**
+     * Test of rateCalculateBatch method, of class AbstractRateCalc. The batch
+     * results must be the same as rating the values one at a time, across
+     * models, validity periods and rating types.
+     * 
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRateCalculateBatch() throws Exception {
+      System.out.println("rateCalculateBatch");
+
+      ConversionUtils conv = ConversionUtils.getConversionUtilsObject();
+      conv.setInputDateFormat("yyyy-MM-dd hh:mm:ss");
+      long[] dates = new long[] {conv.convertInputDateToUTC("2010-01-23 00:00:00"),
+                                 conv.convertInputDateToUTC("2014-06-01 00:00:00")};
+      String[] models = new String[] {"TestModel1","TestModel2","TestModel3"};
+
+      int count = 600;
+      String[] priceModels = new String[count];
+      double[] valuesToRate = new double[count];
+      long[] CDRDates = new long[count];
+      double[] ratedValues = new double[count];
+      double[] RUMsUsed = new double[count];
+
+      for (int i = 0 ; i < count ; i++)
+      {
+        priceModels[i] = models[i % models.length];
+        valuesToRate[i] = i * 7 % 400;
+        CDRDates[i] = dates[i % dates.length];
+      }
+
+      // mixed price models
+      for (int ratingType = AbstractRateCalc.RATE_TIERED ; ratingType <= AbstractRateCalc.RATE_EVENT ; ratingType++)
+      {
+        int failed = instance.rateCalculateBatch(ratingType, priceModels, valuesToRate, CDRDates, count, ratedValues, RUMsUsed);
+        assertEquals(0, failed);
+
+        for (int i = 0 ; i < count ; i++)
+        {
+          double expResult;
+          switch (ratingType)
+          {
+            case AbstractRateCalc.RATE_TIERED:
+              expResult = instance.rateCalculateTiered(priceModels[i], valuesToRate[i], CDRDates[i]);
+              break;
+            case AbstractRateCalc.RATE_THRESHOLD:
+              expResult = instance.rateCalculateThreshold(priceModels[i], valuesToRate[i], CDRDates[i]);
+              break;
+            case AbstractRateCalc.RATE_FLAT:
+              expResult = instance.rateCalculateFlat(priceModels[i], valuesToRate[i], CDRDates[i]);
+              break;
+            default:
+              expResult = instance.rateCalculateEvent(priceModels[i], (long) valuesToRate[i], CDRDates[i]);
+              break;
+          }
+          assertEquals(expResult, ratedValues[i], 0.0);
+        }
+      }
+
+      // single price model
+      int failed = instance.rateCalculateBatch(AbstractRateCalc.RATE_TIERED, "TestModel2", valuesToRate, CDRDates, 10, ratedValues, null);
+      assertEquals(0, failed);
+      for (int i = 0 ; i < 10 ; i++)
+      {
+        assertEquals(instance.rateCalculateTiered("TestModel2", valuesToRate[i], CDRDates[i]), ratedValues[i], 0.0);
+      }
+
+      // undefined price model
+      failed = instance.rateCalculateBatch(AbstractRateCalc.RATE_FLAT, "NoSuchModel", valuesToRate, CDRDates, 10, ratedValues, RUMsUsed);
+      assertEquals(10, failed);
+      assertEquals(Double.NaN, ratedValues[3], 0.0);
+    }
+
     public class AbstractRateCalcImpl extends AbstractRateCalc {
    /**
     * Override the unused event handling routines.
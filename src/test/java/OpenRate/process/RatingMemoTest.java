@@ -0,0 +1,194 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.process;
+
+import org.junit.*;
+
+/**
+ * Tests the memo of rating results.
+ *
+ * @author ian
+ */
+public class RatingMemoTest
+{
+  public RatingMemoTest() {
+  }
+
+  /**
+   * Test that sizes too large to round up to a power of two are limited to
+   * the largest memo size.
+   */
+  @Test
+  public void testMaxSize() {
+    System.out.println("MaxSize");
+
+    Assert.assertEquals(RatingMemo.MAX_SIZE, new RatingMemo(Integer.MAX_VALUE, 0).getSize());
+    Assert.assertEquals(RatingMemo.MAX_SIZE, new RatingMemo(RatingMemo.MAX_SIZE + 1, 0).getSize());
+  }
+
+  /**
+   * Test that a stored result is found again only for the same key, and only
+   * inside its validity period.
+   */
+  @Test
+  public void testGetPut() {
+    System.out.println("GetPut");
+
+    RatingMemo memo = new RatingMemo(1000, 0);
+    Assert.assertEquals(1024, memo.getSize());
+
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 60, 500, 0));
+
+    memo.put(new RatingMemo.Entry(0, AbstractRateCalc.RATE_TIERED, "Model1", 60, 100, 1000, 1.5, 60), 0);
+
+    RatingMemo.Entry result = memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 60, 500, 0);
+    Assert.assertNotNull(result);
+    Assert.assertEquals(1.5, result.ratedValue, 0.0);
+    Assert.assertEquals(60, result.RUMUsed, 0.0);
+
+    // the validity period is start inclusive, end exclusive
+    Assert.assertNotNull(memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 60, 100, 0));
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 60, 1000, 0));
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 60, 99, 0));
+
+    // different keys
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_TIERED, "Model2", 60, 500, 0));
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_FLAT, "Model1", 60, 500, 0));
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 61, 500, 0));
+
+    Assert.assertEquals(2, memo.getHitCount());
+    Assert.assertEquals(6, memo.getMissCount());
+
+    memo.resetStatistics();
+    Assert.assertEquals(0, memo.getHitCount());
+    Assert.assertEquals(0, memo.getMissCount());
+  }
+
+  /**
+   * Test that a change of the price model generation empties the memo.
+   */
+  @Test
+  public void testGeneration() {
+    System.out.println("Generation");
+
+    RatingMemo memo = new RatingMemo(16, 3);
+
+    memo.put(new RatingMemo.Entry(3, AbstractRateCalc.RATE_EVENT, "Model1", 1, Long.MIN_VALUE, Long.MAX_VALUE, 0.1, 1), 3);
+    Assert.assertNotNull(memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 3));
+
+    // reloaded
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 5));
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 5));
+  }
+
+  /**
+   * Test that a result worked out while the price model data was reloaded is
+   * neither stored nor returned, and that a rating which started before the
+   * reload does not take the memo back to the old generation.
+   */
+  @Test
+  public void testReloadDuringRating() {
+    System.out.println("ReloadDuringRating");
+
+    RatingMemo memo = new RatingMemo(16, 4);
+
+    // the rating started at generation 4, the reload finished at generation 6
+    memo.put(new RatingMemo.Entry(4, AbstractRateCalc.RATE_EVENT, "Model1", 1, Long.MIN_VALUE, Long.MAX_VALUE, 0.1, 1), 6);
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 6));
+
+    // a result from the new data
+    memo.put(new RatingMemo.Entry(6, AbstractRateCalc.RATE_EVENT, "Model1", 1, Long.MIN_VALUE, Long.MAX_VALUE, 0.2, 1), 6);
+    Assert.assertEquals(0.2, memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 6).ratedValue, 0.0);
+
+    // a rating still working with the old generation does not see it, and
+    // does not empty the memo
+    Assert.assertNull(memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 4));
+    Assert.assertNotNull(memo.get(AbstractRateCalc.RATE_EVENT, "Model1", 1, 0, 6));
+  }
+
+  /**
+   * Test that the memo stays bounded: many more keys than slots can be stored
+   * and the size does not change.
+   */
+  @Test
+  public void testBounded() {
+    System.out.println("Bounded");
+
+    RatingMemo memo = new RatingMemo(64, 0);
+
+    for (int i = 0 ; i < 10000 ; i++)
+    {
+      memo.put(new RatingMemo.Entry(0, AbstractRateCalc.RATE_TIERED, "Model1", i, 0, 1000, i, i), 0);
+    }
+
+    Assert.assertEquals(64, memo.getSize());
+
+    // the last one stored is always there
+    RatingMemo.Entry result = memo.get(AbstractRateCalc.RATE_TIERED, "Model1", 9999, 0, 0);
+    Assert.assertNotNull(result);
+    Assert.assertEquals(9999, result.ratedValue, 0.0);
+
+    // and the results found are always the right ones
+    for (int i = 0 ; i < 10000 ; i++)
+    {
+      result = memo.get(AbstractRateCalc.RATE_TIERED, "Model1", i, 0, 0);
+      if (result != null)
+      {
+        Assert.assertEquals(i, result.ratedValue, 0.0);
+      }
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import org.junit.*;
+
+/**
+ * Tests the lazy field view.
+ *
+ * @author ian
+ */
+public class FieldViewTest
+{
+  public FieldViewTest() {
+  }
+
+  /**
+   * Test of getField and getFieldCount, of class FieldView.
+   */
+  @Test
+  public void testGetField() {
+    System.out.println("getField");
+
+    FieldView instance = new FieldView("a;bb;;ccc;", ';');
+    Assert.assertEquals(5, instance.getFieldCount());
+    Assert.assertEquals("a", instance.getField(0));
+    Assert.assertEquals("bb", instance.getField(1));
+    Assert.assertEquals("", instance.getField(2));
+    Assert.assertEquals("ccc", instance.getField(3));
+    Assert.assertEquals("", instance.getField(4));
+
+    // Same field twice gives the same string
+    Assert.assertSame(instance.getField(1), instance.getField(1));
+
+    // A record with no delimiter has one field
+    instance = new FieldView("single", ';');
+    Assert.assertEquals(1, instance.getFieldCount());
+    Assert.assertEquals("single", instance.getField(0));
+
+    // Wide record, forces the offsets to grow
+    StringBuilder wide = new StringBuilder("0");
+    for (int i = 1 ; i < 80 ; i++) {
+      wide.append('\t').append(i);
+    }
+    instance = new FieldView(wide.toString(), '\t');
+    Assert.assertEquals(80, instance.getFieldCount());
+    Assert.assertEquals("79", instance.getField(79));
+    Assert.assertArrayEquals(wide.toString().split("\t"), instance.toArray());
+
+    try {
+      instance.getField(80);
+      Assert.fail("Expected exception");
+    } catch (ArrayIndexOutOfBoundsException ex) {
+      // expected
+    }
+  }
+
+  /**
+   * Test of getLong and getDouble, of class FieldView.
+   */
+  @Test
+  public void testNumericFields() {
+    System.out.println("numericFields");
+
+    FieldView instance = new FieldView("123,-45,+6,12.5,-0.001,1e3,9223372036854775807,x,", ',');
+    Assert.assertEquals(123, instance.getLong(0));
+    Assert.assertEquals(-45, instance.getLong(1));
+    Assert.assertEquals(6, instance.getLong(2));
+    Assert.assertEquals(12.5, instance.getDouble(3), 0);
+    Assert.assertEquals(-0.001, instance.getDouble(4), 0);
+    Assert.assertEquals(1000, instance.getDouble(5), 0);
+    Assert.assertEquals(Long.MAX_VALUE, instance.getLong(6));
+    Assert.assertEquals(123.0, instance.getDouble(0), 0);
+
+    try {
+      instance.getLong(7);
+      Assert.fail("Expected exception");
+    } catch (NumberFormatException ex) {
+      // expected
+    }
+
+    try {
+      instance.getDouble(8);
+      Assert.fail("Expected exception");
+    } catch (NumberFormatException ex) {
+      // expected
+    }
+  }
+
+  /**
+   * Test of setField and getData, of class FieldView.
+   */
+  @Test
+  public void testSetField() {
+    System.out.println("setField");
+
+    String original = "a;b;c";
+    FieldView instance = new FieldView(original, ';');
+
+    // unchanged views return the original data
+    Assert.assertSame(original, instance.getData());
+    Assert.assertFalse(instance.isModified());
+
+    instance.setField(1, "42");
+    Assert.assertTrue(instance.isModified());
+    Assert.assertEquals("42", instance.getField(1));
+    Assert.assertEquals(42, instance.getLong(1));
+    Assert.assertEquals("a;42;c", instance.getData());
+    Assert.assertEquals("a;b;c", original);
+  }
+}
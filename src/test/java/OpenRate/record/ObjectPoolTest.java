@@ -0,0 +1,204 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import TestUtils.TestRatingRecord;
+import java.util.ArrayList;
+import org.junit.*;
+
+/**
+ * Tests the recycling of records through an ObjectPool.
+ *
+ * @author ian
+ */
+public class ObjectPoolTest
+{
+  private static ObjectPool<TestRatingRecord> recordPool;
+
+  public ObjectPoolTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    recordPool = new ObjectPool<TestRatingRecord>("TestRatingRecord", 1000) {
+      @Override
+      protected TestRatingRecord create() {
+        return new TestRatingRecord();
+      }
+    };
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+  }
+
+  /**
+   * Test that a released record is handed out again, and only once.
+   */
+  @Test
+  public void testAcquireRelease() {
+    System.out.println("AcquireRelease");
+
+    TestRatingRecord first = recordPool.acquire();
+    Assert.assertSame(recordPool, first.getOwnerPool());
+    Assert.assertFalse(first.isReleased());
+
+    first.release();
+    Assert.assertTrue(first.isReleased());
+
+    // a second release is ignored
+    long released = recordPool.getReleasedCount();
+    first.release();
+    Assert.assertEquals(released, recordPool.getReleasedCount());
+
+    TestRatingRecord second = recordPool.acquire();
+    Assert.assertSame(first, second);
+    Assert.assertFalse(second.isReleased());
+
+    TestRatingRecord third = recordPool.acquire();
+    Assert.assertNotSame(second, third);
+
+    second.release();
+    third.release();
+  }
+
+  /**
+   * Test that a released rating record comes back clean, and that its charge
+   * packets and balance impacts go back to their own pools.
+   */
+  @Test
+  public void testResetRatingRecord() {
+    System.out.println("ResetRatingRecord");
+
+    TestRatingRecord instance = recordPool.acquire();
+    instance.setRUMValue("OPT_DUR", 60);
+    instance.addError(new RecordError("ERR_TEST", ErrorType.SPECIAL));
+    instance.addOutput("TestOutput");
+
+    ChargePacket tmpCP = instance.newChargePacket();
+    tmpCP.packetType = "R";
+    instance.addChargePacket(tmpCP);
+    ChargePacket tmpClone = instance.cloneChargePacket(tmpCP);
+    Assert.assertEquals("R", tmpClone.packetType);
+    Assert.assertNotNull(tmpCP.getOwnerPool());
+
+    BalanceImpact tmpBI = instance.newBalanceImpact();
+    tmpBI.balanceDelta = 10;
+    instance.addBalanceImpact(tmpBI);
+    Assert.assertNotNull(tmpBI.getOwnerPool());
+
+    instance.release();
+
+    Assert.assertTrue(tmpCP.isReleased());
+    Assert.assertTrue(tmpBI.isReleased());
+    Assert.assertNull(tmpCP.packetType);
+    Assert.assertEquals(0, tmpBI.balanceDelta, 0.000001);
+
+    TestRatingRecord reused = recordPool.acquire();
+    Assert.assertSame(instance, reused);
+    Assert.assertEquals(0, reused.getChargePacketCount());
+    Assert.assertEquals(0, reused.getBalanceImpactCount());
+    Assert.assertEquals(0, reused.getRUMValue("OPT_DUR"), 0.000001);
+    Assert.assertFalse(reused.isErrored());
+    Assert.assertTrue(reused.isValid());
+    Assert.assertTrue(reused.getOutputs().isEmpty());
+
+    // unpooled records use unpooled charge packets
+    TestRatingRecord unpooled = new TestRatingRecord();
+    Assert.assertNull(unpooled.newChargePacket().getOwnerPool());
+
+    reused.release();
+  }
+
+  /**
+   * Test that the charge packets dropped by replacing the packets of a pooled
+   * record go back to their pool, while those carried over stay in use.
+   */
+  @Test
+  public void testReplaceChargePackets() {
+    System.out.println("ReplaceChargePackets");
+
+    TestRatingRecord instance = recordPool.acquire();
+
+    ChargePacket tmpKept = instance.newChargePacket();
+    instance.addChargePacket(tmpKept);
+    ChargePacket tmpReplaced = instance.newChargePacket();
+    instance.addChargePacket(tmpReplaced);
+
+    // expand the second packet into two clones, as the price group handling does
+    ArrayList<ChargePacket> tmpCPList = new ArrayList<>();
+    tmpCPList.add(tmpKept);
+    ChargePacket tmpClone1 = instance.cloneChargePacket(tmpReplaced);
+    tmpCPList.add(tmpClone1);
+    ChargePacket tmpClone2 = instance.cloneChargePacket(tmpReplaced);
+    tmpCPList.add(tmpClone2);
+    instance.replaceChargePackets(tmpCPList);
+
+    Assert.assertEquals(3, instance.getChargePacketCount());
+    Assert.assertTrue(tmpReplaced.isReleased());
+    Assert.assertFalse(tmpKept.isReleased());
+    Assert.assertFalse(tmpClone1.isReleased());
+
+    BalanceImpact tmpBI = instance.newBalanceImpact();
+    instance.addBalanceImpact(tmpBI);
+    instance.replaceBalanceImpacts(new ArrayList<BalanceImpact>());
+    Assert.assertTrue(tmpBI.isReleased());
+
+    instance.release();
+    Assert.assertTrue(tmpKept.isReleased());
+    Assert.assertTrue(tmpClone2.isReleased());
+  }
+}
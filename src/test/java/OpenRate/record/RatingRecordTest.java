@@ -0,0 +1,215 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import TestUtils.TestRatingRecord;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import org.junit.*;
+
+/**
+ * Tests the RUM handling of the RatingRecord.
+ *
+ * @author ian
+ */
+public class RatingRecordTest
+{
+  public RatingRecordTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+  }
+
+  /**
+   * Test of the name based RUM methods, of class RatingRecord.
+   */
+  @Test
+  public void testRUMValueByName() {
+    System.out.println("RUMValueByName");
+
+    TestRatingRecord instance = new TestRatingRecord();
+
+    // Unknown RUMs return 0 and can't be updated
+    Assert.assertEquals(0, instance.getRUMValue("RRT_NOT_THERE"), 0.000001);
+    Assert.assertFalse(instance.updateRUMValue("RRT_NOT_THERE", 10));
+
+    // Set and update
+    Assert.assertTrue(instance.setRUMValue("RRT_DUR", 60));
+    Assert.assertFalse(instance.setRUMValue("RRT_DUR", 90));
+    Assert.assertTrue(instance.updateRUMValue("RRT_DUR", -20));
+    Assert.assertEquals(40, instance.getRUMValue("RRT_DUR"), 0.000001);
+    Assert.assertEquals(60, instance.getOriginalRUMValue("RRT_DUR"), 0.000001);
+  }
+
+  /**
+   * Test that the ID and name based RUM methods see the same values.
+   */
+  @Test
+  public void testRUMValueByID() {
+    System.out.println("RUMValueByID");
+
+    TestRatingRecord instance = new TestRatingRecord();
+    int durID = RUMRegistry.registerRUM("RRT_ID_DUR");
+    int evtID = RUMRegistry.registerRUM("RRT_ID_EVT");
+
+    Assert.assertEquals(durID, RUMRegistry.registerRUM("RRT_ID_DUR"));
+    Assert.assertEquals("RRT_ID_EVT", RUMRegistry.getRUMName(evtID));
+
+    Assert.assertTrue(instance.setRUMValue(evtID, 1));
+    Assert.assertTrue(instance.setRUMValue("RRT_ID_DUR", 30));
+    Assert.assertTrue(instance.updateRUMValue(durID, 5));
+    Assert.assertEquals(35, instance.getRUMValue(durID), 0.000001);
+    Assert.assertEquals(35, instance.getRUMValue("RRT_ID_DUR"), 0.000001);
+    Assert.assertEquals(1, instance.getRUMValue("RRT_ID_EVT"), 0.000001);
+
+    // RUMs are listed in the order they were set
+    ArrayList<RUMInfo> rums = instance.getRUMs();
+    Assert.assertEquals(2, rums.size());
+    Assert.assertEquals("RRT_ID_EVT", rums.get(0).RUMName);
+    Assert.assertEquals("RRT_ID_DUR", rums.get(1).RUMName);
+    Assert.assertEquals(30, rums.get(1).OrigQuantity, 0.000001);
+    Assert.assertEquals(35, rums.get(1).RUMQuantity, 0.000001);
+  }
+
+  /**
+   * Test that the RUMs survive serialisation.
+   */
+  @Test
+  public void testRUMSerialisation() throws Exception {
+    System.out.println("RUMSerialisation");
+
+    TestRatingRecord instance = new TestRatingRecord();
+    instance.setRUMValue("RRT_SER_DUR", 120);
+    instance.updateRUMValue("RRT_SER_DUR", -60);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+      oos.writeObject(instance);
+    }
+
+    TestRatingRecord result;
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+      result = (TestRatingRecord) ois.readObject();
+    }
+
+    Assert.assertEquals(1, result.getRUMCount());
+    Assert.assertEquals(60, result.getRUMValue("RRT_SER_DUR"), 0.000001);
+    Assert.assertEquals(120, result.getOriginalRUMValue("RRT_SER_DUR"), 0.000001);
+  }
+
+  /**
+   * Test that the field view is still available after the fields have been
+   * materialised, and carries the changes made through the array.
+   */
+  @Test
+  public void testFieldViewAfterGetFields() {
+    System.out.println("FieldViewAfterGetFields");
+
+    TestRatingRecord instance = new TestRatingRecord();
+    instance.setOriginalData("A;B;C");
+    instance.mapFields(';');
+
+    String[] fields = instance.getFields();
+    Assert.assertEquals(3, fields.length);
+    instance.setField(1, "X");
+    Assert.assertEquals("X", fields[1]);
+
+    Assert.assertNotNull(instance.getFieldView());
+    Assert.assertEquals("A;X;C", instance.getFieldView().getData());
+    Assert.assertEquals("X", instance.getField(1));
+
+    // the array is still the one the record uses
+    instance.setField(2, "Y");
+    Assert.assertEquals("Y", fields[2]);
+    Assert.assertEquals("A;X;Y", instance.getFieldView().getData());
+  }
+
+  /**
+   * Test that writes to the array from getFields() are not lost when they are
+   * interleaved with reads of the field view.
+   */
+  @Test
+  public void testFieldsInterleavedWithFieldView() {
+    System.out.println("FieldsInterleavedWithFieldView");
+
+    TestRatingRecord instance = new TestRatingRecord();
+    instance.setOriginalData("A;B;C;D");
+    instance.mapFields(';');
+
+    String[] fields = instance.getFields();
+    fields[0] = "W";
+    Assert.assertEquals("W;B;C;D", instance.getFieldView().getData());
+
+    // the array is not detached by reading the view
+    fields[1] = "X";
+    Assert.assertSame(fields, instance.getFields());
+    Assert.assertSame(fields, instance.fields);
+    Assert.assertEquals("X", instance.getField(1));
+    Assert.assertEquals("W;X;C;D", instance.getFieldView().getData());
+
+    fields[3] = null;
+    Assert.assertEquals("W;X;C;", instance.getFieldView().getData());
+    Assert.assertEquals(4, instance.getFieldCount());
+  }
+}
@@ -0,0 +1,307 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record;
+
+import TestUtils.TestRatingRecord;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.util.Date;
+import org.junit.*;
+
+/**
+ * Tests the binary record codec.
+ *
+ * @author ian
+ */
+public class RecordCodecTest
+{
+  private static RecordCodec codec;
+
+  public RecordCodecTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    codec = new RecordCodec();
+    codec.registerType(RecordCodec.FIRST_USER_TYPE, TestRatingRecord.class);
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+  }
+
+  /**
+   * Test that the primitive values survive the round trip.
+   */
+  @Test
+  public void testPrimitives() throws Exception {
+    System.out.println("Primitives");
+
+    BinaryRecordOutput out = new BinaryRecordOutput(16);
+    double[] doubles = {0, -0.0, 1, -1, 60, 0.15, 1e20, -123456789, Double.NaN, Double.MAX_VALUE};
+    for (double d : doubles) {
+      out.writeDouble(d);
+    }
+    out.writeVarInt(Integer.MIN_VALUE);
+    out.writeVarLong(Long.MAX_VALUE);
+    out.writeUnsignedVarInt(300);
+    out.writeString("\u00dcn\u00efc\u00f8d\u00e9 \ud83d\udcde");
+    out.writeString("\u00dcn\u00efc\u00f8d\u00e9 \ud83d\udcde");
+    out.writeString(null);
+    out.writeLiteral("");
+    out.writeDate(new Date(1356998400000L));
+
+    BinaryRecordInput in = new BinaryRecordInput(out.toByteArray());
+    for (double d : doubles) {
+      Assert.assertEquals(Double.doubleToLongBits(d), Double.doubleToLongBits(in.readDouble()));
+    }
+    Assert.assertEquals(Integer.MIN_VALUE, in.readVarInt());
+    Assert.assertEquals(Long.MAX_VALUE, in.readVarLong());
+    Assert.assertEquals(300, in.readUnsignedVarInt());
+    Assert.assertEquals("\u00dcn\u00efc\u00f8d\u00e9 \ud83d\udcde", in.readString());
+    Assert.assertEquals("\u00dcn\u00efc\u00f8d\u00e9 \ud83d\udcde", in.readString());
+    Assert.assertNull(in.readString());
+    Assert.assertEquals("", in.readString());
+    Assert.assertEquals(1356998400000L, in.readDate().getTime());
+    Assert.assertEquals(0, in.remaining());
+  }
+
+  /**
+   * Test the round trip of a rating record with all of its parts.
+   */
+  @Test
+  public void testRatingRecord() throws Exception {
+    System.out.println("RatingRecord");
+
+    TestRatingRecord instance = newRatingRecord();
+
+    byte[] encoded = codec.encode(instance);
+    TestRatingRecord result = (TestRatingRecord) codec.decode(encoded);
+
+    Assert.assertEquals(42, result.RecordNumber);
+    Assert.assertFalse(result.isValid());
+    Assert.assertEquals(1, result.getErrors().size());
+    Assert.assertSame(ErrorType.DATA_VALIDATION, result.getErrors().get(0).getType());
+    Assert.assertEquals("ERR_ZONE", result.getErrors().get(0).getMessage());
+    Assert.assertEquals("Zoning", result.getErrors().get(0).getModuleName());
+    Assert.assertEquals(instance.getOutputs(), result.getOutputs());
+
+    Assert.assertArrayEquals(instance.fields, result.fields);
+    Assert.assertEquals(instance.OriginalData, result.OriginalData);
+    Assert.assertEquals("TEL", result.Service);
+    Assert.assertEquals(instance.EventStartDate, result.EventStartDate);
+    Assert.assertNull(result.EventEndDate);
+    Assert.assertEquals(201301, result.CounterCycle);
+
+    Assert.assertEquals(45, result.getRUMValue("CODEC_DUR"), 0.000001);
+    Assert.assertEquals(60, result.getOriginalRUMValue("CODEC_DUR"), 0.000001);
+    Assert.assertEquals(1, result.getRUMValue("CODEC_EVT"), 0.000001);
+
+    Assert.assertEquals(2, result.getChargePacketCount());
+    ChargePacket tmpCP = result.getChargePacket(1);
+    Assert.assertEquals("Peak", tmpCP.timeResult);
+    Assert.assertEquals(0.0123, tmpCP.chargedValue, 0.0000001);
+    Assert.assertEquals(1, tmpCP.breakDown.size());
+    Assert.assertEquals(0.0123, tmpCP.breakDown.get(0).ratedAmount, 0.0000001);
+    Assert.assertNull(result.getChargePacket(0).breakDown);
+
+    Assert.assertEquals(1, result.getBalanceImpactCount());
+    Assert.assertEquals(-0.0123, result.getBalanceImpact(0).balanceDelta, 0.0000001);
+    Assert.assertEquals("EUR", result.getBalanceImpact(0).Resource);
+
+    Assert.assertEquals(instance.getDumpInfo(), result.getDumpInfo());
+  }
+
+  /**
+   * Test a stream of records, with the dictionary shared between them.
+   */
+  @Test
+  public void testStream() throws Exception {
+    System.out.println("Stream");
+
+    HeaderRecord header = new HeaderRecord();
+    header.setStreamName("CDR_20130101");
+    header.setTransactionNumber(7);
+    TrailerRecord trailer = new TrailerRecord();
+    trailer.setStreamName("CDR_20130101");
+    trailer.setRecordCount(2);
+
+    BinaryRecordOutput out = new BinaryRecordOutput();
+    codec.writeStreamHeader(out);
+    codec.write(header, out);
+    int start = out.size();
+    codec.write(newRatingRecord(), out);
+    int firstSize = out.size() - start;
+    codec.write(newRatingRecord(), out);
+    int secondSize = out.size() - start - firstSize;
+    codec.write(new FlatRecord("a;b;c", 3), out);
+    codec.write(trailer, out);
+
+    // the second record refers to the strings written with the first
+    Assert.assertTrue(secondSize < firstSize);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    out.writeTo(bytes);
+
+    // read frame by frame from a stream
+    ByteArrayInputStream stream = new ByteArrayInputStream(bytes.toByteArray());
+    BinaryRecordInput in = new BinaryRecordInput();
+    Assert.assertTrue(in.readFrame(stream));
+    Assert.assertNull(codec.read(in));
+
+    Assert.assertTrue(in.readFrame(stream));
+    HeaderRecord resultHeader = (HeaderRecord) codec.read(in);
+    Assert.assertEquals("CDR_20130101", resultHeader.getStreamName());
+    Assert.assertEquals(7, resultHeader.getTransactionNumber());
+    Assert.assertFalse(resultHeader.isValid());
+
+    for (int i = 0 ; i < 2 ; i++) {
+      Assert.assertTrue(in.readFrame(stream));
+      Assert.assertEquals("TEL", ((TestRatingRecord) codec.read(in)).Service);
+    }
+
+    Assert.assertTrue(in.readFrame(stream));
+    Assert.assertEquals("a;b;c", ((FlatRecord) codec.read(in)).getData());
+
+    Assert.assertTrue(in.readFrame(stream));
+    Assert.assertEquals(2, ((TrailerRecord) codec.read(in)).getRecordCount());
+    Assert.assertFalse(in.readFrame(stream));
+  }
+
+  /**
+   * Test the handling of unregistered types and unknown versions.
+   */
+  @Test
+  public void testUnknownTypes() throws Exception {
+    System.out.println("UnknownTypes");
+
+    try {
+      codec.encode(new DBRecord());
+      Assert.fail("Unregistered type encoded");
+    } catch (NotSerializableException ex) {
+      // expected
+    }
+
+    try {
+      new RecordCodec().decode(codec.encode(newRatingRecord()));
+      Assert.fail("Unregistered type decoded");
+    } catch (InvalidClassException ex) {
+      // expected
+    }
+
+    // a layout version from the future
+    byte[] encoded = codec.encode(new FlatRecord("x"));
+    BinaryRecordInput in = new BinaryRecordInput(encoded);
+
+    // skip the stream header frame, the record frame length and type, and the
+    // 9 bytes of the abstract record fields
+    int versionOffset = 4 + in.readFixedInt() + 4 + 1 + 9;
+    encoded[versionOffset] = 99;
+
+    try {
+      codec.decode(encoded);
+      Assert.fail("Unknown version decoded");
+    } catch (InvalidClassException ex) {
+      // expected
+    }
+  }
+
+  /**
+   * Create a rating record with all of the parts filled in
+   */
+  private TestRatingRecord newRatingRecord() {
+    TestRatingRecord instance = new TestRatingRecord();
+    instance.RecordNumber = 42;
+    instance.OriginalData = "0123456;0987654;20130101120000;60";
+    instance.fields = instance.OriginalData.split(";");
+    instance.Service = "TEL";
+    instance.CounterCycle = 201301;
+    instance.EventStartDate = new Date(1357041600000L);
+    instance.addOutput("SpillOutput");
+    instance.addError(new RecordError("ERR_ZONE", ErrorType.DATA_VALIDATION, "Zoning"));
+
+    instance.setRUMValue("CODEC_DUR", 60);
+    instance.updateRUMValue("CODEC_DUR", -15);
+    instance.setRUMValue("CODEC_EVT", 1);
+
+    ChargePacket tmpCP = instance.newChargePacket();
+    tmpCP.packetType = "R";
+    tmpCP.ratePlanName = "RP_DEFAULT";
+    tmpCP.rumName = "CODEC_DUR";
+    tmpCP.rumQuantity = 45;
+    instance.addChargePacket(tmpCP);
+
+    tmpCP = instance.cloneChargePacket(tmpCP);
+    tmpCP.timeResult = "Peak";
+    tmpCP.chargedValue = 0.0123;
+    tmpCP.breakDown = new java.util.ArrayList<>();
+    RatingBreakdown tmpRB = new RatingBreakdown();
+    tmpRB.ratedAmount = 0.0123;
+    tmpRB.beatCount = 45;
+    tmpCP.breakDown.add(tmpRB);
+    instance.addChargePacket(tmpCP);
+
+    BalanceImpact tmpBI = instance.newBalanceImpact();
+    tmpBI.Resource = "EUR";
+    tmpBI.balanceDelta = -0.0123;
+    tmpBI.balanceGroup = 1001;
+    instance.addBalanceImpact(tmpBI);
+
+    return instance;
+  }
+}
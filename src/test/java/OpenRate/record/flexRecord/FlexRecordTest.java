@@ -0,0 +1,224 @@
+/* ====================================================================
+ * Limited Evaluation License:
+ *
+ * This software is open source, but licensed. The license with this package
+ * is an evaluation license, which may not be used for productive systems. If
+ * you want a full license, please contact us.
+ *
+ * The exclusive owner of this work is the OpenRate project.
+ * This work, including all associated documents and components
+ * is Copyright of the OpenRate project 2006-2014.
+ *
+ * The following restrictions apply unless they are expressly relaxed in a
+ * contractual agreement between the license holder or one of its officially
+ * assigned agents and you or your organisation:
+ *
+ * 1) This work may not be disclosed, either in full or in part, in any form
+ *    electronic or physical, to any third party. This includes both in the
+ *    form of source code and compiled modules.
+ * 2) This work contains trade secrets in the form of architecture, algorithms
+ *    methods and technologies. These trade secrets may not be disclosed to
+ *    third parties in any form, either directly or in summary or paraphrased
+ *    form, nor may these trade secrets be used to construct products of a
+ *    similar or competing nature either by you or third parties.
+ * 3) This work may not be included in full or in part in any application.
+ * 4) You may not remove or alter any proprietary legends or notices contained
+ *    in or on this work.
+ * 5) This software may not be reverse-engineered or otherwise decompiled, if
+ *    you received this work in a compiled form.
+ * 6) This work is licensed, not sold. Possession of this software does not
+ *    imply or grant any right to you.
+ * 7) You agree to disclose any changes to this work to the copyright holder
+ *    and that the copyright holder may include any such changes at its own
+ *    discretion into the work
+ * 8) You agree not to derive other works from the trade secrets in this work,
+ *    and that any such derivation may make you liable to pay damages to the
+ *    copyright holder
+ * 9) You agree to use this software exclusively for evaluation purposes, and
+ *    that you shall not use this software to derive commercial profit or
+ *    support your business or personal activities.
+ *
+ * This software is provided "as is" and any expressed or impled warranties,
+ * including, but not limited to, the impled warranties of merchantability
+ * and fitness for a particular purpose are disclaimed. In no event shall
+ * The OpenRate Project or its officially assigned agents be liable to any
+ * direct, indirect, incidental, special, exemplary, or consequential damages
+ * (including but not limited to, procurement of substitute goods or services;
+ * Loss of use, data, or profits; or any business interruption) however caused
+ * and on theory of liability, whether in contract, strict liability, or tort
+ * (including negligence or otherwise) arising in any way out of the use of
+ * this software, even if advised of the possibility of such damage.
+ * This software contains portions by The Apache Software Foundation, Robert
+ * Half International.
+ * ====================================================================
+ */
+
+package OpenRate.record.flexRecord;
+
+import OpenRate.record.AbstractRecord;
+import OpenRate.record.IRecordFactory;
+import OpenRate.record.RecordCodec;
+import org.junit.*;
+
+/**
+ * Tests the compiled field accessors of the FlexRecord.
+ *
+ * @author TGDSPIA1
+ */
+public class FlexRecordTest
+{
+  private static FlexRecord master;
+
+  public FlexRecordTest() {
+  }
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    // ROOT;Name;Duration;Amount, with a child block CHARGE;Resource;Value
+    master = new FlexRecord("ROOT",0);
+    master.AddBlockDef("", "ROOT", 3);
+    master.AddFieldDef("ROOT", "Name", 1, "STRING");
+    master.AddFieldDef("ROOT", "Duration", 2, "INTEGER");
+    master.AddFieldDef("ROOT", "Amount", 3, "FLOAT");
+    master.MapSeparatorDef("ROOT", ";");
+    master.AddMappingDef("ROOT", 0, "Name");
+    master.AddMappingDef("ROOT", 1, "Duration");
+    master.AddMappingDef("ROOT", 2, "Amount");
+
+    master.AddBlockDef("ROOT", "CHARGE", 2);
+    master.AddFieldDef("ROOT.CHARGE", "Resource", 1, "STRING");
+    master.AddFieldDef("ROOT.CHARGE", "Value", 2, "FLOAT");
+    master.MapSeparatorDef("ROOT.CHARGE", "\\|");
+    master.AddMappingDef("ROOT.CHARGE", 0, "Resource");
+    master.AddMappingDef("ROOT.CHARGE", 1, "Value");
+  }
+
+  private FlexRecord newRecord() {
+    FlexRecord result = new FlexRecord("ROOT",0);
+    result.setDefRoot(master.getDefRoot());
+    return result;
+  }
+
+  /**
+   * Test of compileFieldAccessor and the accessor methods, of class FlexRecord.
+   */
+  @Test
+  public void testFieldAccessor() throws Exception {
+    System.out.println("fieldAccessor");
+
+    FieldAccessor duration = master.compileFieldAccessor("ROOT~Duration");
+    FieldAccessor amount = master.compileFieldAccessor("ROOT~Amount");
+    FieldAccessor charge1 = master.compileFieldAccessor("ROOT.CHARGE_1~Value");
+    Assert.assertEquals(FlexRecord.FIELD_TYPE_INTEGER, duration.getFieldType());
+
+    FlexRecord instance = newRecord();
+    instance.MapRecord("ROOT", "call;60;1.5");
+    instance.MapRecord("ROOT.CHARGE", "EUR|0.5");
+    instance.MapRecord("ROOT.CHARGE", "MIN|60");
+
+    // The accessors see the same values as the field names
+    Assert.assertEquals(60, (Integer) instance.GetField(duration), 0);
+    Assert.assertEquals(1.5, instance.GetFieldFloat(amount), 0.000001);
+    Assert.assertEquals(instance.GetFieldFloat("ROOT~Amount"), instance.GetFieldFloat(amount), 0.000001);
+    Assert.assertEquals(60, instance.GetFieldFloat(charge1), 0.000001);
+
+    instance.PutFieldFloat(amount, 2.25);
+    Assert.assertEquals(2.25, instance.GetFieldFloat("ROOT~Amount"), 0.000001);
+
+    // The same accessors work on another record of the same definition
+    FlexRecord other = newRecord();
+    other.MapRecord("ROOT", "sms;1;0.1");
+    Assert.assertEquals(0.1, other.GetFieldFloat(amount), 0.000001);
+    Assert.assertNull(other.GetField(charge1));
+
+    // Remapping the root replaces the block the accessors see
+    other.MapRecord("ROOT", "sms;2;0.2");
+    Assert.assertEquals(0.2, other.GetFieldFloat(amount), 0.000001);
+  }
+
+  /**
+   * Test that bad field names are rejected at compile time.
+   */
+  @Test
+  public void testFieldAccessorBadName() {
+    System.out.println("fieldAccessorBadName");
+
+    String[] badNames = {"ROOT.Duration", "ROOT~NotThere", "ROOT.NOBLOCK_0~Value", "ROOT.CHARGE~Value"};
+
+    for (String badName : badNames) {
+      try {
+        master.compileFieldAccessor(badName);
+        Assert.fail("Expected exception for <" + badName + ">");
+      } catch (Exception ex) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Test of splitFields, of class FlexRecord.
+   */
+  @Test
+  public void testSplitFields() {
+    System.out.println("splitFields");
+
+    String[] cases = {"a;b;c", "a;;c", "a;b;;", ";a", "abc", "", ";;"};
+
+    for (String data : cases) {
+      Assert.assertArrayEquals(data, data.split(";"), FlexRecord.splitFields(data, ';'));
+    }
+
+    // Regex characters are taken literally
+    Assert.assertArrayEquals(new String[] {"a", "b"}, FlexRecord.splitFields("a|b", '|'));
+  }
+
+  /**
+   * Test of getLiteralSeparator, of class FlexRecord. Only separators which
+   * mean a single literal character as a regex are split literally.
+   */
+  @Test
+  public void testGetLiteralSeparator() {
+    System.out.println("getLiteralSeparator");
+
+    Assert.assertEquals(';', FlexRecord.getLiteralSeparator(";"));
+    Assert.assertEquals(',', FlexRecord.getLiteralSeparator(","));
+    Assert.assertEquals('|', FlexRecord.getLiteralSeparator("\\|"));
+    Assert.assertEquals('.', FlexRecord.getLiteralSeparator("\\."));
+    Assert.assertEquals(-1, FlexRecord.getLiteralSeparator("|"));
+    Assert.assertEquals(-1, FlexRecord.getLiteralSeparator("."));
+    Assert.assertEquals(-1, FlexRecord.getLiteralSeparator("\\t"));
+    Assert.assertEquals(-1, FlexRecord.getLiteralSeparator("\\d"));
+    Assert.assertEquals(-1, FlexRecord.getLiteralSeparator(";;"));
+  }
+
+  /**
+   * Test of writeBinary and readBinary, of class FlexRecord.
+   */
+  @Test
+  public void testBinaryCodec() throws Exception {
+    System.out.println("binaryCodec");
+
+    RecordCodec codec = new RecordCodec();
+    codec.registerType(RecordCodec.FIRST_USER_TYPE, FlexRecord.class, new IRecordFactory() {
+      @Override
+      public AbstractRecord newRecord() {
+        FlexRecord result = new FlexRecord("ROOT",0);
+        result.setDefRoot(master.getDefRoot());
+        return result;
+      }
+    });
+
+    FlexRecord instance = newRecord();
+    instance.MapRecord("ROOT", "call;60;1.5");
+    instance.MapRecord("ROOT.CHARGE", "EUR|0.5");
+    instance.MapRecord("ROOT.CHARGE", "MIN|60");
+
+    FlexRecord result = (FlexRecord) codec.decode(codec.encode(instance));
+
+    Assert.assertEquals("call", result.GetField(master.compileFieldAccessor("ROOT~Name")));
+    Assert.assertEquals(1.5, result.GetFieldFloat("ROOT~Amount"), 0.000001);
+    Assert.assertEquals(60, (Integer) result.GetField(master.compileFieldAccessor("ROOT~Duration")), 0);
+    Assert.assertEquals("MIN", result.GetField(master.compileFieldAccessor("ROOT.CHARGE_1~Resource")));
+    Assert.assertEquals(0.5, result.GetFieldFloat("ROOT.CHARGE_0~Value"), 0.000001);
+  }
+}